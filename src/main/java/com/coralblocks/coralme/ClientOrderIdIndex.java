@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+/**
+ * An open-addressing hash table of resting {@link Order}s keyed by client ID and
+ * client order ID. The hash of each key is stored next to its order, so probing
+ * compares the characters of an order's client order ID only when the hashes
+ * match, and looking up a {@link CharSequence} never creates a String.
+ *
+ * <p>
+ * Several orders may share a key when duplicates are not rejected. Each one
+ * is stored in its own slot and removed by identity.
+ * </p>
+ */
+final class ClientOrderIdIndex {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] hashes;
+
+	private Order[] values;
+
+	private int mask;
+
+	private int size;
+
+	private int threshold;
+
+	ClientOrderIdIndex(int expectedSize) {
+
+		int capacity = MIN_CAPACITY;
+
+		while (capacity < 2L * expectedSize && capacity < 1 << 30)
+			capacity <<= 1;
+
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+
+		this.hashes = new int[capacity];
+
+		this.values = new Order[capacity];
+
+		this.mask = capacity - 1;
+
+		this.threshold = capacity >>> 1;
+	}
+
+	static int hash(long clientId, CharSequence clientOrderId) {
+
+		int h = Long.hashCode(clientId * 0x9E3779B97F4A7C15L);
+
+		for (int i = 0; i < clientOrderId.length(); i++) {
+			h = 31 * h + clientOrderId.charAt(i);
+		}
+
+		return h ^ (h >>> 16);
+	}
+
+	static int hash(Order order) {
+
+		int h = Long.hashCode(order.getClientId() * 0x9E3779B97F4A7C15L);
+
+		for (int i = 0; i < order.clientOrderIdLength(); i++) {
+			h = 31 * h + order.clientOrderIdCharAt(i);
+		}
+
+		return h ^ (h >>> 16);
+	}
+
+	final int size() {
+
+		return size;
+	}
+
+	final Order get(long clientId, CharSequence clientOrderId) {
+
+		int hash = hash(clientId, clientOrderId);
+
+		for (int i = hash & mask;; i = (i + 1) & mask) {
+
+			Order order = values[i];
+
+			if (order == null) return null;
+
+			if (hashes[i] == hash && order.getClientId() == clientId && order.clientOrderIdEquals(clientOrderId)) {
+				return order;
+			}
+		}
+	}
+
+	final void add(Order order) {
+
+		int hash = hash(order);
+
+		int i = hash & mask;
+
+		while (values[i] != null)
+			i = (i + 1) & mask;
+
+		hashes[i] = hash;
+
+		values[i] = order;
+
+		if (++size > threshold) grow();
+	}
+
+	final boolean remove(Order order) {
+
+		int hash = hash(order);
+
+		for (int i = hash & mask;; i = (i + 1) & mask) {
+
+			Order value = values[i];
+
+			if (value == null) return false;
+
+			if (value == order) {
+
+				removeAt(i);
+
+				return true;
+			}
+		}
+	}
+
+	private void removeAt(int hole) {
+
+		// Backward-shift deletion, as in HashOrderIndex
+		for (int j = (hole + 1) & mask;; j = (j + 1) & mask) {
+
+			Order value = values[j];
+
+			if (value == null) break;
+
+			int home = hashes[j] & mask;
+
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+
+				hashes[hole] = hashes[j];
+
+				values[hole] = value;
+
+				hole = j;
+			}
+		}
+
+		values[hole] = null;
+
+		hashes[hole] = 0;
+
+		size--;
+	}
+
+	private void grow() {
+
+		int[] oldHashes = hashes;
+
+		Order[] oldValues = values;
+
+		allocate(oldValues.length << 1);
+
+		for (int i = 0; i < oldValues.length; i++) {
+
+			Order value = oldValues[i];
+
+			if (value == null) continue;
+
+			int j = oldHashes[i] & mask;
+
+			while (values[j] != null)
+				j = (j + 1) & mask;
+
+			hashes[j] = oldHashes[i];
+
+			values[j] = value;
+		}
+	}
+}
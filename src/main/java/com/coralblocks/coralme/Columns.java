@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+/**
+ * A table of primitive values stored column by column: a number of long columns
+ * and a number of int columns, all with the same number of rows. Each column is
+ * contiguous, so reading the same column of neighbouring rows reads neighbouring
+ * memory.
+ */
+abstract class Columns {
+
+	private final int longColumns;
+
+	private final int intColumns;
+
+	private int capacity;
+
+	Columns(int longColumns, int intColumns, int capacity) {
+
+		this.longColumns = longColumns;
+
+		this.intColumns = intColumns;
+
+		this.capacity = capacity;
+	}
+
+	final int longColumns() {
+		return longColumns;
+	}
+
+	final int intColumns() {
+		return intColumns;
+	}
+
+	/**
+	 * Returns the number of rows of each column.
+	 */
+	final int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Makes room for the given number of rows, keeping the values of the current
+	 * ones. The new rows are zeros.
+	 *
+	 * @param capacity the new number of rows, greater than the current one
+	 */
+	final void grow(int capacity) {
+
+		resize(this.capacity, capacity);
+
+		this.capacity = capacity;
+	}
+
+	abstract void resize(int oldCapacity, int newCapacity);
+
+	abstract long getLong(int column, int row);
+
+	abstract void putLong(int column, int row, long value);
+
+	abstract int getInt(int column, int row);
+
+	abstract void putInt(int column, int row, int value);
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import com.coralblocks.coralme.Order.Side;
+
+/**
+ * <p>
+ * Publishes the best price levels of each side and the last execution of an
+ * {@link OrderBook} for other threads. At the end of each order book operation
+ * that changed them, the thread of the order book writes them into a padded
+ * array of longs guarded by a sequence lock: the sequence is odd while they
+ * are written and even once they are complete. A reader copies them into its
+ * own {@link ConcurrentBookSnapshot} and keeps the copy only if the sequence
+ * was even and did not change meanwhile, so readers never block the order book
+ * or each other and nothing is allocated on either side.
+ * </p>
+ *
+ * <pre>
+ * ConcurrentBookPublisher publisher = new ConcurrentBookPublisher(orderBook, 5);
+ *
+ * // on any other thread
+ * ConcurrentBookSnapshot snapshot = new ConcurrentBookSnapshot(5);
+ * publisher.read(snapshot);
+ * long spread = snapshot.getBestAskPrice() - snapshot.getBestBidPrice();
+ * </pre>
+ *
+ * <p>
+ * {@link #tryRead(ConcurrentBookSnapshot)} makes a single attempt and is
+ * wait-free, while {@link #read(ConcurrentBookSnapshot)} spins until it gets a
+ * consistent copy, which only takes more than one attempt when it overlaps a
+ * write. An operation that does not change what is published does not write,
+ * so readers do not lose their cached copy of it to unrelated operations.
+ * Orders restored by {@link OrderBookLoader} or by a snapshot are published by
+ * the next operation.
+ * </p>
+ */
+public class ConcurrentBookPublisher {
+
+	public static final int DEFAULT_DEPTH = 5;
+
+	private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private static final int PADDING = 16; // two cache lines before and after the values
+
+	private static final int SEQUENCE = PADDING;
+
+	static final int LAST_PRICE = 0;
+
+	static final int LAST_SIZE = 1;
+
+	static final int MATCH_ID = 2;
+
+	static final int BID_LEVELS = 3;
+
+	static final int ASK_LEVELS = 4;
+
+	static final int LEVELS = 5; // price, size and orders of each level, bids best first and then asks best first
+
+	static final int LEVEL_SIZE = 3;
+
+	private final OrderBook orderBook;
+
+	private final int depth;
+
+	private final long[] shared;
+
+	private long[] next;
+
+	private long[] last;
+
+	private long sequence;
+
+	public ConcurrentBookPublisher(OrderBook orderBook) {
+		this(orderBook, DEFAULT_DEPTH);
+	}
+
+	/**
+	 * Creates a publisher, attaches it to the given order book and publishes its
+	 * current state. It must be called on the thread of the order book.
+	 *
+	 * @param orderBook the order book
+	 * @param depth     the number of price levels published for each side
+	 * @throws IllegalArgumentException if the depth is not positive
+	 * @throws IllegalStateException    if the order book already has a publisher
+	 */
+	public ConcurrentBookPublisher(OrderBook orderBook, int depth) {
+
+		if (depth <= 0) throw new IllegalArgumentException("depth must be positive: " + depth);
+
+		if (orderBook.getConcurrentBookPublisher() != null) {
+			throw new IllegalStateException("The order book already has a concurrent book publisher");
+		}
+
+		this.orderBook = orderBook;
+
+		this.depth = depth;
+
+		int values = valuesFor(depth);
+
+		this.shared = new long[PADDING + 1 + values + PADDING];
+
+		this.next = new long[values];
+
+		this.last = new long[values];
+
+		orderBook.setConcurrentBookPublisher(this);
+
+		collect();
+
+		write();
+	}
+
+	static int valuesFor(int depth) {
+		return LEVELS + 2 * depth * LEVEL_SIZE;
+	}
+
+	public OrderBook getOrderBook() {
+		return orderBook;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Detaches this publisher from its order book. Readers keep reading the last
+	 * published values.
+	 */
+	public void detach() {
+		orderBook.setConcurrentBookPublisher(null);
+	}
+
+	/**
+	 * Makes a single attempt at copying the published values into the given
+	 * snapshot. It fails if the order book thread was writing them at the same
+	 * time, in which case the snapshot holds a mix of values and must not be used.
+	 *
+	 * @param snapshot the snapshot to copy into
+	 * @return true if the snapshot is consistent
+	 * @throws IllegalArgumentException if the snapshot has a different depth
+	 */
+	public boolean tryRead(ConcurrentBookSnapshot snapshot) {
+
+		long[] values = snapshot.values;
+
+		if (values.length != next.length) {
+			throw new IllegalArgumentException("The snapshot depth must be " + depth + ": " + snapshot.getDepth());
+		}
+
+		long seq = (long) LONGS.getAcquire(shared, SEQUENCE);
+
+		if ((seq & 1) != 0) return false;
+
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) LONGS.getOpaque(shared, SEQUENCE + 1 + i);
+		}
+
+		VarHandle.loadLoadFence(); // the values are read before the sequence is read again
+
+		if ((long) LONGS.getOpaque(shared, SEQUENCE) != seq) return false;
+
+		snapshot.sequence = seq >>> 1;
+
+		return true;
+	}
+
+	/**
+	 * Copies the published values into the given snapshot, retrying until the
+	 * copy is consistent.
+	 *
+	 * @param snapshot the snapshot to copy into
+	 * @throws IllegalArgumentException if the snapshot has a different depth
+	 */
+	public void read(ConcurrentBookSnapshot snapshot) {
+
+		while (!tryRead(snapshot)) {
+			Thread.onSpinWait();
+		}
+	}
+
+	final void operationFinished() {
+
+		if (collect()) write();
+	}
+
+	/*
+	 * Collects the values to publish and returns whether they differ from the
+	 * ones last published.
+	 */
+	private boolean collect() {
+
+		long[] values = next;
+
+		values[LAST_PRICE] = orderBook.getLastExecutedPrice();
+
+		values[LAST_SIZE] = orderBook.getLastExecutedSize();
+
+		values[MATCH_ID] = orderBook.getMatchId();
+
+		values[BID_LEVELS] = collect(Side.BUY, values, LEVELS);
+
+		values[ASK_LEVELS] = collect(Side.SELL, values, LEVELS + depth * LEVEL_SIZE);
+
+		long[] previous = last;
+
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != previous[i]) return true;
+		}
+
+		return false;
+	}
+
+	private int collect(Side side, long[] values, int index) {
+
+		int levels = 0;
+
+		for (PriceLevel pl = orderBook.head(side); pl != null && levels < depth; pl = pl.next) {
+
+			values[index++] = pl.getPrice();
+
+			values[index++] = pl.getSize();
+
+			values[index++] = pl.getOrders();
+
+			levels++;
+		}
+
+		for (int i = levels; i < depth; i++) {
+
+			values[index++] = 0;
+
+			values[index++] = 0;
+
+			values[index++] = 0;
+		}
+
+		return levels;
+	}
+
+	private void write() {
+
+		long[] values = next;
+
+		LONGS.setOpaque(shared, SEQUENCE, ++sequence); // odd while writing
+
+		VarHandle.storeStoreFence(); // the odd sequence is written before the values
+
+		for (int i = 0; i < values.length; i++) {
+			LONGS.setOpaque(shared, SEQUENCE + 1 + i, values[i]);
+		}
+
+		LONGS.setRelease(shared, SEQUENCE, ++sequence);
+
+		next = last;
+
+		last = values;
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.ConcurrentBookPublisher.ASK_LEVELS;
+import static com.coralblocks.coralme.ConcurrentBookPublisher.BID_LEVELS;
+import static com.coralblocks.coralme.ConcurrentBookPublisher.LAST_PRICE;
+import static com.coralblocks.coralme.ConcurrentBookPublisher.LAST_SIZE;
+import static com.coralblocks.coralme.ConcurrentBookPublisher.LEVELS;
+import static com.coralblocks.coralme.ConcurrentBookPublisher.LEVEL_SIZE;
+import static com.coralblocks.coralme.ConcurrentBookPublisher.MATCH_ID;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.OrderBook.State;
+
+/**
+ * A copy of the values published by a {@link ConcurrentBookPublisher}, owned
+ * by the reader thread and reused for every read. A side without orders has
+ * no price levels, and its best price and size are zero.
+ */
+public class ConcurrentBookSnapshot {
+
+	final long[] values;
+
+	long sequence;
+
+	private final int depth;
+
+	public ConcurrentBookSnapshot() {
+		this(ConcurrentBookPublisher.DEFAULT_DEPTH);
+	}
+
+	/**
+	 * Creates a snapshot for a publisher of the given depth.
+	 *
+	 * @param depth the number of price levels of each side
+	 * @throws IllegalArgumentException if the depth is not positive
+	 */
+	public ConcurrentBookSnapshot(int depth) {
+
+		if (depth <= 0) throw new IllegalArgumentException("depth must be positive: " + depth);
+
+		this.depth = depth;
+
+		this.values = new long[ConcurrentBookPublisher.valuesFor(depth)];
+	}
+
+	/**
+	 * Returns the number of times the publisher had written its values when they
+	 * were read, which only grows. Two reads with the same sequence read the same
+	 * values.
+	 *
+	 * @return the publication sequence, 0 if never read
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getLevels(Side side) {
+		return (int) values[side.isBuy() ? BID_LEVELS : ASK_LEVELS];
+	}
+
+	private int index(Side side, int level) {
+
+		if (level < 0 || level >= getLevels(side)) {
+			throw new IndexOutOfBoundsException("level " + level + " of " + getLevels(side));
+		}
+
+		return LEVELS + ((side.isBuy() ? 0 : depth) + level) * LEVEL_SIZE;
+	}
+
+	public long getPrice(Side side, int level) {
+		return values[index(side, level)];
+	}
+
+	public long getSize(Side side, int level) {
+		return values[index(side, level) + 1];
+	}
+
+	public int getOrders(Side side, int level) {
+		return (int) values[index(side, level) + 2];
+	}
+
+	public long getBestBidPrice() {
+		return values[LEVELS];
+	}
+
+	public long getBestBidSize() {
+		return values[LEVELS + 1];
+	}
+
+	public long getBestAskPrice() {
+		return values[LEVELS + depth * LEVEL_SIZE];
+	}
+
+	public long getBestAskSize() {
+		return values[LEVELS + depth * LEVEL_SIZE + 1];
+	}
+
+	public boolean hasBids() {
+		return values[BID_LEVELS] > 0;
+	}
+
+	public boolean hasAsks() {
+		return values[ASK_LEVELS] > 0;
+	}
+
+	public State getState() {
+
+		if (hasBids() && hasAsks()) {
+
+			int priceComparison = Long.compare(getBestAskPrice(), getBestBidPrice());
+
+			if (priceComparison == 0) return State.LOCKED;
+
+			if (priceComparison < 0) return State.CROSSED;
+
+			return State.NORMAL;
+		}
+
+		return hasBids() || hasAsks() ? State.ONESIDED : State.EMPTY;
+	}
+
+	/**
+	 * Returns the price of the last execution, or {@link Long#MAX_VALUE} if no
+	 * execution has occurred, as {@link OrderBook#getLastExecutedPrice()}.
+	 *
+	 * @return the last executed price
+	 */
+	public long getLastExecutedPrice() {
+		return values[LAST_PRICE];
+	}
+
+	public long getLastExecutedSize() {
+		return values[LAST_SIZE];
+	}
+
+	/**
+	 * Returns the match ID of the last execution, which changes with every
+	 * execution, or 0 if no execution has occurred.
+	 *
+	 * @return the last match ID
+	 */
+	public long getMatchId() {
+		return values[MATCH_ID];
+	}
+
+	@Override
+	public String toString() {
+
+		StringBuilder sb = new StringBuilder(128);
+
+		sb.append("ConcurrentBookSnapshot [sequence=").append(sequence);
+
+		for (Side side : Side.values()) {
+
+			sb.append(side.isBuy() ? ", bids=[" : "], asks=[");
+
+			for (int i = 0; i < getLevels(side); i++) {
+				if (i > 0) sb.append(", ");
+				sb.append(getSize(side, i)).append('@').append(getPrice(side, i));
+			}
+		}
+
+		sb.append("], lastExecuted=").append(getLastExecutedSize()).append('@').append(getLastExecutedPrice());
+
+		return sb.append(", matchId=").append(getMatchId()).append(']').toString();
+	}
+}
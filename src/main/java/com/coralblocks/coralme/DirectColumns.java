@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@link Columns} kept off the Java heap, in a single direct buffer in native
+ * byte order. The long columns come first and the int columns after them, each
+ * one a contiguous region of the buffer. Growing allocates a new buffer and
+ * copies the regions over; the old one is freed once it is collected.
+ */
+final class DirectColumns extends Columns {
+
+	private final int rowBytes;
+
+	private ByteBuffer buffer;
+
+	private int rows;
+
+	private int intsOffset;
+
+	DirectColumns(int longColumns, int intColumns, int capacity) {
+
+		super(longColumns, intColumns, capacity);
+
+		this.rowBytes = longColumns * 8 + intColumns * 4;
+
+		this.buffer = allocate(capacity);
+
+		this.rows = capacity;
+
+		this.intsOffset = longColumns * 8 * capacity;
+	}
+
+	private ByteBuffer allocate(int capacity) {
+
+		long bytes = (long) rowBytes * capacity;
+
+		if (bytes > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Cannot keep " + capacity + " rows of " + rowBytes + " bytes off the heap");
+		}
+
+		return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+	}
+
+	@Override
+	void resize(int oldCapacity, int newCapacity) {
+
+		ByteBuffer newBuffer = allocate(newCapacity);
+
+		int newIntsOffset = longColumns() * 8 * newCapacity;
+
+		for (int i = 0; i < longColumns(); i++) {
+			newBuffer.put(i * 8 * newCapacity, buffer, i * 8 * oldCapacity, 8 * oldCapacity);
+		}
+
+		for (int i = 0; i < intColumns(); i++) {
+			newBuffer.put(newIntsOffset + i * 4 * newCapacity, buffer, intsOffset + i * 4 * oldCapacity,
+					4 * oldCapacity);
+		}
+
+		this.buffer = newBuffer;
+
+		this.rows = newCapacity;
+
+		this.intsOffset = newIntsOffset;
+	}
+
+	@Override
+	long getLong(int column, int row) {
+		return buffer.getLong((column * rows + row) << 3);
+	}
+
+	@Override
+	void putLong(int column, int row, long value) {
+		buffer.putLong((column * rows + row) << 3, value);
+	}
+
+	@Override
+	int getInt(int column, int row) {
+		return buffer.getInt(intsOffset + ((column * rows + row) << 2));
+	}
+
+	@Override
+	void putInt(int column, int row, int value) {
+		buffer.putInt(intsOffset + ((column * rows + row) << 2), value);
+	}
+}
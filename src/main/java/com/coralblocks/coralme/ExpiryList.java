@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+/**
+ * An intrusive list of resting {@link Order}s that expire together, linked
+ * through the orders themselves in the order they were added. An order is in at
+ * most one such list at a time, so adding and removing it allocates nothing.
+ */
+final class ExpiryList {
+
+	private Order head;
+
+	private Order tail;
+
+	private int size;
+
+	final Order head() {
+		return head;
+	}
+
+	final int size() {
+		return size;
+	}
+
+	final boolean isEmpty() {
+		return size == 0;
+	}
+
+	final void add(Order order) {
+
+		order.expiryList = this;
+
+		order.expiryPrev = tail;
+
+		order.expiryNext = null;
+
+		if (tail == null) {
+
+			head = order;
+
+		} else {
+
+			tail.expiryNext = order;
+		}
+
+		tail = order;
+
+		size++;
+	}
+
+	final void remove(Order order) {
+
+		if (order.expiryPrev == null) {
+
+			head = order.expiryNext;
+
+		} else {
+
+			order.expiryPrev.expiryNext = order.expiryNext;
+		}
+
+		if (order.expiryNext == null) {
+
+			tail = order.expiryPrev;
+
+		} else {
+
+			order.expiryNext.expiryPrev = order.expiryPrev;
+		}
+
+		order.expiryList = null;
+
+		order.expiryNext = order.expiryPrev = null;
+
+		size--;
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The default {@link OrderIndex}: an open-addressing hash table from exchange
+ * order ID to resting {@link Order}.
+ * Keys and values live in two parallel arrays probed linearly, so a lookup
+ * usually touches a single cache line instead of chasing chained entries.
+ * Removal shifts the following entries of the probe run back instead of leaving
+ * tombstones, so the table never degrades with churn.
+ *
+ * <p>
+ * The table is allocated up front and only grows, by doubling, when it becomes
+ * half full. It produces no garbage otherwise.
+ * </p>
+ */
+final class HashOrderIndex extends OrderIndex {
+
+	/**
+	 * The default template, sized from the expected number of orders of each
+	 * order book, see {@link OrderBookConfig#setExpectedOrders(int)}.
+	 */
+	static final HashOrderIndex DEFAULT = new HashOrderIndex();
+
+	private static final int MIN_CAPACITY = 16;
+
+	private final int expectedSize; // negative to follow the order book configuration
+
+	private long[] keys;
+
+	private Order[] values;
+
+	private int mask;
+
+	private int shift;
+
+	private int size;
+
+	private int threshold;
+
+	private final ReusableIterator iterator = new ReusableIterator();
+
+	private HashOrderIndex() {
+
+		this.expectedSize = -1;
+
+		allocate(MIN_CAPACITY);
+	}
+
+	HashOrderIndex(int expectedSize) {
+
+		if (expectedSize < 0) throw new IllegalArgumentException("expectedSize cannot be negative: " + expectedSize);
+
+		this.expectedSize = expectedSize;
+
+		allocate(capacityFor(expectedSize));
+	}
+
+	@Override
+	OrderIndex newInstance() {
+		return newInstance(OrderBook.ORDER_POOL_INITIAL_SIZE);
+	}
+
+	@Override
+	OrderIndex newInstance(int expectedOrders) {
+		return new HashOrderIndex(expectedSize < 0 ? expectedOrders : expectedSize);
+	}
+
+	private static int capacityFor(int expectedSize) {
+
+		long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1L, 2L * expectedSize - 1)) << 1);
+
+		if (capacity > 1 << 30) throw new IllegalArgumentException("expectedSize is too large: " + expectedSize);
+
+		return (int) capacity;
+	}
+
+	private void allocate(int capacity) {
+
+		this.keys = new long[capacity];
+
+		this.values = new Order[capacity];
+
+		this.mask = capacity - 1;
+
+		this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+
+		this.threshold = capacity >>> 1;
+	}
+
+	private int home(long key) {
+
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+	private int indexOf(long key) {
+
+		for (int i = home(key);; i = (i + 1) & mask) {
+
+			Order value = values[i];
+
+			if (value == null) return -1;
+
+			if (keys[i] == key) return i;
+		}
+	}
+
+	@Override
+	final int size() {
+
+		return size;
+	}
+
+	@Override
+	final boolean isEmpty() {
+
+		return size == 0;
+	}
+
+	final int capacity() {
+
+		return values.length;
+	}
+
+	@Override
+	final boolean containsKey(long key) {
+
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	final Order get(long key) {
+
+		int i = indexOf(key);
+
+		return i >= 0 ? values[i] : null;
+	}
+
+	@Override
+	final Order put(long key, Order order) {
+
+		int i = home(key);
+
+		for (Order value; (value = values[i]) != null; i = (i + 1) & mask) {
+
+			if (keys[i] == key) {
+
+				values[i] = order;
+
+				return value;
+			}
+		}
+
+		keys[i] = key;
+
+		values[i] = order;
+
+		if (++size > threshold) grow();
+
+		return null;
+	}
+
+	@Override
+	final Order remove(long key) {
+
+		int i = indexOf(key);
+
+		if (i < 0) return null;
+
+		Order removed = values[i];
+
+		removeAt(i);
+
+		return removed;
+	}
+
+	private void removeAt(int hole) {
+
+		// Backward-shift deletion: pull back every later entry of the run that may
+		// legally occupy the hole, so lookups never need tombstones
+		for (int j = (hole + 1) & mask;; j = (j + 1) & mask) {
+
+			Order value = values[j];
+
+			if (value == null) break;
+
+			int home = home(keys[j]);
+
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+
+				keys[hole] = keys[j];
+
+				values[hole] = value;
+
+				hole = j;
+			}
+		}
+
+		values[hole] = null;
+
+		keys[hole] = 0;
+
+		size--;
+	}
+
+	private void grow() {
+
+		long[] oldKeys = keys;
+
+		Order[] oldValues = values;
+
+		allocate(oldValues.length << 1);
+
+		for (int i = 0; i < oldValues.length; i++) {
+
+			Order value = oldValues[i];
+
+			if (value == null) continue;
+
+			int j = home(oldKeys[i]);
+
+			while (values[j] != null)
+				j = (j + 1) & mask;
+
+			keys[j] = oldKeys[i];
+
+			values[j] = value;
+		}
+	}
+
+	@Override
+	final Iterator<Order> iterator() {
+
+		iterator.reset();
+
+		return iterator;
+	}
+
+	private final class ReusableIterator implements Iterator<Order> {
+
+		private int start;
+
+		private int visited;
+
+		private int current = -1;
+
+		private void reset() {
+
+			// Start right after an empty slot so no probe run wraps around the start.
+			// Backward shifts then only move entries into the current or later slots.
+			int empty = 0;
+
+			while (values[empty] != null)
+				empty++;
+
+			start = empty + 1;
+
+			visited = 0;
+
+			current = -1;
+
+			skipEmpty();
+		}
+
+		private void skipEmpty() {
+
+			while (visited < values.length && values[(start + visited) & mask] == null)
+				visited++;
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			return visited < values.length;
+		}
+
+		@Override
+		public Order next() {
+
+			if (visited >= values.length) throw new NoSuchElementException();
+
+			current = (start + visited) & mask;
+
+			visited++;
+
+			Order order = values[current];
+
+			skipEmpty();
+
+			return order;
+		}
+
+		@Override
+		public void remove() {
+
+			if (current < 0) throw new IllegalStateException();
+
+			removeAt(current);
+
+			// An entry from later in the run may have been shifted into this slot
+			visited = (current - start) & mask;
+
+			current = -1;
+
+			skipEmpty();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.util.Arrays;
+
+/**
+ * {@link Columns} kept in one Java array per column.
+ */
+final class HeapColumns extends Columns {
+
+	private final long[][] longs;
+
+	private final int[][] ints;
+
+	HeapColumns(int longColumns, int intColumns, int capacity) {
+
+		super(longColumns, intColumns, capacity);
+
+		this.longs = new long[longColumns][capacity];
+
+		this.ints = new int[intColumns][capacity];
+	}
+
+	@Override
+	void resize(int oldCapacity, int newCapacity) {
+
+		for (int i = 0; i < longs.length; i++) {
+			longs[i] = Arrays.copyOf(longs[i], newCapacity);
+		}
+
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = Arrays.copyOf(ints[i], newCapacity);
+		}
+	}
+
+	@Override
+	long getLong(int column, int row) {
+		return longs[column][row];
+	}
+
+	@Override
+	void putLong(int column, int row, long value) {
+		longs[column][row] = value;
+	}
+
+	@Override
+	int getInt(int column, int row) {
+		return ints[column][row];
+	}
+
+	@Override
+	void putInt(int column, int row, int value) {
+		ints[column][row] = value;
+	}
+}
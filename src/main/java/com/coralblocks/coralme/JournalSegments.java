@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The segment files shared by {@link OrderBookJournal} and
+ * {@link OrderBookCommandJournal}. A segment is named after the journal, followed
+ * by the 19-digit number of its first entry and a suffix, and starts with a
+ * little-endian header whose first two ints are a magic number and a version.
+ */
+final class JournalSegments {
+
+	private static final int DIGITS = 19;
+
+	private JournalSegments() {
+
+	}
+
+	static String fileName(String name, long first, String suffix) {
+		return name + "-" + String.format("%019d", first) + suffix;
+	}
+
+	static boolean isFileName(String name, String suffix, String fileName) {
+		return fileName.length() == name.length() + 1 + DIGITS + suffix.length() && fileName.startsWith(name + "-")
+				&& fileName.endsWith(suffix);
+	}
+
+	/**
+	 * Returns the number of the first entry of the given segment.
+	 */
+	static long firstEntry(String name, Path file) {
+
+		String fileName = file.getFileName().toString();
+
+		return Long.parseLong(fileName.substring(name.length() + 1, name.length() + 1 + DIGITS));
+	}
+
+	/**
+	 * Returns the first or the last segment with the given name in the given
+	 * directory, or null if there is none.
+	 */
+	static Path find(Path directory, String name, String suffix, boolean first) throws IOException {
+
+		Path found = null;
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				String fileName = file.getFileName().toString();
+				if (!isFileName(name, suffix, fileName)) continue;
+				if (found == null) {
+					found = file;
+				} else {
+					int compared = fileName.compareTo(found.getFileName().toString());
+					if (first ? compared < 0 : compared > 0) found = file;
+				}
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Opens the given segment for writing, creating it if needed. A segment that
+	 * already exists can only be one left without entries.
+	 */
+	static FileChannel create(Path file) throws IOException {
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Maps a segment opened by {@link #create(Path)} and writes the magic number
+	 * and the version to its header. The rest of the header is left to the caller.
+	 */
+	static MappedByteBuffer map(FileChannel channel, int segmentSize, int magic, int version) throws IOException {
+
+		MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+
+		segment.order(ByteOrder.LITTLE_ENDIAN);
+
+		segment.putInt(0, magic);
+
+		segment.putInt(4, version);
+
+		return segment;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import com.coralblocks.coralme.Order.Side;
+
+/**
+ * The default {@link PriceLevelIndex}. It keeps no state and walks the levels
+ * from the best price, which is the fastest choice for books whose orders rest
+ * close to the top.
+ */
+final class LinearPriceLevelIndex extends PriceLevelIndex {
+
+	static final LinearPriceLevelIndex INSTANCE = new LinearPriceLevelIndex();
+
+	private LinearPriceLevelIndex() {
+
+	}
+
+	@Override
+	PriceLevelIndex newInstance() {
+		return this; // stateless
+	}
+
+	@Override
+	PriceLevel find(PriceLevel head, Side side, long price) {
+		return findFrom(head, side, price);
+	}
+
+	static PriceLevel findFrom(PriceLevel start, Side side, long price) {
+
+		for (PriceLevel pl = start; pl != null; pl = pl.next) {
+
+			if (side.isInside(price, pl.getPrice())) return pl;
+		}
+
+		return null;
+	}
+
+	@Override
+	void added(PriceLevel priceLevel) {
+		// NOOP
+	}
+
+	@Override
+	void removed(PriceLevel priceLevel) {
+		// NOOP
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.coralblocks.coralme.Order.CancelReason;
+import com.coralblocks.coralme.Order.ExecuteSide;
+import com.coralblocks.coralme.Order.RejectReason;
+import com.coralblocks.coralme.Order.Side;
+
+/**
+ * <p>
+ * An {@link OrderBookListener} that encodes the changes to the resting orders
+ * of an order book as a market-by-order (L3) feed of fixed-size binary messages
+ * keyed by exchange order ID. Each message is written into the same
+ * {@link ByteBuffer} and passed to a {@link MarketByOrderListener}, so encoding
+ * does not allocate. An encoder listens to one order book and its messages
+ * have gap-free sequence numbers, and the stream ID tells the order books of a
+ * feed apart.
+ * </p>
+ *
+ * <p>
+ * A message is {@link #MESSAGE_SIZE} bytes, little-endian:
+ * </p>
+ *
+ * <pre>
+ *  0  long sequence, starting at 1
+ *  8  long time
+ * 16  byte type: 'A' add, 'M' modify, 'D' delete or 'T' trade
+ * 17  byte side of the order
+ * 18  short reserved
+ * 20  int  stream ID
+ * 24  long exchange order ID
+ * 32  long price of the order, the execute price for a trade
+ * 40  long size: the open size added, canceled, deleted or executed
+ * 48  long open size of the order after the message
+ * 56  long match ID of a trade, 0 otherwise
+ * </pre>
+ *
+ * <p>
+ * Only resting orders are in the feed. An incoming order that executes sends
+ * one trade for each resting order it executes against, with the ID of the
+ * resting order, and an add with its remaining open size if it then rests. An
+ * incoming order that does not rest sends nothing else. A reduce keeps the time
+ * priority of the order and sends a modify. A cancel of a resting order sends a
+ * delete, and a trade with no open size left removes the order. A roll by
+ * {@link OrderBook#bulkRollTo(OrderBook, long)} sends a delete in the order
+ * book rolled from and an add in the order book rolled to. Orders that rest
+ * without any callback, loaded by {@link OrderBookLoader} or restored from a
+ * snapshot, are sent by {@link #publishOrders()}.
+ * </p>
+ */
+public class MarketByOrderEncoder implements OrderBookListener {
+
+	public static final int MESSAGE_SIZE = 64;
+
+	public static final byte ADD = 'A';
+
+	public static final byte MODIFY = 'M';
+
+	public static final byte DELETE = 'D';
+
+	public static final byte TRADE = 'T';
+
+	private final OrderBook orderBook;
+
+	private final int streamId;
+
+	private final MarketByOrderListener listener;
+
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(MESSAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	private long sequence;
+
+	/**
+	 * Creates an encoder and adds it as a listener of the given order book.
+	 *
+	 * @param orderBook the order book
+	 * @param streamId  the stream ID written in every message
+	 * @param listener  the listener of the messages
+	 */
+	public MarketByOrderEncoder(OrderBook orderBook, int streamId, MarketByOrderListener listener) {
+
+		this.orderBook = orderBook;
+
+		this.streamId = streamId;
+
+		this.listener = listener;
+
+		orderBook.addListener(this);
+	}
+
+	public OrderBook getOrderBook() {
+		return orderBook;
+	}
+
+	public int getStreamId() {
+		return streamId;
+	}
+
+	/**
+	 * Returns the sequence number of the last message.
+	 *
+	 * @return the last sequence number, 0 if none
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Sends an add for every resting order of the order book, in price-time
+	 * priority for each side, bids first. Applying them in this order to an empty
+	 * order book rebuilds its time priority.
+	 */
+	public void publishOrders() {
+
+		long time = orderBook.getTimestamper().nanoEpoch();
+
+		publishOrders(Side.BUY, time);
+
+		publishOrders(Side.SELL, time);
+	}
+
+	private void publishOrders(Side side, long time) {
+
+		for (PriceLevel pl = orderBook.head(side); pl != null; pl = pl.next) {
+
+			for (Order o = pl.head(); o != null; o = pl.next(o)) {
+				write(ADD, time, o, o.getPrice(), o.getOpenSize(), 0);
+			}
+		}
+	}
+
+	private void write(byte type, long time, Order order, long price, long size, long matchId) {
+
+		ByteBuffer b = buffer;
+
+		b.clear();
+
+		b.putLong(0, ++sequence);
+
+		b.putLong(8, time);
+
+		b.put(16, type);
+
+		b.put(17, (byte) order.getSide().getChar());
+
+		b.putShort(18, (short) 0);
+
+		b.putInt(20, streamId);
+
+		b.putLong(24, order.getId());
+
+		b.putLong(32, price);
+
+		b.putLong(40, size);
+
+		b.putLong(48, type == DELETE ? 0 : order.getOpenSize());
+
+		b.putLong(56, matchId);
+
+		listener.onMarketByOrder(orderBook, b);
+	}
+
+	@Override
+	public void onOrderReduced(OrderBook orderBook, long time, Order order, long canceledSize, long reduceNewTotalSize,
+			CancelReason cancelReason) {
+		write(MODIFY, time, order, order.getPrice(), canceledSize, 0);
+	}
+
+	@Override
+	public void onOrderCanceled(OrderBook orderBook, long time, Order order, long canceledSize,
+			CancelReason cancelReason) {
+
+		// An incoming order that did not rest is not in the feed
+		if (order.getRestTime() == -1) return;
+
+		write(DELETE, time, order, order.getPrice(), canceledSize, 0);
+	}
+
+	@Override
+	public void onOrderExecuted(OrderBook orderBook, long time, Order order, ExecuteSide executeSide, long executeSize,
+			long executePrice, long executeId, long executeMatchId) {
+
+		// The trade is sent once, for the resting order
+		if (executeSide != ExecuteSide.MAKER) return;
+
+		write(TRADE, time, order, executePrice, executeSize, executeMatchId);
+	}
+
+	@Override
+	public void onOrderAccepted(OrderBook orderBook, long time, Order order) {
+		// Not resting yet
+	}
+
+	@Override
+	public void onOrderRejected(OrderBook orderBook, long time, Order order, RejectReason rejectReason) {
+		// Never rested
+	}
+
+	@Override
+	public void onOrderRested(OrderBook orderBook, long time, Order order, long restSize, long restPrice) {
+		write(ADD, time, order, restPrice, restSize, 0);
+	}
+
+	@Override
+	public void onOrderTerminated(OrderBook orderBook, long time, Order order) {
+		// Already sent as a delete or as a trade with no open size left
+	}
+
+	@Override
+	public void onOrderRolled(OrderBook orderBook, long time, Order order, OrderBook newOrderBook, Order rolledOrder) {
+		if (newOrderBook == this.orderBook) {
+			write(ADD, rolledOrder.getRestTime(), rolledOrder, rolledOrder.getPrice(), rolledOrder.getOpenSize(), 0);
+		} else {
+			write(DELETE, time, order, order.getPrice(), rolledOrder.getOpenSize(), 0);
+		}
+	}
+
+	@Override
+	public void onExceptionsThrown(OrderBook orderBook, OrderBookListenerExceptions exceptions) {
+		// Nothing to encode
+	}
+}
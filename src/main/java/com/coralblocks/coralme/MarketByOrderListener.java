@@ -0,0 +1,35 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the messages of a {@link MarketByOrderEncoder}, on the thread of the
+ * order book, one at a time. The buffer holds one message between its position
+ * and its limit, is reused for the next one and must be copied, not kept.
+ */
+public interface MarketByOrderListener {
+
+	/**
+	 * Called with each encoded message.
+	 *
+	 * @param orderBook the order book
+	 * @param message   the buffer holding the message, which
+	 *                  {@link MarketByOrderMessage} can read
+	 */
+	public void onMarketByOrder(OrderBook orderBook, ByteBuffer message);
+}
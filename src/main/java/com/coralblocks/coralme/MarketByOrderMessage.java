@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.coralblocks.coralme.Order.Side;
+
+/**
+ * <p>
+ * A flyweight that reads a message of a {@link MarketByOrderEncoder} in place,
+ * without copying or allocating. Wrap it around the buffer of each message and
+ * read its fields with the getters.
+ * </p>
+ *
+ * <pre>
+ * message.wrap(buffer);
+ *
+ * switch (message.getType()) {
+ * 	case MarketByOrderEncoder.ADD:
+ * 		add(message.getOrderId(), message.getSide(), message.getPrice(), message.getSize());
+ * 		break;
+ * 	...
+ * }
+ * </pre>
+ */
+public class MarketByOrderMessage {
+
+	private ByteBuffer buffer;
+
+	private int offset;
+
+	/**
+	 * Reads the message at the position of the given buffer, whose byte order is
+	 * set to little-endian.
+	 *
+	 * @param buffer the buffer holding the message
+	 * @return this message
+	 */
+	public MarketByOrderMessage wrap(ByteBuffer buffer) {
+		return wrap(buffer, buffer.position());
+	}
+
+	/**
+	 * Reads the message at the given offset of the given buffer, whose byte order
+	 * is set to little-endian.
+	 *
+	 * @param buffer the buffer holding the message
+	 * @param offset the offset of the message
+	 * @return this message
+	 * @throws IllegalArgumentException if the buffer is too short for a message at
+	 *                                  the offset
+	 */
+	public MarketByOrderMessage wrap(ByteBuffer buffer, int offset) {
+
+		if (offset < 0 || offset + MarketByOrderEncoder.MESSAGE_SIZE > buffer.limit()) {
+			throw new IllegalArgumentException("No message at offset " + offset);
+		}
+
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		this.buffer = buffer;
+
+		this.offset = offset;
+
+		return this;
+	}
+
+	public long getSequence() {
+		return buffer.getLong(offset);
+	}
+
+	public long getTime() {
+		return buffer.getLong(offset + 8);
+	}
+
+	/**
+	 * Returns the type of the message, one of the message types of
+	 * {@link MarketByOrderEncoder}.
+	 *
+	 * @return the message type
+	 */
+	public byte getType() {
+		return buffer.get(offset + 16);
+	}
+
+	public Side getSide() {
+		return Side.ALL.get((char) buffer.get(offset + 17));
+	}
+
+	public int getStreamId() {
+		return buffer.getInt(offset + 20);
+	}
+
+	public long getOrderId() {
+		return buffer.getLong(offset + 24);
+	}
+
+	public long getPrice() {
+		return buffer.getLong(offset + 32);
+	}
+
+	/**
+	 * Returns the open size added by an add, canceled by a modify, removed by a
+	 * delete or executed by a trade.
+	 *
+	 * @return the size of the message
+	 */
+	public long getSize() {
+		return buffer.getLong(offset + 40);
+	}
+
+	/**
+	 * Returns the open size of the order after the message, zero once it left the
+	 * order book.
+	 *
+	 * @return the open size
+	 */
+	public long getOpenSize() {
+		return buffer.getLong(offset + 48);
+	}
+
+	public long getMatchId() {
+		return buffer.getLong(offset + 56);
+	}
+
+	/**
+	 * This method of course produces garbage and should be used only for debugging
+	 * purposes.
+	 *
+	 * @return a newly created String describing this message
+	 */
+	@Override
+	public String toString() {
+		return getSequence() + " " + (char) getType() + " " + getSide() + " " + getOrderId() + " " + getSize() + "@"
+				+ getPrice() + " open=" + getOpenSize() + " match=" + getMatchId();
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+/**
+ * Receives the market-by-price updates of a {@link MarketByPricePublisher}, on
+ * the thread of the order book, once per order book operation that changed the
+ * published price levels. The update is reused for the next one and must be
+ * copied, not kept. The order book cannot be modified from this listener.
+ */
+public interface MarketByPriceListener {
+
+	/**
+	 * Called with the price levels changed by an operation, or with every
+	 * published price level for a snapshot.
+	 *
+	 * @param orderBook the order book
+	 * @param update    the update
+	 */
+	public void onMarketByPrice(OrderBook orderBook, MarketByPriceUpdate update);
+
+	/**
+	 * Called with the exception this listener threw from {@link #onMarketByPrice}.
+	 * The exception does not fail the operation, which has already completed, and
+	 * the next update is a snapshot, because the receivers may have missed this
+	 * one. Does nothing by default, so that existing listeners keep compiling.
+	 *
+	 * @param orderBook the order book
+	 * @param exception the exception thrown by this listener
+	 */
+	public default void onExceptionThrown(OrderBook orderBook, Exception exception) {
+	}
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.util.Arrays;
+
+import com.coralblocks.coralme.Order.Side;
+
+/**
+ * <p>
+ * Publishes the aggregated market-by-price (L2) depth of an {@link OrderBook}.
+ * The price levels record themselves as changed when their size or number of
+ * orders changes, and at the end of each order book operation the publisher
+ * sends one update with one entry per changed price level, conflating every
+ * change the operation made to it. A price level that was removed is sent with
+ * a size of zero. The update is written into a {@link MarketByPriceUpdate}
+ * allocated once, so publishing does not allocate.
+ * </p>
+ *
+ * <p>
+ * With a limited depth only the best price levels of each side are published.
+ * When an operation changes a published price level, the published levels of
+ * its side are compared with the current best ones, at a cost proportional to
+ * the depth, so that a price level that enters the depth is sent as well and
+ * one that leaves it is sent with a size of zero. Changes to the price levels
+ * beyond the depth are not published.
+ * </p>
+ *
+ * <p>
+ * A snapshot of every published price level is sent for the first update, after
+ * every given number of updates for late joiners, after the listener threw an
+ * exception, and on {@link #publishSnapshot()}. Price levels changed by
+ * {@link OrderBookLoader} or by a restore are published by the next operation.
+ * </p>
+ */
+public class MarketByPricePublisher {
+
+	public static final int ALL_LEVELS = Integer.MAX_VALUE;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final OrderBook orderBook;
+
+	private final MarketByPriceListener listener;
+
+	private final int depth;
+
+	private final int snapshotInterval;
+
+	private final MarketByPriceUpdate update = new MarketByPriceUpdate(INITIAL_CAPACITY);
+
+	// The price levels changed by the current operation, null once removed
+	private PriceLevel[] changedLevels = new PriceLevel[INITIAL_CAPACITY];
+
+	private Side[] changedSides = new Side[INITIAL_CAPACITY];
+
+	private long[] changedPrices = new long[INITIAL_CAPACITY];
+
+	private int changes;
+
+	private int removedChanges;
+
+	// The published price levels of each side, best first, when the depth is limited
+	private final long[][] publishedPrices;
+
+	private final long[][] publishedSizes;
+
+	private final int[][] publishedOrders;
+
+	private final int[] publishedLevels = new int[2];
+
+	private final long[] currentPrices;
+
+	private final long[] currentSizes;
+
+	private final int[] currentOrders;
+
+	private long sequence;
+
+	private int updatesSinceSnapshot;
+
+	private boolean snapshotPending = true;
+
+	public MarketByPricePublisher(OrderBook orderBook, MarketByPriceListener listener) {
+		this(orderBook, listener, ALL_LEVELS, 0);
+	}
+
+	/**
+	 * Creates a publisher and attaches it to the given order book.
+	 *
+	 * @param orderBook        the order book
+	 * @param listener         the listener of the updates
+	 * @param depth            the number of price levels published for each side,
+	 *                         or {@link #ALL_LEVELS}
+	 * @param snapshotInterval the number of updates after which a snapshot is
+	 *                         published, or 0 for none
+	 * @throws IllegalArgumentException if the depth is not positive or the
+	 *                                  snapshot interval is negative
+	 * @throws IllegalStateException    if the order book already has a publisher
+	 */
+	public MarketByPricePublisher(OrderBook orderBook, MarketByPriceListener listener, int depth,
+			int snapshotInterval) {
+
+		if (depth <= 0) throw new IllegalArgumentException("depth must be positive: " + depth);
+
+		if (snapshotInterval < 0) {
+			throw new IllegalArgumentException("snapshotInterval cannot be negative: " + snapshotInterval);
+		}
+
+		if (orderBook.getMarketByPricePublisher() != null) {
+			throw new IllegalStateException("The order book already has a market-by-price publisher");
+		}
+
+		this.orderBook = orderBook;
+
+		this.listener = listener;
+
+		this.depth = depth;
+
+		this.snapshotInterval = snapshotInterval;
+
+		if (depth != ALL_LEVELS) {
+
+			this.publishedPrices = new long[2][depth];
+
+			this.publishedSizes = new long[2][depth];
+
+			this.publishedOrders = new int[2][depth];
+
+			this.currentPrices = new long[depth];
+
+			this.currentSizes = new long[depth];
+
+			this.currentOrders = new int[depth];
+
+		} else {
+
+			this.publishedPrices = this.publishedSizes = null;
+
+			this.publishedOrders = null;
+
+			this.currentPrices = this.currentSizes = null;
+
+			this.currentOrders = null;
+		}
+
+		orderBook.setMarketByPricePublisher(this);
+	}
+
+	public OrderBook getOrderBook() {
+		return orderBook;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the sequence number of the last update published.
+	 *
+	 * @return the last sequence number, 0 if none
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Detaches this publisher from its order book, which stops publishing.
+	 */
+	public void detach() {
+
+		orderBook.setMarketByPricePublisher(null);
+
+		clearChanges();
+	}
+
+	/**
+	 * Publishes a snapshot of every published price level now.
+	 */
+	public void publishSnapshot() {
+
+		orderBook.checkExternalListenerReentrancy("publishSnapshot");
+
+		orderBook.enterExternalListenerCallback();
+		try {
+			snapshot();
+		} finally {
+			orderBook.exitExternalListenerCallback();
+		}
+	}
+
+	final void levelChanged(PriceLevel priceLevel) {
+
+		if (priceLevel.marketByPriceIndex >= 0) return;
+
+		int index = removedChanges > 0 ? findRemovedChange(priceLevel.getSide(), priceLevel.getPrice()) : -1;
+
+		if (index >= 0) {
+
+			// The price level was removed and added again by the same operation
+			removedChanges--;
+
+		} else {
+
+			index = addChange(priceLevel.getSide(), priceLevel.getPrice());
+		}
+
+		changedLevels[index] = priceLevel;
+
+		priceLevel.marketByPriceIndex = index;
+	}
+
+	final void levelRemoved(PriceLevel priceLevel) {
+
+		int index = priceLevel.marketByPriceIndex;
+
+		if (index < 0) index = addChange(priceLevel.getSide(), priceLevel.getPrice());
+
+		changedLevels[index] = null;
+
+		priceLevel.marketByPriceIndex = -1;
+
+		removedChanges++;
+	}
+
+	private int addChange(Side side, long price) {
+
+		if (changes == changedLevels.length) {
+
+			int capacity = changes << 1;
+
+			changedLevels = Arrays.copyOf(changedLevels, capacity);
+
+			changedSides = Arrays.copyOf(changedSides, capacity);
+
+			changedPrices = Arrays.copyOf(changedPrices, capacity);
+		}
+
+		changedSides[changes] = side;
+
+		changedPrices[changes] = price;
+
+		return changes++;
+	}
+
+	private int findRemovedChange(Side side, long price) {
+
+		for (int i = 0; i < changes; i++) {
+			if (changedLevels[i] == null && changedSides[i] == side && changedPrices[i] == price) return i;
+		}
+
+		return -1;
+	}
+
+	private void clearChanges() {
+
+		for (int i = 0; i < changes; i++) {
+
+			PriceLevel priceLevel = changedLevels[i];
+
+			if (priceLevel != null) {
+
+				priceLevel.marketByPriceIndex = -1;
+
+				changedLevels[i] = null;
+			}
+		}
+
+		changes = removedChanges = 0;
+	}
+
+	/**
+	 * Called by the order book at the end of each operation that is not nested in
+	 * another one.
+	 */
+	final void operationFinished() {
+
+		if (snapshotPending) {
+
+			snapshot();
+
+			return;
+		}
+
+		if (changes == 0) return;
+
+		update.clear(sequence + 1, false);
+
+		if (depth == ALL_LEVELS) {
+
+			for (int i = 0; i < changes; i++) {
+
+				PriceLevel priceLevel = changedLevels[i];
+
+				if (priceLevel == null) {
+					update.add(changedSides[i], changedPrices[i], 0, 0);
+				} else {
+					update.add(changedSides[i], changedPrices[i], priceLevel.getSize(), priceLevel.getOrders());
+				}
+			}
+
+		} else {
+
+			boolean bids = false, asks = false;
+
+			for (int i = 0; i < changes; i++) {
+
+				if (!isPublished(changedSides[i], changedPrices[i])) continue;
+
+				if (changedSides[i] == Side.BUY) {
+					bids = true;
+				} else {
+					asks = true;
+				}
+			}
+
+			if (bids) compare(Side.BUY);
+
+			if (asks) compare(Side.SELL);
+		}
+
+		clearChanges();
+
+		if (update.getEntries() == 0) return;
+
+		publish();
+
+		if (!snapshotPending && snapshotInterval > 0 && updatesSinceSnapshot >= snapshotInterval) snapshot();
+	}
+
+	/**
+	 * Returns whether a change at the given price can change the published price
+	 * levels of its side.
+	 */
+	private boolean isPublished(Side side, long price) {
+
+		int index = side.index();
+
+		int levels = publishedLevels[index];
+
+		return levels < depth || !side.isOutside(price, publishedPrices[index][levels - 1]);
+	}
+
+	/**
+	 * Adds to the update the differences between the published price levels of
+	 * the given side and its current best ones, which become the published ones.
+	 */
+	private void compare(Side side) {
+
+		int index = side.index();
+
+		long[] prices = publishedPrices[index];
+
+		long[] sizes = publishedSizes[index];
+
+		int[] orders = publishedOrders[index];
+
+		int published = publishedLevels[index];
+
+		int current = 0;
+
+		for (PriceLevel pl = orderBook.head(side); pl != null && current < depth; pl = pl.next) {
+
+			currentPrices[current] = pl.getPrice();
+
+			currentSizes[current] = pl.getSize();
+
+			currentOrders[current] = pl.getOrders();
+
+			current++;
+		}
+
+		int i = 0, j = 0;
+
+		while (i < published || j < current) {
+
+			if (j == current || (i < published && side.isOutside(currentPrices[j], prices[i]))) {
+
+				// Removed or out of the depth
+				update.add(side, prices[i], 0, 0);
+
+				i++;
+
+			} else if (i == published || side.isOutside(prices[i], currentPrices[j])) {
+
+				// Added or into the depth
+				update.add(side, currentPrices[j], currentSizes[j], currentOrders[j]);
+
+				j++;
+
+			} else {
+
+				if (sizes[i] != currentSizes[j] || orders[i] != currentOrders[j]) {
+					update.add(side, currentPrices[j], currentSizes[j], currentOrders[j]);
+				}
+
+				i++;
+
+				j++;
+			}
+		}
+
+		System.arraycopy(currentPrices, 0, prices, 0, current);
+
+		System.arraycopy(currentSizes, 0, sizes, 0, current);
+
+		System.arraycopy(currentOrders, 0, orders, 0, current);
+
+		publishedLevels[index] = current;
+	}
+
+	private void snapshot() {
+
+		clearChanges();
+
+		update.clear(sequence + 1, true);
+
+		snapshot(Side.BUY);
+
+		snapshot(Side.SELL);
+
+		updatesSinceSnapshot = 0;
+
+		snapshotPending = false;
+
+		publish();
+	}
+
+	private void snapshot(Side side) {
+
+		int index = side.index();
+
+		int levels = 0;
+
+		for (PriceLevel pl = orderBook.head(side); pl != null && levels < depth; pl = pl.next) {
+
+			update.add(side, pl.getPrice(), pl.getSize(), pl.getOrders());
+
+			if (depth != ALL_LEVELS) {
+
+				publishedPrices[index][levels] = pl.getPrice();
+
+				publishedSizes[index][levels] = pl.getSize();
+
+				publishedOrders[index][levels] = pl.getOrders();
+			}
+
+			levels++;
+		}
+
+		if (depth != ALL_LEVELS) publishedLevels[index] = levels;
+	}
+
+	private void publish() {
+
+		sequence = update.getSequence();
+
+		if (!update.isSnapshot()) updatesSinceSnapshot++;
+
+		try {
+			listener.onMarketByPrice(orderBook, update);
+		} catch (Exception e) {
+
+			// The receivers may have missed this update, so they get a snapshot next
+			snapshotPending = true;
+
+			try {
+				listener.onExceptionThrown(orderBook, e);
+			} catch (Exception ignored) {
+				// Exceptions thrown while reporting listener exceptions are intentionally
+				// swallowed, as for the order book listeners
+			}
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.util.Arrays;
+
+import com.coralblocks.coralme.Order.Side;
+
+/**
+ * <p>
+ * A market-by-price update, written by a {@link MarketByPricePublisher} into
+ * arrays that are allocated once and only grow. Each entry is the state of one
+ * price level after the operation, with a size of zero for a price level that
+ * was removed or left the published depth.
+ * </p>
+ *
+ * <p>
+ * A snapshot has an entry for every published price level, best price first
+ * for each side, and replaces the previous state of the receiver.
+ * </p>
+ */
+public class MarketByPriceUpdate {
+
+	private long sequence;
+
+	private boolean snapshot;
+
+	private int entries;
+
+	private Side[] sides;
+
+	private long[] prices;
+
+	private long[] sizes;
+
+	private int[] orders;
+
+	MarketByPriceUpdate(int capacity) {
+
+		sides = new Side[capacity];
+
+		prices = new long[capacity];
+
+		sizes = new long[capacity];
+
+		orders = new int[capacity];
+	}
+
+	final void clear(long sequence, boolean snapshot) {
+
+		this.sequence = sequence;
+
+		this.snapshot = snapshot;
+
+		this.entries = 0;
+	}
+
+	final void add(Side side, long price, long size, int orders) {
+
+		if (entries == prices.length) {
+
+			int capacity = entries << 1;
+
+			this.sides = Arrays.copyOf(this.sides, capacity);
+
+			this.prices = Arrays.copyOf(this.prices, capacity);
+
+			this.sizes = Arrays.copyOf(this.sizes, capacity);
+
+			this.orders = Arrays.copyOf(this.orders, capacity);
+		}
+
+		this.sides[entries] = side;
+
+		this.prices[entries] = price;
+
+		this.sizes[entries] = size;
+
+		this.orders[entries] = orders;
+
+		entries++;
+	}
+
+	/**
+	 * Returns the sequence number of this update, starting at 1 and increasing
+	 * by one for every update, snapshots included.
+	 *
+	 * @return the sequence number
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public boolean isSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Returns the number of price levels in this update.
+	 *
+	 * @return the number of entries
+	 */
+	public int getEntries() {
+		return entries;
+	}
+
+	public Side getSide(int index) {
+		return sides[index];
+	}
+
+	public long getPrice(int index) {
+		return prices[index];
+	}
+
+	/**
+	 * Returns the total open size of the price level, or zero if it was removed.
+	 *
+	 * @param index the entry
+	 * @return the size
+	 */
+	public long getSize(int index) {
+		return sizes[index];
+	}
+
+	public int getOrders(int index) {
+		return orders[index];
+	}
+
+	/**
+	 * This method of course produces garbage and should be used only for debugging
+	 * purposes.
+	 *
+	 * @return a newly created String describing this update
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(64 + entries * 32);
+		sb.append(snapshot ? "Snapshot " : "Update ").append(sequence);
+		for (int i = 0; i < entries; i++) {
+			sb.append(' ').append(sides[i]).append(' ').append(sizes[i]).append('@').append(prices[i]).append('/')
+					.append(orders[i]);
+		}
+		return sb.toString();
+	}
+}
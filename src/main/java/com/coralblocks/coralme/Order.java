@@ -16,6 +16,7 @@
 package com.coralblocks.coralme;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.coralblocks.coralds.map.CharMap;
@@ -32,11 +33,24 @@ import com.coralblocks.coralme.util.Timestamper;
  * reuse the same instance for a different order. Do not retain an order
  * reference after it becomes terminal; copy any values that must outlive it.
  * </p>
+ *
+ * <p>
+ * When the order book keeps its resting orders in columns, see
+ * {@link OrderBookConfig#setOrderStorage(OrderBookConfig.OrderStorage)}, a
+ * resting order it returns is a cursor over the slot of the order, pointed to
+ * another slot by the next call to the order book.
+ * </p>
  */
 public class Order {
 
 	static final String EMPTY_CLIENT_ORDER_ID = "NULL";
 
+	private static final OrderListener[] NO_LISTENERS = new OrderListener[0];
+
+	private static final int INITIAL_EXTERNAL_LISTENERS = 4;
+
+	private static final int INLINE_CLIENT_ORDER_ID_LENGTH = 16;
+
 	/** Maximum number of characters accepted in a client order ID. */
 	public static final int CLIENT_ORDER_ID_MAX_LENGTH = 64;
 
@@ -49,7 +63,11 @@ public class Order {
 	 */
 	private final List<OrderListener> internalListeners = new ArrayList<OrderListener>(2);
 
-	private final List<OrderListener> externalListeners = new ArrayList<OrderListener>(64);
+	// Most orders never get an external listener, so the array is allocated on the
+	// first addListener and then kept for the next orders using this instance
+	private OrderListener[] externalListeners = NO_LISTENERS;
+
+	private int externalListenerCount;
 
 	private OrderListenerExceptions listenerExceptions;
 
@@ -65,7 +83,22 @@ public class Order {
 
 	private long clientId;
 
-	private final StringBuilder clientOrderId = new StringBuilder(CLIENT_ORDER_ID_MAX_LENGTH);
+	/*
+	 * Client order IDs of up to 16 Latin-1 characters, the common case, are packed
+	 * one byte per character into two longs. Longer or wider IDs go to a char array
+	 * allocated the first time this instance needs it.
+	 */
+	private long clientOrderIdLow;
+
+	private long clientOrderIdHigh;
+
+	private char[] clientOrderIdChars;
+
+	private int clientOrderIdLength;
+
+	private boolean clientOrderIdInline;
+
+	private ClientOrderIdView clientOrderIdView;
 
 	private long price;
 
@@ -87,12 +120,28 @@ public class Order {
 
 	private TimeInForce tif;
 
+	private long expireTime;
+
 	private Type type;
 
 	Order next = null;
 
 	Order prev = null;
 
+	int queueIndex; // the slot of this order in an array-backed PriceLevel queue
+
+	ExpiryList expiryList; // the list of orders this one expires with, if any
+
+	Order expiryNext = null;
+
+	Order expiryPrev = null;
+
+	int checkpointIndex; // the slot of this order in its order book's checkpoint deltas, or -1 if clean
+
+	boolean checkpointed; // written by a checkpoint of its order book, so its removal must be written too
+
+	int slot = -1; // the slot of this order in the columns of its order book, or -1 if it is not stored there
+
 	private boolean isResting;
 
 	private boolean isPendingCancel;
@@ -117,9 +166,7 @@ public class Order {
 		this.clientId = clientId;
 
 		// Cap the pooled buffer before OrderBook rejects an overlong ID.
-		int clientOrderIdLength = Math.min(clientOrderId.length(), CLIENT_ORDER_ID_MAX_LENGTH);
-		this.clientOrderId.setLength(0);
-		this.clientOrderId.append(clientOrderId, 0, clientOrderIdLength);
+		setClientOrderId(clientOrderId, Math.min(clientOrderId.length(), CLIENT_ORDER_ID_MAX_LENGTH));
 
 		this.side = side;
 
@@ -151,6 +198,8 @@ public class Order {
 
 		this.tif = tif;
 
+		this.expireTime = -1;
+
 		this.isResting = false;
 
 		this.isPendingCancel = false;
@@ -158,6 +207,115 @@ public class Order {
 		this.pendingSize = -1;
 
 		this.next = this.prev = null; // sanity!
+
+		this.expiryList = null;
+
+		this.expiryNext = this.expiryPrev = null;
+
+		this.checkpointIndex = -1;
+
+		this.checkpointed = false;
+
+		this.slot = -1;
+	}
+
+	/**
+	 * Points this order, used as a flyweight cursor, to a resting order stored in
+	 * the columns of the given order book. Its internal listeners are dropped, so
+	 * the order book adds them again.
+	 *
+	 * @param orderBook  the order book
+	 * @param columns    its columns
+	 * @param slot       the slot of the resting order
+	 * @param priceLevel the price level of the resting order
+	 */
+	final void load(OrderBook orderBook, OrderColumns columns, int slot, PriceLevel priceLevel) {
+
+		this.orderBook = orderBook;
+
+		this.timestamper = orderBook.getTimestamper();
+
+		this.security = orderBook.getSecurity();
+
+		this.clientId = columns.clientId(slot);
+
+		int length = columns.clientOrderIdLength(slot);
+
+		this.clientOrderIdLength = length;
+
+		this.clientOrderIdInline = columns.isClientOrderIdInline(slot);
+
+		if (clientOrderIdInline) {
+
+			this.clientOrderIdLow = columns.clientOrderIdLow(slot);
+
+			this.clientOrderIdHigh = columns.clientOrderIdHigh(slot);
+
+		} else {
+
+			if (clientOrderIdChars == null) clientOrderIdChars = new char[CLIENT_ORDER_ID_MAX_LENGTH];
+
+			for (int i = 0; i < length; i++) {
+				clientOrderIdChars[i] = columns.clientOrderIdCharAt(slot, i);
+			}
+		}
+
+		this.side = columns.side(slot);
+
+		this.type = Type.LIMIT;
+
+		this.originalSize = columns.originalSize(slot);
+
+		this.totalSize = columns.totalSize(slot);
+
+		this.executedSize = columns.executedSize(slot);
+
+		this.price = columns.price(slot);
+
+		this.id = columns.id(slot);
+
+		this.acceptTime = columns.acceptTime(slot);
+
+		this.restTime = columns.restTime(slot);
+
+		this.reduceTime = columns.reduceTime(slot);
+
+		this.executeTime = columns.executeTime(slot);
+
+		this.cancelTime = -1;
+
+		this.rejectTime = -1;
+
+		this.priceLevel = priceLevel;
+
+		this.tif = columns.timeInForce(slot);
+
+		this.expireTime = -1;
+
+		this.isResting = true;
+
+		this.isPendingCancel = false;
+
+		this.pendingSize = -1;
+
+		this.listenerExceptions = null;
+
+		this.checkpointIndex = -1;
+
+		this.slot = slot;
+
+		internalListeners.clear();
+	}
+
+	/**
+	 * Drops the internal listeners of this resting order once the columns of its
+	 * order book hold its state, before it goes back to the pool.
+	 */
+	final void detach() {
+
+		this.slot = -1;
+
+		internalListeners.clear();
 	}
 
 	final void setPendingCancel() {
@@ -313,6 +471,27 @@ public class Order {
 		return tif == TimeInForce.GTC;
 	}
 
+	public final boolean isGTD() {
+
+		return tif == TimeInForce.GTD;
+	}
+
+	/**
+	 * Returns the epoch time in nanoseconds at which this GTD order expires, or -1
+	 * if this is not a GTD order.
+	 *
+	 * @return the expire time in nanoseconds, or -1
+	 */
+	public final long getExpireTime() {
+
+		return expireTime;
+	}
+
+	final void setExpireTime(long expireTime) {
+
+		this.expireTime = expireTime;
+	}
+
 	public final long getPrice() {
 
 		return price;
@@ -343,9 +522,126 @@ public class Order {
 		return clientId;
 	}
 
+	/**
+	 * Returns the client order ID. The returned sequence is a view owned by this
+	 * order instance, so it changes when the instance is reused for another order.
+	 *
+	 * @return the client order ID
+	 */
 	public final CharSequence getClientOrderId() {
 
-		return clientOrderId;
+		if (clientOrderIdView == null) clientOrderIdView = new ClientOrderIdView();
+
+		return clientOrderIdView;
+	}
+
+	private void setClientOrderId(CharSequence clientOrderId, int length) {
+
+		long low = 0, high = 0;
+
+		boolean inline = length <= INLINE_CLIENT_ORDER_ID_LENGTH;
+
+		for (int i = 0; inline && i < length; i++) {
+
+			char c = clientOrderId.charAt(i);
+
+			if (c > 0xFF) {
+				inline = false;
+			} else if (i < 8) {
+				low |= (long) c << (i << 3);
+			} else {
+				high |= (long) c << ((i - 8) << 3);
+			}
+		}
+
+		this.clientOrderIdLength = length;
+
+		this.clientOrderIdInline = inline;
+
+		if (inline) {
+
+			this.clientOrderIdLow = low;
+
+			this.clientOrderIdHigh = high;
+
+		} else {
+
+			if (clientOrderIdChars == null) clientOrderIdChars = new char[CLIENT_ORDER_ID_MAX_LENGTH];
+
+			for (int i = 0; i < length; i++) {
+				clientOrderIdChars[i] = clientOrderId.charAt(i);
+			}
+		}
+	}
+
+	final int clientOrderIdLength() {
+
+		return clientOrderIdLength;
+	}
+
+	final boolean isClientOrderIdInline() {
+
+		return clientOrderIdInline;
+	}
+
+	final long clientOrderIdLow() {
+
+		return clientOrderIdLow;
+	}
+
+	final long clientOrderIdHigh() {
+
+		return clientOrderIdHigh;
+	}
+
+	final char clientOrderIdCharAt(int index) {
+
+		if (!clientOrderIdInline) return clientOrderIdChars[index];
+
+		long word = index < 8 ? clientOrderIdLow : clientOrderIdHigh;
+
+		return (char) ((word >>> ((index & 7) << 3)) & 0xFF);
+	}
+
+	final boolean clientOrderIdEquals(CharSequence clientOrderId) {
+
+		int length = clientOrderIdLength;
+
+		if (clientOrderId.length() != length) return false;
+
+		for (int i = 0; i < length; i++) {
+			if (clientOrderIdCharAt(i) != clientOrderId.charAt(i)) return false;
+		}
+
+		return true;
+	}
+
+	private final class ClientOrderIdView implements CharSequence {
+
+		@Override
+		public int length() {
+			return clientOrderIdLength;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= clientOrderIdLength) throw new IndexOutOfBoundsException("index " + index);
+			return clientOrderIdCharAt(index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			char[] chars = new char[clientOrderIdLength];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = clientOrderIdCharAt(i);
+			}
+			return new String(chars);
+		}
 	}
 
 	public final String getSecurity() {
@@ -366,12 +662,28 @@ public class Order {
 	 * </p>
 	 *
 	 * @param listener the listener to add
+	 * @throws UnsupportedOperationException if this order is a cursor over the
+	 *                                       columns of its order book
 	 */
 	public void addListener(OrderListener listener) {
 
 		orderBook.checkExternalListenerReentrancy("Order.addListener");
 
-		externalListeners.add(listener);
+		if (slot >= 0) throw new UnsupportedOperationException("Cannot add a listener to an order stored in columns");
+
+		if (externalListenerCount == externalListeners.length) {
+			externalListeners = Arrays.copyOf(externalListeners,
+					Math.max(INITIAL_EXTERNAL_LISTENERS, externalListenerCount << 1));
+		}
+
+		externalListeners[externalListenerCount++] = listener;
+	}
+
+	private void clearExternalListeners() {
+		for (int i = 0; i < externalListenerCount; i++) {
+			externalListeners[i] = null;
+		}
+		externalListenerCount = 0;
 	}
 
 	void addInternalListener(OrderListener listener) {
@@ -382,7 +694,7 @@ public class Order {
 	void discardBeforeAcceptance() {
 		listenerExceptions = null;
 		internalListeners.clear();
-		externalListeners.clear();
+		clearExternalListeners();
 	}
 
 	private void collectListenerException(OrderListener listener, OrderListenerException.Callback callback, long time,
@@ -399,7 +711,7 @@ public class Order {
 
 	final void discardListenerExceptions() {
 		listenerExceptions = null;
-		if (isTerminal()) externalListeners.clear();
+		if (isTerminal()) clearExternalListeners();
 	}
 
 	private void reportListenerExceptionsIfNecessary() {
@@ -418,10 +730,10 @@ public class Order {
 
 		OrderListenerExceptions exceptions = listenerExceptions;
 		listenerExceptions = null;
-		int size = externalListeners.size();
+		int size = externalListenerCount;
 
 		for (int i = 0; i < size; i++) {
-			OrderListener listener = externalListeners.get(i);
+			OrderListener listener = externalListeners[i];
 			orderBook.enterExternalListenerCallback();
 			try {
 				listener.onExceptionsThrown(this, exceptions);
@@ -434,7 +746,7 @@ public class Order {
 			}
 		}
 
-		if (isTerminal()) externalListeners.clear();
+		if (isTerminal()) clearExternalListeners();
 	}
 
 	void accept(long id) {
@@ -450,8 +762,8 @@ public class Order {
 				internalListeners.get(i).onOrderAccepted(this.acceptTime, this);
 			}
 
-			for (int i = externalListeners.size() - 1; i >= 0; i--) {
-				OrderListener listener = externalListeners.get(i);
+			for (int i = externalListenerCount - 1; i >= 0; i--) {
+				OrderListener listener = externalListeners[i];
 				orderBook.enterExternalListenerCallback();
 				try {
 					listener.onOrderAccepted(this.acceptTime, this);
@@ -477,6 +789,150 @@ public class Order {
 		}
 	}
 
+	/**
+	 * Accepts and rests this order without any callback, for an order moved into
+	 * its order book by a bulk operation.
+	 *
+	 * @param time the accept and rest time
+	 */
+	final void restWithoutCallbacks(long time) {
+
+		this.acceptTime = this.restTime = time;
+
+		this.isResting = true;
+	}
+
+	/**
+	 * Restores the sizes and times of an order rested by a bulk operation, from a
+	 * snapshot. Its open size must not change.
+	 */
+	final void restore(long originalSize, long totalSize, long executedSize, long acceptTime, long restTime,
+			long reduceTime, long executeTime) {
+
+		this.originalSize = originalSize;
+
+		this.totalSize = totalSize;
+
+		this.executedSize = executedSize;
+
+		this.acceptTime = acceptTime;
+
+		this.restTime = restTime;
+
+		this.reduceTime = reduceTime;
+
+		this.executeTime = executeTime;
+	}
+
+	/**
+	 * Cancels part of the open size of this resting order without any callback,
+	 * for an order mirrored from the events of another order book.
+	 *
+	 * @param canceledSize the size to cancel, at most the open size
+	 * @param time         the reduce time
+	 */
+	final void reduceWithoutCallbacks(long canceledSize, long time) {
+
+		this.totalSize -= Math.min(canceledSize, getOpenSize());
+
+		this.reduceTime = time;
+	}
+
+	/**
+	 * Executes part of the open size of this resting order without any callback,
+	 * for an order mirrored from the events of another order book.
+	 *
+	 * @param executeSize the size executed, at most the open size
+	 * @param time        the execute time
+	 */
+	final void executeWithoutCallbacks(long executeSize, long time) {
+
+		this.executedSize += Math.min(executeSize, getOpenSize());
+
+		this.executeTime = time;
+	}
+
+	/**
+	 * Terminates this resting order after a bulk roll to the given order book,
+	 * without calling its internal listeners. Its external listeners receive a
+	 * cancel with {@link CancelReason#ROLLED} and a termination, as with
+	 * {@link OrderBook#rollTo(OrderBook, long)}, while both order books are
+	 * locked against reentry. Exceptions they throw are reported right away,
+	 * because the order is returned to its pool by the same bulk roll.
+	 *
+	 * @param time         the cancel time
+	 * @param newOrderBook the order book the order was rolled to
+	 */
+	final void terminateRolled(long time, OrderBook newOrderBook) {
+
+		long canceledSize = getOpenSize();
+
+		this.totalSize = this.executedSize;
+
+		this.isResting = false;
+
+		this.cancelTime = time;
+
+		internalListeners.clear();
+
+		newOrderBook.enterExternalListenerCallback();
+		try {
+			for (int i = externalListenerCount - 1; i >= 0; i--) {
+				OrderListener listener = externalListeners[i];
+				orderBook.enterExternalListenerCallback();
+				try {
+					listener.onOrderCanceled(time, this, canceledSize, CancelReason.ROLLED);
+				} catch (Exception e) {
+					collectListenerException(listener, OrderListenerException.Callback.ON_ORDER_CANCELED, time,
+							this, e);
+				} finally {
+					orderBook.exitExternalListenerCallback();
+				}
+			}
+
+			for (int i = externalListenerCount - 1; i >= 0; i--) {
+				OrderListener listener = externalListeners[i];
+				orderBook.enterExternalListenerCallback();
+				try {
+					listener.onOrderTerminated(time, this);
+				} catch (Exception e) {
+					collectListenerException(listener, OrderListenerException.Callback.ON_ORDER_TERMINATED, time,
+							this, e);
+				} finally {
+					orderBook.exitExternalListenerCallback();
+				}
+			}
+
+			reportListenerExceptions();
+
+		} finally {
+			newOrderBook.exitExternalListenerCallback();
+		}
+
+		clearExternalListeners();
+	}
+
+	/**
+	 * Terminates this resting order without any callback, for an order moved out
+	 * of its order book by a bulk operation. Its listeners are dropped.
+	 *
+	 * @param time the cancel time
+	 */
+	final void terminateWithoutCallbacks(long time) {
+
+		this.totalSize = this.executedSize;
+
+		this.isResting = false;
+
+		this.cancelTime = time;
+
+		this.listenerExceptions = null;
+
+		internalListeners.clear();
+
+		clearExternalListeners();
+	}
+
 	void rest() {
 
 		this.isResting = true;
@@ -490,8 +946,8 @@ public class Order {
 				internalListeners.get(i).onOrderRested(this.restTime, this, getOpenSize(), getPrice());
 			}
 
-			for (int i = externalListeners.size() - 1; i >= 0; i--) {
-				OrderListener listener = externalListeners.get(i);
+			for (int i = externalListenerCount - 1; i >= 0; i--) {
+				OrderListener listener = externalListeners[i];
 				orderBook.enterExternalListenerCallback();
 				try {
 					listener.onOrderRested(this.restTime, this, getOpenSize(), getPrice());
@@ -543,8 +999,8 @@ public class Order {
 				internalListeners.get(i).onOrderRejected(this.rejectTime, this, reason);
 			}
 
-			for (int i = externalListeners.size() - 1; i >= 0; i--) {
-				OrderListener listener = externalListeners.get(i);
+			for (int i = externalListenerCount - 1; i >= 0; i--) {
+				OrderListener listener = externalListeners[i];
 				orderBook.enterExternalListenerCallback();
 				try {
 					listener.onOrderRejected(this.rejectTime, this, reason);
@@ -566,7 +1022,7 @@ public class Order {
 
 			if (callbacksCompleted) {
 				reportListenerExceptionsIfNecessary();
-				if (listenerExceptions == null) externalListeners.clear();
+				if (listenerExceptions == null) clearExternalListeners();
 			}
 
 			orderBook.onOrderCallbacksFinished(callbacksCompleted);
@@ -603,6 +1059,8 @@ public class Order {
 
 		orderBook.checkExternalListenerReentrancy("Order.reduceTo");
 
+		if (slot >= 0) orderBook.reload(this);
+
 		if (newTotalSize <= executedSize) {
 
 			cancel(CancelReason.USER);
@@ -629,8 +1087,8 @@ public class Order {
 						CancelReason.USER);
 			}
 
-			for (int i = externalListeners.size() - 1; i >= 0; i--) {
-				OrderListener listener = externalListeners.get(i);
+			for (int i = externalListenerCount - 1; i >= 0; i--) {
+				OrderListener listener = externalListeners[i];
 				orderBook.enterExternalListenerCallback();
 				try {
 					listener.onOrderReduced(this.reduceTime, this, canceledSize, this.totalSize, CancelReason.USER);
@@ -681,6 +1139,8 @@ public class Order {
 
 		orderBook.checkExternalListenerReentrancy("Order.cancel");
 
+		if (slot >= 0) orderBook.reload(this);
+
 		if (sizeToCancel <= 0) {
 			throw new IllegalArgumentException("sizeToCancel must be positive: " + sizeToCancel);
 		}
@@ -709,8 +1169,8 @@ public class Order {
 				internalListeners.get(i).onOrderReduced(this.reduceTime, this, canceledSize, newSize, reason);
 			}
 
-			for (int i = externalListeners.size() - 1; i >= 0; i--) {
-				OrderListener listener = externalListeners.get(i);
+			for (int i = externalListenerCount - 1; i >= 0; i--) {
+				OrderListener listener = externalListeners[i];
 				orderBook.enterExternalListenerCallback();
 				try {
 					listener.onOrderReduced(this.reduceTime, this, canceledSize, newSize, reason);
@@ -745,6 +1205,8 @@ public class Order {
 
 		orderBook.checkExternalListenerReentrancy("Order.cancel");
 
+		if (slot >= 0) orderBook.reload(this);
+
 		long canceledSize = getOpenSize();
 
 		this.totalSize = this.executedSize;
@@ -759,8 +1221,8 @@ public class Order {
 				internalListeners.get(i).onOrderCanceled(this.cancelTime, this, canceledSize, reason);
 			}
 
-			for (int i = externalListeners.size() - 1; i >= 0; i--) {
-				OrderListener listener = externalListeners.get(i);
+			for (int i = externalListenerCount - 1; i >= 0; i--) {
+				OrderListener listener = externalListeners[i];
 				orderBook.enterExternalListenerCallback();
 				try {
 					listener.onOrderCanceled(this.cancelTime, this, canceledSize, reason);
@@ -776,8 +1238,8 @@ public class Order {
 				internalListeners.get(i).onOrderTerminated(this.cancelTime, this);
 			}
 
-			for (int i = externalListeners.size() - 1; i >= 0; i--) {
-				OrderListener listener = externalListeners.get(i);
+			for (int i = externalListenerCount - 1; i >= 0; i--) {
+				OrderListener listener = externalListeners[i];
 				orderBook.enterExternalListenerCallback();
 				try {
 					listener.onOrderTerminated(this.cancelTime, this);
@@ -799,7 +1261,7 @@ public class Order {
 
 			if (callbacksCompleted) {
 				reportListenerExceptionsIfNecessary();
-				if (listenerExceptions == null) externalListeners.clear();
+				if (listenerExceptions == null) clearExternalListeners();
 			}
 
 			orderBook.onOrderCallbacksFinished(callbacksCompleted);
@@ -833,8 +1295,8 @@ public class Order {
 						executionId, matchId);
 			}
 
-			for (int i = externalListeners.size() - 1; i >= 0; i--) {
-				OrderListener listener = externalListeners.get(i);
+			for (int i = externalListenerCount - 1; i >= 0; i--) {
+				OrderListener listener = externalListeners[i];
 				orderBook.enterExternalListenerCallback();
 				try {
 					listener.onOrderExecuted(this.executeTime, this, execSide, sizeToExecute, priceExecuted,
@@ -852,8 +1314,8 @@ public class Order {
 					internalListeners.get(i).onOrderTerminated(this.executeTime, this);
 				}
 
-				for (int i = externalListeners.size() - 1; i >= 0; i--) {
-					OrderListener listener = externalListeners.get(i);
+				for (int i = externalListenerCount - 1; i >= 0; i--) {
+					OrderListener listener = externalListeners[i];
 					orderBook.enterExternalListenerCallback();
 					try {
 						listener.onOrderTerminated(this.executeTime, this);
@@ -877,7 +1339,7 @@ public class Order {
 
 			if (callbacksCompleted) {
 				reportListenerExceptionsIfNecessary();
-				if (isTerminal() && listenerExceptions == null) externalListeners.clear();
+				if (isTerminal() && listenerExceptions == null) clearExternalListeners();
 			}
 
 			orderBook.onOrderCallbacksFinished(callbacksCompleted);
@@ -886,7 +1348,7 @@ public class Order {
 
 	public static enum TimeInForce implements CharEnum {
 
-		GTC('T', "1"), IOC('I', "3"), DAY('D', "0");
+		GTC('T', "1"), IOC('I', "3"), DAY('D', "0"), GTD('G', "6");
 
 		private final char b;
 		private final String fixCode;
@@ -932,7 +1394,8 @@ public class Order {
 
 		MISSING_FIELD('1'), BAD_TYPE('2'), BAD_TIF('3'), BAD_SIDE('4'), BAD_SYMBOL('5'), BAD_EXCHANGE_ORDER_ID('6'),
 		BAD_PRICE('P'), BAD_SIZE('S'), TRADING_HALTED('H'), BAD_LOT('L'), UNKNOWN_SYMBOL('U'),
-		DUPLICATE_EXCHANGE_ORDER_ID('E'), DUPLICATE_CLIENT_ORDER_ID('C'), BAD_CLIENT_ORDER_ID('7');
+		DUPLICATE_EXCHANGE_ORDER_ID('E'), DUPLICATE_CLIENT_ORDER_ID('C'), BAD_CLIENT_ORDER_ID('7'),
+		BAD_EXPIRE_TIME('X');
 
 		private final char b;
 		public static final CharMap<RejectReason> ALL = new CharMap<RejectReason>();
@@ -1199,7 +1662,7 @@ public class Order {
 	 */
 	public CharSequence toCharSequence(StringBuilder sb) {
 		sb.append("Order [id=").append(id).append(", clientId=").append(clientId).append(", clientOrderId=").append(
-				clientOrderId).append(", side=").append(side).append(", security=").append(security).append(
+				getClientOrderId()).append(", side=").append(side).append(", security=").append(security).append(
 						", originalSize=").append(originalSize).append(", openSize=").append(getOpenSize()).append(
 								", executedSize=").append(executedSize).append(", canceledSize=").append(
 										getCanceledSize());
@@ -1214,6 +1677,10 @@ public class Order {
 			sb.append(", tif=").append(tif);
 		}
 
+		if (tif == TimeInForce.GTD) {
+			sb.append(", expireTime=").append(expireTime);
+		}
+
 		sb.append("]");
 
 		return sb;
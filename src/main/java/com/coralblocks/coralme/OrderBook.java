@@ -16,43 +16,58 @@
 package com.coralblocks.coralme;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
-import com.coralblocks.coralds.map.LongMap;
 import com.coralblocks.coralme.Order.CancelReason;
 import com.coralblocks.coralme.Order.ExecuteSide;
 import com.coralblocks.coralme.Order.RejectReason;
 import com.coralblocks.coralme.Order.Side;
 import com.coralblocks.coralme.Order.TimeInForce;
 import com.coralblocks.coralme.Order.Type;
+import com.coralblocks.coralme.OrderBookConfig.OrderStorage;
 import com.coralblocks.coralme.util.DoubleUtils;
+import com.coralblocks.coralme.util.ManagedObjectPool;
+import com.coralblocks.coralme.util.ObjectPoolStatistics;
 import com.coralblocks.coralme.util.SystemTimestamper;
 import com.coralblocks.coralme.util.Timestamper;
-import com.coralblocks.coralpool.ArrayObjectPool;
-import com.coralblocks.coralpool.ObjectBuilder;
-import com.coralblocks.coralpool.ObjectPool;
 
 public class OrderBook {
 
 	/**
 	 * The default initial size of the {@link Order} object pool. Can be changed for
-	 * tuning. The value is read when an {@link OrderBook} is constructed, so
-	 * changes affect only subsequently constructed order books.
+	 * tuning. The value is read when an {@link OrderBookConfig} is created, so
+	 * changes affect only subsequently constructed order books. Use
+	 * {@link OrderBookConfig#setOrderPoolInitialSize(int)} to size a single book.
 	 */
 	public static int ORDER_POOL_INITIAL_SIZE = 512;
 
 	/**
 	 * The default initial size of the {@link PriceLevel} object pool. Can be
-	 * changed for tuning. The value is read when an {@link OrderBook} is
-	 * constructed, so changes affect only subsequently constructed order books.
+	 * changed for tuning. The value is read when an {@link OrderBookConfig} is
+	 * created, so changes affect only subsequently constructed order books.
 	 */
 	public static int PRICE_LEVEL_POOL_INITIAL_SIZE = 128;
 
-	private static final boolean DEFAULT_ALLOW_TRADE_TO_SELF = true;
+	/**
+	 * The maximum number of idle {@link Order}s kept in the object pool. Orders
+	 * released while the pool is full are left to the garbage collector, so a burst
+	 * of resting orders does not keep its objects reachable after the book drains.
+	 * Unlimited by default. Read when an {@link OrderBookConfig} is created.
+	 */
+	public static int ORDER_POOL_MAX_IDLE = Integer.MAX_VALUE;
+
+	/**
+	 * The maximum number of idle {@link PriceLevel}s kept in the object pool.
+	 * Unlimited by default. Read when an {@link OrderBookConfig} is created.
+	 */
+	public static int PRICE_LEVEL_POOL_MAX_IDLE = Integer.MAX_VALUE;
+
+	static final boolean DEFAULT_ALLOW_TRADE_TO_SELF = true;
 
-	private static final Timestamper TIMESTAMPER = new SystemTimestamper();
+	static final Timestamper TIMESTAMPER = new SystemTimestamper();
 
 	public static enum State {
 		NORMAL, LOCKED, CROSSED, ONESIDED, EMPTY
@@ -68,9 +83,9 @@ public class OrderBook {
 		}
 	}
 
-	private final ObjectPool<Order> orderPool = new ArrayObjectPool<Order>(ORDER_POOL_INITIAL_SIZE, Order.class);
+	private final ManagedObjectPool<Order> orderPool;
 
-	private final ObjectPool<PriceLevel> priceLevelPool;
+	private final ManagedObjectPool<PriceLevel> priceLevelPool;
 
 	private long execId = 0;
 
@@ -82,7 +97,27 @@ public class OrderBook {
 
 	private int[] levels = new int[] { 0, 0 };
 
-	private final LongMap<Order> orders = new LongMap<Order>();
+	private final OrderIndex orders;
+
+	private final ClientOrderIdIndex clientOrderIds;
+
+	private final ExpiryList dayOrders = new ExpiryList();
+
+	private final long expireTimeResolution;
+
+	private TimingWheel gtdOrders; // created when the first GTD order rests
+
+	private boolean checkpointing; // true after the first checkpoint
+
+	private Order[] checkpointOrders; // the changed orders since the last checkpoint, null for removed ones
+
+	private long[] checkpointRemovedIds; // the IDs of the removed orders since the last checkpoint
+
+	private int checkpointChanges;
+
+	private int freeCheckpointChanges; // slots of orders removed before any checkpoint wrote them
+
+	private boolean rejectDuplicateClientOrderIds;
 
 	private final ReusableOrderIterator priceTimePriorityIterator = new ReusableOrderIterator(false);
 
@@ -92,12 +127,26 @@ public class OrderBook {
 
 	private long lastExecutedPrice = Long.MAX_VALUE;
 
+	private long lastExecutedSize;
+
 	private final List<OrderBookListener> listeners = new ArrayList<OrderBookListener>(8);
 
 	private boolean externalListenerCallbackInProgress;
 
 	private boolean deferListenerExceptionReporting;
 
+	private MarketByPricePublisher marketByPrice;
+
+	private ConcurrentBookPublisher concurrentPublisher;
+
+	private TopOfBookListener[] topOfBookListeners = new TopOfBookListener[0];
+
+	private Exception[] topOfBookExceptions = new Exception[0]; // thrown by the listener with the same index
+
+	private int topOfBookListenerCount;
+
+	private long topBidPrice, topBidSize, topAskPrice, topAskSize; // the last top of book notified
+
 	private OrderBookListenerExceptions listenerExceptions;
 
 	private List<Order> deferredOrderListenerExceptionReports;
@@ -108,6 +157,32 @@ public class OrderBook {
 
 	private final OrderListener internalOrderListener = new InternalOrderListener();
 
+	private final PriceLevelIndex priceLevelIndex;
+
+	private final OrderBookConfig config;
+
+	private final OrderBookPools sharedPools;
+
+	private final boolean arrayBackedPriceLevels;
+
+	private final boolean trackQueuePositions;
+
+	private final OrderColumns columns; // the resting orders, or null when they are objects
+
+	private PriceLevel[] levelTable; // the price levels by number, for the columns
+
+	private int[] freeTableIndexes;
+
+	private int freeTableIndexCount;
+
+	private int levelTableSize;
+
+	private final Order cursor; // returned for the orders in the columns
+
+	private final Order callbackCursor; // returned from the callbacks, which can be about the other cursors
+
+	private final Order makerCursor; // the resting order being matched
+
 	public OrderBook(String security, boolean allowTradeToSelf) {
 		this(security, TIMESTAMPER, null, allowTradeToSelf);
 	}
@@ -136,29 +211,133 @@ public class OrderBook {
 		this(security, timestamper, listener, DEFAULT_ALLOW_TRADE_TO_SELF);
 	}
 
+	public OrderBook(String security, PriceLevelIndex priceLevelIndex) {
+		this(security, TIMESTAMPER, null, DEFAULT_ALLOW_TRADE_TO_SELF, priceLevelIndex);
+	}
+
+	public OrderBook(String security, OrderIndex orderIndex) {
+		this(security, TIMESTAMPER, null, DEFAULT_ALLOW_TRADE_TO_SELF, LinearPriceLevelIndex.INSTANCE, orderIndex);
+	}
+
 	public OrderBook(OrderBook orderBook) {
-		this(orderBook.getSecurity(), orderBook.getTimestamper(), null, orderBook.isAllowTradeToSelf());
+		this(orderBook.getSecurity(), null, orderBook.config);
 		for (int i = 0; i < orderBook.listeners.size(); i++) {
 			addListener(orderBook.listeners.get(i));
 		}
 	}
 
 	public OrderBook(String security, Timestamper timestamper, OrderBookListener listener, boolean allowTradeToSelf) {
+		this(security, timestamper, listener, allowTradeToSelf, LinearPriceLevelIndex.INSTANCE);
+	}
+
+	public OrderBook(String security, Timestamper timestamper, OrderBookListener listener, boolean allowTradeToSelf,
+			PriceLevelIndex priceLevelIndex) {
+		this(security, timestamper, listener, allowTradeToSelf, priceLevelIndex, HashOrderIndex.DEFAULT);
+	}
+
+	/**
+	 * Creates an order book that locates its price levels and its orders through
+	 * the given indexes. The indexes are used as templates, so the same instances
+	 * can be passed to many order books.
+	 *
+	 * @param security         the security traded in this order book
+	 * @param timestamper      the source of callback timestamps
+	 * @param listener         a listener to register, or null
+	 * @param allowTradeToSelf whether orders from the same client may trade
+	 * @param priceLevelIndex  the price level index template, for example a
+	 *                         {@link PriceLadder} or a {@link PriceLevelTree}
+	 * @param orderIndex       the order index template, for example a
+	 *                         {@link SequentialOrderIndex}
+	 * @throws NullPointerException if an index is null
+	 */
+	public OrderBook(String security, Timestamper timestamper, OrderBookListener listener, boolean allowTradeToSelf,
+			PriceLevelIndex priceLevelIndex, OrderIndex orderIndex) {
+		this(security, listener, new OrderBookConfig().setTimestamper(timestamper).setAllowTradeToSelf(allowTradeToSelf)
+				.setPriceLevelIndex(priceLevelIndex).setOrderIndex(orderIndex));
+	}
+
+	public OrderBook(String security, OrderBookConfig config) {
+		this(security, null, config);
+	}
+
+	/**
+	 * Creates an order book with the given configuration. The configuration is
+	 * copied, so changing it afterwards does not affect this order book.
+	 *
+	 * @param security the security traded in this order book
+	 * @param listener a listener to register, or null
+	 * @param config   the configuration
+	 */
+	public OrderBook(String security, OrderBookListener listener, OrderBookConfig config) {
+
+		this.config = new OrderBookConfig(config);
 
 		this.security = security;
 
-		this.timestamper = timestamper;
+		this.timestamper = config.getTimestamper();
+
+		this.allowTradeToSelf = config.isAllowTradeToSelf();
+
+		this.rejectDuplicateClientOrderIds = config.isRejectDuplicateClientOrderIds();
+
+		this.arrayBackedPriceLevels = config.isArrayBackedPriceLevels();
+
+		this.trackQueuePositions = config.isTrackQueuePositions();
+
+		this.sharedPools = config.getPools();
+
+		if (sharedPools != null) {
+
+			this.orderPool = sharedPools.orderPool();
+
+			this.priceLevelPool = sharedPools.priceLevelPool();
+
+		} else {
+
+			this.orderPool = OrderBookPools.newOrderPool(config.getOrderPoolInitialSize(),
+					config.getOrderPoolMaxIdle());
+
+			this.priceLevelPool = OrderBookPools.newPriceLevelPool(config.getPriceLevelPoolInitialSize(),
+					config.getPriceLevelPoolMaxIdle());
+		}
+
+		this.priceLevelIndex = config.getPriceLevelIndex().newInstance();
+
+		if (config.getOrderStorage() == OrderStorage.OBJECTS) {
+
+			this.columns = null;
+
+			this.cursor = this.callbackCursor = this.makerCursor = null;
 
-		this.allowTradeToSelf = allowTradeToSelf;
+		} else {
 
-		ObjectBuilder<PriceLevel> priceLevelBuilder = new ObjectBuilder<PriceLevel>() {
-			@Override
-			public PriceLevel newInstance() {
-				return new PriceLevel();
+			if (arrayBackedPriceLevels || trackQueuePositions) {
+				throw new IllegalArgumentException(
+						"Columnar order storage cannot be combined with array-backed price levels or queue positions");
 			}
-		};
 
-		this.priceLevelPool = new ArrayObjectPool<PriceLevel>(PRICE_LEVEL_POOL_INITIAL_SIZE, priceLevelBuilder);
+			this.columns = new OrderColumns(config.getExpectedOrders(),
+					config.getOrderStorage() == OrderStorage.OFF_HEAP_COLUMNS);
+
+			this.levelTable = new PriceLevel[16];
+
+			this.freeTableIndexes = new int[16];
+
+			this.cursor = new Order();
+
+			this.callbackCursor = new Order();
+
+			this.makerCursor = new Order();
+		}
+
+		// The columns index their own orders
+		int expectedOrders = columns == null ? config.getExpectedOrders() : 0;
+
+		this.orders = config.getOrderIndex().newInstance(expectedOrders);
+
+		this.clientOrderIds = new ClientOrderIdIndex(expectedOrders);
+
+		this.expireTimeResolution = config.getExpireTimeResolution();
 
 		if (listener != null) listeners.add(listener);
 	}
@@ -181,16 +360,82 @@ public class OrderBook {
 		listeners.remove(listener);
 	}
 
+	/**
+	 * Adds a top of book listener if it has not already been registered. It is
+	 * notified at most once per operation, at its end, when the best bid or ask
+	 * price or size changed since the last notification or since it was added.
+	 * Books without top of book listeners do no work for them.
+	 *
+	 * @param listener the listener to add
+	 * @throws NullPointerException if the listener is null
+	 */
+	public void addTopOfBookListener(TopOfBookListener listener) {
+
+		checkExternalListenerReentrancy("addTopOfBookListener");
+
+		if (listener == null) throw new NullPointerException("listener");
+
+		for (int i = 0; i < topOfBookListenerCount; i++) {
+			if (topOfBookListeners[i] == listener) return;
+		}
+
+		if (topOfBookListenerCount == 0) {
+
+			// Start from the current top of book
+			PriceLevel bestBid = head[Side.BUY.index()];
+
+			PriceLevel bestAsk = head[Side.SELL.index()];
+
+			topBidPrice = bestBid == null ? 0 : bestBid.getPrice();
+
+			topBidSize = bestBid == null ? 0 : bestBid.getSize();
+
+			topAskPrice = bestAsk == null ? 0 : bestAsk.getPrice();
+
+			topAskSize = bestAsk == null ? 0 : bestAsk.getSize();
+		}
+
+		if (topOfBookListenerCount == topOfBookListeners.length) {
+			topOfBookListeners = Arrays.copyOf(topOfBookListeners, Math.max(2, topOfBookListenerCount << 1));
+
+			topOfBookExceptions = new Exception[topOfBookListeners.length];
+		}
+
+		topOfBookListeners[topOfBookListenerCount++] = listener;
+	}
+
+	public void removeTopOfBookListener(TopOfBookListener listener) {
+
+		checkExternalListenerReentrancy("removeTopOfBookListener");
+
+		for (int i = 0; i < topOfBookListenerCount; i++) {
+
+			if (topOfBookListeners[i] == listener) {
+
+				System.arraycopy(topOfBookListeners, i + 1, topOfBookListeners, i, topOfBookListenerCount - i - 1);
+
+				topOfBookListeners[--topOfBookListenerCount] = null;
+
+				return;
+			}
+		}
+	}
+
 	final void checkExternalListenerReentrancy(String operation) {
-		if (externalListenerCallbackInProgress) throw new ReentrantOrderBookOperationException(this, operation);
+		if (externalListenerCallbackInProgress
+				|| (sharedPools != null && sharedPools.isExternalListenerCallbackInProgress())) {
+			throw new ReentrantOrderBookOperationException(this, operation);
+		}
 	}
 
 	final void enterExternalListenerCallback() {
 		externalListenerCallbackInProgress = true;
+		if (sharedPools != null) sharedPools.setExternalListenerCallbackInProgress(true);
 	}
 
 	final void exitExternalListenerCallback() {
 		externalListenerCallbackInProgress = false;
+		if (sharedPools != null) sharedPools.setExternalListenerCallbackInProgress(false);
 	}
 
 	/**
@@ -213,6 +458,48 @@ public class OrderBook {
 		return security;
 	}
 
+	/**
+	 * Returns the total open size of the orders ahead of the given order at its
+	 * price level, in time priority. This takes O(log n) when the order book is
+	 * configured with {@link OrderBookConfig#setTrackQueuePositions(boolean)},
+	 * otherwise the level is walked from its head.
+	 *
+	 * @param order the resting order
+	 * @return the open size ahead of the order, or -1 if the order is not resting
+	 *         in this order book
+	 */
+	public final long getSizeAhead(Order order) {
+
+		if (!isRestingHere(order)) return -1;
+
+		return order.getPriceLevel().sizeAhead(order);
+	}
+
+	/**
+	 * Returns the number of orders ahead of the given order at its price level, in
+	 * time priority, so the order at the head of its level is at position zero.
+	 * This takes O(log n) when the order book is configured with
+	 * {@link OrderBookConfig#setTrackQueuePositions(boolean)}, otherwise the level
+	 * is walked from its head.
+	 *
+	 * @param order the resting order
+	 * @return the queue position of the order, or -1 if the order is not resting
+	 *         in this order book
+	 */
+	public final int getQueuePosition(Order order) {
+
+		if (!isRestingHere(order)) return -1;
+
+		return order.getPriceLevel().ordersAhead(order);
+	}
+
+	private boolean isRestingHere(Order order) {
+
+		if (columns != null) return order.slot >= 0 && columns.find(order.getId()) == order.slot;
+
+		return order.getPriceLevel() != null && orders.get(order.getId()) == order;
+	}
+
 	public final Order getBestBidOrder() {
 
 		if (!hasBids()) return null;
@@ -277,6 +564,8 @@ public class OrderBook {
 		private final boolean reverse;
 		private PriceLevel nextPriceLevel;
 		private Order nextOrder;
+		private int nextSlot = OrderColumns.NONE; // the next order, with columns
+		private Order cursor; // the returned order, with columns
 
 		private ReusableOrderIterator(boolean reverse) {
 			this.reverse = reverse;
@@ -284,22 +573,51 @@ public class OrderBook {
 
 		private void reset(Side side) {
 			nextPriceLevel = reverse ? tail[side.index()] : head[side.index()];
+			if (columns != null) {
+				if (cursor == null) cursor = new Order();
+				nextSlot = firstSlot(nextPriceLevel);
+				return;
+			}
 			nextOrder = firstOrder(nextPriceLevel);
 		}
 
+		private int firstSlot(PriceLevel priceLevel) {
+			if (priceLevel == null) return OrderColumns.NONE;
+			return reverse ? priceLevel.tailSlot() : priceLevel.headSlot();
+		}
+
+		/**
+		 * Moves to the slot after the next one, whose links are kept even if its
+		 * order has just left its price level.
+		 */
+		private void skipSlot() {
+			int followingSlot = reverse ? columns.prev(nextSlot) : columns.next(nextSlot);
+			if (followingSlot != OrderColumns.NONE) {
+				nextSlot = followingSlot;
+			} else {
+				nextPriceLevel = reverse ? nextPriceLevel.prev : nextPriceLevel.next;
+				nextSlot = firstSlot(nextPriceLevel);
+			}
+		}
+
 		private Order firstOrder(PriceLevel priceLevel) {
 			if (priceLevel == null) return null;
 			return reverse ? priceLevel.tail() : priceLevel.head();
 		}
 
 		private void orderRemoved(Order order) {
+			if (columns != null) {
+				if (nextSlot != OrderColumns.NONE && nextSlot == order.slot) skipSlot();
+				return;
+			}
+
 			if (nextOrder != order) return;
 
-			Order followingOrder = reverse ? order.prev : order.next;
+			PriceLevel priceLevel = order.getPriceLevel();
+			Order followingOrder = reverse ? priceLevel.prev(order) : priceLevel.next(order);
 			if (followingOrder != null) {
 				nextOrder = followingOrder;
 			} else {
-				PriceLevel priceLevel = order.getPriceLevel();
 				nextPriceLevel = reverse ? priceLevel.prev : priceLevel.next;
 				nextOrder = firstOrder(nextPriceLevel);
 			}
@@ -308,18 +626,27 @@ public class OrderBook {
 		@Override
 		public boolean hasNext() {
 			checkExternalListenerReentrancy("Iterator.hasNext");
+			if (columns != null) return nextSlot != OrderColumns.NONE;
 			return nextOrder != null;
 		}
 
 		@Override
 		public Order next() {
 			checkExternalListenerReentrancy("Iterator.next");
+			if (columns != null) {
+				if (nextSlot == OrderColumns.NONE) throw new NoSuchElementException();
+
+				int slot = nextSlot;
+				skipSlot();
+				return bind(cursor, slot);
+			}
+
 			if (nextOrder == null) throw new NoSuchElementException();
 
 			Order order = nextOrder;
 			// Save the next links before the caller can cancel or terminally reduce
 			// this order and return it or its PriceLevel to an object pool.
-			Order followingOrder = reverse ? order.prev : order.next;
+			Order followingOrder = reverse ? nextPriceLevel.prev(order) : nextPriceLevel.next(order);
 
 			if (followingOrder != null) {
 				nextOrder = followingOrder;
@@ -348,17 +675,131 @@ public class OrderBook {
 	 */
 	public final Order getOrder(long id) {
 
+		if (columns != null) {
+
+			int slot = columns.find(id);
+
+			return slot == OrderColumns.NONE ? null : order(slot);
+		}
+
 		return orders.get(id);
 	}
 
+	/**
+	 * Returns the resting order with the given client ID and client order ID, or
+	 * null if none exists. The lookup does not allocate, so it can be used on every
+	 * cancel or replace request. If duplicate client order IDs are not rejected
+	 * and several resting orders share the key, any one of them is returned.
+	 *
+	 * @param clientId      the client ID
+	 * @param clientOrderId the client order ID
+	 * @return the resting order, or null if the key is not in use
+	 * @see #setRejectDuplicateClientOrderIds(boolean)
+	 */
+	public final Order getOrder(long clientId, CharSequence clientOrderId) {
+
+		if (columns != null) {
+
+			int slot = columns.find(clientId, clientOrderId);
+
+			return slot == OrderColumns.NONE ? null : order(slot);
+		}
+
+		return clientOrderIds.get(clientId, clientOrderId);
+	}
+
+	/**
+	 * Returns whether new orders reusing the client order ID of a resting order
+	 * from the same client are rejected.
+	 *
+	 * @return true when duplicate client order IDs are rejected
+	 */
+	public final boolean isRejectDuplicateClientOrderIds() {
+
+		return rejectDuplicateClientOrderIds;
+	}
+
+	/**
+	 * Sets whether a new order whose client ID and client order ID match a resting
+	 * order is rejected with {@link RejectReason#DUPLICATE_CLIENT_ORDER_ID}. Only
+	 * resting orders are checked, so a client order ID may be reused once its
+	 * order has become terminal. Enabled by default.
+	 *
+	 * @param rejectDuplicateClientOrderIds true to reject duplicate client order IDs
+	 */
+	public final void setRejectDuplicateClientOrderIds(boolean rejectDuplicateClientOrderIds) {
+
+		checkExternalListenerReentrancy("setRejectDuplicateClientOrderIds");
+
+		this.rejectDuplicateClientOrderIds = rejectDuplicateClientOrderIds;
+	}
+
+	/**
+	 * Creates orders and price levels up front, if needed, so that at least the
+	 * given numbers of them are ready to be reused, for example before the open.
+	 * Pre-warming is not counted in the pool statistics. If this order book uses
+	 * {@link OrderBookPools}, the shared pools are pre-warmed. If it keeps its
+	 * orders in columns, they are grown to hold the given number of orders more
+	 * instead, and a single order is made available for the order in progress.
+	 *
+	 * @param orders      the number of idle orders to make available
+	 * @param priceLevels the number of idle price levels to make available
+	 * @throws IllegalArgumentException if a number is negative
+	 */
+	public void prewarm(int orders, int priceLevels) {
+
+		checkExternalListenerReentrancy("prewarm");
+
+		if (orders < 0) throw new IllegalArgumentException("orders cannot be negative: " + orders);
+
+		orderPool.prewarm(columns != null ? Math.min(orders, 1) : orders);
+
+		priceLevelPool.prewarm(priceLevels);
+
+		if (columns != null) columns.ensureCapacity(columns.size() + orders);
+	}
+
+	/**
+	 * Returns the statistics of the {@link Order} pool. The high-water mark is the
+	 * peak number of live orders, which can be used to size the pool of the next
+	 * session. If this order book uses {@link OrderBookPools}, these are the
+	 * statistics of the shared pool.
+	 *
+	 * @return the order pool statistics
+	 */
+	public final ObjectPoolStatistics getOrderPoolStatistics() {
+		return orderPool;
+	}
+
+	/**
+	 * Returns the statistics of the {@link PriceLevel} pool.
+	 *
+	 * @return the price level pool statistics
+	 */
+	public final ObjectPoolStatistics getPriceLevelPoolStatistics() {
+		return priceLevelPool;
+	}
+
+	/**
+	 * Resets the high-water marks and the growth event counts of both pools.
+	 */
+	public void resetPoolStatistics() {
+
+		checkExternalListenerReentrancy("resetPoolStatistics");
+
+		orderPool.resetStatistics();
+
+		priceLevelPool.resetStatistics();
+	}
+
 	public final int getNumberOfOrders() {
 
-		return orders.size();
+		return columns != null ? columns.size() : orders.size();
 	}
 
 	public final boolean isEmpty() {
 
-		return orders.isEmpty();
+		return getNumberOfOrders() == 0;
 	}
 
 	public final PriceLevel head(Side side) {
@@ -619,7 +1060,7 @@ public class OrderBook {
 
 			for (PriceLevel pl = head[side.index()]; pl != null; pl = pl.next) {
 
-				for (Order o = pl.head(); o != null; o = o.next) {
+				for (Order o = pl.head(); o != null; o = pl.next(o)) {
 
 					String size = String.format("%6d", o.getOpenSize());
 					String price = String.format("%9.2f", DoubleUtils.toDouble(o.getPrice()));
@@ -637,7 +1078,7 @@ public class OrderBook {
 
 			for (PriceLevel pl = tail[side.index()]; pl != null; pl = pl.prev) {
 
-				for (Order o = pl.head(); o != null; o = o.next) {
+				for (Order o = pl.head(); o != null; o = pl.next(o)) {
 
 					String size = String.format("%6d", o.getOpenSize());
 					String price = String.format("%9.2f", DoubleUtils.toDouble(o.getPrice()));
@@ -686,90 +1127,76 @@ public class OrderBook {
 
 			if (order.getType() != Type.MARKET && order.getSide().isOutside(order.getPrice(), pl.getPrice())) break;
 
-			for (Order o = pl.head(), nextOrder; o != null; o = nextOrder) {
-
-				nextOrder = o.next;
-
-				if (!allowTradeToSelf && o.getClientId() == order.getClientId()) {
-					order.cancel(CancelReason.CROSSED);
-					break OUTER;
-				}
-
-				long sizeToExecute = Math.min(order.getOpenSize(), o.getOpenSize());
+			if (columns != null) {
 
-				long priceExecuted = o.getPrice(); // always price improve the taker
+				for (int slot = pl.headSlot(), nextSlot; slot != OrderColumns.NONE; slot = nextSlot) {
 
-				long ts = timestamper.nanoEpoch();
+					nextSlot = columns.next(slot);
 
-				lastExecutedPrice = priceExecuted;
-
-				long execId1 = ++execId;
-				long execId2 = ++execId;
-				long matchId = ++this.matchId;
+					if (!match(order, bind(makerCursor, slot))) break OUTER;
+				}
 
-				// Maker execution callbacks precede taker execution callbacks for each match.
-				o.execute(ts, ExecuteSide.MAKER, sizeToExecute, priceExecuted, execId1, matchId);
+				continue;
+			}
 
-				order.execute(ts, ExecuteSide.TAKER, sizeToExecute, priceExecuted, execId2, matchId);
+			for (Order o = pl.head(), nextOrder; o != null; o = nextOrder) {
 
-				if (order.isTerminal()) {
+				nextOrder = pl.next(o);
 
-					break OUTER;
-				}
+				if (!match(order, o)) break OUTER;
 			}
 		}
 	}
 
-	private final PriceLevel findPriceLevel(Side side, long price) {
-
-		PriceLevel foundPriceLevel = null;
-
-		int index = side.index();
-
-		for (PriceLevel pl = head[index]; pl != null; pl = pl.next) {
-
-			if (side.isInside(price, pl.getPrice())) {
-
-				foundPriceLevel = pl;
+	/**
+	 * Matches the incoming order with a resting order.
+	 *
+	 * @return false if the incoming order cannot match any further
+	 */
+	private boolean match(Order order, Order o) {
 
-				break;
-			}
+		if (!allowTradeToSelf && o.getClientId() == order.getClientId()) {
+			order.cancel(CancelReason.CROSSED);
+			return false;
 		}
 
-		PriceLevel priceLevel;
+		long sizeToExecute = Math.min(order.getOpenSize(), o.getOpenSize());
 
-		if (foundPriceLevel == null) {
+		long priceExecuted = o.getPrice(); // always price improve the taker
 
-			priceLevel = priceLevelPool.get();
+		long ts = timestamper.nanoEpoch();
 
-			priceLevel.init(security, side, price);
+		lastExecutedPrice = priceExecuted;
 
-			levels[index]++;
+		lastExecutedSize = sizeToExecute;
 
-			if (head[index] == null) {
+		long execId1 = ++execId;
+		long execId2 = ++execId;
+		long matchId = ++this.matchId;
 
-				head[index] = tail[index] = priceLevel;
+		// Maker execution callbacks precede taker execution callbacks for each match.
+		o.execute(ts, ExecuteSide.MAKER, sizeToExecute, priceExecuted, execId1, matchId);
 
-				priceLevel.next = priceLevel.prev = null;
+		order.execute(ts, ExecuteSide.TAKER, sizeToExecute, priceExecuted, execId2, matchId);
 
-			} else {
+		return !order.isTerminal();
+	}
 
-				tail[index].next = priceLevel;
+	private final PriceLevel findPriceLevel(Side side, long price) {
 
-				priceLevel.prev = tail[index];
+		int index = side.index();
 
-				priceLevel.next = null;
+		PriceLevel foundPriceLevel = priceLevelIndex.find(head[index], side, price);
 
-				tail[index] = priceLevel;
-			}
+		PriceLevel priceLevel;
 
-		} else if (foundPriceLevel.getPrice() != price) {
+		if (foundPriceLevel == null) {
 
-			priceLevel = priceLevelPool.get();
+			return appendPriceLevel(side, price);
 
-			priceLevel.init(security, side, price);
+		} else if (foundPriceLevel.getPrice() != price) {
 
-			levels[index]++;
+			priceLevel = newPriceLevel(side, price);
 
 			if (foundPriceLevel.prev != null) {
 
@@ -789,27 +1216,220 @@ public class OrderBook {
 
 		} else {
 
-			priceLevel = foundPriceLevel;
+			return foundPriceLevel;
 		}
 
+		priceLevelIndex.added(priceLevel);
+
 		return priceLevel;
 	}
 
-	public Order createLimit(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
-			double price, TimeInForce tif) {
-		return createLimit(clientId, clientOrderId, exchangeOrderId, side, size, DoubleUtils.toLong(price), tif);
-	}
+	/**
+	 * Adds a new price level after the last one of the given side, which must be
+	 * worse than the given price.
+	 */
+	private final PriceLevel appendPriceLevel(Side side, long price) {
 
-	public Order createLimit(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
-			long price, TimeInForce tif) {
-		checkExternalListenerReentrancy("createLimit");
-		return createOrder(clientId, clientOrderId, exchangeOrderId, side, size, price, Type.LIMIT, tif);
-	}
+		int index = side.index();
 
-	public Order createMarket(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size) {
-		checkExternalListenerReentrancy("createMarket");
-		return createOrder(clientId, clientOrderId, exchangeOrderId, side, size, 0, Type.MARKET, null);
-	}
+		PriceLevel priceLevel = newPriceLevel(side, price);
+
+		if (head[index] == null) {
+
+			head[index] = tail[index] = priceLevel;
+
+			priceLevel.next = priceLevel.prev = null;
+
+		} else {
+
+			tail[index].next = priceLevel;
+
+			priceLevel.prev = tail[index];
+
+			priceLevel.next = null;
+
+			tail[index] = priceLevel;
+		}
+
+		priceLevelIndex.added(priceLevel);
+
+		return priceLevel;
+	}
+
+	private PriceLevel newPriceLevel(Side side, long price) {
+
+		PriceLevel priceLevel = priceLevelPool.get();
+
+		priceLevel.init(security, side, price, arrayBackedPriceLevels, trackQueuePositions);
+
+		priceLevel.marketByPrice = marketByPrice;
+
+		if (columns != null) priceLevel.useColumns(this, columns, addToLevelTable(priceLevel));
+
+		levels[side.index()]++;
+
+		return priceLevel;
+	}
+
+	private int addToLevelTable(PriceLevel priceLevel) {
+
+		int tableIndex;
+
+		if (freeTableIndexCount > 0) {
+
+			tableIndex = freeTableIndexes[--freeTableIndexCount];
+
+		} else {
+
+			if (levelTableSize == levelTable.length) {
+
+				levelTable = Arrays.copyOf(levelTable, levelTableSize << 1);
+
+				freeTableIndexes = Arrays.copyOf(freeTableIndexes, levelTableSize << 1);
+			}
+
+			tableIndex = levelTableSize++;
+		}
+
+		levelTable[tableIndex] = priceLevel;
+
+		return tableIndex;
+	}
+
+	private void removeFromLevelTable(PriceLevel priceLevel) {
+
+		levelTable[priceLevel.tableIndex] = null;
+
+		freeTableIndexes[freeTableIndexCount++] = priceLevel.tableIndex;
+	}
+
+	/**
+	 * Points a cursor to the resting order in the given slot of the columns.
+	 *
+	 * @param cursor the cursor
+	 * @param slot   the slot
+	 * @return the cursor
+	 */
+	final Order bind(Order cursor, int slot) {
+
+		PriceLevel priceLevel = levelTable[columns.level(slot)];
+
+		cursor.load(this, columns, slot, priceLevel);
+
+		// Registered in the same order as for a resting order object
+		cursor.addInternalListener(internalOrderListener);
+
+		priceLevel.attach(cursor);
+
+		return cursor;
+	}
+
+	/**
+	 * Returns the resting order in the given slot of the columns through the
+	 * cursor of this order book, or through another one from a callback, which
+	 * can be about the cursor of this order book.
+	 */
+	final Order order(int slot) {
+
+		return bind(externalListenerCallbackInProgress ? callbackCursor : cursor, slot);
+	}
+
+	/**
+	 * Points a cursor again to its slot before it is changed, as another cursor
+	 * may have changed the order since.
+	 *
+	 * @throws IllegalStateException if the order no longer rests in the slot
+	 */
+	final void reload(Order cursor) {
+
+		int slot = cursor.slot;
+
+		if (!columns.isLive(slot) || columns.id(slot) != cursor.getId()) {
+			throw new IllegalStateException("Order " + cursor.getId() + " no longer rests in " + security);
+		}
+
+		bind(cursor, slot);
+	}
+
+	/**
+	 * Returns an order that just rested in the columns to the pool, with the cursor
+	 * of this order book pointed to its slot in its place.
+	 */
+	private Order park(Order order) {
+
+		int slot = order.slot;
+
+		order.detach();
+
+		orderPool.release(order);
+
+		return bind(cursor, slot);
+	}
+
+	private void checkObjectStorage(String operation) {
+
+		if (columns != null) {
+			throw new UnsupportedOperationException(operation + " is not supported with columnar order storage");
+		}
+	}
+
+	private boolean containsOrder(long exchangeOrderId) {
+
+		return columns != null ? columns.find(exchangeOrderId) != OrderColumns.NONE
+				: orders.containsKey(exchangeOrderId);
+	}
+
+	private boolean containsClientOrderId(long clientId, CharSequence clientOrderId) {
+
+		return columns != null ? columns.find(clientId, clientOrderId) != OrderColumns.NONE
+				: clientOrderIds.get(clientId, clientOrderId) != null;
+	}
+
+	public Order createLimit(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
+			double price, TimeInForce tif) {
+		return createLimit(clientId, clientOrderId, exchangeOrderId, side, size, DoubleUtils.toLong(price), tif);
+	}
+
+	public Order createLimit(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
+			long price, TimeInForce tif) {
+		checkExternalListenerReentrancy("createLimit");
+		return createOrder(clientId, clientOrderId, exchangeOrderId, side, size, price, Type.LIMIT, tif);
+	}
+
+	public Order createLimit(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
+			double price, TimeInForce tif, long expireTime) {
+		return createLimit(clientId, clientOrderId, exchangeOrderId, side, size, DoubleUtils.toLong(price), tif,
+				expireTime);
+	}
+
+	/**
+	 * Creates a limit order with an expire time, used by GTD orders. A GTD order is
+	 * rejected with {@link RejectReason#BAD_EXPIRE_TIME} if its expire time is not
+	 * after the current time of the timestamper. The expire time of any other time
+	 * in force is ignored.
+	 *
+	 * @param clientId        the client ID
+	 * @param clientOrderId   the client order ID
+	 * @param exchangeOrderId the exchange order ID
+	 * @param side            the side
+	 * @param size            the size
+	 * @param price           the price
+	 * @param tif             the time in force
+	 * @param expireTime      the epoch time in nanoseconds at which a GTD order
+	 *                        expires
+	 * @return the order
+	 * @see #expireGoodTillDate()
+	 */
+	public Order createLimit(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
+			long price, TimeInForce tif, long expireTime) {
+		checkExternalListenerReentrancy("createLimit");
+		return createOrder(clientId, clientOrderId, exchangeOrderId, side, size, price, Type.LIMIT, tif, expireTime);
+	}
+
+	public Order createMarket(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size) {
+		checkExternalListenerReentrancy("createMarket");
+		return createOrder(clientId, clientOrderId, exchangeOrderId, side, size, 0, Type.MARKET, null);
+	}
 
 	private void collectListenerException(OrderBookListener listener, OrderBookListenerException.Callback callback,
 			long time, Order order, Exception exception) {
@@ -859,6 +1479,129 @@ public class OrderBook {
 		} else {
 			reportOrderBookListenerExceptionsIfNecessary();
 		}
+		onOperationFinished();
+	}
+
+	/**
+	 * Publishes the price levels changed by the operation that just finished and
+	 * notifies the top of book listeners if the top of book changed, unless the
+	 * operation is nested in another one.
+	 */
+	private void onOperationFinished() {
+
+		if (deferListenerExceptionReporting) return;
+
+		if (concurrentPublisher != null) concurrentPublisher.operationFinished();
+
+		if (marketByPrice != null) {
+			enterExternalListenerCallback();
+			try {
+				marketByPrice.operationFinished();
+			} finally {
+				exitExternalListenerCallback();
+			}
+		}
+
+		if (topOfBookListenerCount > 0) notifyTopOfBookIfChanged();
+	}
+
+	private void notifyTopOfBookIfChanged() {
+
+		PriceLevel bestBid = head[Side.BUY.index()];
+
+		PriceLevel bestAsk = head[Side.SELL.index()];
+
+		long bidPrice = bestBid == null ? 0 : bestBid.getPrice();
+
+		long bidSize = bestBid == null ? 0 : bestBid.getSize();
+
+		long askPrice = bestAsk == null ? 0 : bestAsk.getPrice();
+
+		long askSize = bestAsk == null ? 0 : bestAsk.getSize();
+
+		if (bidPrice == topBidPrice && bidSize == topBidSize && askPrice == topAskPrice && askSize == topAskSize) {
+			return;
+		}
+
+		topBidPrice = bidPrice;
+
+		topBidSize = bidSize;
+
+		topAskPrice = askPrice;
+
+		topAskSize = askSize;
+
+		State state = getState();
+
+		boolean exceptionsThrown = false;
+
+		for (int i = 0; i < topOfBookListenerCount; i++) {
+			TopOfBookListener listener = topOfBookListeners[i];
+			enterExternalListenerCallback();
+			try {
+				listener.onTopOfBook(this, bidPrice, bidSize, askPrice, askSize, state);
+			} catch (Exception e) {
+				// The operation has already completed, so the exception is reported after the others are notified
+				topOfBookExceptions[i] = e;
+				exceptionsThrown = true;
+			} finally {
+				exitExternalListenerCallback();
+			}
+		}
+
+		if (exceptionsThrown) reportTopOfBookListenerExceptions();
+	}
+
+	private void reportTopOfBookListenerExceptions() {
+
+		for (int i = 0; i < topOfBookListenerCount; i++) {
+
+			Exception exception = topOfBookExceptions[i];
+
+			if (exception == null) continue;
+
+			topOfBookExceptions[i] = null;
+
+			TopOfBookListener listener = topOfBookListeners[i];
+			enterExternalListenerCallback();
+			try {
+				listener.onExceptionThrown(this, exception);
+			} catch (Exception ignored) {
+				// Exceptions thrown while reporting listener exceptions are intentionally
+				// swallowed, as for the order book listeners
+			} finally {
+				exitExternalListenerCallback();
+			}
+		}
+	}
+
+	final ConcurrentBookPublisher getConcurrentBookPublisher() {
+		return concurrentPublisher;
+	}
+
+	final void setConcurrentBookPublisher(ConcurrentBookPublisher concurrentPublisher) {
+
+		checkExternalListenerReentrancy("setConcurrentBookPublisher");
+
+		this.concurrentPublisher = concurrentPublisher;
+	}
+
+	final MarketByPricePublisher getMarketByPricePublisher() {
+		return marketByPrice;
+	}
+
+	final void setMarketByPricePublisher(MarketByPricePublisher marketByPrice) {
+
+		checkExternalListenerReentrancy("setMarketByPricePublisher");
+
+		this.marketByPrice = marketByPrice;
+
+		for (int index = 0; index < 2; index++) {
+			for (PriceLevel pl = head[index]; pl != null; pl = pl.next) {
+				pl.marketByPrice = marketByPrice;
+				pl.marketByPriceIndex = -1;
+			}
+		}
 	}
 
 	private void reportOrderBookListenerExceptionsIfNecessary() {
@@ -925,226 +1668,1014 @@ public class OrderBook {
 		}
 	}
 
-	private final Order fillOrCancel(Order order, long exchangeOrderId) {
+	private final Order fillOrCancel(Order order, long exchangeOrderId) {
+
+		Type type = order.getType();
+
+		if (type == Type.MARKET && order.getPrice() != 0) {
+
+			order.reject(RejectReason.BAD_PRICE); // remember... the OrderListener callback will return the order to the
+													// pool...
+
+			return order;
+		}
+
+		RejectReason rejectReason = validateOrderAndReleaseOnFailure(order);
+
+		if (rejectReason != null) {
+
+			order.reject(rejectReason); // remember... the OrderListener callback will return the order to the pool...
+
+			return order;
+		}
+
+		// always accept first...
+		order.accept(exchangeOrderId);
+
+		// walk through the book matching:
+
+		match(order);
+
+		// check if there is quantity left that needs to be canceled:
+
+		if (!order.isTerminal()) {
+
+			if (type == Type.MARKET) {
+
+				order.cancel(CancelReason.NO_LIQUIDITY);
+
+			} else {
+
+				CancelReason cancelReason = CancelReason.MISSED;
+
+				if (!hasTop(order.getOtherSide())) {
+					cancelReason = CancelReason.NO_LIQUIDITY;
+				}
+
+				order.cancel(cancelReason);
+			}
+		}
+
+		return order;
+	}
+
+	private Order fillOrRest(Order order, long exchangeOrderId) {
+
+		RejectReason rejectReason = validateOrderAndReleaseOnFailure(order);
+
+		if (rejectReason != null) {
+
+			order.reject(rejectReason); // remember... the OrderListener callback will return the order to the pool...
+
+			return order;
+		}
+
+		// always accept first:
+		order.accept(exchangeOrderId);
+
+		// something needs to be executed first...
+
+		match(order);
+
+		if (order.isTerminal()) {
+
+			return order;
+		}
+
+		// rest the remaining in the book:
+		// but first check if it will not cross its own order
+		if (!allowTradeToSelf && hasTop(order.getOtherSide())
+				&& order.getSide().isInside(order.getPrice(), getBestPrice(order.getOtherSide()))) {
+
+			CancelReason cancelReason = CancelReason.CROSSED;
+
+			order.cancel(cancelReason);
+
+		} else {
+
+			rest(order);
+
+			if (columns != null) return park(order);
+		}
+
+		return order;
+	}
+
+	final Order createOrder(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
+			long price, Type type, TimeInForce tif) {
+		return createOrder(clientId, clientOrderId, exchangeOrderId, side, size, price, type, tif, -1);
+	}
+
+	final Order createOrder(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
+			long price, Type type, TimeInForce tif, long expireTime) {
+
+		checkExternalListenerReentrancy("createOrder");
+
+		boolean listenerExceptionReportingWasDeferred = deferListenerExceptionReporting;
+		deferListenerExceptionReporting = true;
+		boolean operationCompleted = false;
+
+		try {
+
+			Order order = getOrder(clientId, clientOrderId, security, side, size, price, type, tif);
+
+			if (tif == TimeInForce.GTD) order.setExpireTime(expireTime);
+
+			if (size <= 0) {
+				order.reject(RejectReason.BAD_SIZE);
+			} else if (clientOrderId.length() > Order.CLIENT_ORDER_ID_MAX_LENGTH) {
+				order.reject(RejectReason.BAD_CLIENT_ORDER_ID);
+			} else if (order.getSide() == null) {
+				order.reject(RejectReason.BAD_SIDE);
+			} else if (type == Type.LIMIT && tif == null) {
+				order.reject(RejectReason.BAD_TIF);
+			} else if (tif == TimeInForce.GTD && columns != null) {
+				order.reject(RejectReason.BAD_TIF);
+			} else if (type == Type.LIMIT && tif == TimeInForce.GTD && expireTime <= timestamper.nanoEpoch()) {
+				order.reject(RejectReason.BAD_EXPIRE_TIME);
+			} else if (exchangeOrderId <= 0) {
+				order.reject(RejectReason.BAD_EXCHANGE_ORDER_ID);
+			} else if (containsOrder(exchangeOrderId)) {
+				order.reject(RejectReason.DUPLICATE_EXCHANGE_ORDER_ID);
+			} else if (rejectDuplicateClientOrderIds && containsClientOrderId(clientId, clientOrderId)) {
+				order.reject(RejectReason.DUPLICATE_CLIENT_ORDER_ID);
+			} else if (tif == TimeInForce.IOC || type == Type.MARKET) {
+				order = fillOrCancel(order, exchangeOrderId);
+			} else {
+				order = fillOrRest(order, exchangeOrderId);
+			}
+
+			operationCompleted = true;
+			return order;
+
+		} finally {
+			deferListenerExceptionReporting = listenerExceptionReportingWasDeferred;
+			if (!operationCompleted) {
+				discardOrderBookListenerExceptions();
+				discardDeferredOrderListenerExceptionReports();
+			} else if (!deferListenerExceptionReporting) {
+				reportDeferredOrderListenerExceptions();
+				reportOrderBookListenerExceptionsIfNecessary();
+			}
+			onOperationFinished();
+		}
+	}
+
+	public long rollTo(OrderBook newOrderBook) {
+		return rollTo(newOrderBook, 1);
+	}
+
+	/**
+	 * Rolls this order book's GTC and GTD orders to another order book for the
+	 * same security. GTD orders keep their expire times. Exchange order IDs already
+	 * used by resting orders in the destination are skipped. Each order is created
+	 * in the destination as a new order and canceled here with
+	 * {@link CancelReason#ROLLED}, see {@link #bulkRollTo(OrderBook, long)} to roll
+	 * a large order book to an empty one.
+	 *
+	 * @param newOrderBook         the destination order book
+	 * @param firstExchangeOrderId the first exchange order ID to consider
+	 * @return the next exchange order ID after those considered by the roll
+	 */
+	public long rollTo(OrderBook newOrderBook, long firstExchangeOrderId) {
+
+		checkExternalListenerReentrancy("rollTo");
+		newOrderBook.checkExternalListenerReentrancy("rollTo");
+
+		checkObjectStorage("rollTo");
+
+		if (newOrderBook == this) {
+			throw new IllegalArgumentException("Cannot roll an order book to itself");
+		}
+
+		if (!security.equals(newOrderBook.security)) {
+			throw new IllegalArgumentException(
+					"Cannot roll between different securities: " + security + " and " + newOrderBook.security);
+		}
+
+		boolean listenerExceptionReportingWasDeferred = deferListenerExceptionReporting;
+		deferListenerExceptionReporting = true;
+		boolean operationCompleted = false;
+
+		try {
+			if (hasBids()) {
+
+				for (PriceLevel pl = head(Side.BUY), nextPriceLevel; pl != null; pl = nextPriceLevel) {
+
+					// A successful roll releases the source order and possibly its level.
+					nextPriceLevel = pl.next;
+
+					for (Order o = pl.head(), nextOrder; o != null; o = nextOrder) {
+
+						nextOrder = pl.next(o);
+
+						if (!o.isGTC() && !o.isGTD()) continue;
+
+						while (newOrderBook.orders.containsKey(firstExchangeOrderId))
+							firstExchangeOrderId++;
+
+						Order rolledOrder = newOrderBook.createLimit(o.getClientId(), o.getClientOrderId(),
+								firstExchangeOrderId++, o.getSide(), o.getOpenSize(), o.getPrice(),
+								o.getTimeInForce(), o.getExpireTime());
+
+						if (rolledOrder.isAccepted()) o.cancel(CancelReason.ROLLED);
+					}
+				}
+			}
+
+			if (hasAsks()) {
+
+				for (PriceLevel pl = head(Side.SELL), nextPriceLevel; pl != null; pl = nextPriceLevel) {
+
+					// A successful roll releases the source order and possibly its level.
+					nextPriceLevel = pl.next;
+
+					for (Order o = pl.head(), nextOrder; o != null; o = nextOrder) {
+
+						nextOrder = pl.next(o);
+
+						if (!o.isGTC() && !o.isGTD()) continue;
+
+						while (newOrderBook.orders.containsKey(firstExchangeOrderId))
+							firstExchangeOrderId++;
+
+						Order rolledOrder = newOrderBook.createLimit(o.getClientId(), o.getClientOrderId(),
+								firstExchangeOrderId++, o.getSide(), o.getOpenSize(), o.getPrice(),
+								o.getTimeInForce(), o.getExpireTime());
+
+						if (rolledOrder.isAccepted()) o.cancel(CancelReason.ROLLED);
+					}
+				}
+			}
+
+			operationCompleted = true;
+			return firstExchangeOrderId;
+
+		} finally {
+			deferListenerExceptionReporting = listenerExceptionReportingWasDeferred;
+			if (!operationCompleted) {
+				discardOrderBookListenerExceptions();
+				discardDeferredOrderListenerExceptionReports();
+			} else if (!deferListenerExceptionReporting) {
+				reportDeferredOrderListenerExceptions();
+				reportOrderBookListenerExceptionsIfNecessary();
+			}
+			onOperationFinished();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Rolls this order book's GTC and GTD orders to an empty order book for the
+	 * same security in one pass over the price levels, without the per-order work
+	 * of {@link #rollTo(OrderBook, long)}. Each price level is appended to the
+	 * destination after the previous one, and each order after the previous one in
+	 * its level, so the rolled orders keep their price-time priority. They get
+	 * consecutive exchange order IDs in price-time priority, bids first, and GTD
+	 * orders keep their expire times.
+	 * </p>
+	 *
+	 * <p>
+	 * No order is validated or matched, and each rolled order produces a single
+	 * {@link OrderBookListener#onOrderRolled(OrderBook, long, Order, OrderBook, Order)}
+	 * callback, received once by each listener of either order book, instead of a
+	 * cancel on this order book and an accept and a rest on the destination. The
+	 * {@link OrderListener}s of a rolled order receive a cancel with
+	 * {@link CancelReason#ROLLED} and a termination, and are not carried over to
+	 * the rolled order.
+	 * </p>
+	 *
+	 * @param newOrderBook         the empty destination order book
+	 * @param firstExchangeOrderId the exchange order ID of the first rolled order
+	 * @return the exchange order ID after the last rolled order
+	 * @throws IllegalArgumentException if the destination is this order book, is
+	 *                                  for another security or is not empty, or if
+	 *                                  the first exchange order ID is not positive
+	 */
+	public long bulkRollTo(OrderBook newOrderBook, long firstExchangeOrderId) {
+
+		checkExternalListenerReentrancy("bulkRollTo");
+		newOrderBook.checkExternalListenerReentrancy("bulkRollTo");
+
+		checkObjectStorage("bulkRollTo");
+		newOrderBook.checkObjectStorage("bulkRollTo");
+
+		if (newOrderBook == this) {
+			throw new IllegalArgumentException("Cannot roll an order book to itself");
+		}
+
+		if (!security.equals(newOrderBook.security)) {
+			throw new IllegalArgumentException(
+					"Cannot roll between different securities: " + security + " and " + newOrderBook.security);
+		}
+
+		if (!newOrderBook.isEmpty()) {
+			throw new IllegalArgumentException("Cannot bulk roll to an order book that is not empty");
+		}
+
+		if (firstExchangeOrderId <= 0) {
+			throw new IllegalArgumentException("firstExchangeOrderId must be positive: " + firstExchangeOrderId);
+		}
+
+		boolean listenerExceptionReportingWasDeferred = deferListenerExceptionReporting;
+		deferListenerExceptionReporting = true;
+		boolean newListenerExceptionReportingWasDeferred = newOrderBook.deferListenerExceptionReporting;
+		newOrderBook.deferListenerExceptionReporting = true;
+		boolean operationCompleted = false;
+
+		try {
+			long time = timestamper.nanoEpoch();
+
+			long newTime = newOrderBook.timestamper.nanoEpoch();
+
+			long exchangeOrderId = bulkRollTo(Side.BUY, newOrderBook, firstExchangeOrderId, time, newTime);
+
+			exchangeOrderId = bulkRollTo(Side.SELL, newOrderBook, exchangeOrderId, time, newTime);
+
+			operationCompleted = true;
+			return exchangeOrderId;
+
+		} finally {
+			deferListenerExceptionReporting = listenerExceptionReportingWasDeferred;
+			newOrderBook.deferListenerExceptionReporting = newListenerExceptionReportingWasDeferred;
+			if (!operationCompleted) {
+				discardOrderBookListenerExceptions();
+				newOrderBook.discardOrderBookListenerExceptions();
+			} else {
+				if (!deferListenerExceptionReporting) reportOrderBookListenerExceptionsIfNecessary();
+				if (!newOrderBook.deferListenerExceptionReporting) {
+					newOrderBook.reportOrderBookListenerExceptionsIfNecessary();
+				}
+			}
+			onOperationFinished();
+			newOrderBook.onOperationFinished();
+		}
+	}
+
+	private long bulkRollTo(Side side, OrderBook newOrderBook, long exchangeOrderId, long time, long newTime) {
+
+		for (PriceLevel pl = head(side), nextPriceLevel; pl != null; pl = nextPriceLevel) {
+
+			// Rolling the last order of a level releases it
+			nextPriceLevel = pl.next;
+
+			PriceLevel rolledPriceLevel = null;
+
+			for (Order o = pl.head(), nextOrder; o != null; o = nextOrder) {
+
+				nextOrder = pl.next(o);
+
+				if (!o.isGTC() && !o.isGTD()) continue;
+
+				if (rolledPriceLevel == null) rolledPriceLevel = newOrderBook.appendPriceLevel(side, pl.getPrice());
+
+				Order rolledOrder = newOrderBook.addRestedOrder(rolledPriceLevel, o.getClientId(), o.getClientOrderId(),
+						exchangeOrderId++, o.getOpenSize(), o.getTimeInForce(), o.getExpireTime(), newTime);
+
+				pl.removeRestingOrder(o);
+
+				o.terminateRolled(time, newOrderBook);
+
+				removeOrder(o);
+
+				notifyOrderRolled(time, o, newOrderBook, rolledOrder);
+			}
+		}
+
+		return exchangeOrderId;
+	}
+
+	/**
+	 * Creates a limit order that is accepted and rests at the end of the given
+	 * price level without any callback.
+	 */
+	private Order addRestedOrder(PriceLevel priceLevel, long clientId, CharSequence clientOrderId,
+			long exchangeOrderId, long size, TimeInForce tif, long expireTime, long time) {
+
+		Order order = orderPool.get();
+
+		order.init(this, timestamper, clientId, clientOrderId, exchangeOrderId, security, priceLevel.getSide(), size,
+				priceLevel.getPrice(), Type.LIMIT, tif);
+
+		if (tif == TimeInForce.GTD) order.setExpireTime(expireTime);
+
+		order.addInternalListener(internalOrderListener);
+
+		order.restWithoutCallbacks(time);
+
+		order.setPriceLevel(priceLevel);
+
+		priceLevel.addRestedOrder(order);
+
+		addToIndexes(order);
+
+		return order;
+	}
+
+	/**
+	 * Adds an order loaded by an {@link OrderBookLoader} after the last order of
+	 * its side, without matching it and without any callback.
+	 *
+	 * @throws IllegalArgumentException if the order is invalid, is better than the
+	 *                                  last order of its side or crosses the other
+	 *                                  side
+	 */
+	final Order load(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size, long price,
+			TimeInForce tif, long expireTime) {
+
+		checkExternalListenerReentrancy("load");
+
+		checkObjectStorage("load");
+
+		if (side == null) throw new IllegalArgumentException("side cannot be null");
+
+		if (size <= 0) throw new IllegalArgumentException("size must be positive: " + size);
+
+		if (clientOrderId.length() > Order.CLIENT_ORDER_ID_MAX_LENGTH) {
+			throw new IllegalArgumentException("clientOrderId is too long: " + clientOrderId);
+		}
+
+		if (tif != TimeInForce.GTC && tif != TimeInForce.DAY && tif != TimeInForce.GTD) {
+			throw new IllegalArgumentException("Cannot load an order with time in force " + tif);
+		}
+
+		if (exchangeOrderId <= 0) {
+			throw new IllegalArgumentException("exchangeOrderId must be positive: " + exchangeOrderId);
+		}
+
+		if (orders.containsKey(exchangeOrderId)) {
+			throw new IllegalArgumentException("Duplicate exchangeOrderId: " + exchangeOrderId);
+		}
+
+		if (rejectDuplicateClientOrderIds && clientOrderIds.get(clientId, clientOrderId) != null) {
+			throw new IllegalArgumentException("Duplicate clientOrderId: " + clientId + "/" + clientOrderId);
+		}
+
+		PriceLevel other = head[side.invertedIndex()];
+
+		if (other != null && side.isInside(price, other.getPrice())) {
+			throw new IllegalArgumentException("Order " + exchangeOrderId + " crosses the other side at " + price);
+		}
+
+		PriceLevel priceLevel = tail[side.index()];
+
+		if (priceLevel == null || priceLevel.getPrice() != price) {
+
+			if (priceLevel != null && !side.isOutside(price, priceLevel.getPrice())) {
+				throw new IllegalArgumentException("Order " + exchangeOrderId + " is not in price-time priority: "
+						+ price + " after " + priceLevel.getPrice());
+			}
+
+			priceLevel = appendPriceLevel(side, price);
+		}
+
+		return addRestedOrder(priceLevel, clientId, clientOrderId, exchangeOrderId, size, tif, expireTime,
+				timestamper.nanoEpoch());
+	}
+
+	/**
+	 * Appends a price level restored from a snapshot.
+	 *
+	 * @throws IllegalArgumentException if the price level is not worse than the
+	 *                                  last one of its side
+	 */
+	final PriceLevel restorePriceLevel(Side side, long price) {
+
+		checkExternalListenerReentrancy("restore");
+
+		checkObjectStorage("restore");
+
+		PriceLevel last = tail[side.index()];
+
+		if (last != null && !side.isOutside(price, last.getPrice())) {
+			throw new IllegalArgumentException("Price level " + price + " is not after " + last.getPrice());
+		}
+
+		return appendPriceLevel(side, price);
+	}
+
+	/**
+	 * Appends an order restored from a snapshot to the given price level, without
+	 * any callback.
+	 *
+	 * @throws IllegalArgumentException if the exchange order ID is already used
+	 */
+	final Order restoreOrder(PriceLevel priceLevel, long clientId, CharSequence clientOrderId, long exchangeOrderId,
+			TimeInForce tif, long expireTime, long originalSize, long totalSize, long executedSize, long acceptTime,
+			long restTime, long reduceTime, long executeTime) {
+
+		checkObjectStorage("restore");
+
+		if (orders.containsKey(exchangeOrderId)) {
+			throw new IllegalArgumentException("Duplicate exchangeOrderId: " + exchangeOrderId);
+		}
+
+		Order order = addRestedOrder(priceLevel, clientId, clientOrderId, exchangeOrderId, totalSize - executedSize,
+				tif, expireTime, acceptTime);
+
+		order.restore(originalSize, totalSize, executedSize, acceptTime, restTime, reduceTime, executeTime);
+
+		return order;
+	}
+
+	/**
+	 * Returns the size of the last execution, or 0 if no execution has occurred.
+	 * Unlike the last executed price, it is not restored from a snapshot.
+	 *
+	 * @return the last executed size
+	 */
+	final long getLastExecutedSize() {
+		return lastExecutedSize;
+	}
+
+	final long getExecId() {
+		return execId;
+	}
+
+	final long getMatchId() {
+		return matchId;
+	}
+
+	final void restoreCounters(long execId, long matchId, long lastExecutedPrice) {
+
+		this.execId = execId;
+
+		this.matchId = matchId;
+
+		this.lastExecutedPrice = lastExecutedPrice;
+	}
+
+	/**
+	 * Removes all resting orders without any callback, undoing an aborted load.
+	 */
+	final void unload() {
+
+		checkExternalListenerReentrancy("unload");
+
+		for (int index = 0; index < 2; index++) {
+
+			while (head[index] != null) {
+
+				PriceLevel priceLevel = head[index];
+
+				Order order = priceLevel.head();
+
+				priceLevel.removeRestingOrder(order);
+
+				order.terminateWithoutCallbacks(timestamper.nanoEpoch());
+
+				removeOrder(order);
+			}
+		}
+	}
+
+	/**
+	 * Applies a resting order from a checkpoint delta without any callback. A new
+	 * order goes after the orders of its price level and an order already in the
+	 * order book is updated in place, keeping its time priority.
+	 */
+	final void applyCheckpointOrder(Side side, long price, long clientId, CharSequence clientOrderId,
+			long exchangeOrderId, TimeInForce tif, long expireTime, long originalSize, long totalSize,
+			long executedSize, long acceptTime, long restTime, long reduceTime, long executeTime) {
+
+		checkExternalListenerReentrancy("restore");
+
+		checkObjectStorage("restore");
+
+		Order order = orders.get(exchangeOrderId);
+
+		if (order != null && (order.getSide() != side || order.getPrice() != price)) {
+
+			applyCheckpointRemoval(exchangeOrderId);
+
+			order = null;
+		}
+
+		if (order == null) {
+
+			restoreOrder(findPriceLevel(side, price), clientId, clientOrderId, exchangeOrderId, tif, expireTime,
+					originalSize, totalSize, executedSize, acceptTime, restTime, reduceTime, executeTime);
+
+			return;
+		}
+
+		long openSize = order.getOpenSize();
+
+		order.restore(originalSize, totalSize, executedSize, acceptTime, restTime, reduceTime, executeTime);
+
+		order.getPriceLevel().resizeRestingOrder(order, openSize);
+
+		checkpointOrderChanged(order);
+	}
+
+	/**
+	 * Removes a resting order from a checkpoint delta without any callback, if it
+	 * is in the order book.
+	 */
+	final void applyCheckpointRemoval(long exchangeOrderId) {
+
+		checkExternalListenerReentrancy("restore");
+
+		checkObjectStorage("restore");
+
+		Order order = orders.get(exchangeOrderId);
+
+		if (order == null) return;
+
+		order.getPriceLevel().removeRestingOrder(order);
+
+		order.terminateWithoutCallbacks(timestamper.nanoEpoch());
+
+		removeOrder(order);
+	}
+
+	/**
+	 * Rests a mirrored order after the orders of its price level, without
+	 * matching or any callback.
+	 *
+	 * @return the resting order, or null if the exchange order ID is not positive
+	 *         or already in the order book, or if the size is not positive
+	 */
+	final Order mirrorAdd(long time, long exchangeOrderId, long clientId, CharSequence clientOrderId, Side side,
+			long price, long size, TimeInForce tif, long expireTime) {
+
+		checkExternalListenerReentrancy("mirror");
+
+		checkObjectStorage("mirror");
+
+		if (exchangeOrderId <= 0 || size <= 0 || orders.containsKey(exchangeOrderId)) return null;
+
+		Order order = addRestedOrder(findPriceLevel(side, price), clientId, clientOrderId, exchangeOrderId, size, tif,
+				expireTime, time);
+
+		onOperationFinished();
+
+		return order;
+	}
+
+	/**
+	 * Cancels part of a mirrored order without any callback, removing it if
+	 * nothing is left open.
+	 *
+	 * @return false if the order is not in the order book
+	 */
+	final boolean mirrorReduce(long time, long exchangeOrderId, long canceledSize) {
+
+		checkExternalListenerReentrancy("mirror");
+
+		checkObjectStorage("mirror");
+
+		Order order = orders.get(exchangeOrderId);
+
+		if (order == null) return false;
+
+		long openSize = order.getOpenSize();
+
+		order.reduceWithoutCallbacks(canceledSize, time);
+
+		mirrorResized(order, openSize, time);
+
+		onOperationFinished();
+
+		return true;
+	}
+
+	/**
+	 * Executes part of a mirrored order without any callback, removing it if
+	 * nothing is left open.
+	 *
+	 * @return false if the order is not in the order book
+	 */
+	final boolean mirrorExecute(long time, long exchangeOrderId, long executeSize, long executePrice) {
+
+		checkExternalListenerReentrancy("mirror");
+
+		checkObjectStorage("mirror");
+
+		lastExecutedPrice = executePrice;
+
+		lastExecutedSize = executeSize;
+
+		Order order = orders.get(exchangeOrderId);
+
+		if (order == null) return false;
+
+		long openSize = order.getOpenSize();
+
+		order.executeWithoutCallbacks(executeSize, time);
+
+		mirrorResized(order, openSize, time);
+
+		onOperationFinished();
+
+		return true;
+	}
+
+	/**
+	 * Removes a mirrored order without any callback.
+	 *
+	 * @return false if the order is not in the order book
+	 */
+	final boolean mirrorCancel(long time, long exchangeOrderId) {
+
+		checkExternalListenerReentrancy("mirror");
+
+		checkObjectStorage("mirror");
+
+		Order order = orders.get(exchangeOrderId);
+
+		if (order == null) return false;
+
+		order.getPriceLevel().removeRestingOrder(order);
+
+		order.terminateWithoutCallbacks(time);
+
+		removeOrder(order);
+
+		onOperationFinished();
+
+		return true;
+	}
 
-		Type type = order.getType();
+	private void mirrorResized(Order order, long previousOpenSize, long time) {
 
-		if (type == Type.MARKET && order.getPrice() != 0) {
+		order.getPriceLevel().resizeRestingOrder(order, previousOpenSize);
 
-			order.reject(RejectReason.BAD_PRICE); // remember... the OrderListener callback will return the order to the
-													// pool...
+		if (order.getOpenSize() > 0) {
 
-			return order;
-		}
+			checkpointOrderChanged(order);
 
-		RejectReason rejectReason = validateOrderAndReleaseOnFailure(order);
+		} else {
 
-		if (rejectReason != null) {
+			order.getPriceLevel().removeRestingOrder(order);
 
-			order.reject(rejectReason); // remember... the OrderListener callback will return the order to the pool...
+			order.terminateWithoutCallbacks(time);
 
-			return order;
+			removeOrder(order);
 		}
+	}
 
-		// always accept first...
-		order.accept(exchangeOrderId);
+	/**
+	 * <p>
+	 * Writes a checkpoint of this order book to the given writer. The first
+	 * checkpoint is full and writes every resting order in price-time priority.
+	 * Every following checkpoint writes only the orders that changed since the
+	 * previous one: the resting orders that rested, were reduced or were partially
+	 * executed, in the order they first changed, and the IDs of the orders that
+	 * left the order book. Its cost on the calling thread is then proportional to
+	 * the activity since the previous checkpoint, not to the size of the order
+	 * book. An order that rests and leaves between two checkpoints is not written
+	 * at all, so the deltas are bounded by the resting orders rather than by the
+	 * churn.
+	 * </p>
+	 *
+	 * <p>
+	 * An order that rests after a checkpoint rests after every order that was
+	 * already at its price, so applying the changed orders in the given order, a
+	 * new order after the orders of its price level and a known order in place,
+	 * rebuilds the price-time priority of the order book. The order book cannot be
+	 * modified from the writer. If the writer throws an exception, the changes
+	 * are kept and written again by the next checkpoint.
+	 * </p>
+	 *
+	 * @param writer the checkpoint writer
+	 */
+	public void checkpoint(OrderBookCheckpointWriter writer) {
 
-		// walk through the book matching:
+		checkExternalListenerReentrancy("checkpoint");
 
-		match(order);
+		checkObjectStorage("checkpoint");
 
-		// check if there is quantity left that needs to be canceled:
+		boolean full = !checkpointing;
 
-		if (!order.isTerminal()) {
+		enterExternalListenerCallback();
 
-			if (type == Type.MARKET) {
+		try {
+			writer.beginCheckpoint(this, full, execId, matchId, lastExecutedPrice);
 
-				order.cancel(CancelReason.NO_LIQUIDITY);
+			if (full) {
+
+				for (int index = 0; index < 2; index++) {
+					for (PriceLevel pl = head[index]; pl != null; pl = pl.next) {
+						for (Order o = pl.head(); o != null; o = pl.next(o)) {
+							writer.writeOrder(o);
+							o.checkpointed = true;
+						}
+					}
+				}
 
 			} else {
 
-				CancelReason cancelReason = CancelReason.MISSED;
+				for (int i = 0; i < checkpointChanges; i++) {
 
-				if (!hasTop(order.getOtherSide())) {
-					cancelReason = CancelReason.NO_LIQUIDITY;
+					Order order = checkpointOrders[i];
+
+					if (order != null) {
+						writer.writeOrder(order);
+						order.checkpointed = true;
+					} else if (checkpointRemovedIds[i] != 0) {
+						writer.writeRemovedOrder(checkpointRemovedIds[i]);
+					}
 				}
+			}
 
-				order.cancel(cancelReason);
+			writer.endCheckpoint(this);
+
+		} finally {
+			exitExternalListenerCallback();
+		}
+
+		for (int i = 0; i < checkpointChanges; i++) {
+
+			Order order = checkpointOrders[i];
+
+			if (order != null) {
+				order.checkpointIndex = -1;
+				checkpointOrders[i] = null;
 			}
 		}
 
-		return order;
-	}
+		checkpointChanges = 0;
 
-	private Order fillOrRest(Order order, long exchangeOrderId) {
+		freeCheckpointChanges = 0;
 
-		RejectReason rejectReason = validateOrderAndReleaseOnFailure(order);
+		checkpointing = true;
 
-		if (rejectReason != null) {
+		// Until the next checkpoint, each order written so far takes at most one slot
+		int capacity = Math.max(1024, 2 * orders.size());
 
-			order.reject(rejectReason); // remember... the OrderListener callback will return the order to the pool...
+		if (checkpointOrders == null || checkpointOrders.length < capacity) {
 
-			return order;
+			checkpointOrders = new Order[capacity];
+
+			checkpointRemovedIds = new long[capacity];
 		}
+	}
 
-		// always accept first:
-		order.accept(exchangeOrderId);
+	private void checkpointOrderChanged(Order order) {
 
-		// something needs to be executed first...
+		if (!checkpointing || order.checkpointIndex >= 0) return;
 
-		match(order);
+		int index = nextCheckpointChange();
 
-		if (order.isTerminal()) {
+		checkpointOrders[index] = order;
 
-			return order;
-		}
+		order.checkpointIndex = index;
+	}
 
-		// rest the remaining in the book:
-		// but first check if it will not cross its own order
-		if (!allowTradeToSelf && hasTop(order.getOtherSide())
-				&& order.getSide().isInside(order.getPrice(), getBestPrice(order.getOtherSide()))) {
+	private void checkpointOrderRemoved(Order order) {
 
-			CancelReason cancelReason = CancelReason.CROSSED;
+		if (!checkpointing) return;
 
-			order.cancel(cancelReason);
+		int index = order.checkpointIndex;
 
-		} else {
+		order.checkpointIndex = -1;
 
-			rest(order);
+		if (!order.checkpointed) {
+
+			// No checkpoint has the order, so there is nothing to remove
+			if (index >= 0) {
 
+				checkpointOrders[index] = null;
+
+				checkpointRemovedIds[index] = 0; // exchange order IDs are positive
+
+				freeCheckpointChanges++;
+			}
+
+			return;
 		}
 
-		return order;
-	}
+		if (index < 0) index = nextCheckpointChange();
 
-	final Order createOrder(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
-			long price, Type type, TimeInForce tif) {
+		checkpointOrders[index] = null;
 
-		checkExternalListenerReentrancy("createOrder");
+		checkpointRemovedIds[index] = order.getId();
+	}
 
-		boolean listenerExceptionReportingWasDeferred = deferListenerExceptionReporting;
-		deferListenerExceptionReporting = true;
-		boolean operationCompleted = false;
+	private int nextCheckpointChange() {
 
-		try {
+		if (checkpointChanges == checkpointOrders.length) {
 
-			Order order = getOrder(clientId, clientOrderId, security, side, size, price, type, tif);
+			if (freeCheckpointChanges >= checkpointChanges >> 2) {
+
+				compactCheckpointChanges();
 
-			if (size <= 0) {
-				order.reject(RejectReason.BAD_SIZE);
-			} else if (clientOrderId.length() > Order.CLIENT_ORDER_ID_MAX_LENGTH) {
-				order.reject(RejectReason.BAD_CLIENT_ORDER_ID);
-			} else if (order.getSide() == null) {
-				order.reject(RejectReason.BAD_SIDE);
-			} else if (type == Type.LIMIT && tif == null) {
-				order.reject(RejectReason.BAD_TIF);
-			} else if (exchangeOrderId <= 0) {
-				order.reject(RejectReason.BAD_EXCHANGE_ORDER_ID);
-			} else if (orders.containsKey(exchangeOrderId)) {
-				order.reject(RejectReason.DUPLICATE_EXCHANGE_ORDER_ID);
-			} else if (tif == TimeInForce.IOC || type == Type.MARKET) {
-				order = fillOrCancel(order, exchangeOrderId);
 			} else {
-				order = fillOrRest(order, exchangeOrderId);
-			}
 
-			operationCompleted = true;
-			return order;
+				// More orders rest than at the last checkpoint
+				checkpointOrders = Arrays.copyOf(checkpointOrders, checkpointChanges * 2);
 
-		} finally {
-			deferListenerExceptionReporting = listenerExceptionReportingWasDeferred;
-			if (!operationCompleted) {
-				discardOrderBookListenerExceptions();
-				discardDeferredOrderListenerExceptionReports();
-			} else if (!deferListenerExceptionReporting) {
-				reportDeferredOrderListenerExceptions();
-				reportOrderBookListenerExceptionsIfNecessary();
+				checkpointRemovedIds = Arrays.copyOf(checkpointRemovedIds, checkpointChanges * 2);
 			}
 		}
-	}
 
-	public long rollTo(OrderBook newOrderBook) {
-		return rollTo(newOrderBook, 1);
+		return checkpointChanges++;
 	}
 
-	/**
-	 * Rolls this order book's GTC orders to another order book for the same
-	 * security. Exchange order IDs already used by resting orders in the
-	 * destination are skipped.
-	 *
-	 * @param newOrderBook         the destination order book
-	 * @param firstExchangeOrderId the first exchange order ID to consider
-	 * @return the next exchange order ID after those considered by the roll
-	 */
-	public long rollTo(OrderBook newOrderBook, long firstExchangeOrderId) {
+	private void compactCheckpointChanges() {
 
-		checkExternalListenerReentrancy("rollTo");
-		newOrderBook.checkExternalListenerReentrancy("rollTo");
+		int changes = 0;
 
-		if (newOrderBook == this) {
-			throw new IllegalArgumentException("Cannot roll an order book to itself");
-		}
+		for (int i = 0; i < checkpointChanges; i++) {
 
-		if (!security.equals(newOrderBook.security)) {
-			throw new IllegalArgumentException(
-					"Cannot roll between different securities: " + security + " and " + newOrderBook.security);
-		}
+			Order order = checkpointOrders[i];
 
-		boolean listenerExceptionReportingWasDeferred = deferListenerExceptionReporting;
-		deferListenerExceptionReporting = true;
-		boolean operationCompleted = false;
+			long removedId = checkpointRemovedIds[i];
 
-		try {
-			if (hasBids()) {
+			if (order == null && removedId == 0) continue;
 
-				for (PriceLevel pl = head(Side.BUY), nextPriceLevel; pl != null; pl = nextPriceLevel) {
+			checkpointOrders[changes] = order;
 
-					// A successful roll releases the source order and possibly its level.
-					nextPriceLevel = pl.next;
+			checkpointRemovedIds[changes] = removedId;
 
-					for (Order o = pl.head(), nextOrder; o != null; o = nextOrder) {
+			if (order != null) order.checkpointIndex = changes;
 
-						nextOrder = o.next;
+			changes++;
+		}
 
-						if (o.getTimeInForce() != TimeInForce.GTC) continue;
+		for (int i = changes; i < checkpointChanges; i++) {
+			checkpointOrders[i] = null;
+		}
 
-						while (newOrderBook.orders.containsKey(firstExchangeOrderId))
-							firstExchangeOrderId++;
+		checkpointChanges = changes;
 
-						Order rolledOrder = newOrderBook.createLimit(o.getClientId(), o.getClientOrderId(),
-								firstExchangeOrderId++, o.getSide(), o.getOpenSize(), o.getPrice(), TimeInForce.GTC);
+		freeCheckpointChanges = 0;
+	}
 
-						if (rolledOrder.isAccepted()) o.cancel(CancelReason.ROLLED);
-					}
-				}
-			}
+	private void notifyOrderRolled(long time, Order order, OrderBook newOrderBook, Order rolledOrder) {
 
-			if (hasAsks()) {
+		for (int i = 0; i < listeners.size(); i++) {
+			OrderBookListener listener = listeners.get(i);
+			notifyOrderRolled(this, listener, time, order, newOrderBook, rolledOrder);
+		}
 
-				for (PriceLevel pl = head(Side.SELL), nextPriceLevel; pl != null; pl = nextPriceLevel) {
+		for (int i = 0; i < newOrderBook.listeners.size(); i++) {
+			OrderBookListener listener = newOrderBook.listeners.get(i);
+			if (listeners.contains(listener)) continue; // already notified
+			notifyOrderRolled(newOrderBook, listener, time, order, newOrderBook, rolledOrder);
+		}
+	}
 
-					// A successful roll releases the source order and possibly its level.
-					nextPriceLevel = pl.next;
+	private void notifyOrderRolled(OrderBook listenerOrderBook, OrderBookListener listener, long time, Order order,
+			OrderBook newOrderBook, Order rolledOrder) {
 
-					for (Order o = pl.head(), nextOrder; o != null; o = nextOrder) {
+		enterExternalListenerCallback();
+		newOrderBook.enterExternalListenerCallback();
+		try {
+			listener.onOrderRolled(this, time, order, newOrderBook, rolledOrder);
+		} catch (Exception e) {
+			listenerOrderBook.collectListenerException(listener, OrderBookListenerException.Callback.ON_ORDER_ROLLED,
+					time, order, e);
+		} finally {
+			newOrderBook.exitExternalListenerCallback();
+			exitExternalListenerCallback();
+		}
+	}
 
-						nextOrder = o.next;
+	/**
+	 * Cancels all resting DAY orders with {@link CancelReason#EXPIRED}.
+	 * Cancellation callbacks follow the order in which the DAY orders rested, not
+	 * price-time priority. DAY orders are kept in their own list, so GTC orders are
+	 * not visited.
+	 */
+	public void expire() {
 
-						if (o.getTimeInForce() != TimeInForce.GTC) continue;
+		expire(Integer.MAX_VALUE);
+	}
 
-						while (newOrderBook.orders.containsKey(firstExchangeOrderId))
-							firstExchangeOrderId++;
+	/**
+	 * Cancels up to the given number of resting DAY orders with
+	 * {@link CancelReason#EXPIRED}, oldest first, so that expiring a large book can
+	 * be spread over several iterations of an event loop. Each call is a complete
+	 * operation: listener exceptions are reported before it returns. Calling it
+	 * again resumes with the oldest DAY order still resting, including any that
+	 * rested in between.
+	 *
+	 * @param maxOrders the maximum number of orders to cancel
+	 * @return the number of DAY orders still resting
+	 * @throws IllegalArgumentException if the maximum is negative
+	 */
+	public int expire(int maxOrders) {
 
-						Order rolledOrder = newOrderBook.createLimit(o.getClientId(), o.getClientOrderId(),
-								firstExchangeOrderId++, o.getSide(), o.getOpenSize(), o.getPrice(), TimeInForce.GTC);
+		checkExternalListenerReentrancy("expire");
 
-						if (rolledOrder.isAccepted()) o.cancel(CancelReason.ROLLED);
-					}
-				}
+		if (maxOrders < 0) throw new IllegalArgumentException("maxOrders cannot be negative: " + maxOrders);
+
+		boolean listenerExceptionReportingWasDeferred = deferListenerExceptionReporting;
+		deferListenerExceptionReporting = true;
+		boolean operationCompleted = false;
+
+		try {
+			for (int i = 0; i < maxOrders && restingDayOrders() > 0; i++) {
+
+				// Canceling the order removes it from the list
+				oldestDayOrder().cancel(CancelReason.EXPIRED);
 			}
 
 			operationCompleted = true;
-			return firstExchangeOrderId;
+
+			return restingDayOrders();
 
 		} finally {
 			deferListenerExceptionReporting = listenerExceptionReportingWasDeferred;
@@ -1155,38 +2686,48 @@ public class OrderBook {
 				reportDeferredOrderListenerExceptions();
 				reportOrderBookListenerExceptionsIfNecessary();
 			}
+			onOperationFinished();
 		}
 	}
 
+	private int restingDayOrders() {
+
+		return columns != null ? columns.dayOrders() : dayOrders.size();
+	}
+
+	private Order oldestDayOrder() {
+
+		return columns != null ? bind(cursor, columns.firstDayOrder()) : dayOrders.head();
+	}
+
 	/**
-	 * Cancels all resting DAY orders with {@link CancelReason#EXPIRED}.
-	 * Cancellation callbacks follow the internal order map iteration order, not
-	 * price-time priority.
+	 * Cancels with {@link CancelReason#EXPIRED} the resting GTD orders whose expire
+	 * time is not after the current time of the timestamper. Expire times are
+	 * rounded up to the resolution set with
+	 * {@link OrderBookConfig#setExpireTimeResolution(long)}, and GTD orders are
+	 * kept in a timing wheel, so a call costs the orders that expire, not the
+	 * orders that rest. Call it from the event loop as often as that resolution
+	 * requires.
+	 *
+	 * @return the number of GTD orders canceled
 	 */
-	public void expire() {
+	public int expireGoodTillDate() {
 
-		checkExternalListenerReentrancy("expire");
+		checkExternalListenerReentrancy("expireGoodTillDate");
+
+		if (gtdOrders == null) return 0;
 
 		boolean listenerExceptionReportingWasDeferred = deferListenerExceptionReporting;
 		deferListenerExceptionReporting = true;
 		boolean operationCompleted = false;
 
 		try {
-			Iterator<Order> iter = orders.iterator();
-
-			while (iter.hasNext()) {
-
-				Order order = iter.next();
-
-				if (order.getTimeInForce() != TimeInForce.DAY) continue;
-
-				iter.remove(); // important otherwise you get a ConcurrentModificationException!
-
-				order.cancel(CancelReason.EXPIRED);
-			}
+			int expired = gtdOrders.expire(timestamper.nanoEpoch());
 
 			operationCompleted = true;
 
+			return expired;
+
 		} finally {
 			deferListenerExceptionReporting = listenerExceptionReportingWasDeferred;
 			if (!operationCompleted) {
@@ -1196,13 +2737,14 @@ public class OrderBook {
 				reportDeferredOrderListenerExceptions();
 				reportOrderBookListenerExceptionsIfNecessary();
 			}
+			onOperationFinished();
 		}
 	}
 
 	/**
 	 * Cancels all resting orders with {@link CancelReason#PURGED}. Cancellation
-	 * callbacks follow the internal order map iteration order, not price-time
-	 * priority.
+	 * callbacks follow the internal order map iteration order, or the slot order
+	 * if the orders are kept in columns, not price-time priority.
 	 */
 	public final void purge() {
 
@@ -1214,6 +2756,14 @@ public class OrderBook {
 
 		try {
 
+			if (columns != null) {
+
+				// No slot is handed out while canceling
+				for (int slot = 0; slot < columns.slots(); slot++) {
+					if (columns.isLive(slot)) bind(cursor, slot).cancel(CancelReason.PURGED);
+				}
+			}
+
 			Iterator<Order> iter = orders.iterator();
 
 			while (iter.hasNext()) {
@@ -1235,6 +2785,7 @@ public class OrderBook {
 				reportDeferredOrderListenerExceptions();
 				reportOrderBookListenerExceptionsIfNecessary();
 			}
+			onOperationFinished();
 		}
 	}
 
@@ -1244,13 +2795,41 @@ public class OrderBook {
 
 		order.setPriceLevel(priceLevel);
 
+		// Stored before it rests, so that the listeners of the rest find it
+		if (columns != null) order.slot = columns.add(order, priceLevel.tableIndex);
+
 		priceLevel.addOrder(order);
 
-		orders.put(order.getId(), order);
+		addToIndexes(order);
 
 		order.rest();
 	}
 
+	private void addToIndexes(Order order) {
+
+		if (columns != null) return; // indexed by the columns when stored
+
+		checkpointOrderChanged(order);
+
+		orders.put(order.getId(), order);
+
+		clientOrderIds.add(order);
+
+		if (order.getTimeInForce() == TimeInForce.DAY) {
+
+			dayOrders.add(order);
+
+		} else if (order.getTimeInForce() == TimeInForce.GTD) {
+
+			// A mirrored GTD order added without its expire time is left to its cancel event
+			if (order.getExpireTime() <= 0) return;
+
+			if (gtdOrders == null) gtdOrders = new TimingWheel(expireTimeResolution, timestamper.nanoEpoch());
+
+			gtdOrders.add(order);
+		}
+	}
+
 	private Order getOrder(long clientId, CharSequence clientOrderId, String security, Side side, long size, long price,
 			Type type, TimeInForce tif) {
 
@@ -1267,6 +2846,18 @@ public class OrderBook {
 		return internalOrderListener;
 	}
 
+	final PriceLevelIndex priceLevelIndex() {
+		return priceLevelIndex;
+	}
+
+	final ManagedObjectPool<Order> orderPool() {
+		return orderPool;
+	}
+
+	final ManagedObjectPool<PriceLevel> priceLevelPool() {
+		return priceLevelPool;
+	}
+
 	private void removeOrder(Order order) {
 
 		/*
@@ -1311,10 +2902,36 @@ public class OrderBook {
 
 			levels[index]--;
 
+			priceLevelIndex.removed(priceLevel);
+
+			if (marketByPrice != null) marketByPrice.levelRemoved(priceLevel);
+
+			if (columns != null) removeFromLevelTable(priceLevel);
+
 			priceLevelPool.release(priceLevel);
 		}
 
-		orders.remove(order.getId());
+		if (order.slot >= 0) {
+
+			// A cursor, as an incoming order leaves the columns as soon as it rests, so
+			// there is no object to return to the pool
+			columns.remove(order.slot);
+
+			order.slot = OrderColumns.NONE;
+
+			return;
+		}
+
+		if (priceLevel != null) {
+
+			checkpointOrderRemoved(order);
+
+			orders.remove(order.getId());
+
+			clientOrderIds.remove(order);
+
+			if (order.expiryList != null) order.expiryList.remove(order);
+		}
 
 		orderPool.release(order);
 	}
@@ -1326,6 +2943,10 @@ public class OrderBook {
 
 			checkExternalListenerReentrancy("onOrderReduced");
 
+			checkpointOrderChanged(order);
+
+			if (order.slot >= 0) columns.update(order, order.slot);
+
 			int size = listeners.size();
 
 			for (int i = 0; i < size; i++) {
@@ -1380,6 +3001,12 @@ public class OrderBook {
 			if (order.isTerminal()) {
 
 				removeOrder(order);
+
+			} else if (order.getPriceLevel() != null) {
+
+				checkpointOrderChanged(order);
+
+				if (order.slot >= 0) columns.update(order, order.slot);
 			}
 
 			int size = listeners.size();
@@ -1463,6 +3090,8 @@ public class OrderBook {
 
 			checkExternalListenerReentrancy("onOrderRested");
 
+			if (order.slot >= 0) columns.update(order, order.slot);
+
 			int size = listeners.size();
 
 			for (int i = 0; i < size; i++) {
@@ -59,6 +59,11 @@ public class OrderBookAdapter implements OrderBookListener {
 
 	}
 
+	@Override
+	public void onOrderRolled(OrderBook orderBook, long time, Order order, OrderBook newOrderBook, Order rolledOrder) {
+
+	}
+
 	@Override
 	public void onExceptionsThrown(OrderBook orderBook, OrderBookListenerExceptions exceptions) {
 
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+/**
+ * Receives the checkpoints written by {@link OrderBook#checkpoint}, on the
+ * thread of the order book. The orders are only valid during the call and must
+ * be copied, not kept.
+ */
+public interface OrderBookCheckpointWriter {
+
+	/**
+	 * Called at the start of a checkpoint.
+	 *
+	 * @param orderBook         the order book
+	 * @param full              true if the checkpoint writes every resting order,
+	 *                          false if it writes only the changes since the
+	 *                          previous one
+	 * @param execId            the last execution ID
+	 * @param matchId           the last match ID
+	 * @param lastExecutedPrice the last executed price
+	 */
+	public void beginCheckpoint(OrderBook orderBook, boolean full, long execId, long matchId,
+			long lastExecutedPrice);
+
+	/**
+	 * Called for a resting order that is new or changed.
+	 *
+	 * @param order the resting order
+	 */
+	public void writeOrder(Order order);
+
+	/**
+	 * Called for an order that left the order book.
+	 *
+	 * @param exchangeOrderId the exchange order ID of the order
+	 */
+	public void writeRemovedOrder(long exchangeOrderId);
+
+	public void endCheckpoint(OrderBook orderBook);
+}
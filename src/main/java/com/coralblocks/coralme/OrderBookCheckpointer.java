@@ -0,0 +1,517 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.coralblocks.coralme.Order.Side;
+
+/**
+ * <p>
+ * Keeps an on-disk image of an {@link OrderBook} up to date from incremental
+ * checkpoints, without taking full snapshots on the thread of the order book.
+ * Each call to {@link OrderBook#checkpoint(OrderBookCheckpointWriter)} with
+ * this writer encodes only the orders that changed since the previous
+ * checkpoint into one of a ring of reusable buffers and hands it to a
+ * background thread, so a checkpoint does not allocate once the buffers are
+ * large enough. If the background thread is still merging every buffer of
+ * the ring, a checkpoint waits for the oldest one. The background
+ * thread appends them to a deltas file and merges them into its own copy of the
+ * order book, which it writes as a full {@link OrderBookSnapshot} image after a
+ * number of deltas, emptying the deltas file.
+ * </p>
+ *
+ * <pre>
+ * OrderBookCheckpointer checkpointer = new OrderBookCheckpointer(orderBook.getSecurity(), directory);
+ *
+ * orderBook.checkpoint(checkpointer); // full, once
+ *
+ * (periodically, on the thread of the order book)
+ * orderBook.checkpoint(checkpointer); // only the changes
+ *
+ * (at startup)
+ * OrderBookCheckpointer.restore(directory, emptyOrderBook);
+ * </pre>
+ *
+ * <p>
+ * The first checkpoint is full and writes every resting order, so it is best
+ * taken at startup. A restore is the latest image plus the deltas written
+ * after it. A delta is a little-endian header (int magic, int version, byte
+ * full, long execId, long matchId, long lastExecutedPrice, int records)
+ * followed by its records: a changed order as the byte 'U', its side, its price
+ * and the order as laid out in a snapshot, or a removed order as the byte 'R'
+ * and its ID. The deltas file holds each delta after its int length.
+ * </p>
+ */
+public class OrderBookCheckpointer implements OrderBookCheckpointWriter, Closeable {
+
+	public static final int MAGIC = 0x434D4543; // CMEC
+
+	public static final int VERSION = 1;
+
+	public static final String IMAGE_FILE = "orderbook.image";
+
+	public static final String DELTAS_FILE = "orderbook.deltas";
+
+	public static final int DEFAULT_DELTAS_PER_IMAGE = 100;
+
+	public static final int PENDING_DELTAS = 8; // the size of the ring of buffers
+
+	private static final int HEADER_SIZE = 4 + 4 + 1 + 8 + 8 + 8 + 4;
+
+	private static final int CHANGED_ORDER_SIZE = 1 + 1 + 8 + OrderBookSnapshot.MAX_ORDER_SIZE;
+
+	private static final int REMOVED_ORDER_SIZE = 1 + 8;
+
+	private static final byte CHANGED_ORDER = 'U';
+
+	private static final byte REMOVED_ORDER = 'R';
+
+	private final String security;
+
+	private final Path imageFile;
+
+	private final Path deltasFile;
+
+	private final int deltasPerImage;
+
+	private final ByteBuffer[] ring = new ByteBuffer[PENDING_DELTAS]; // slots replaced only when they grow
+
+	private ByteBuffer buffer; // the slot of the checkpoint being written
+
+	private int records;
+
+	private long submitted; // guarded by this
+
+	private long merged; // guarded by this
+
+	private boolean closing; // guarded by this
+
+	private volatile Throwable failure;
+
+	private boolean closed;
+
+	private final Thread merger;
+
+	// Owned by the merger thread
+	private final OrderBook image;
+
+	private final OrderBookSnapshot snapshot = new OrderBookSnapshot();
+
+	private final StringBuilder clientOrderId = new StringBuilder(Order.CLIENT_ORDER_ID_MAX_LENGTH);
+
+	public OrderBookCheckpointer(String security, Path directory) {
+		this(security, directory, DEFAULT_DELTAS_PER_IMAGE);
+	}
+
+	/**
+	 * Creates a checkpointer writing to the given directory and starts its
+	 * background thread.
+	 *
+	 * @param security       the security of the order book
+	 * @param directory      the directory of the image and deltas files
+	 * @param deltasPerImage the number of deltas merged before the image is
+	 *                       written again
+	 * @throws IllegalArgumentException if deltasPerImage is not positive
+	 */
+	public OrderBookCheckpointer(String security, Path directory, int deltasPerImage) {
+
+		if (deltasPerImage <= 0) {
+			throw new IllegalArgumentException("deltasPerImage must be positive: " + deltasPerImage);
+		}
+
+		this.security = security;
+
+		this.imageFile = directory.resolve(IMAGE_FILE);
+
+		this.deltasFile = directory.resolve(DELTAS_FILE);
+
+		this.deltasPerImage = deltasPerImage;
+
+		this.image = new OrderBook(security);
+
+		for (int i = 0; i < ring.length; i++) {
+			ring[i] = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		this.merger = new Thread(this::merge, "OrderBookCheckpointer-" + security);
+
+		this.merger.setDaemon(true);
+
+		this.merger.start();
+	}
+
+	@Override
+	public void beginCheckpoint(OrderBook orderBook, boolean full, long execId, long matchId,
+			long lastExecutedPrice) {
+
+		if (!security.equals(orderBook.getSecurity())) {
+			throw new IllegalArgumentException("Checkpointer is not for " + orderBook.getSecurity());
+		}
+
+		if (closed) throw new IllegalStateException("Checkpointer is closed");
+
+		int slot = awaitFreeSlot();
+
+		if (failure != null) throw new IllegalStateException("Checkpoint merge failed", failure);
+
+		buffer = ring[slot];
+
+		buffer.clear();
+
+		buffer.putInt(MAGIC);
+
+		buffer.putInt(VERSION);
+
+		buffer.put((byte) (full ? 1 : 0));
+
+		buffer.putLong(execId);
+
+		buffer.putLong(matchId);
+
+		buffer.putLong(lastExecutedPrice);
+
+		buffer.putInt(0); // the number of records, set at the end
+
+		records = 0;
+	}
+
+	@Override
+	public void writeOrder(Order order) {
+
+		ensureCapacity(CHANGED_ORDER_SIZE);
+
+		buffer.put(CHANGED_ORDER);
+
+		buffer.put((byte) order.getSide().getChar());
+
+		buffer.putLong(order.getPrice());
+
+		OrderBookSnapshot.writeOrder(buffer, order);
+
+		records++;
+	}
+
+	@Override
+	public void writeRemovedOrder(long exchangeOrderId) {
+
+		ensureCapacity(REMOVED_ORDER_SIZE);
+
+		buffer.put(REMOVED_ORDER);
+
+		buffer.putLong(exchangeOrderId);
+
+		records++;
+	}
+
+	@Override
+	public void endCheckpoint(OrderBook orderBook) {
+
+		buffer.putInt(HEADER_SIZE - 4, records);
+
+		buffer.flip();
+
+		synchronized (this) {
+			submitted++;
+			notifyAll();
+		}
+	}
+
+	private synchronized int awaitFreeSlot() {
+
+		boolean interrupted = false;
+
+		while (submitted - merged == ring.length && failure == null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) Thread.currentThread().interrupt();
+
+		return (int) (submitted % ring.length);
+	}
+
+	private void ensureCapacity(int bytes) {
+
+		if (buffer.remaining() >= bytes) return;
+
+		int capacity = buffer.capacity();
+
+		while (capacity - buffer.position() < bytes)
+			capacity <<= 1;
+
+		ByteBuffer newBuffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+
+		buffer.flip();
+
+		newBuffer.put(buffer);
+
+		synchronized (this) {
+			ring[(int) (submitted % ring.length)] = newBuffer;
+		}
+
+		buffer = newBuffer;
+	}
+
+	/**
+	 * Waits until the background thread has merged every checkpoint written so
+	 * far.
+	 *
+	 * @throws InterruptedException  if the calling thread is interrupted
+	 * @throws IllegalStateException if the background thread failed
+	 */
+	public synchronized void flush() throws InterruptedException {
+
+		while (merged < submitted && failure == null)
+			wait();
+
+		if (failure != null) throw new IllegalStateException("Checkpoint merge failed", failure);
+	}
+
+	/**
+	 * Merges the checkpoints written so far and stops the background thread.
+	 *
+	 * @throws IOException if the background thread failed
+	 */
+	@Override
+	public void close() throws IOException {
+
+		if (closed) return;
+
+		closed = true;
+
+		synchronized (this) {
+			closing = true;
+			notifyAll();
+		}
+
+		try {
+			merger.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (failure != null) throw new IOException("Checkpoint merge failed", failure);
+	}
+
+	private void merge() {
+
+		ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+
+		try (FileChannel channel = FileChannel.open(deltasFile, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE)) {
+
+			channel.position(channel.size());
+
+			int deltasSinceImage = 0;
+
+			while (true) {
+
+				ByteBuffer delta;
+
+				synchronized (this) {
+
+					while (merged == submitted && !closing)
+						wait();
+
+					if (merged == submitted) break;
+
+					delta = ring[(int) (merged % ring.length)];
+				}
+
+				length.clear();
+
+				length.putInt(delta.remaining());
+
+				length.flip();
+
+				write(channel, length);
+
+				write(channel, delta);
+
+				channel.force(false);
+
+				delta.flip();
+
+				boolean full = apply(delta, image, clientOrderId);
+
+				if (full || ++deltasSinceImage >= deltasPerImage) {
+
+					Path tmp = imageFile.resolveSibling(IMAGE_FILE + ".tmp");
+
+					snapshot.write(image, tmp);
+
+					Files.move(tmp, imageFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+					channel.truncate(0);
+
+					channel.position(0);
+
+					deltasSinceImage = 0;
+				}
+
+				synchronized (this) {
+					merged++;
+					notifyAll();
+				}
+			}
+
+		} catch (Throwable t) {
+
+			synchronized (this) {
+				failure = t;
+				notifyAll();
+			}
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer bytes) throws IOException {
+
+		while (bytes.hasRemaining())
+			channel.write(bytes);
+	}
+
+	/**
+	 * Applies a delta to an order book, emptying it first for a full one.
+	 *
+	 * @return true if the delta was full
+	 */
+	private static boolean apply(ByteBuffer in, OrderBook orderBook, StringBuilder clientOrderId) {
+
+		int magic = in.getInt();
+
+		if (magic != MAGIC) throw new IllegalArgumentException("Not a checkpoint: " + Integer.toHexString(magic));
+
+		int version = in.getInt();
+
+		if (version != VERSION) throw new IllegalArgumentException("Unsupported checkpoint version: " + version);
+
+		boolean full = in.get() != 0;
+
+		long execId = in.getLong();
+
+		long matchId = in.getLong();
+
+		long lastExecutedPrice = in.getLong();
+
+		int records = in.getInt();
+
+		if (full) orderBook.unload();
+
+		for (int i = 0; i < records; i++) {
+
+			byte type = in.get();
+
+			if (type == CHANGED_ORDER) {
+
+				char sideChar = (char) (in.get() & 0xFF);
+
+				Side side = Side.ALL.get(sideChar);
+
+				if (side == null) throw new IllegalArgumentException("Bad side in checkpoint: " + sideChar);
+
+				long price = in.getLong();
+
+				OrderBookSnapshot.readOrder(in, orderBook, null, side, price, clientOrderId);
+
+			} else if (type == REMOVED_ORDER) {
+
+				orderBook.applyCheckpointRemoval(in.getLong());
+
+			} else {
+
+				throw new IllegalArgumentException("Bad record in checkpoint: " + type);
+			}
+		}
+
+		orderBook.restoreCounters(execId, matchId, lastExecutedPrice);
+
+		return full;
+	}
+
+	/**
+	 * Restores the latest image in the given directory and the deltas written
+	 * after it into an empty order book, without any callback. A delta cut short
+	 * at the end of the deltas file, by a crash while it was written, is ignored.
+	 *
+	 * @param directory the directory of the image and deltas files
+	 * @param orderBook the empty order book
+	 * @throws IOException              if the files cannot be read
+	 * @throws IllegalArgumentException if the order book is not empty or is for
+	 *                                  another security, or if the files are
+	 *                                  invalid, in which case the order book is
+	 *                                  left empty
+	 */
+	public static void restore(Path directory, OrderBook orderBook) throws IOException {
+
+		Path imageFile = directory.resolve(IMAGE_FILE);
+
+		if (Files.exists(imageFile)) {
+			new OrderBookSnapshot().restore(imageFile, orderBook);
+		} else if (!orderBook.isEmpty()) {
+			throw new IllegalArgumentException("Cannot restore into an order book that is not empty");
+		}
+
+		Path deltasFile = directory.resolve(DELTAS_FILE);
+
+		if (!Files.exists(deltasFile)) return;
+
+		try (FileChannel channel = FileChannel.open(deltasFile, StandardOpenOption.READ)) {
+
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			in.order(ByteOrder.LITTLE_ENDIAN);
+
+			StringBuilder clientOrderId = new StringBuilder(Order.CLIENT_ORDER_ID_MAX_LENGTH);
+
+			try {
+				while (in.remaining() >= 4) {
+
+					int length = in.getInt();
+
+					if (length <= 0 || length > in.remaining()) break; // cut short by a crash
+
+					ByteBuffer delta = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+					delta.limit(length);
+
+					apply(delta, orderBook, clientOrderId);
+
+					in.position(in.position() + length);
+				}
+			} catch (BufferUnderflowException e) {
+				orderBook.unload();
+				throw new IllegalArgumentException("Truncated checkpoint", e);
+			} catch (IllegalArgumentException e) {
+				orderBook.unload();
+				throw e;
+			}
+		}
+	}
+}
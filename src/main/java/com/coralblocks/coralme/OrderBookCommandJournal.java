@@ -0,0 +1,543 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+import com.coralblocks.coralme.util.DeterministicTimestamper;
+import com.coralblocks.coralme.util.SystemTimestamper;
+import com.coralblocks.coralme.util.Timestamper;
+
+/**
+ * <p>
+ * Records every inbound operation on an {@link OrderBook} before executing it,
+ * so that the order book can be recovered by replaying the operations with an
+ * {@link OrderBookCommandReplayer}. Operations go through this journal instead
+ * of the order book: each one takes its time from a clock, is written to a
+ * memory-mapped segment file with that time, and is then executed with the
+ * order book's {@link DeterministicTimestamper} set to that time. A replay sets
+ * the same times and therefore reproduces the same timestamps, execution IDs,
+ * match IDs and orders.
+ * </p>
+ *
+ * <pre>
+ * DeterministicTimestamper timestamper = new DeterministicTimestamper();
+ * OrderBook orderBook = new OrderBook("AAPL", timestamper);
+ * OrderBookCommandJournal journal = new OrderBookCommandJournal(orderBook, directory, "AAPL");
+ *
+ * (for each inbound message of a batch)
+ * journal.createLimit(clientId, clientOrderId, exchangeOrderId, side, size, price, tif);
+ *
+ * journal.commit(); // before acknowledging the batch
+ * </pre>
+ *
+ * <p>
+ * Writes are group-committed: a segment is forced to the storage device by
+ * {@link #commit()} or after a number of operations, not after each one.
+ * Writing an operation does not allocate. When a segment cannot hold another
+ * operation the journal rolls to a new one, named after the number of the
+ * first operation it holds.
+ * </p>
+ *
+ * <p>
+ * A segment starts with a little-endian header (int magic, int version, int
+ * segment size, int reserved) followed by the operations, each one a multiple
+ * of 8 bytes long:
+ * </p>
+ *
+ * <pre>
+ *  0  int  length, written last so an operation is complete once it is not zero
+ *  4  byte type: see the operation types below
+ *  5  byte side, 0 if none
+ *  6  byte time in force, 0 if none
+ *  7  byte reserved
+ *  8  long time
+ * 16  new orders:     long clientId, long exchangeOrderId, long size, long price, long expireTime,
+ *                     byte client order ID length (0x80 set for 16-bit chars), client order ID
+ *     cancel:         long exchangeOrderId
+ *     cancel size:    long exchangeOrderId, long size to cancel
+ *     reduce:         long exchangeOrderId, long new total size
+ *     expire:         long maxOrders
+ *     roll:           long firstExchangeOrderId
+ * </pre>
+ */
+public class OrderBookCommandJournal implements Closeable {
+
+	public static final int MAGIC = 0x434D4549; // CMEI
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 16;
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	public static final int DEFAULT_COMMIT_EVERY = 1024;
+
+	public static final String SUFFIX = ".commands";
+
+	public static final byte LIMIT = 'L';
+
+	public static final byte MARKET = 'M';
+
+	public static final byte CANCEL = 'C';
+
+	public static final byte CANCEL_SIZE = 'S';
+
+	public static final byte REDUCE = 'R';
+
+	public static final byte EXPIRE = 'E';
+
+	public static final byte EXPIRE_GOOD_TILL_DATE = 'G';
+
+	public static final byte PURGE = 'P';
+
+	public static final byte ROLL = 'O';
+
+	static final int WIDE_CLIENT_ORDER_ID = 0x80;
+
+	// An overlong client order ID keeps one extra char, so that it is rejected again
+	static final int MAX_CLIENT_ORDER_ID_LENGTH = Order.CLIENT_ORDER_ID_MAX_LENGTH + 1;
+
+	static final int MAX_COMMAND_SIZE = align(57 + 2 * MAX_CLIENT_ORDER_ID_LENGTH);
+
+	static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final OrderBook orderBook;
+
+	private final DeterministicTimestamper timestamper;
+
+	private final Timestamper clock;
+
+	private final Path directory;
+
+	private final String name;
+
+	private final int segmentSize;
+
+	private final int commitEvery;
+
+	private FileChannel channel;
+
+	private MappedByteBuffer segment;
+
+	private int position;
+
+	private int committedPosition;
+
+	private int uncommitted;
+
+	private long commands;
+
+	public OrderBookCommandJournal(OrderBook orderBook, Path directory, String name) throws IOException {
+		this(orderBook, new SystemTimestamper(), directory, name, DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_EVERY);
+	}
+
+	/**
+	 * Creates a journal for the given order book. If the directory already has
+	 * segments with the given name, the journal continues their numbering in a new
+	 * segment.
+	 *
+	 * @param orderBook   the order book, whose timestamper must be a
+	 *                    {@link DeterministicTimestamper}
+	 * @param clock       the clock the time of each operation is taken from
+	 * @param directory   the directory of the segments
+	 * @param name        the name the segment file names start with
+	 * @param segmentSize the size of a segment file in bytes
+	 * @param commitEvery the number of operations after which the segment is
+	 *                    forced to the storage device without a call to
+	 *                    {@link #commit()}
+	 * @throws IOException              if the first segment cannot be created
+	 * @throws IllegalArgumentException if the timestamper of the order book is not
+	 *                                  deterministic, or if a size is too small
+	 */
+	public OrderBookCommandJournal(OrderBook orderBook, Timestamper clock, Path directory, String name,
+			int segmentSize, int commitEvery) throws IOException {
+
+		if (!(orderBook.getTimestamper() instanceof DeterministicTimestamper)) {
+			throw new IllegalArgumentException("The order book must use a DeterministicTimestamper");
+		}
+
+		if (segmentSize < HEADER_SIZE + MAX_COMMAND_SIZE) {
+			throw new IllegalArgumentException("segmentSize is too small: " + segmentSize);
+		}
+
+		if (commitEvery <= 0) throw new IllegalArgumentException("commitEvery must be positive: " + commitEvery);
+
+		this.orderBook = orderBook;
+
+		this.timestamper = (DeterministicTimestamper) orderBook.getTimestamper();
+
+		this.clock = clock;
+
+		this.directory = directory;
+
+		this.name = name;
+
+		this.segmentSize = segmentSize;
+
+		this.commitEvery = commitEvery;
+
+		this.commands = countCommands(directory, name);
+
+		roll();
+	}
+
+	static int align(int length) {
+		return (length + 7) & ~7;
+	}
+
+	/**
+	 * Returns the file name of the segment whose first operation has the given
+	 * number.
+	 *
+	 * @param name    the name of the journal
+	 * @param command the number of the first operation, starting at 1
+	 * @return the file name
+	 */
+	public static String segmentFileName(String name, long command) {
+		return JournalSegments.fileName(name, command, SUFFIX);
+	}
+
+	/**
+	 * Returns the first or the last segment with the given name in the given
+	 * directory, or null if there is none.
+	 */
+	static Path findSegment(Path directory, String name, boolean first) throws IOException {
+		return JournalSegments.find(directory, name, SUFFIX, first);
+	}
+
+	private static long countCommands(Path directory, String name) throws IOException {
+
+		Path last = findSegment(directory, name, false);
+
+		if (last == null) return 0;
+
+		long commands = JournalSegments.firstEntry(name, last) - 1;
+
+		try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ)) {
+
+			MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			for (int p = HEADER_SIZE; p + 4 <= segment.capacity();) {
+				int length = (int) INTS.getAcquire(segment, p);
+				if (length <= 0) break;
+				commands++;
+				p += length;
+			}
+		}
+
+		return commands;
+	}
+
+	private void roll() throws IOException {
+
+		if (channel != null) {
+
+			commit();
+
+			channel.close();
+		}
+
+		channel = JournalSegments.create(directory.resolve(segmentFileName(name, commands + 1)));
+
+		segment = JournalSegments.map(channel, segmentSize, MAGIC, VERSION);
+
+		segment.putInt(8, segmentSize);
+
+		position = committedPosition = HEADER_SIZE;
+	}
+
+	/**
+	 * Returns the number of operations journaled, including those of previous
+	 * journals with the same name.
+	 *
+	 * @return the number of operations
+	 */
+	public long getCommands() {
+		return commands;
+	}
+
+	/**
+	 * Forces the operations journaled since the last commit to the storage
+	 * device.
+	 */
+	public void commit() {
+
+		if (position > committedPosition) {
+
+			segment.force(committedPosition, position - committedPosition);
+
+			committedPosition = position;
+		}
+
+		uncommitted = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		if (channel == null) return;
+
+		commit();
+
+		channel.close();
+
+		channel = null;
+	}
+
+	/**
+	 * Starts an operation of the given type and sets the time of the order book
+	 * to the time of the operation.
+	 *
+	 * @return the position of the operation in the segment
+	 */
+	private int begin(byte type, Side side, TimeInForce tif) {
+
+		if (channel == null) throw new IllegalStateException("Journal is closed");
+
+		if (position + MAX_COMMAND_SIZE > segmentSize) {
+			try {
+				roll();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		long time = clock.nanoEpoch();
+
+		int p = position;
+
+		segment.put(p + 4, type);
+
+		segment.put(p + 5, side == null ? 0 : (byte) side.getChar());
+
+		segment.put(p + 6, tif == null ? 0 : (byte) tif.getChar());
+
+		segment.put(p + 7, (byte) 0);
+
+		segment.putLong(p + 8, time);
+
+		timestamper.setNanoEpoch(time);
+
+		return p;
+	}
+
+	private void end(int p, int length) {
+
+		length = align(length);
+
+		INTS.setRelease(segment, p, length);
+
+		position = p + length;
+
+		commands++;
+
+		if (++uncommitted >= commitEvery) commit();
+	}
+
+	private void writeOrder(byte type, long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side,
+			long size, long price, TimeInForce tif, long expireTime) {
+
+		int p = begin(type, side, tif);
+
+		segment.putLong(p + 16, clientId);
+
+		segment.putLong(p + 24, exchangeOrderId);
+
+		segment.putLong(p + 32, size);
+
+		segment.putLong(p + 40, price);
+
+		segment.putLong(p + 48, expireTime);
+
+		int length = Math.min(clientOrderId.length(), MAX_CLIENT_ORDER_ID_LENGTH);
+
+		boolean wide = false;
+
+		for (int i = 0; i < length; i++) {
+			if (clientOrderId.charAt(i) > 0xFF) wide = true;
+		}
+
+		segment.put(p + 56, (byte) (wide ? length | WIDE_CLIENT_ORDER_ID : length));
+
+		int q = p + 57;
+
+		for (int i = 0; i < length; i++) {
+			if (wide) {
+				segment.putChar(q, clientOrderId.charAt(i));
+				q += 2;
+			} else {
+				segment.put(q++, (byte) clientOrderId.charAt(i));
+			}
+		}
+
+		end(p, q - p);
+	}
+
+	private void write(byte type, long value1, long value2) {
+
+		int p = begin(type, null, null);
+
+		segment.putLong(p + 16, value1);
+
+		segment.putLong(p + 24, value2);
+
+		end(p, 32);
+	}
+
+	public Order createLimit(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
+			long price, TimeInForce tif) {
+		return createLimit(clientId, clientOrderId, exchangeOrderId, side, size, price, tif, -1);
+	}
+
+	/**
+	 * Journals and executes {@link OrderBook#createLimit}.
+	 *
+	 * @param clientId        the client ID
+	 * @param clientOrderId   the client order ID
+	 * @param exchangeOrderId the exchange order ID
+	 * @param side            the side
+	 * @param size            the size
+	 * @param price           the price
+	 * @param tif             the time in force
+	 * @param expireTime      the expire time of a GTD order in epoch nanoseconds
+	 * @return the order
+	 */
+	public Order createLimit(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
+			long price, TimeInForce tif, long expireTime) {
+
+		writeOrder(LIMIT, clientId, clientOrderId, exchangeOrderId, side, size, price, tif, expireTime);
+
+		return orderBook.createLimit(clientId, clientOrderId, exchangeOrderId, side, size, price, tif, expireTime);
+	}
+
+	public Order createMarket(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size) {
+
+		writeOrder(MARKET, clientId, clientOrderId, exchangeOrderId, side, size, 0, null, -1);
+
+		return orderBook.createMarket(clientId, clientOrderId, exchangeOrderId, side, size);
+	}
+
+	/**
+	 * Journals and executes {@link Order#cancel()} for the given order, if it is
+	 * in the order book.
+	 *
+	 * @param exchangeOrderId the exchange order ID
+	 * @return the order, or null if it is not in the order book
+	 */
+	public Order cancel(long exchangeOrderId) {
+
+		write(CANCEL, exchangeOrderId, 0);
+
+		Order order = orderBook.getOrder(exchangeOrderId);
+
+		if (order != null) order.cancel();
+
+		return order;
+	}
+
+	/**
+	 * Journals and executes {@link Order#cancel(long)} for the given order, if it
+	 * is in the order book.
+	 *
+	 * @param exchangeOrderId the exchange order ID
+	 * @param sizeToCancel    the open size to cancel
+	 * @return the order, or null if it is not in the order book
+	 */
+	public Order cancel(long exchangeOrderId, long sizeToCancel) {
+
+		write(CANCEL_SIZE, exchangeOrderId, sizeToCancel);
+
+		Order order = orderBook.getOrder(exchangeOrderId);
+
+		if (order != null) order.cancel(sizeToCancel);
+
+		return order;
+	}
+
+	/**
+	 * Journals and executes {@link Order#reduceTo(long)} for the given order, if
+	 * it is in the order book.
+	 *
+	 * @param exchangeOrderId the exchange order ID
+	 * @param newTotalSize    the new total size
+	 * @return the order, or null if it is not in the order book
+	 */
+	public Order reduceTo(long exchangeOrderId, long newTotalSize) {
+
+		write(REDUCE, exchangeOrderId, newTotalSize);
+
+		Order order = orderBook.getOrder(exchangeOrderId);
+
+		if (order != null) order.reduceTo(newTotalSize);
+
+		return order;
+	}
+
+	public int expire(int maxOrders) {
+
+		write(EXPIRE, maxOrders, 0);
+
+		return orderBook.expire(maxOrders);
+	}
+
+	public int expireGoodTillDate() {
+
+		write(EXPIRE_GOOD_TILL_DATE, 0, 0);
+
+		return orderBook.expireGoodTillDate();
+	}
+
+	public void purge() {
+
+		write(PURGE, 0, 0);
+
+		orderBook.purge();
+	}
+
+	/**
+	 * Journals and executes {@link OrderBook#rollTo(OrderBook, long)}. The new
+	 * order book is not journaled: it is given to the replayer with
+	 * {@link OrderBookCommandReplayer#setRollToOrderBook(OrderBook)}. If its
+	 * timestamper is a {@link DeterministicTimestamper} it is set to the time of
+	 * the roll too.
+	 *
+	 * @param newOrderBook         the destination order book
+	 * @param firstExchangeOrderId the first exchange order ID to consider
+	 * @return the next exchange order ID after those considered by the roll
+	 */
+	public long rollTo(OrderBook newOrderBook, long firstExchangeOrderId) {
+
+		write(ROLL, firstExchangeOrderId, 0);
+
+		if (newOrderBook.getTimestamper() instanceof DeterministicTimestamper) {
+			((DeterministicTimestamper) newOrderBook.getTimestamper()).setNanoEpoch(timestamper.nanoEpoch());
+		}
+
+		return orderBook.rollTo(newOrderBook, firstExchangeOrderId);
+	}
+}
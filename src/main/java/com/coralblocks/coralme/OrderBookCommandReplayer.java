@@ -0,0 +1,336 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.OrderBookCommandJournal.HEADER_SIZE;
+import static com.coralblocks.coralme.OrderBookCommandJournal.INTS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+import com.coralblocks.coralme.util.DeterministicTimestamper;
+
+/**
+ * <p>
+ * Replays the operations recorded by an {@link OrderBookCommandJournal} into
+ * an order book, with a {@link DeterministicTimestamper} set to the time of
+ * each operation, so that the order book reaches the same state, with the same
+ * execution and match IDs, as the one the operations were recorded from. An
+ * operation that threw an {@link IllegalArgumentException} when it was recorded
+ * throws it again and is skipped. Replaying an operation does not allocate.
+ * </p>
+ *
+ * <p>
+ * {@link #verify(OrderBook, Path, String)} replays into an order book with an
+ * {@link OrderBookJournal} and compares its events, record by record, with the
+ * events journaled by the original order book.
+ * </p>
+ */
+public class OrderBookCommandReplayer {
+
+	private final Path directory;
+
+	private final String name;
+
+	private final StringBuilder clientOrderId = new StringBuilder(
+			OrderBookCommandJournal.MAX_CLIENT_ORDER_ID_LENGTH);
+
+	private OrderBook rollToOrderBook;
+
+	private long commands;
+
+	public OrderBookCommandReplayer(Path directory, String name) {
+
+		this.directory = directory;
+
+		this.name = name;
+	}
+
+	/**
+	 * Sets the order book the recorded rolls are replayed to.
+	 *
+	 * @param rollToOrderBook the order book to roll to
+	 */
+	public void setRollToOrderBook(OrderBook rollToOrderBook) {
+		this.rollToOrderBook = rollToOrderBook;
+	}
+
+	/**
+	 * Returns the number of operations replayed by the last replay.
+	 *
+	 * @return the number of operations replayed
+	 */
+	public long getCommands() {
+		return commands;
+	}
+
+	/**
+	 * Replays every recorded operation into the given order book.
+	 *
+	 * @param orderBook the order book, normally new
+	 * @return the number of operations replayed
+	 * @throws IOException              if a segment cannot be read
+	 * @throws IllegalArgumentException if the timestamper of the order book is not
+	 *                                  deterministic
+	 */
+	public long replay(OrderBook orderBook) throws IOException {
+
+		if (!(orderBook.getTimestamper() instanceof DeterministicTimestamper)) {
+			throw new IllegalArgumentException("The order book must use a DeterministicTimestamper");
+		}
+
+		DeterministicTimestamper timestamper = (DeterministicTimestamper) orderBook.getTimestamper();
+
+		commands = 0;
+
+		Path file = OrderBookCommandJournal.findSegment(directory, name, true);
+
+		if (file == null) return 0;
+
+		// The number of the first operation of the first segment left
+		long first = JournalSegments.firstEntry(name, file);
+
+		while (file != null) {
+
+			replaySegment(file, orderBook, timestamper);
+
+			file = directory.resolve(OrderBookCommandJournal.segmentFileName(name, first + commands));
+
+			if (!Files.exists(file)) file = null;
+		}
+
+		return commands;
+	}
+
+	private void replaySegment(Path file, OrderBook orderBook, DeterministicTimestamper timestamper)
+			throws IOException {
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			segment.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (segment.capacity() < HEADER_SIZE || segment.getInt(0) != OrderBookCommandJournal.MAGIC) {
+				throw new IOException("Not a command journal segment: " + file);
+			}
+
+			int size = Math.min(segment.getInt(8), segment.capacity());
+
+			for (int p = HEADER_SIZE; p + 4 <= size;) {
+
+				int length = (int) INTS.getAcquire(segment, p);
+
+				if (length <= 0) break;
+
+				try {
+					replay(segment, p, orderBook, timestamper);
+				} catch (IllegalArgumentException e) {
+					// The operation failed the same way when it was recorded
+				}
+
+				commands++;
+
+				p += length;
+			}
+		}
+	}
+
+	private void replay(MappedByteBuffer segment, int p, OrderBook orderBook, DeterministicTimestamper timestamper) {
+
+		byte type = segment.get(p + 4);
+
+		long time = segment.getLong(p + 8);
+
+		timestamper.setNanoEpoch(time);
+
+		switch (type) {
+
+		case OrderBookCommandJournal.LIMIT:
+		case OrderBookCommandJournal.MARKET: {
+
+			Side side = Side.ALL.get((char) segment.get(p + 5));
+
+			long clientId = segment.getLong(p + 16);
+
+			long exchangeOrderId = segment.getLong(p + 24);
+
+			long size = segment.getLong(p + 32);
+
+			int length = segment.get(p + 56) & 0xFF;
+
+			boolean wide = (length & OrderBookCommandJournal.WIDE_CLIENT_ORDER_ID) != 0;
+
+			length &= ~OrderBookCommandJournal.WIDE_CLIENT_ORDER_ID;
+
+			clientOrderId.setLength(0);
+
+			for (int i = 0, q = p + 57; i < length; i++) {
+				if (wide) {
+					clientOrderId.append(segment.getChar(q));
+					q += 2;
+				} else {
+					clientOrderId.append((char) (segment.get(q++) & 0xFF));
+				}
+			}
+
+			if (type == OrderBookCommandJournal.MARKET) {
+				orderBook.createMarket(clientId, clientOrderId, exchangeOrderId, side, size);
+			} else {
+				TimeInForce tif = TimeInForce.ALL.get((char) segment.get(p + 6));
+				orderBook.createLimit(clientId, clientOrderId, exchangeOrderId, side, size, segment.getLong(p + 40),
+						tif, segment.getLong(p + 48));
+			}
+
+			break;
+		}
+
+		case OrderBookCommandJournal.CANCEL: {
+
+			Order order = orderBook.getOrder(segment.getLong(p + 16));
+
+			if (order != null) order.cancel();
+
+			break;
+		}
+
+		case OrderBookCommandJournal.CANCEL_SIZE: {
+
+			Order order = orderBook.getOrder(segment.getLong(p + 16));
+
+			if (order != null) order.cancel(segment.getLong(p + 24));
+
+			break;
+		}
+
+		case OrderBookCommandJournal.REDUCE: {
+
+			Order order = orderBook.getOrder(segment.getLong(p + 16));
+
+			if (order != null) order.reduceTo(segment.getLong(p + 24));
+
+			break;
+		}
+
+		case OrderBookCommandJournal.EXPIRE:
+
+			orderBook.expire((int) segment.getLong(p + 16));
+
+			break;
+
+		case OrderBookCommandJournal.EXPIRE_GOOD_TILL_DATE:
+
+			orderBook.expireGoodTillDate();
+
+			break;
+
+		case OrderBookCommandJournal.PURGE:
+
+			orderBook.purge();
+
+			break;
+
+		case OrderBookCommandJournal.ROLL:
+
+			if (rollToOrderBook == null) {
+				throw new IllegalStateException("No order book to replay a roll to");
+			}
+
+			if (rollToOrderBook.getTimestamper() instanceof DeterministicTimestamper) {
+				((DeterministicTimestamper) rollToOrderBook.getTimestamper()).setNanoEpoch(time);
+			}
+
+			orderBook.rollTo(rollToOrderBook, segment.getLong(p + 16));
+
+			break;
+
+		default:
+
+			throw new IllegalStateException("Bad operation type in command journal: " + type);
+		}
+	}
+
+	/**
+	 * Replays every recorded operation into the given order book while journaling
+	 * its events, and compares them with the events journaled by the original
+	 * order book.
+	 *
+	 * @param orderBook       the new order book to replay into
+	 * @param eventsDirectory the directory of the original events
+	 * @param eventsName      the name of the original {@link OrderBookJournal}
+	 * @return -1 if the replayed events are the same as the original ones,
+	 *         otherwise the sequence number of the first event that differs or is
+	 *         missing
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public long verify(OrderBook orderBook, Path eventsDirectory, String eventsName) throws IOException {
+
+		Path replayDirectory = Files.createTempDirectory("coralme-verify");
+
+		try {
+			try (OrderBookJournal replayed = new OrderBookJournal(replayDirectory, eventsName)) {
+				orderBook.addListener(replayed);
+				try {
+					replay(orderBook);
+				} finally {
+					orderBook.removeListener(replayed);
+				}
+			}
+
+			try (OrderBookJournalReader expected = new OrderBookJournalReader(eventsDirectory, eventsName);
+					OrderBookJournalReader actual = new OrderBookJournalReader(replayDirectory, eventsName)) {
+
+				long sequence = 1;
+
+				while (true) {
+
+					boolean hasExpected = expected.next();
+
+					boolean hasActual = actual.next();
+
+					if (!hasExpected && !hasActual) return -1;
+
+					if (hasExpected != hasActual || !sameEvent(expected, actual)) return sequence;
+
+					sequence++;
+				}
+			}
+
+		} finally {
+			for (File file : replayDirectory.toFile().listFiles()) {
+				file.delete();
+			}
+			Files.delete(replayDirectory);
+		}
+	}
+
+	private static boolean sameEvent(OrderBookJournalReader a, OrderBookJournalReader b) {
+		return a.getSequence() == b.getSequence() && a.getTime() == b.getTime() && a.getType() == b.getType()
+				&& a.getSide() == b.getSide() && a.getReason() == b.getReason()
+				&& a.getTimeInForce() == b.getTimeInForce() && a.getOrderId() == b.getOrderId()
+				&& a.getClientId() == b.getClientId() && a.getPrice() == b.getPrice() && a.getSize() == b.getSize()
+				&& a.getOpenSize() == b.getOpenSize() && a.getExecuteId() == b.getExecuteId()
+				&& a.getMatchId() == b.getMatchId();
+	}
+}
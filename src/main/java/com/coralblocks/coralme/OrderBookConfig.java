@@ -0,0 +1,454 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import com.coralblocks.coralme.util.Timestamper;
+
+/**
+ * <p>
+ * The settings used to construct an {@link OrderBook}. A new configuration starts
+ * from the defaults, including the current values of the pool sizing statics of
+ * {@link OrderBook}, and every setter returns the configuration so calls can be
+ * chained:
+ * </p>
+ *
+ * <pre>
+ * OrderBookConfig config = new OrderBookConfig().setOrderPoolInitialSize(20_000).setPriceLevelPoolInitialSize(1_000);
+ *
+ * OrderBook orderBook = new OrderBook("AAPL", config);
+ * </pre>
+ *
+ * <p>
+ * An order book copies the configuration when it is constructed, so the same
+ * instance can be changed and reused for other order books afterwards.
+ * </p>
+ */
+public class OrderBookConfig {
+
+	/**
+	 * Where an order book keeps the state of its resting orders.
+	 */
+	public static enum OrderStorage {
+
+		/**
+		 * Each resting order is an {@link Order} object from the order pool. This is
+		 * the default.
+		 */
+		OBJECTS,
+
+		/**
+		 * The state of the resting orders is kept in primitive columns indexed by a
+		 * slot number, see {@link OrderBookConfig#setOrderStorage(OrderStorage)}.
+		 */
+		COLUMNS,
+
+		/**
+		 * As {@link #COLUMNS}, with the columns in a direct buffer off the Java heap.
+		 */
+		OFF_HEAP_COLUMNS
+	}
+
+	/**
+	 * The default resolution of the expire times of GTD orders: one millisecond.
+	 */
+	public static final long DEFAULT_EXPIRE_TIME_RESOLUTION = 1_000_000L;
+
+	private Timestamper timestamper = OrderBook.TIMESTAMPER;
+
+	private boolean allowTradeToSelf = OrderBook.DEFAULT_ALLOW_TRADE_TO_SELF;
+
+	private boolean rejectDuplicateClientOrderIds = true;
+
+	private PriceLevelIndex priceLevelIndex = LinearPriceLevelIndex.INSTANCE;
+
+	private OrderIndex orderIndex = HashOrderIndex.DEFAULT;
+
+	private int orderPoolInitialSize = OrderBook.ORDER_POOL_INITIAL_SIZE;
+
+	private int priceLevelPoolInitialSize = OrderBook.PRICE_LEVEL_POOL_INITIAL_SIZE;
+
+	private int orderPoolMaxIdle = OrderBook.ORDER_POOL_MAX_IDLE;
+
+	private int priceLevelPoolMaxIdle = OrderBook.PRICE_LEVEL_POOL_MAX_IDLE;
+
+	private int expectedOrders = OrderBook.ORDER_POOL_INITIAL_SIZE;
+
+	private OrderBookPools pools;
+
+	private boolean arrayBackedPriceLevels;
+
+	private boolean trackQueuePositions;
+
+	private long expireTimeResolution = DEFAULT_EXPIRE_TIME_RESOLUTION;
+
+	private OrderStorage orderStorage = OrderStorage.OBJECTS;
+
+	/**
+	 * Creates a configuration with the default settings.
+	 */
+	public OrderBookConfig() {
+
+	}
+
+	/**
+	 * Creates a copy of the given configuration.
+	 *
+	 * @param config the configuration to copy
+	 */
+	public OrderBookConfig(OrderBookConfig config) {
+
+		this.timestamper = config.timestamper;
+
+		this.allowTradeToSelf = config.allowTradeToSelf;
+
+		this.rejectDuplicateClientOrderIds = config.rejectDuplicateClientOrderIds;
+
+		this.priceLevelIndex = config.priceLevelIndex;
+
+		this.orderIndex = config.orderIndex;
+
+		this.orderPoolInitialSize = config.orderPoolInitialSize;
+
+		this.priceLevelPoolInitialSize = config.priceLevelPoolInitialSize;
+
+		this.orderPoolMaxIdle = config.orderPoolMaxIdle;
+
+		this.priceLevelPoolMaxIdle = config.priceLevelPoolMaxIdle;
+
+		this.expectedOrders = config.expectedOrders;
+
+		this.pools = config.pools;
+
+		this.arrayBackedPriceLevels = config.arrayBackedPriceLevels;
+
+		this.trackQueuePositions = config.trackQueuePositions;
+
+		this.expireTimeResolution = config.expireTimeResolution;
+
+		this.orderStorage = config.orderStorage;
+	}
+
+	public Timestamper getTimestamper() {
+		return timestamper;
+	}
+
+	/**
+	 * Sets the source of callback timestamps.
+	 *
+	 * @param timestamper the timestamper
+	 * @return this configuration
+	 * @throws NullPointerException if the timestamper is null
+	 */
+	public OrderBookConfig setTimestamper(Timestamper timestamper) {
+		if (timestamper == null) throw new NullPointerException("timestamper");
+		this.timestamper = timestamper;
+		return this;
+	}
+
+	public boolean isAllowTradeToSelf() {
+		return allowTradeToSelf;
+	}
+
+	/**
+	 * Sets whether orders from the same client may trade with each other.
+	 *
+	 * @param allowTradeToSelf true to allow trades to self
+	 * @return this configuration
+	 */
+	public OrderBookConfig setAllowTradeToSelf(boolean allowTradeToSelf) {
+		this.allowTradeToSelf = allowTradeToSelf;
+		return this;
+	}
+
+	public boolean isRejectDuplicateClientOrderIds() {
+		return rejectDuplicateClientOrderIds;
+	}
+
+	/**
+	 * Sets whether a new order is rejected when the same client already has a
+	 * resting order with the same client order ID.
+	 *
+	 * @param rejectDuplicateClientOrderIds true to reject duplicates
+	 * @return this configuration
+	 * @see OrderBook#setRejectDuplicateClientOrderIds(boolean)
+	 */
+	public OrderBookConfig setRejectDuplicateClientOrderIds(boolean rejectDuplicateClientOrderIds) {
+		this.rejectDuplicateClientOrderIds = rejectDuplicateClientOrderIds;
+		return this;
+	}
+
+	public PriceLevelIndex getPriceLevelIndex() {
+		return priceLevelIndex;
+	}
+
+	/**
+	 * Sets the price level index template, for example a {@link PriceLadder} or a
+	 * {@link PriceLevelTree}.
+	 *
+	 * @param priceLevelIndex the price level index template
+	 * @return this configuration
+	 * @throws NullPointerException if the index is null
+	 */
+	public OrderBookConfig setPriceLevelIndex(PriceLevelIndex priceLevelIndex) {
+		if (priceLevelIndex == null) throw new NullPointerException("priceLevelIndex");
+		this.priceLevelIndex = priceLevelIndex;
+		return this;
+	}
+
+	public OrderIndex getOrderIndex() {
+		return orderIndex;
+	}
+
+	/**
+	 * Sets the order index template, for example a {@link SequentialOrderIndex}.
+	 *
+	 * @param orderIndex the order index template
+	 * @return this configuration
+	 * @throws NullPointerException if the index is null
+	 */
+	public OrderBookConfig setOrderIndex(OrderIndex orderIndex) {
+		if (orderIndex == null) throw new NullPointerException("orderIndex");
+		this.orderIndex = orderIndex;
+		return this;
+	}
+
+	public int getOrderPoolInitialSize() {
+		return orderPoolInitialSize;
+	}
+
+	/**
+	 * Sets the number of {@link Order}s created up front. Sizing it from the peak
+	 * number of live orders of a previous session, see
+	 * {@link OrderBook#getOrderPoolStatistics()}, avoids creating orders during
+	 * the session.
+	 *
+	 * @param orderPoolInitialSize the initial size of the order pool
+	 * @return this configuration
+	 * @throws IllegalArgumentException if the size is not positive
+	 */
+	public OrderBookConfig setOrderPoolInitialSize(int orderPoolInitialSize) {
+		if (orderPoolInitialSize <= 0) {
+			throw new IllegalArgumentException("orderPoolInitialSize must be positive: " + orderPoolInitialSize);
+		}
+		this.orderPoolInitialSize = orderPoolInitialSize;
+		return this;
+	}
+
+	public int getPriceLevelPoolInitialSize() {
+		return priceLevelPoolInitialSize;
+	}
+
+	/**
+	 * Sets the number of {@link PriceLevel}s created up front.
+	 *
+	 * @param priceLevelPoolInitialSize the initial size of the price level pool
+	 * @return this configuration
+	 * @throws IllegalArgumentException if the size is not positive
+	 */
+	public OrderBookConfig setPriceLevelPoolInitialSize(int priceLevelPoolInitialSize) {
+		if (priceLevelPoolInitialSize <= 0) {
+			throw new IllegalArgumentException(
+					"priceLevelPoolInitialSize must be positive: " + priceLevelPoolInitialSize);
+		}
+		this.priceLevelPoolInitialSize = priceLevelPoolInitialSize;
+		return this;
+	}
+
+	public int getOrderPoolMaxIdle() {
+		return orderPoolMaxIdle;
+	}
+
+	/**
+	 * Sets the maximum number of idle {@link Order}s kept in the pool. Orders
+	 * released beyond it are dropped, so a limit below the peak number of resting
+	 * orders brings allocation back after every burst. Unlimited by default. To
+	 * keep a large book off the heap without that cost, see
+	 * {@link OrderStorage#OFF_HEAP_COLUMNS}.
+	 *
+	 * @param orderPoolMaxIdle the maximum idle count of the order pool
+	 * @return this configuration
+	 * @throws IllegalArgumentException if the count is negative
+	 */
+	public OrderBookConfig setOrderPoolMaxIdle(int orderPoolMaxIdle) {
+		if (orderPoolMaxIdle < 0) {
+			throw new IllegalArgumentException("orderPoolMaxIdle cannot be negative: " + orderPoolMaxIdle);
+		}
+		this.orderPoolMaxIdle = orderPoolMaxIdle;
+		return this;
+	}
+
+	public int getPriceLevelPoolMaxIdle() {
+		return priceLevelPoolMaxIdle;
+	}
+
+	/**
+	 * Sets the maximum number of idle {@link PriceLevel}s kept in the pool.
+	 *
+	 * @param priceLevelPoolMaxIdle the maximum idle count of the price level pool
+	 * @return this configuration
+	 * @throws IllegalArgumentException if the count is negative
+	 */
+	public OrderBookConfig setPriceLevelPoolMaxIdle(int priceLevelPoolMaxIdle) {
+		if (priceLevelPoolMaxIdle < 0) {
+			throw new IllegalArgumentException("priceLevelPoolMaxIdle cannot be negative: " + priceLevelPoolMaxIdle);
+		}
+		this.priceLevelPoolMaxIdle = priceLevelPoolMaxIdle;
+		return this;
+	}
+
+	public int getExpectedOrders() {
+		return expectedOrders;
+	}
+
+	/**
+	 * Sets the number of orders expected to rest in the order book at the same
+	 * time, used to size its order indexes up front. The indexes grow past it if
+	 * needed. Defaults to {@link OrderBook#ORDER_POOL_INITIAL_SIZE}.
+	 *
+	 * @param expectedOrders the expected number of resting orders
+	 * @return this configuration
+	 * @throws IllegalArgumentException if the number is negative
+	 */
+	public OrderBookConfig setExpectedOrders(int expectedOrders) {
+		if (expectedOrders < 0) {
+			throw new IllegalArgumentException("expectedOrders cannot be negative: " + expectedOrders);
+		}
+		this.expectedOrders = expectedOrders;
+		return this;
+	}
+
+	public OrderBookPools getPools() {
+		return pools;
+	}
+
+	/**
+	 * Sets the pools shared with other order books, or null for the order book to
+	 * create its own pools. When set, the pool sizes and maximum idle counts of
+	 * this configuration are not used.
+	 *
+	 * @param pools the shared pools, or null
+	 * @return this configuration
+	 */
+	public OrderBookConfig setPools(OrderBookPools pools) {
+		this.pools = pools;
+		return this;
+	}
+
+	public boolean isArrayBackedPriceLevels() {
+		return arrayBackedPriceLevels;
+	}
+
+	/**
+	 * Sets whether each {@link PriceLevel} keeps its orders in an array instead of
+	 * linking them to each other. Sweeping deep levels is faster with arrays, at
+	 * the cost of an array per level. Disabled by default.
+	 *
+	 * @param arrayBackedPriceLevels true to keep the orders of each level in an array
+	 * @return this configuration
+	 */
+	public OrderBookConfig setArrayBackedPriceLevels(boolean arrayBackedPriceLevels) {
+		this.arrayBackedPriceLevels = arrayBackedPriceLevels;
+		return this;
+	}
+
+	public boolean isTrackQueuePositions() {
+		return trackQueuePositions;
+	}
+
+	/**
+	 * Sets whether each {@link PriceLevel} keeps cumulative sizes and counts of its
+	 * orders, so that {@link OrderBook#getSizeAhead(Order)} and
+	 * {@link OrderBook#getQueuePosition(Order)} take O(log n) instead of a walk
+	 * from the head of the level. Every rest, reduce, cancel and execution then
+	 * costs O(log n) more. Disabled by default.
+	 *
+	 * @param trackQueuePositions true to track queue positions
+	 * @return this configuration
+	 */
+	public OrderBookConfig setTrackQueuePositions(boolean trackQueuePositions) {
+		this.trackQueuePositions = trackQueuePositions;
+		return this;
+	}
+
+	public long getExpireTimeResolution() {
+		return expireTimeResolution;
+	}
+
+	/**
+	 * Sets the resolution, in nanoseconds, of the timing wheel that expires GTD
+	 * orders. Expire times are rounded up to it, so a GTD order is never canceled
+	 * early but may be canceled up to one resolution late. Defaults to
+	 * {@link #DEFAULT_EXPIRE_TIME_RESOLUTION}.
+	 *
+	 * @param expireTimeResolution the resolution in nanoseconds
+	 * @return this configuration
+	 * @throws IllegalArgumentException if the resolution is not positive
+	 * @see OrderBook#expireGoodTillDate()
+	 */
+	public OrderBookConfig setExpireTimeResolution(long expireTimeResolution) {
+		if (expireTimeResolution <= 0) {
+			throw new IllegalArgumentException("expireTimeResolution must be positive: " + expireTimeResolution);
+		}
+		this.expireTimeResolution = expireTimeResolution;
+		return this;
+	}
+
+	public OrderStorage getOrderStorage() {
+		return orderStorage;
+	}
+
+	/**
+	 * <p>
+	 * Sets where the order book keeps the state of its resting orders. With
+	 * {@link OrderStorage#COLUMNS}, the sizes, prices, times, links and IDs of the
+	 * resting orders live in primitive columns indexed by a slot number, about 140
+	 * bytes per resting order instead of an {@link Order} object with its
+	 * listeners and buffers, and matching walks a level through consecutive
+	 * values instead of one object per order. Incoming orders still come from the
+	 * order pool and go back to it once they rest.
+	 * </p>
+	 *
+	 * <p>
+	 * A resting order returned by the order book, its iterators or its price
+	 * levels is then a flyweight cursor over its slot, valid until the next call
+	 * to the order book. Keep its exchange order ID rather than the {@link Order}
+	 * itself. Listeners cannot be added to resting orders, and GTD orders are
+	 * rejected with {@link Order.RejectReason#BAD_TIF}. Columns cannot be combined
+	 * with array-backed price levels or queue position tracking, ignore the order
+	 * index and do not support checkpoints, loading, snapshot restores, mirroring
+	 * and rolling from the order book. Defaults to {@link OrderStorage#OBJECTS}.
+	 * </p>
+	 *
+	 * <p>
+	 * {@link OrderStorage#OFF_HEAP_COLUMNS} works the same way with the columns in
+	 * a direct buffer, so a resting order takes no heap at all and the collector
+	 * has nothing to trace for it. Only the price levels and the cursors stay on
+	 * the heap. The buffer is allocated from the direct memory limit of the JVM
+	 * and, when the columns grow, replaced by a larger one, the old one being freed
+	 * once it is collected, so size it up front with
+	 * {@link #setExpectedOrders(int)} or {@link OrderBook#prewarm(int, int)}.
+	 * </p>
+	 *
+	 * @param orderStorage the order storage
+	 * @return this configuration
+	 * @throws NullPointerException if the order storage is null
+	 */
+	public OrderBookConfig setOrderStorage(OrderStorage orderStorage) {
+		if (orderStorage == null) throw new NullPointerException("orderStorage");
+		this.orderStorage = orderStorage;
+		return this;
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.coralblocks.coralme.Order.CancelReason;
+import com.coralblocks.coralme.Order.ExecuteSide;
+import com.coralblocks.coralme.Order.RejectReason;
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+/**
+ * <p>
+ * An {@link OrderBookListener} that journals every callback as a fixed-size
+ * binary record into memory-mapped segment files, for consumers that read the
+ * order events from the files instead of listening on the thread of the order
+ * book. Writing a record does not allocate. When a segment is full the journal
+ * rolls to a new one, named after the sequence number of its first record.
+ * </p>
+ *
+ * <p>
+ * A segment starts with a little-endian header (int magic, int version, int
+ * record size, int segment size) followed by records of {@link #RECORD_SIZE}
+ * bytes, as far as they fit in the segment:
+ * </p>
+ *
+ * <pre>
+ *  0  long sequence, starting at 1, written last so a record is complete once it is not zero
+ *  8  long time
+ * 16  byte type: see the record types below
+ * 17  byte side: 'B' or 'S', 0 if none
+ * 18  byte reason: the cancel or reject reason, or the execute side, 0 otherwise
+ * 19  byte time in force, 0 for a market order
+ * 20  int  length of the client order ID
+ * 24  long order ID
+ * 32  long client ID
+ * 40  long price: the rest or execute price, the order price otherwise
+ * 48  long size: the rest, execute or canceled size, the original size otherwise
+ * 56  long open size of the order after the event
+ * 64  long execute ID, the new total size of a reduce, or the ID of a rolled order
+ * 72  long match ID
+ * 80  long expire time of a GTD order, -1 otherwise
+ * 88  char client order ID, 64 chars, only its length used
+ * </pre>
+ *
+ * <p>
+ * A journal should listen to one order book. {@link OrderBookJournalReader}
+ * reads the records back.
+ * </p>
+ */
+public class OrderBookJournal implements OrderBookListener, Closeable {
+
+	public static final int MAGIC = 0x434D454A; // CMEJ
+
+	public static final int VERSION = 2;
+
+	public static final int HEADER_SIZE = 16;
+
+	public static final int RECORD_SIZE = 88 + 2 * Order.CLIENT_ORDER_ID_MAX_LENGTH;
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	public static final String SUFFIX = ".journal";
+
+	public static final byte ACCEPTED = 'A';
+
+	public static final byte RESTED = 'R';
+
+	public static final byte EXECUTED = 'E';
+
+	public static final byte REDUCED = 'D';
+
+	public static final byte CANCELED = 'C';
+
+	public static final byte REJECTED = 'J';
+
+	public static final byte TERMINATED = 'T';
+
+	public static final byte ROLLED = 'L';
+
+	static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final Path directory;
+
+	private final String name;
+
+	private final int segmentSize;
+
+	private FileChannel channel;
+
+	private MappedByteBuffer segment;
+
+	private int position;
+
+	private long sequence;
+
+	public OrderBookJournal(Path directory, String name) throws IOException {
+		this(directory, name, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Creates a journal writing segments of the given size to the given directory.
+	 * If the directory already has segments with the given name, the journal
+	 * continues their sequence numbers in a new segment.
+	 *
+	 * @param directory   the directory of the segments
+	 * @param name        the name the segment file names start with
+	 * @param segmentSize the size of a segment file in bytes
+	 * @throws IOException              if the first segment cannot be created
+	 * @throws IllegalArgumentException if a record does not fit in a segment
+	 */
+	public OrderBookJournal(Path directory, String name, int segmentSize) throws IOException {
+
+		if (segmentSize < HEADER_SIZE + RECORD_SIZE) {
+			throw new IllegalArgumentException("segmentSize is too small: " + segmentSize);
+		}
+
+		this.directory = directory;
+
+		this.name = name;
+
+		this.segmentSize = segmentSize;
+
+		this.sequence = lastSequence(directory, name);
+
+		roll();
+	}
+
+	/**
+	 * Returns the file name of the segment whose first record has the given
+	 * sequence number.
+	 *
+	 * @param name     the name of the journal
+	 * @param sequence the sequence number of the first record
+	 * @return the file name
+	 */
+	public static String segmentFileName(String name, long sequence) {
+		return JournalSegments.fileName(name, sequence, SUFFIX);
+	}
+
+	/**
+	 * Returns the path of the first segment with the given name in the given
+	 * directory, or null if there is none.
+	 */
+	static Path firstSegment(Path directory, String name) throws IOException {
+		return JournalSegments.find(directory, name, SUFFIX, true);
+	}
+
+	private static long lastSequence(Path directory, String name) throws IOException {
+
+		Path last = JournalSegments.find(directory, name, SUFFIX, false);
+
+		if (last == null) return 0;
+
+		long sequence = JournalSegments.firstEntry(name, last) - 1;
+
+		try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ)) {
+
+			MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			for (int p = HEADER_SIZE; p + RECORD_SIZE <= segment.capacity(); p += RECORD_SIZE) {
+				long s = (long) LONGS.getAcquire(segment, p);
+				if (s == 0) break;
+				sequence = s;
+			}
+		}
+
+		return sequence;
+	}
+
+	private void roll() throws IOException {
+
+		if (channel != null) {
+
+			segment.force();
+
+			channel.close();
+		}
+
+		channel = JournalSegments.create(directory.resolve(segmentFileName(name, sequence + 1)));
+
+		segment = JournalSegments.map(channel, segmentSize, MAGIC, VERSION);
+
+		segment.putInt(8, RECORD_SIZE);
+
+		segment.putInt(12, segmentSize);
+
+		position = HEADER_SIZE;
+	}
+
+	/**
+	 * Returns the sequence number of the last record written.
+	 *
+	 * @return the last sequence number, 0 if none
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Writes the records journaled so far to the storage device.
+	 */
+	public void force() {
+		segment.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		if (channel == null) return;
+
+		segment.force();
+
+		channel.close();
+
+		channel = null;
+	}
+
+	private void write(byte type, long time, Order order, char reason, long price, long size, long value,
+			long matchId) {
+
+		if (position + RECORD_SIZE > segmentSize) {
+			try {
+				roll();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		MappedByteBuffer s = segment;
+
+		int p = position;
+
+		s.putLong(p + 8, time);
+
+		s.put(p + 16, type);
+
+		Side side = order.getSide(); // null for an order rejected without a side
+
+		TimeInForce tif = order.getTimeInForce(); // null for a market order
+
+		s.put(p + 17, side == null ? 0 : (byte) side.getChar());
+
+		s.put(p + 18, (byte) reason);
+
+		s.put(p + 19, tif == null ? 0 : (byte) tif.getChar());
+
+		int clientOrderIdLength = order.clientOrderIdLength();
+
+		s.putInt(p + 20, clientOrderIdLength);
+
+		s.putLong(p + 24, order.getId());
+
+		s.putLong(p + 32, order.getClientId());
+
+		s.putLong(p + 40, price);
+
+		s.putLong(p + 48, size);
+
+		s.putLong(p + 56, order.getOpenSize());
+
+		s.putLong(p + 64, value);
+
+		s.putLong(p + 72, matchId);
+
+		s.putLong(p + 80, order.getExpireTime());
+
+		for (int i = 0; i < clientOrderIdLength; i++) {
+			s.putChar(p + 88 + 2 * i, order.clientOrderIdCharAt(i));
+		}
+
+		LONGS.setRelease(s, p, ++sequence);
+
+		position = p + RECORD_SIZE;
+	}
+
+	@Override
+	public void onOrderReduced(OrderBook orderBook, long time, Order order, long canceledSize, long reduceNewTotalSize,
+			CancelReason cancelReason) {
+		write(REDUCED, time, order, cancelReason.getChar(), order.getPrice(), canceledSize, reduceNewTotalSize, 0);
+	}
+
+	@Override
+	public void onOrderCanceled(OrderBook orderBook, long time, Order order, long canceledSize,
+			CancelReason cancelReason) {
+		write(CANCELED, time, order, cancelReason.getChar(), order.getPrice(), canceledSize, 0, 0);
+	}
+
+	@Override
+	public void onOrderExecuted(OrderBook orderBook, long time, Order order, ExecuteSide executeSide, long executeSize,
+			long executePrice, long executeId, long executeMatchId) {
+		write(EXECUTED, time, order, executeSide.getChar(), executePrice, executeSize, executeId, executeMatchId);
+	}
+
+	@Override
+	public void onOrderAccepted(OrderBook orderBook, long time, Order order) {
+		write(ACCEPTED, time, order, (char) 0, order.getPrice(), order.getOriginalSize(), 0, 0);
+	}
+
+	@Override
+	public void onOrderRejected(OrderBook orderBook, long time, Order order, RejectReason rejectReason) {
+		write(REJECTED, time, order, rejectReason.getChar(), order.getPrice(), order.getOriginalSize(), 0, 0);
+	}
+
+	@Override
+	public void onOrderRested(OrderBook orderBook, long time, Order order, long restSize, long restPrice) {
+		write(RESTED, time, order, (char) 0, restPrice, restSize, 0, 0);
+	}
+
+	@Override
+	public void onOrderTerminated(OrderBook orderBook, long time, Order order) {
+		write(TERMINATED, time, order, (char) 0, order.getPrice(), order.getOriginalSize(), 0, 0);
+	}
+
+	@Override
+	public void onOrderRolled(OrderBook orderBook, long time, Order order, OrderBook newOrderBook, Order rolledOrder) {
+		write(ROLLED, time, order, (char) 0, order.getPrice(), rolledOrder.getOpenSize(), rolledOrder.getId(), 0);
+	}
+
+	@Override
+	public void onExceptionsThrown(OrderBook orderBook, OrderBookListenerExceptions exceptions) {
+		// Nothing to journal
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.OrderBookJournal.HEADER_SIZE;
+import static com.coralblocks.coralme.OrderBookJournal.LONGS;
+import static com.coralblocks.coralme.OrderBookJournal.RECORD_SIZE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+/**
+ * <p>
+ * Reads the records of an {@link OrderBookJournal}, from its first segment
+ * and across the segments it rolls to, while it is being written. Each call to
+ * {@link #next()} that returns true copies one record into this reader, whose
+ * getters then return its fields.
+ * </p>
+ *
+ * <pre>
+ * while (running) {
+ * 	while (reader.next()) {
+ * 		process(reader.getSequence(), reader.getType(), reader.getOrderId(), ...);
+ * 	}
+ * }
+ * </pre>
+ */
+public class OrderBookJournalReader implements Closeable {
+
+	private final Path directory;
+
+	private final String name;
+
+	private FileChannel channel;
+
+	private MappedByteBuffer segment;
+
+	private int segmentSize;
+
+	private int position;
+
+	private long sequence;
+
+	private long time;
+
+	private byte type;
+
+	private Side side;
+
+	private char reason;
+
+	private TimeInForce tif;
+
+	private long orderId;
+
+	private long clientId;
+
+	private long price;
+
+	private long size;
+
+	private long openSize;
+
+	private long value;
+
+	private long matchId;
+
+	private long expireTime;
+
+	private final StringBuilder clientOrderId = new StringBuilder(Order.CLIENT_ORDER_ID_MAX_LENGTH);
+
+	public OrderBookJournalReader(Path directory, String name) {
+
+		this.directory = directory;
+
+		this.name = name;
+	}
+
+	/**
+	 * Reads the next record, if it has been written.
+	 *
+	 * @return true if a record was read, false if there is no new record yet
+	 * @throws IOException if a segment cannot be read or is not a journal segment
+	 */
+	public boolean next() throws IOException {
+
+		if (segment == null) {
+
+			Path first = OrderBookJournal.firstSegment(directory, name);
+
+			if (first == null || !open(first)) return false;
+		}
+
+		long s = position + RECORD_SIZE > segmentSize ? 0 : (long) LONGS.getAcquire(segment, position);
+
+		if (s == 0) {
+
+			// The segment is full, or was left by a journal that was restarted
+			Path next = directory.resolve(OrderBookJournal.segmentFileName(name, sequence + 1));
+
+			if (!Files.exists(next) || !open(next)) return false;
+
+			s = (long) LONGS.getAcquire(segment, position);
+
+			if (s == 0) return false;
+		}
+
+		int p = position;
+
+		sequence = s;
+
+		time = segment.getLong(p + 8);
+
+		type = segment.get(p + 16);
+
+		side = Side.ALL.get((char) segment.get(p + 17));
+
+		reason = (char) segment.get(p + 18);
+
+		tif = TimeInForce.ALL.get((char) segment.get(p + 19));
+
+		orderId = segment.getLong(p + 24);
+
+		clientId = segment.getLong(p + 32);
+
+		price = segment.getLong(p + 40);
+
+		size = segment.getLong(p + 48);
+
+		openSize = segment.getLong(p + 56);
+
+		value = segment.getLong(p + 64);
+
+		matchId = segment.getLong(p + 72);
+
+		expireTime = segment.getLong(p + 80);
+
+		int clientOrderIdLength = Math.min(segment.getInt(p + 20), Order.CLIENT_ORDER_ID_MAX_LENGTH);
+
+		clientOrderId.setLength(0);
+
+		for (int i = 0; i < clientOrderIdLength; i++) {
+			clientOrderId.append(segment.getChar(p + 88 + 2 * i));
+		}
+
+		position = p + RECORD_SIZE;
+
+		return true;
+	}
+
+	/**
+	 * Switches to the given segment, unless the journal is still preparing it: a
+	 * segment shorter than its header or whose header is not written yet is left
+	 * for the next call, and the current segment is kept.
+	 */
+	private boolean open(Path file) throws IOException {
+
+		FileChannel opened = FileChannel.open(file, StandardOpenOption.READ);
+
+		MappedByteBuffer mapped;
+
+		try {
+
+			mapped = opened.map(FileChannel.MapMode.READ_ONLY, 0, opened.size());
+
+		} catch (IOException e) {
+			opened.close();
+			throw e;
+		}
+
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) == 0 || mapped.getInt(8) == 0
+				|| mapped.getInt(12) == 0) {
+
+			opened.close();
+
+			return false;
+		}
+
+		if (mapped.getInt(0) != OrderBookJournal.MAGIC || mapped.getInt(8) != RECORD_SIZE) {
+
+			opened.close();
+
+			throw new IOException("Not a journal segment: " + file);
+		}
+
+		if (mapped.getInt(4) != OrderBookJournal.VERSION) {
+
+			opened.close();
+
+			throw new IOException("Unsupported journal version " + mapped.getInt(4) + ": " + file);
+		}
+
+		close();
+
+		channel = opened;
+
+		segment = mapped;
+
+		segmentSize = Math.min(segment.getInt(12), segment.capacity());
+
+		position = HEADER_SIZE;
+
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		if (channel == null) return;
+
+		channel.close();
+
+		channel = null;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Returns the type of the record, one of the record types of
+	 * {@link OrderBookJournal}.
+	 *
+	 * @return the record type
+	 */
+	public byte getType() {
+		return type;
+	}
+
+	public Side getSide() {
+		return side;
+	}
+
+	/**
+	 * Returns the cancel or reject reason, or the execute side, as its char.
+	 *
+	 * @return the reason char, 0 if none
+	 */
+	public char getReason() {
+		return reason;
+	}
+
+	public TimeInForce getTimeInForce() {
+		return tif;
+	}
+
+	public long getOrderId() {
+		return orderId;
+	}
+
+	public long getClientId() {
+		return clientId;
+	}
+
+	public long getPrice() {
+		return price;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getOpenSize() {
+		return openSize;
+	}
+
+	public long getExecuteId() {
+		return value;
+	}
+
+	public long getMatchId() {
+		return matchId;
+	}
+
+	public long getReduceNewTotalSize() {
+		return value;
+	}
+
+	public long getRolledOrderId() {
+		return value;
+	}
+
+	/**
+	 * Returns the expire time of a GTD order.
+	 *
+	 * @return the expire time in epoch nanoseconds, -1 if the order is not GTD
+	 */
+	public long getExpireTime() {
+		return expireTime;
+	}
+
+	/**
+	 * Returns the client order ID of the order. It is reused for the next record
+	 * and must be copied, not kept.
+	 *
+	 * @return the client order ID
+	 */
+	public CharSequence getClientOrderId() {
+		return clientOrderId;
+	}
+}
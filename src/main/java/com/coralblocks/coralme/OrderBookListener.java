@@ -38,5 +38,21 @@ public interface OrderBookListener {
 
 	public void onOrderTerminated(OrderBook orderBook, long time, Order order);
 
+	/**
+	 * Called once per order moved by {@link OrderBook#bulkRollTo(OrderBook, long)},
+	 * instead of the callbacks of a cancel and of a new order. The order has left
+	 * the first order book and the rolled order is resting in the new one. Does
+	 * nothing by default, so that existing listeners keep compiling.
+	 *
+	 * @param orderBook    the order book the order was rolled from
+	 * @param time         the time of the roll
+	 * @param order        the order that was rolled, no longer resting
+	 * @param newOrderBook the order book the order was rolled to
+	 * @param rolledOrder  the order now resting in the new order book
+	 */
+	public default void onOrderRolled(OrderBook orderBook, long time, Order order, OrderBook newOrderBook,
+			Order rolledOrder) {
+	}
+
 	public void onExceptionsThrown(OrderBook orderBook, OrderBookListenerExceptions exceptions);
 }
@@ -29,7 +29,7 @@ public final class OrderBookListenerException extends RuntimeException {
 
 	public static enum Callback {
 		ON_ORDER_REDUCED, ON_ORDER_CANCELED, ON_ORDER_EXECUTED, ON_ORDER_ACCEPTED, ON_ORDER_REJECTED, ON_ORDER_RESTED,
-		ON_ORDER_TERMINATED
+		ON_ORDER_TERMINATED, ON_ORDER_ROLLED
 	}
 
 	private final OrderBookListener listener;
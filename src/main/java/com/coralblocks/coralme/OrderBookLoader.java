@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+/**
+ * <p>
+ * Loads resting orders into an empty {@link OrderBook}, for example to recover
+ * the GTC orders of a previous session at startup. The orders must be given in
+ * price-time priority for each side, best price first and oldest order first
+ * within a price. Each order is then appended after the last order of its side
+ * in constant time, instead of being matched and then inserted through a search
+ * of the price levels as with {@link OrderBook#createLimit}.
+ * </p>
+ *
+ * <pre>
+ * OrderBookLoader loader = new OrderBookLoader(orderBook);
+ *
+ * for (each stored order in price-time priority) {
+ * 	loader.load(clientId, clientOrderId, exchangeOrderId, side, size, price, tif);
+ * }
+ * </pre>
+ *
+ * <p>
+ * Loaded orders are accepted and rest without any callback. An order that is
+ * invalid, out of price-time priority or crossing the other side aborts the
+ * whole load: every order loaded so far is removed, again without callbacks,
+ * and an {@link IllegalArgumentException} is thrown, leaving the order book
+ * empty. The order book must not be used otherwise until the load is complete.
+ * </p>
+ */
+public class OrderBookLoader {
+
+	private final OrderBook orderBook;
+
+	private int loaded;
+
+	/**
+	 * Creates a loader for an empty order book.
+	 *
+	 * @param orderBook the order book to load
+	 * @throws IllegalArgumentException if the order book is not empty
+	 */
+	public OrderBookLoader(OrderBook orderBook) {
+
+		if (!orderBook.isEmpty()) {
+			throw new IllegalArgumentException("Cannot load an order book that is not empty");
+		}
+
+		this.orderBook = orderBook;
+	}
+
+	public Order load(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
+			long price, TimeInForce tif) {
+		return load(clientId, clientOrderId, exchangeOrderId, side, size, price, tif, -1);
+	}
+
+	/**
+	 * Loads a resting limit order after the orders already loaded. A GTD order
+	 * whose expire time has already passed is loaded and expires on the next call
+	 * to {@link OrderBook#expireGoodTillDate()}.
+	 *
+	 * @param clientId        the client ID
+	 * @param clientOrderId   the client order ID
+	 * @param exchangeOrderId the exchange order ID
+	 * @param side            the side
+	 * @param size            the open size
+	 * @param price           the price
+	 * @param tif             GTC, DAY or GTD
+	 * @param expireTime      the expire time of a GTD order in epoch nanoseconds
+	 * @return the resting order
+	 * @throws IllegalArgumentException if the order is invalid, is out of
+	 *                                  price-time priority or crosses the other
+	 *                                  side, in which case the whole load is
+	 *                                  undone
+	 */
+	public Order load(long clientId, CharSequence clientOrderId, long exchangeOrderId, Side side, long size,
+			long price, TimeInForce tif, long expireTime) {
+
+		Order order;
+
+		try {
+			order = orderBook.load(clientId, clientOrderId, exchangeOrderId, side, size, price, tif, expireTime);
+		} catch (IllegalArgumentException e) {
+			abort();
+			throw e;
+		}
+
+		loaded++;
+
+		return order;
+	}
+
+	/**
+	 * Returns the number of orders loaded since the loader was created or the last
+	 * load was aborted.
+	 *
+	 * @return the number of loaded orders
+	 */
+	public int getLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Removes every order from the order book without any callback.
+	 */
+	public void abort() {
+
+		orderBook.unload();
+
+		loaded = 0;
+	}
+}
@@ -137,6 +137,18 @@ public class OrderBookLogger implements OrderBookListener {
 		System.out.println();
 	}
 
+	@Override
+	public void onOrderRolled(OrderBook orderBook, long time, Order order, OrderBook newOrderBook, Order rolledOrder) {
+		if (!isOn) return;
+		System.out.println("-----> onOrderRolled called:");
+		System.out.println("  orderBook=" + orderBook);
+		System.out.println("  time=" + time);
+		System.out.println("  order=" + order);
+		System.out.println("  newOrderBook=" + newOrderBook);
+		System.out.println("  rolledOrder=" + rolledOrder);
+		System.out.println();
+	}
+
 	@Override
 	public void onExceptionsThrown(OrderBook orderBook, OrderBookListenerExceptions exceptions) {
 		if (!isOn) return;
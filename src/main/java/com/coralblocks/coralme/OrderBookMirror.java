@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.io.IOException;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+/**
+ * <p>
+ * Rebuilds an {@link OrderBook} from the order-level events of another one, for
+ * recovery from an {@link OrderBookJournal} or for a replica. Each event is
+ * applied straight onto the price levels of the mirror: an added order rests
+ * after the orders of its price level and reduced, executed and canceled
+ * orders are changed or removed by ID, without matching, validation, the
+ * accept and reject lifecycle or any callback. The mirror then has the same
+ * price levels, orders and iteration order as the order book the events came
+ * from. Orders and price levels come from the pools of the mirror, so applying
+ * an event does not allocate.
+ * </p>
+ *
+ * <pre>
+ * OrderBookMirror mirror = new OrderBookMirror(replica);
+ *
+ * while (running) {
+ * 	mirror.applyAll(reader);
+ * }
+ * </pre>
+ *
+ * <p>
+ * The mirror must not be used otherwise while events are applied to it, and
+ * it does not expire orders by itself: expirations arrive as cancel events.
+ * </p>
+ */
+public class OrderBookMirror {
+
+	private final OrderBook orderBook;
+
+	private long events;
+
+	public OrderBookMirror(OrderBook orderBook) {
+
+		this.orderBook = orderBook;
+	}
+
+	public OrderBook getOrderBook() {
+		return orderBook;
+	}
+
+	/**
+	 * Returns the number of journal records applied by this mirror.
+	 *
+	 * @return the number of applied records
+	 */
+	public long getEvents() {
+		return events;
+	}
+
+	public Order add(long time, long exchangeOrderId, long clientId, CharSequence clientOrderId, Side side,
+			long price, long size, TimeInForce tif) {
+		return add(time, exchangeOrderId, clientId, clientOrderId, side, price, size, tif, -1);
+	}
+
+	/**
+	 * Rests an order after the orders of its price level.
+	 *
+	 * @param time            the rest time
+	 * @param exchangeOrderId the exchange order ID
+	 * @param clientId        the client ID
+	 * @param clientOrderId   the client order ID
+	 * @param side            the side
+	 * @param price           the price
+	 * @param size            the open size
+	 * @param tif             the time in force
+	 * @param expireTime      the expire time of a GTD order in epoch nanoseconds
+	 * @return the resting order, or null if the exchange order ID is not positive
+	 *         or already in the mirror, or if the size is not positive
+	 */
+	public Order add(long time, long exchangeOrderId, long clientId, CharSequence clientOrderId, Side side,
+			long price, long size, TimeInForce tif, long expireTime) {
+		return orderBook.mirrorAdd(time, exchangeOrderId, clientId, clientOrderId, side, price, size, tif,
+				expireTime);
+	}
+
+	/**
+	 * Cancels part of the open size of a resting order, keeping its time
+	 * priority. The order is removed if nothing is left open.
+	 *
+	 * @param time            the reduce time
+	 * @param exchangeOrderId the exchange order ID
+	 * @param canceledSize    the canceled size
+	 * @return false if the order is not in the mirror
+	 */
+	public boolean reduce(long time, long exchangeOrderId, long canceledSize) {
+		return orderBook.mirrorReduce(time, exchangeOrderId, canceledSize);
+	}
+
+	/**
+	 * Executes part of the open size of a resting order, keeping its time
+	 * priority. The order is removed if nothing is left open.
+	 *
+	 * @param time            the execute time
+	 * @param exchangeOrderId the exchange order ID
+	 * @param executeSize     the executed size
+	 * @param executePrice    the execute price, which becomes the last executed
+	 *                        price
+	 * @return false if the order is not in the mirror
+	 */
+	public boolean execute(long time, long exchangeOrderId, long executeSize, long executePrice) {
+		return orderBook.mirrorExecute(time, exchangeOrderId, executeSize, executePrice);
+	}
+
+	/**
+	 * Removes a resting order.
+	 *
+	 * @param time            the cancel time
+	 * @param exchangeOrderId the exchange order ID
+	 * @return false if the order is not in the mirror
+	 */
+	public boolean cancel(long time, long exchangeOrderId) {
+		return orderBook.mirrorCancel(time, exchangeOrderId);
+	}
+
+	/**
+	 * Applies the record last read by the given reader. A rested record adds the
+	 * order, with its client order ID and expire time, reduced and executed
+	 * records change it, and canceled, rolled and terminated records remove it.
+	 * Accepted and rejected records do not change the order book, and executions
+	 * of an order that is not resting, such as an incoming order, only update the
+	 * execution and match IDs and the last executed price.
+	 *
+	 * @param reader the reader positioned on a record
+	 */
+	public void apply(OrderBookJournalReader reader) {
+
+		long time = reader.getTime();
+
+		long exchangeOrderId = reader.getOrderId();
+
+		switch (reader.getType()) {
+
+		case OrderBookJournal.RESTED:
+
+			orderBook.mirrorAdd(time, exchangeOrderId, reader.getClientId(), reader.getClientOrderId(),
+					reader.getSide(), reader.getPrice(), reader.getSize(), reader.getTimeInForce(),
+					reader.getExpireTime());
+
+			break;
+
+		case OrderBookJournal.REDUCED:
+
+			orderBook.mirrorReduce(time, exchangeOrderId, reader.getSize());
+
+			break;
+
+		case OrderBookJournal.EXECUTED:
+
+			orderBook.mirrorExecute(time, exchangeOrderId, reader.getSize(), reader.getPrice());
+
+			orderBook.restoreCounters(reader.getExecuteId(), reader.getMatchId(), reader.getPrice());
+
+			break;
+
+		case OrderBookJournal.CANCELED:
+		case OrderBookJournal.ROLLED:
+		case OrderBookJournal.TERMINATED:
+
+			orderBook.mirrorCancel(time, exchangeOrderId);
+
+			break;
+
+		default:
+
+			// Accepted and rejected orders are not in the order book yet
+		}
+
+		events++;
+	}
+
+	/**
+	 * Applies every record the given reader can read.
+	 *
+	 * @param reader the reader
+	 * @return the number of records applied
+	 * @throws IOException if a segment cannot be read
+	 */
+	public long applyAll(OrderBookJournalReader reader) throws IOException {
+
+		long applied = 0;
+
+		while (reader.next()) {
+
+			apply(reader);
+
+			applied++;
+		}
+
+		return applied;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import com.coralblocks.coralme.util.ManagedObjectPool;
+import com.coralblocks.coralme.util.ObjectPoolStatistics;
+import com.coralblocks.coralpool.ObjectBuilder;
+
+/**
+ * <p>
+ * {@link Order} and {@link PriceLevel} pools shared by a group of order books,
+ * set through {@link OrderBookConfig#setPools(OrderBookPools)}. By default each
+ * order book creates its own pools up front, so thousands of mostly idle books
+ * hold thousands of idle orders. Books sharing pools take their orders and price
+ * levels from the same place, so memory follows the number of live orders
+ * instead of the number of books.
+ * </p>
+ *
+ * <p>
+ * The pools are not thread-safe: all the order books sharing them must be used
+ * by the same thread. An external listener of one of these books cannot operate
+ * on any of them, not only on its own book, because an order released by the
+ * book would otherwise be reused by another book while the listener still
+ * holds it.
+ * </p>
+ */
+public class OrderBookPools {
+
+	private final ManagedObjectPool<Order> orderPool;
+
+	private final ManagedObjectPool<PriceLevel> priceLevelPool;
+
+	private boolean externalListenerCallbackInProgress;
+
+	/**
+	 * Creates shared pools sized from the pool sizing statics of {@link OrderBook}.
+	 */
+	public OrderBookPools() {
+		this(OrderBook.ORDER_POOL_INITIAL_SIZE, OrderBook.PRICE_LEVEL_POOL_INITIAL_SIZE);
+	}
+
+	public OrderBookPools(int orderPoolInitialSize, int priceLevelPoolInitialSize) {
+		this(orderPoolInitialSize, priceLevelPoolInitialSize, OrderBook.ORDER_POOL_MAX_IDLE,
+				OrderBook.PRICE_LEVEL_POOL_MAX_IDLE);
+	}
+
+	/**
+	 * Creates shared pools.
+	 *
+	 * @param orderPoolInitialSize      the number of orders created up front
+	 * @param priceLevelPoolInitialSize the number of price levels created up front
+	 * @param orderPoolMaxIdle          the maximum number of idle orders kept
+	 * @param priceLevelPoolMaxIdle     the maximum number of idle price levels kept
+	 * @throws IllegalArgumentException if an initial size is not positive or a
+	 *                                  maximum idle count is negative
+	 */
+	public OrderBookPools(int orderPoolInitialSize, int priceLevelPoolInitialSize, int orderPoolMaxIdle,
+			int priceLevelPoolMaxIdle) {
+
+		if (orderPoolInitialSize <= 0) {
+			throw new IllegalArgumentException("orderPoolInitialSize must be positive: " + orderPoolInitialSize);
+		}
+
+		if (priceLevelPoolInitialSize <= 0) {
+			throw new IllegalArgumentException(
+					"priceLevelPoolInitialSize must be positive: " + priceLevelPoolInitialSize);
+		}
+
+		this.orderPool = newOrderPool(orderPoolInitialSize, orderPoolMaxIdle);
+
+		this.priceLevelPool = newPriceLevelPool(priceLevelPoolInitialSize, priceLevelPoolMaxIdle);
+	}
+
+	static ManagedObjectPool<Order> newOrderPool(int initialSize, int maxIdle) {
+
+		ObjectBuilder<Order> orderBuilder = new ObjectBuilder<Order>() {
+			@Override
+			public Order newInstance() {
+				return new Order();
+			}
+		};
+
+		return new ManagedObjectPool<Order>(initialSize, orderBuilder, maxIdle);
+	}
+
+	static ManagedObjectPool<PriceLevel> newPriceLevelPool(int initialSize, int maxIdle) {
+
+		ObjectBuilder<PriceLevel> priceLevelBuilder = new ObjectBuilder<PriceLevel>() {
+			@Override
+			public PriceLevel newInstance() {
+				return new PriceLevel();
+			}
+		};
+
+		return new ManagedObjectPool<PriceLevel>(initialSize, priceLevelBuilder, maxIdle);
+	}
+
+	/**
+	 * Creates orders and price levels up front, if needed, so that at least the
+	 * given numbers of them are ready to be reused.
+	 *
+	 * @param orders      the number of idle orders to make available
+	 * @param priceLevels the number of idle price levels to make available
+	 * @throws IllegalArgumentException if a number is negative
+	 */
+	public void prewarm(int orders, int priceLevels) {
+
+		orderPool.prewarm(orders);
+
+		priceLevelPool.prewarm(priceLevels);
+	}
+
+	public final ObjectPoolStatistics getOrderPoolStatistics() {
+		return orderPool;
+	}
+
+	public final ObjectPoolStatistics getPriceLevelPoolStatistics() {
+		return priceLevelPool;
+	}
+
+	/**
+	 * Resets the high-water marks and the growth event counts of both pools.
+	 */
+	public void resetStatistics() {
+
+		orderPool.resetStatistics();
+
+		priceLevelPool.resetStatistics();
+	}
+
+	final ManagedObjectPool<Order> orderPool() {
+		return orderPool;
+	}
+
+	final ManagedObjectPool<PriceLevel> priceLevelPool() {
+		return priceLevelPool;
+	}
+
+	final boolean isExternalListenerCallbackInProgress() {
+		return externalListenerCallbackInProgress;
+	}
+
+	final void setExternalListenerCallbackInProgress(boolean externalListenerCallbackInProgress) {
+		this.externalListenerCallbackInProgress = externalListenerCallbackInProgress;
+	}
+}
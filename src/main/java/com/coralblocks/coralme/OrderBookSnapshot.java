@@ -0,0 +1,454 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+/**
+ * <p>
+ * Writes the resting orders of an {@link OrderBook} to a compact binary
+ * snapshot and restores them into an empty order book. A restore rebuilds the
+ * price levels and orders directly, in price-time priority, without going
+ * through {@link OrderBook#createLimit} and without any callback, after
+ * pre-warming the pools to the size of the snapshot. The execution ID, the
+ * match ID and the last executed price are restored too, so the restored order
+ * book continues the numbering of the saved one.
+ * </p>
+ *
+ * <p>
+ * A snapshot is little-endian and laid out as follows:
+ * </p>
+ *
+ * <pre>
+ * header:  int magic, int version, short security length, security bytes (ISO-8859-1),
+ *          long execId, long matchId, long lastExecutedPrice, int orders, int bid levels, int ask levels
+ * level:   long price, int orders, followed by its orders, bids best first and then asks best first
+ * order:   long id, long clientId, long originalSize, long totalSize, long executedSize,
+ *          long acceptTime, long restTime, long reduceTime, long executeTime, long expireTime,
+ *          byte time in force, byte client order ID length (0x80 set for 16-bit chars), client order ID
+ * </pre>
+ *
+ * <p>
+ * The buffer a snapshot is written to is reused by the next write, so taking
+ * snapshots regularly does not allocate once the buffer is large enough. DAY
+ * orders are restored in price-time priority, which is then the order in which
+ * {@link OrderBook#expire()} cancels them.
+ * </p>
+ */
+public class OrderBookSnapshot {
+
+	public static final int MAGIC = 0x434D4553; // CMES
+
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 4 + 4 + 2 + 8 + 8 + 8 + 4 + 4 + 4;
+
+	private static final int LEVEL_SIZE = 8 + 4;
+
+	private static final int ORDER_SIZE = 10 * 8 + 1 + 1;
+
+	static final int MAX_ORDER_SIZE = ORDER_SIZE + 2 * Order.CLIENT_ORDER_ID_MAX_LENGTH;
+
+	private static final int WIDE_CLIENT_ORDER_ID = 0x80;
+
+	private ByteBuffer buffer;
+
+	private final StringBuilder clientOrderId = new StringBuilder(Order.CLIENT_ORDER_ID_MAX_LENGTH);
+
+	public OrderBookSnapshot() {
+		this(64 * 1024);
+	}
+
+	/**
+	 * Creates a snapshot writer and reader.
+	 *
+	 * @param initialCapacity the initial capacity of the reusable buffer, which
+	 *                        grows as needed
+	 */
+	public OrderBookSnapshot(int initialCapacity) {
+		this.buffer = ByteBuffer.allocate(Math.max(initialCapacity, HEADER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Writes a snapshot of the given order book to the reusable buffer.
+	 *
+	 * @param orderBook the order book
+	 * @return the reusable buffer, ready to be read, valid until the next write
+	 */
+	public ByteBuffer write(OrderBook orderBook) {
+
+		String security = orderBook.getSecurity();
+
+		buffer.clear();
+
+		ensureCapacity(HEADER_SIZE + security.length());
+
+		buffer.putInt(MAGIC);
+
+		buffer.putInt(VERSION);
+
+		buffer.putShort((short) security.length());
+
+		for (int i = 0; i < security.length(); i++) {
+			buffer.put((byte) security.charAt(i));
+		}
+
+		buffer.putLong(orderBook.getExecId());
+
+		buffer.putLong(orderBook.getMatchId());
+
+		buffer.putLong(orderBook.getLastExecutedPrice());
+
+		buffer.putInt(orderBook.getNumberOfOrders());
+
+		buffer.putInt(orderBook.getLevels(Side.BUY));
+
+		buffer.putInt(orderBook.getLevels(Side.SELL));
+
+		write(orderBook.head(Side.BUY));
+
+		write(orderBook.head(Side.SELL));
+
+		buffer.flip();
+
+		return buffer;
+	}
+
+	private void write(PriceLevel head) {
+
+		for (PriceLevel pl = head; pl != null; pl = pl.next) {
+
+			ensureCapacity(LEVEL_SIZE);
+
+			buffer.putLong(pl.getPrice());
+
+			buffer.putInt(pl.getOrders());
+
+			for (Order o = pl.head(); o != null; o = pl.next(o)) {
+				ensureCapacity(MAX_ORDER_SIZE);
+				writeOrder(buffer, o);
+			}
+		}
+	}
+
+	/**
+	 * Writes an order, which takes at most {@link #MAX_ORDER_SIZE} bytes.
+	 */
+	static void writeOrder(ByteBuffer buffer, Order order) {
+
+		int length = order.clientOrderIdLength();
+
+		boolean wide = false;
+
+		for (int i = 0; i < length; i++) {
+			if (order.clientOrderIdCharAt(i) > 0xFF) wide = true;
+		}
+
+		buffer.putLong(order.getId());
+
+		buffer.putLong(order.getClientId());
+
+		buffer.putLong(order.getOriginalSize());
+
+		buffer.putLong(order.getTotalSize());
+
+		buffer.putLong(order.getExecutedSize());
+
+		buffer.putLong(order.getAcceptTime());
+
+		buffer.putLong(order.getRestTime());
+
+		buffer.putLong(order.getReduceTime());
+
+		buffer.putLong(order.getExecuteTime());
+
+		buffer.putLong(order.getExpireTime());
+
+		buffer.put((byte) order.getTimeInForce().getChar());
+
+		buffer.put((byte) (wide ? length | WIDE_CLIENT_ORDER_ID : length));
+
+		for (int i = 0; i < length; i++) {
+			if (wide) {
+				buffer.putChar(order.clientOrderIdCharAt(i));
+			} else {
+				buffer.put((byte) order.clientOrderIdCharAt(i));
+			}
+		}
+	}
+
+	private void ensureCapacity(int bytes) {
+
+		if (buffer.remaining() >= bytes) return;
+
+		int capacity = buffer.capacity();
+
+		while (capacity - buffer.position() < bytes)
+			capacity <<= 1;
+
+		ByteBuffer newBuffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+
+		buffer.flip();
+
+		newBuffer.put(buffer);
+
+		buffer = newBuffer;
+	}
+
+	/**
+	 * Writes a snapshot of the given order book to a file, replacing it.
+	 *
+	 * @param orderBook the order book
+	 * @param file      the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(OrderBook orderBook, Path file) throws IOException {
+
+		ByteBuffer snapshot = write(orderBook);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			while (snapshot.hasRemaining())
+				channel.write(snapshot);
+		}
+	}
+
+	/**
+	 * Restores a snapshot file into an empty order book, reading the file through
+	 * a memory mapping.
+	 *
+	 * @param file      the snapshot file
+	 * @param orderBook the empty order book
+	 * @throws IOException              if the file cannot be read
+	 * @throws IllegalArgumentException if the order book is not empty or is for
+	 *                                  another security, or if the snapshot is
+	 *                                  invalid
+	 */
+	public void restore(Path file, OrderBook orderBook) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			restore(mapped, orderBook);
+		}
+	}
+
+	/**
+	 * Restores a snapshot into an empty order book. If the snapshot is invalid the
+	 * order book is left empty.
+	 *
+	 * @param snapshot  the snapshot, read from its position
+	 * @param orderBook the empty order book
+	 * @throws IllegalArgumentException if the order book is not empty or is for
+	 *                                  another security, or if the snapshot is
+	 *                                  invalid
+	 */
+	public void restore(ByteBuffer snapshot, OrderBook orderBook) {
+
+		if (!orderBook.isEmpty()) {
+			throw new IllegalArgumentException("Cannot restore into an order book that is not empty");
+		}
+
+		ByteBuffer in = snapshot.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+		try {
+			restoreHeaderAndOrders(in, orderBook);
+		} catch (BufferUnderflowException e) {
+			orderBook.unload();
+			throw new IllegalArgumentException("Truncated snapshot", e);
+		} catch (IllegalArgumentException e) {
+			orderBook.unload();
+			throw e;
+		}
+
+		snapshot.position(in.position());
+	}
+
+	private void restoreHeaderAndOrders(ByteBuffer in, OrderBook orderBook) {
+
+		int magic = in.getInt();
+
+		if (magic != MAGIC) throw new IllegalArgumentException("Not a snapshot: " + Integer.toHexString(magic));
+
+		int version = in.getInt();
+
+		if (version != VERSION) throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+
+		String security = orderBook.getSecurity();
+
+		int securityLength = in.getShort();
+
+		boolean sameSecurity = securityLength == security.length();
+
+		for (int i = 0; i < securityLength; i++) {
+			char c = (char) (in.get() & 0xFF);
+			if (sameSecurity && security.charAt(i) != c) sameSecurity = false;
+		}
+
+		if (!sameSecurity) throw new IllegalArgumentException("Snapshot is not for " + security);
+
+		long execId = in.getLong();
+
+		long matchId = in.getLong();
+
+		long lastExecutedPrice = in.getLong();
+
+		int orders = in.getInt();
+
+		int bidLevels = in.getInt();
+
+		int askLevels = in.getInt();
+
+		checkCounts(in, orders, bidLevels, askLevels);
+
+		orderBook.prewarm(orders, bidLevels + askLevels);
+
+		int restored = restoreLevels(in, orderBook, Side.BUY, bidLevels);
+
+		restored += restoreLevels(in, orderBook, Side.SELL, askLevels);
+
+		if (restored != orders) {
+			throw new IllegalArgumentException("Snapshot has " + restored + " orders instead of " + orders);
+		}
+
+		orderBook.restoreCounters(execId, matchId, lastExecutedPrice);
+	}
+
+	/**
+	 * Checks the counts of the header against the bytes left, before anything is
+	 * allocated for them. Every price level holds at least one order and every
+	 * order takes at least {@link #ORDER_SIZE} bytes.
+	 */
+	private static void checkCounts(ByteBuffer in, int orders, int bidLevels, int askLevels) {
+
+		if (orders < 0 || bidLevels < 0 || askLevels < 0) {
+			throw new IllegalArgumentException("Negative count in snapshot: " + orders + " orders, " + bidLevels
+					+ " bid levels, " + askLevels + " ask levels");
+		}
+
+		long levels = (long) bidLevels + askLevels;
+
+		if (levels > orders || levels * LEVEL_SIZE + (long) orders * ORDER_SIZE > in.remaining()) {
+			throw new IllegalArgumentException("Snapshot cannot hold " + orders + " orders in " + levels
+					+ " price levels with " + in.remaining() + " bytes left");
+		}
+	}
+
+	private int restoreLevels(ByteBuffer in, OrderBook orderBook, Side side, int levels) {
+
+		int restored = 0;
+
+		for (int level = 0; level < levels; level++) {
+
+			long price = in.getLong();
+
+			int orders = in.getInt();
+
+			if (orders <= 0) throw new IllegalArgumentException("Empty price level in snapshot: " + price);
+
+			PriceLevel priceLevel = orderBook.restorePriceLevel(side, price);
+
+			for (int i = 0; i < orders; i++) {
+				restoreOrder(in, orderBook, priceLevel);
+			}
+
+			restored += orders;
+		}
+
+		return restored;
+	}
+
+	private void restoreOrder(ByteBuffer in, OrderBook orderBook, PriceLevel priceLevel) {
+		readOrder(in, orderBook, priceLevel, null, 0, clientOrderId);
+	}
+
+	/**
+	 * Reads an order and restores it at the end of the given price level or, if
+	 * the price level is null, applies it as a checkpoint change at the given side
+	 * and price.
+	 */
+	static void readOrder(ByteBuffer in, OrderBook orderBook, PriceLevel priceLevel, Side side, long price,
+			StringBuilder clientOrderId) {
+
+		long id = in.getLong();
+
+		long clientId = in.getLong();
+
+		long originalSize = in.getLong();
+
+		long totalSize = in.getLong();
+
+		long executedSize = in.getLong();
+
+		long acceptTime = in.getLong();
+
+		long restTime = in.getLong();
+
+		long reduceTime = in.getLong();
+
+		long executeTime = in.getLong();
+
+		long expireTime = in.getLong();
+
+		char tifChar = (char) (in.get() & 0xFF);
+
+		TimeInForce tif = TimeInForce.ALL.get(tifChar);
+
+		if (tif == null || tif == TimeInForce.IOC) {
+			throw new IllegalArgumentException("Bad time in force in snapshot: " + tifChar);
+		}
+
+		int length = in.get() & 0xFF;
+
+		boolean wide = (length & WIDE_CLIENT_ORDER_ID) != 0;
+
+		length &= ~WIDE_CLIENT_ORDER_ID;
+
+		if (length > Order.CLIENT_ORDER_ID_MAX_LENGTH) {
+			throw new IllegalArgumentException("Bad client order ID length in snapshot: " + length);
+		}
+
+		if (totalSize - executedSize <= 0) {
+			throw new IllegalArgumentException("Order " + id + " in snapshot has no open size");
+		}
+
+		clientOrderId.setLength(0);
+
+		for (int i = 0; i < length; i++) {
+			clientOrderId.append(wide ? in.getChar() : (char) (in.get() & 0xFF));
+		}
+
+		if (priceLevel != null) {
+			orderBook.restoreOrder(priceLevel, clientId, clientOrderId, id, tif, expireTime, originalSize, totalSize,
+					executedSize, acceptTime, restTime, reduceTime, executeTime);
+		} else {
+			orderBook.applyCheckpointOrder(side, price, clientId, clientOrderId, id, tif, expireTime, originalSize,
+					totalSize, executedSize, acceptTime, restTime, reduceTime, executeTime);
+		}
+	}
+}
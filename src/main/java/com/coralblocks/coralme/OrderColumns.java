@@ -0,0 +1,638 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+/**
+ * <p>
+ * The resting orders of an {@link OrderBook} configured with
+ * {@link OrderBookConfig.OrderStorage#COLUMNS} or
+ * {@link OrderBookConfig.OrderStorage#OFF_HEAP_COLUMNS}, one slot per order in
+ * {@link Columns} of primitive values: 12 longs and 11 ints, 140 bytes per slot,
+ * on the Java heap or in a direct buffer.
+ * </p>
+ *
+ * <p>
+ * Besides the state of the order, a slot holds the links of the order in the
+ * queue of its price level and in the list of DAY orders, and the number of its
+ * price level in the level table of the order book. The exchange order IDs and
+ * the client order IDs are indexed by two chained hash tables whose buckets
+ * are two more columns, one bucket per slot, so the tables are resized with the
+ * slots. Free slots are linked through their queue link.
+ * </p>
+ *
+ * <p>
+ * A client order ID of up to 16 Latin-1 characters is packed into two longs, as
+ * in {@link Order}. A longer or wider one goes to a block of 16 longs, four
+ * characters per long, from a second table created the first time one is needed,
+ * and the number of the block takes the place of the first long.
+ * </p>
+ */
+final class OrderColumns {
+
+	static final int NONE = -1;
+
+	private static final int MIN_CAPACITY = 16;
+
+	private static final int INITIAL_BLOCKS = 16;
+
+	private static final int BLOCK_LONGS = Order.CLIENT_ORDER_ID_MAX_LENGTH / 4;
+
+	private static final TimeInForce[] TIME_IN_FORCES = TimeInForce.values();
+
+	private static final int ID = 0;
+
+	private static final int CLIENT_ID = 1;
+
+	private static final int CLIENT_ORDER_ID_LOW = 2; // or the number of its block
+
+	private static final int CLIENT_ORDER_ID_HIGH = 3;
+
+	private static final int PRICE = 4;
+
+	private static final int ORIGINAL_SIZE = 5;
+
+	private static final int TOTAL_SIZE = 6;
+
+	private static final int EXECUTED_SIZE = 7;
+
+	private static final int ACCEPT_TIME = 8;
+
+	private static final int REST_TIME = 9;
+
+	private static final int REDUCE_TIME = 10;
+
+	private static final int EXECUTE_TIME = 11;
+
+	private static final int LONG_COLUMNS = 12;
+
+	private static final int NEXT = 0;
+
+	private static final int PREV = 1;
+
+	private static final int DAY_NEXT = 2;
+
+	private static final int DAY_PREV = 3;
+
+	private static final int LEVEL = 4;
+
+	private static final int ID_BUCKET = 5;
+
+	private static final int ID_CHAIN = 6;
+
+	private static final int CLIENT_BUCKET = 7;
+
+	private static final int CLIENT_CHAIN = 8;
+
+	private static final int CLIENT_HASH = 9;
+
+	private static final int FLAGS = 10;
+
+	private static final int INT_COLUMNS = 11;
+
+	private static final int LIVE = 1;
+
+	private static final int SELL = 1 << 1;
+
+	private static final int INLINE = 1 << 2;
+
+	private static final int TIF_SHIFT = 4;
+
+	private static final int LENGTH_SHIFT = 8;
+
+	private final boolean offHeap;
+
+	private final Columns columns;
+
+	private Columns blocks; // created for the first long or wide client order ID
+
+	private int mask;
+
+	private int size;
+
+	private int slots; // the slots handed out so far, live or free
+
+	private int freeSlot = NONE;
+
+	private int usedBlocks;
+
+	private int freeBlock = NONE;
+
+	private int dayHead = NONE;
+
+	private int dayTail = NONE;
+
+	private int dayOrders;
+
+	/**
+	 * Creates the columns for the given number of orders.
+	 *
+	 * @param expectedOrders the number of resting orders to make room for
+	 * @param offHeap        whether to keep the columns in {@link DirectColumns}
+	 *                       instead of {@link HeapColumns}
+	 */
+	OrderColumns(int expectedOrders, boolean offHeap) {
+
+		int capacity = MIN_CAPACITY;
+
+		while (capacity < expectedOrders && capacity < 1 << 30)
+			capacity <<= 1;
+
+		this.offHeap = offHeap;
+
+		this.columns = newColumns(LONG_COLUMNS, INT_COLUMNS, capacity);
+
+		this.mask = capacity - 1;
+
+		clearBuckets();
+	}
+
+	private Columns newColumns(int longColumns, int intColumns, int capacity) {
+
+		return offHeap ? new DirectColumns(longColumns, intColumns, capacity)
+				: new HeapColumns(longColumns, intColumns, capacity);
+	}
+
+	final int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of slots handed out so far. Every live slot is below it.
+	 */
+	final int slots() {
+		return slots;
+	}
+
+	final int capacity() {
+		return columns.capacity();
+	}
+
+	/**
+	 * Makes room for at least the given number of resting orders.
+	 */
+	final void ensureCapacity(int orders) {
+
+		int capacity = columns.capacity();
+
+		while (capacity < orders && capacity < 1 << 30)
+			capacity <<= 1;
+
+		if (capacity != columns.capacity()) grow(capacity);
+	}
+
+	/**
+	 * Stores a resting order in a free slot and indexes it.
+	 *
+	 * @param order the order
+	 * @param level the number of its price level
+	 * @return the slot
+	 */
+	final int add(Order order, int level) {
+
+		if (freeSlot == NONE && slots == columns.capacity()) grow(slots << 1);
+
+		int slot;
+
+		if (freeSlot != NONE) {
+
+			slot = freeSlot;
+
+			freeSlot = columns.getInt(NEXT, slot);
+
+		} else {
+
+			slot = slots++;
+		}
+
+		Columns c = columns;
+
+		c.putLong(ID, slot, order.getId());
+
+		c.putLong(CLIENT_ID, slot, order.getClientId());
+
+		c.putLong(PRICE, slot, order.getPrice());
+
+		c.putLong(ORIGINAL_SIZE, slot, order.getOriginalSize());
+
+		c.putLong(ACCEPT_TIME, slot, order.getAcceptTime());
+
+		int length = order.clientOrderIdLength();
+
+		int flags = LIVE | (order.getSide() == Side.SELL ? SELL : 0) | order.getTimeInForce().ordinal() << TIF_SHIFT
+				| length << LENGTH_SHIFT;
+
+		if (order.isClientOrderIdInline()) {
+
+			flags |= INLINE;
+
+			c.putLong(CLIENT_ORDER_ID_LOW, slot, order.clientOrderIdLow());
+
+			c.putLong(CLIENT_ORDER_ID_HIGH, slot, order.clientOrderIdHigh());
+
+		} else {
+
+			int block = allocateBlock();
+
+			c.putLong(CLIENT_ORDER_ID_LOW, slot, block);
+
+			for (int i = 0; i < length; i += 4) {
+
+				long word = 0;
+
+				for (int j = 0; j < 4 && i + j < length; j++) {
+					word |= (long) order.clientOrderIdCharAt(i + j) << (j << 4);
+				}
+
+				blocks.putLong(i >> 2, block, word);
+			}
+		}
+
+		c.putInt(FLAGS, slot, flags);
+
+		c.putInt(LEVEL, slot, level);
+
+		c.putInt(NEXT, slot, NONE);
+
+		c.putInt(PREV, slot, NONE);
+
+		c.putInt(CLIENT_HASH, slot, ClientOrderIdIndex.hash(order));
+
+		update(order, slot);
+
+		link(slot);
+
+		if (order.getTimeInForce() == TimeInForce.DAY) {
+
+			c.putInt(DAY_PREV, slot, dayTail);
+
+			c.putInt(DAY_NEXT, slot, NONE);
+
+			if (dayTail == NONE) {
+
+				dayHead = slot;
+
+			} else {
+
+				c.putInt(DAY_NEXT, dayTail, slot);
+			}
+
+			dayTail = slot;
+
+			dayOrders++;
+		}
+
+		size++;
+
+		return slot;
+	}
+
+	/**
+	 * Writes the sizes and times that change while an order rests.
+	 */
+	final void update(Order order, int slot) {
+
+		Columns c = columns;
+
+		c.putLong(TOTAL_SIZE, slot, order.getTotalSize());
+
+		c.putLong(EXECUTED_SIZE, slot, order.getExecutedSize());
+
+		c.putLong(REST_TIME, slot, order.getRestTime());
+
+		c.putLong(REDUCE_TIME, slot, order.getReduceTime());
+
+		c.putLong(EXECUTE_TIME, slot, order.getExecuteTime());
+	}
+
+	/**
+	 * Removes the order in the given slot from the indexes and frees the slot. The
+	 * order must have left the queue of its price level.
+	 */
+	final void remove(int slot) {
+
+		Columns c = columns;
+
+		int flags = c.getInt(FLAGS, slot);
+
+		unlink(ID_BUCKET, ID_CHAIN, idBucket(c.getLong(ID, slot)), slot);
+
+		unlink(CLIENT_BUCKET, CLIENT_CHAIN, c.getInt(CLIENT_HASH, slot) & mask, slot);
+
+		if (tif(flags) == TimeInForce.DAY) {
+
+			int prev = c.getInt(DAY_PREV, slot);
+
+			int next = c.getInt(DAY_NEXT, slot);
+
+			if (prev == NONE) {
+
+				dayHead = next;
+
+			} else {
+
+				c.putInt(DAY_NEXT, prev, next);
+			}
+
+			if (next == NONE) {
+
+				dayTail = prev;
+
+			} else {
+
+				c.putInt(DAY_PREV, next, prev);
+			}
+
+			dayOrders--;
+		}
+
+		if ((flags & INLINE) == 0) {
+
+			int block = (int) c.getLong(CLIENT_ORDER_ID_LOW, slot);
+
+			blocks.putLong(0, block, freeBlock);
+
+			freeBlock = block;
+		}
+
+		c.putInt(FLAGS, slot, 0);
+
+		// Free slots are linked through their next link
+		c.putInt(NEXT, slot, freeSlot);
+
+		freeSlot = slot;
+
+		size--;
+	}
+
+	final boolean isLive(int slot) {
+		return slot >= 0 && slot < slots && (columns.getInt(FLAGS, slot) & LIVE) != 0;
+	}
+
+	/**
+	 * Returns the slot of the resting order with the given exchange order ID, or
+	 * {@link #NONE}.
+	 */
+	final int find(long id) {
+
+		Columns c = columns;
+
+		for (int slot = c.getInt(ID_BUCKET, idBucket(id)); slot != NONE; slot = c.getInt(ID_CHAIN, slot)) {
+			if (c.getLong(ID, slot) == id) return slot;
+		}
+
+		return NONE;
+	}
+
+	/**
+	 * Returns the slot of a resting order with the given client ID and client
+	 * order ID, or {@link #NONE}.
+	 */
+	final int find(long clientId, CharSequence clientOrderId) {
+
+		Columns c = columns;
+
+		int hash = ClientOrderIdIndex.hash(clientId, clientOrderId);
+
+		for (int slot = c.getInt(CLIENT_BUCKET, hash & mask); slot != NONE; slot = c.getInt(CLIENT_CHAIN, slot)) {
+
+			if (c.getInt(CLIENT_HASH, slot) == hash && c.getLong(CLIENT_ID, slot) == clientId
+					&& clientOrderIdEquals(slot, clientOrderId)) {
+				return slot;
+			}
+		}
+
+		return NONE;
+	}
+
+	private boolean clientOrderIdEquals(int slot, CharSequence clientOrderId) {
+
+		int length = clientOrderIdLength(slot);
+
+		if (clientOrderId.length() != length) return false;
+
+		for (int i = 0; i < length; i++) {
+			if (clientOrderIdCharAt(slot, i) != clientOrderId.charAt(i)) return false;
+		}
+
+		return true;
+	}
+
+	final int next(int slot) {
+		return columns.getInt(NEXT, slot);
+	}
+
+	final int prev(int slot) {
+		return columns.getInt(PREV, slot);
+	}
+
+	final void setNext(int slot, int next) {
+		columns.putInt(NEXT, slot, next);
+	}
+
+	final void setPrev(int slot, int prev) {
+		columns.putInt(PREV, slot, prev);
+	}
+
+	/**
+	 * Returns the slot of the oldest resting DAY order, or {@link #NONE}.
+	 */
+	final int firstDayOrder() {
+		return dayHead;
+	}
+
+	final int dayOrders() {
+		return dayOrders;
+	}
+
+	final int level(int slot) {
+		return columns.getInt(LEVEL, slot);
+	}
+
+	final long id(int slot) {
+		return columns.getLong(ID, slot);
+	}
+
+	final long clientId(int slot) {
+		return columns.getLong(CLIENT_ID, slot);
+	}
+
+	final long price(int slot) {
+		return columns.getLong(PRICE, slot);
+	}
+
+	final long originalSize(int slot) {
+		return columns.getLong(ORIGINAL_SIZE, slot);
+	}
+
+	final long totalSize(int slot) {
+		return columns.getLong(TOTAL_SIZE, slot);
+	}
+
+	final long executedSize(int slot) {
+		return columns.getLong(EXECUTED_SIZE, slot);
+	}
+
+	final long openSize(int slot) {
+		return columns.getLong(TOTAL_SIZE, slot) - columns.getLong(EXECUTED_SIZE, slot);
+	}
+
+	final long acceptTime(int slot) {
+		return columns.getLong(ACCEPT_TIME, slot);
+	}
+
+	final long restTime(int slot) {
+		return columns.getLong(REST_TIME, slot);
+	}
+
+	final long reduceTime(int slot) {
+		return columns.getLong(REDUCE_TIME, slot);
+	}
+
+	final long executeTime(int slot) {
+		return columns.getLong(EXECUTE_TIME, slot);
+	}
+
+	final Side side(int slot) {
+		return (columns.getInt(FLAGS, slot) & SELL) != 0 ? Side.SELL : Side.BUY;
+	}
+
+	final TimeInForce timeInForce(int slot) {
+		return tif(columns.getInt(FLAGS, slot));
+	}
+
+	private static TimeInForce tif(int flags) {
+		return TIME_IN_FORCES[(flags >>> TIF_SHIFT) & 0xF];
+	}
+
+	final int clientOrderIdLength(int slot) {
+		return columns.getInt(FLAGS, slot) >>> LENGTH_SHIFT;
+	}
+
+	final boolean isClientOrderIdInline(int slot) {
+		return (columns.getInt(FLAGS, slot) & INLINE) != 0;
+	}
+
+	final long clientOrderIdLow(int slot) {
+		return columns.getLong(CLIENT_ORDER_ID_LOW, slot);
+	}
+
+	final long clientOrderIdHigh(int slot) {
+		return columns.getLong(CLIENT_ORDER_ID_HIGH, slot);
+	}
+
+	final char clientOrderIdCharAt(int slot, int index) {
+
+		if (isClientOrderIdInline(slot)) {
+
+			long word = columns.getLong(index < 8 ? CLIENT_ORDER_ID_LOW : CLIENT_ORDER_ID_HIGH, slot);
+
+			return (char) ((word >>> ((index & 7) << 3)) & 0xFF);
+		}
+
+		int block = (int) columns.getLong(CLIENT_ORDER_ID_LOW, slot);
+
+		return (char) (blocks.getLong(index >> 2, block) >>> ((index & 3) << 4));
+	}
+
+	private int allocateBlock() {
+
+		if (blocks == null) blocks = newColumns(BLOCK_LONGS, 0, INITIAL_BLOCKS);
+
+		if (freeBlock != NONE) {
+
+			int block = freeBlock;
+
+			freeBlock = (int) blocks.getLong(0, block);
+
+			return block;
+		}
+
+		if (usedBlocks == blocks.capacity()) blocks.grow(usedBlocks << 1);
+
+		return usedBlocks++;
+	}
+
+	private int idBucket(long id) {
+
+		long h = id * 0x9E3779B97F4A7C15L;
+
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	private void link(int slot) {
+
+		Columns c = columns;
+
+		int bucket = idBucket(c.getLong(ID, slot));
+
+		c.putInt(ID_CHAIN, slot, c.getInt(ID_BUCKET, bucket));
+
+		c.putInt(ID_BUCKET, bucket, slot);
+
+		bucket = c.getInt(CLIENT_HASH, slot) & mask;
+
+		c.putInt(CLIENT_CHAIN, slot, c.getInt(CLIENT_BUCKET, bucket));
+
+		c.putInt(CLIENT_BUCKET, bucket, slot);
+	}
+
+	private void unlink(int bucketColumn, int chainColumn, int bucket, int slot) {
+
+		Columns c = columns;
+
+		int next = c.getInt(chainColumn, slot);
+
+		int s = c.getInt(bucketColumn, bucket);
+
+		if (s == slot) {
+
+			c.putInt(bucketColumn, bucket, next);
+
+			return;
+		}
+
+		while (c.getInt(chainColumn, s) != slot)
+			s = c.getInt(chainColumn, s);
+
+		c.putInt(chainColumn, s, next);
+	}
+
+	private void grow(int capacity) {
+
+		columns.grow(capacity);
+
+		mask = capacity - 1;
+
+		clearBuckets();
+
+		for (int slot = 0; slot < slots; slot++) {
+			if (isLive(slot)) link(slot);
+		}
+	}
+
+	private void clearBuckets() {
+
+		for (int bucket = 0; bucket < columns.capacity(); bucket++) {
+
+			columns.putInt(ID_BUCKET, bucket, NONE);
+
+			columns.putInt(CLIENT_BUCKET, bucket, NONE);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.util.Iterator;
+
+/**
+ * Maps the exchange order IDs of an {@link OrderBook} to its resting
+ * {@link Order}s. The default index is an open-addressing hash table that works
+ * for any ID scheme. A {@link SequentialOrderIndex} is faster when IDs are
+ * assigned in increasing order.
+ *
+ * <p>
+ * An index passed to an {@link OrderBook} is a template. Each order book creates
+ * its own empty instance from it, so the same template can configure any number
+ * of order books.
+ * </p>
+ */
+public abstract class OrderIndex {
+
+	OrderIndex() {
+
+	}
+
+	/**
+	 * Creates an empty index with the same configuration as this one.
+	 *
+	 * @return a new index owned by a single order book
+	 */
+	abstract OrderIndex newInstance();
+
+	/**
+	 * Creates an empty index with the same configuration as this one, sized for
+	 * the given number of resting orders if the index allocates up front.
+	 *
+	 * @param expectedOrders the number of orders expected to rest at the same time
+	 * @return a new index owned by a single order book
+	 */
+	OrderIndex newInstance(int expectedOrders) {
+		return newInstance();
+	}
+
+	abstract int size();
+
+	abstract boolean isEmpty();
+
+	abstract boolean containsKey(long id);
+
+	abstract Order get(long id);
+
+	/**
+	 * Maps the ID to the order, replacing any previous mapping.
+	 *
+	 * @param id    the exchange order ID
+	 * @param order the order, never null
+	 * @return the previous order for the ID, or null
+	 */
+	abstract Order put(long id, Order order);
+
+	abstract Order remove(long id);
+
+	/**
+	 * Returns a cached iterator over every indexed order, reset to the beginning.
+	 * Orders may be removed while iterating, but only through
+	 * {@link Iterator#remove()}.
+	 *
+	 * @return the cached, reset iterator
+	 */
+	abstract Iterator<Order> iterator();
+}
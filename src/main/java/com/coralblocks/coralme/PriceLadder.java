@@ -0,0 +1,306 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import com.coralblocks.coralme.Order.Side;
+
+/**
+ * A {@link PriceLevelIndex} that stores the levels of each side in a
+ * tick-indexed array, so finding, adding and removing a level inside the array
+ * takes constant time no matter how deep the book is.
+ *
+ * <p>
+ * Each side has its own window of <code>windowSize</code> consecutive ticks.
+ * The window is centered on the best price the first time the side is used and
+ * re-centered whenever both the best price and a new price have moved outside
+ * of it. Prices outside the window, and prices that are not a multiple of the
+ * tick size, fall back to walking the linked levels: from the worst indexed
+ * level for prices deeper than the window, and from the best level otherwise.
+ * </p>
+ *
+ * <p>
+ * Finding the neighbors of an empty tick scans an occupancy bitmap, one long
+ * word for every 64 ticks, so the window size should cover the range where most
+ * orders rest without being much larger than that.
+ * </p>
+ */
+public class PriceLadder extends PriceLevelIndex {
+
+	private final long tickSize;
+
+	private final int windowSize;
+
+	private final long span;
+
+	private final PriceLevel[][] slots;
+
+	private final long[][] occupied;
+
+	private final long[] base = new long[2];
+
+	private final boolean[] positioned = new boolean[2];
+
+	/**
+	 * Creates a price ladder template.
+	 *
+	 * @param tickSize   the price increment between two consecutive slots, in the
+	 *                   same long representation used for prices
+	 * @param windowSize the number of ticks indexed on each side
+	 * @throws IllegalArgumentException if the tick size or the window size is not
+	 *                                  positive, or if the window spans more
+	 *                                  prices than a long can represent
+	 */
+	public PriceLadder(long tickSize, int windowSize) {
+
+		if (tickSize <= 0) throw new IllegalArgumentException("tickSize must be positive: " + tickSize);
+
+		if (windowSize <= 0) throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+
+		if (tickSize > Long.MAX_VALUE / windowSize) {
+			throw new IllegalArgumentException(
+					"Window is too large: tickSize=" + tickSize + " windowSize=" + windowSize);
+		}
+
+		this.tickSize = tickSize;
+
+		this.windowSize = windowSize;
+
+		this.span = tickSize * windowSize;
+
+		this.slots = null; // a template does not index anything
+
+		this.occupied = null;
+	}
+
+	private PriceLadder(PriceLadder template) {
+
+		this.tickSize = template.tickSize;
+
+		this.windowSize = template.windowSize;
+
+		this.span = template.span;
+
+		this.slots = new PriceLevel[2][windowSize];
+
+		this.occupied = new long[2][(windowSize + 63) >>> 6];
+	}
+
+	public final long getTickSize() {
+
+		return tickSize;
+	}
+
+	public final int getWindowSize() {
+
+		return windowSize;
+	}
+
+	@Override
+	PriceLevelIndex newInstance() {
+		return new PriceLadder(this);
+	}
+
+	@Override
+	PriceLevel find(PriceLevel head, Side side, long price) {
+
+		int index = side.index();
+
+		int slot = slotOf(index, price);
+
+		if (slot < 0 && isOnGrid(price) && (head == null || slotOf(index, head.getPrice()) < 0)) {
+
+			// The market moved away from the window, so follow it
+			center(head, side, head != null && isOnGrid(head.getPrice()) ? head.getPrice() : price);
+
+			slot = slotOf(index, price);
+		}
+
+		if (slot >= 0) {
+
+			PriceLevel[] slots = this.slots[index];
+
+			PriceLevel priceLevel = slots[slot];
+
+			if (priceLevel != null) return priceLevel;
+
+			int worse = side.isBuy() ? highestBelow(index, slot) : lowestAbove(index, slot);
+
+			if (worse >= 0) {
+
+				priceLevel = slots[worse];
+
+				// Off-grid levels are linked but not indexed, so one may sit in between
+				while (priceLevel.prev != null && side.isInside(price, priceLevel.prev.getPrice())) {
+					priceLevel = priceLevel.prev;
+				}
+
+				return priceLevel;
+			}
+
+			int better = side.isBuy() ? lowestAbove(index, slot) : highestBelow(index, slot);
+
+			if (better >= 0) return LinearPriceLevelIndex.findFrom(slots[better].next, side, price);
+
+		} else if (positioned[index] && isWorseThanWindow(index, side, price)) {
+
+			int worst = side.isBuy() ? lowestAbove(index, -1) : highest(index);
+
+			if (worst >= 0) return LinearPriceLevelIndex.findFrom(slots[index][worst], side, price);
+		}
+
+		return LinearPriceLevelIndex.findFrom(head, side, price);
+	}
+
+	@Override
+	void added(PriceLevel priceLevel) {
+
+		int index = priceLevel.getSide().index();
+
+		int slot = slotOf(index, priceLevel.getPrice());
+
+		if (slot >= 0) {
+
+			slots[index][slot] = priceLevel;
+
+			occupied[index][slot >>> 6] |= 1L << slot;
+		}
+	}
+
+	@Override
+	void removed(PriceLevel priceLevel) {
+
+		int index = priceLevel.getSide().index();
+
+		int slot = slotOf(index, priceLevel.getPrice());
+
+		if (slot >= 0 && slots[index][slot] == priceLevel) {
+
+			slots[index][slot] = null;
+
+			occupied[index][slot >>> 6] &= ~(1L << slot);
+		}
+	}
+
+	private boolean isOnGrid(long price) {
+
+		return Math.floorMod(price, tickSize) == 0;
+	}
+
+	private int slotOf(int index, long price) {
+
+		if (!positioned[index] || price < base[index]) return -1;
+
+		long offset = price - base[index]; // may wrap, but is exact as an unsigned value
+
+		if (Long.compareUnsigned(offset, span) >= 0 || offset % tickSize != 0) return -1;
+
+		return (int) (offset / tickSize);
+	}
+
+	private boolean isWorseThanWindow(int index, Side side, long price) {
+
+		if (side.isBuy()) return price < base[index];
+
+		return price >= base[index] && Long.compareUnsigned(price - base[index], span) >= 0;
+	}
+
+	private void center(PriceLevel head, Side side, long price) {
+
+		long half = (windowSize >>> 1) * tickSize;
+
+		if (price < Long.MIN_VALUE + half) return; // cannot place the window, keep falling back
+
+		int index = side.index();
+
+		PriceLevel[] slots = this.slots[index];
+
+		long[] occupied = this.occupied[index];
+
+		for (int w = 0; w < occupied.length; w++) {
+
+			for (long word = occupied[w]; word != 0; word &= word - 1) {
+				slots[(w << 6) + Long.numberOfTrailingZeros(word)] = null;
+			}
+
+			occupied[w] = 0;
+		}
+
+		base[index] = price - half;
+
+		positioned[index] = true;
+
+		for (PriceLevel pl = head; pl != null; pl = pl.next) {
+
+			if (isWorseThanWindow(index, side, pl.getPrice())) break;
+
+			added(pl);
+		}
+	}
+
+	private int highestBelow(int index, int slot) {
+
+		long[] occupied = this.occupied[index];
+
+		int w = slot >>> 6;
+
+		long word = occupied[w] & ((1L << slot) - 1);
+
+		while (word == 0) {
+
+			if (--w < 0) return -1;
+
+			word = occupied[w];
+		}
+
+		return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+	}
+
+	private int lowestAbove(int index, int slot) {
+
+		int next = slot + 1;
+
+		if (next >= windowSize) return -1;
+
+		long[] occupied = this.occupied[index];
+
+		int w = next >>> 6;
+
+		long word = occupied[w] & (-1L << next);
+
+		while (word == 0) {
+
+			if (++w == occupied.length) return -1;
+
+			word = occupied[w];
+		}
+
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	private int highest(int index) {
+
+		long[] occupied = this.occupied[index];
+
+		for (int w = occupied.length - 1; w >= 0; w--) {
+
+			long word = occupied[w];
+
+			if (word != 0) return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+		}
+
+		return -1;
+	}
+}
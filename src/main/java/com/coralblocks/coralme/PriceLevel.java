@@ -15,13 +15,50 @@
  */
 package com.coralblocks.coralme;
 
+import java.util.Arrays;
+
 import com.coralblocks.coralme.Order.CancelReason;
 import com.coralblocks.coralme.Order.ExecuteSide;
 import com.coralblocks.coralme.Order.RejectReason;
 import com.coralblocks.coralme.Order.Side;
 
+/**
+ * <p>
+ * The orders resting at one price on one side of an {@link OrderBook}, in time
+ * priority.
+ * </p>
+ *
+ * <p>
+ * By default the orders are linked to each other. When the order book is
+ * configured with {@link OrderBookConfig#setArrayBackedPriceLevels(boolean)}, they
+ * are kept in an array of slots instead, so sweeping a deep level reads the
+ * orders from consecutive slots rather than following one link per order. A
+ * canceled order leaves an empty slot behind; the slots are compacted when the
+ * array is full and at least half of them are empty, otherwise the array doubles.
+ * The array is kept when the level is returned to its pool, so a level that
+ * has been reused a few times produces no garbage.
+ * </p>
+ *
+ * <p>
+ * When the order book is configured with
+ * {@link OrderBookConfig#setTrackQueuePositions(boolean)}, the level also keeps
+ * two Fenwick trees over the slots, one of open sizes and one of order counts,
+ * updated by the same callbacks that maintain {@link #getSize()}. They answer how
+ * much size and how many orders are ahead of an order in O(log n) instead of a
+ * walk from the head.
+ * </p>
+ *
+ * <p>
+ * When the order book keeps its resting orders in columns, see
+ * {@link OrderBookConfig#setOrderStorage(OrderBookConfig.OrderStorage)}, the level
+ * links the slots of its orders through the columns instead, and returns its
+ * orders as cursors of the order book.
+ * </p>
+ */
 public class PriceLevel {
 
+	private static final int QUEUE_INITIAL_CAPACITY = 8;
+
 	private long price;
 
 	private Side side;
@@ -36,17 +73,45 @@ public class PriceLevel {
 
 	private Order tail = null;
 
+	private boolean arrayBacked;
+
+	private Order[] queue;
+
+	private int queueStart; // the slot of the head when not empty
+
+	private int queueEnd; // one past the slot of the tail when not empty
+
+	private boolean trackQueuePositions;
+
+	private long[] sizeTree; // Fenwick tree of open sizes, 1-based
+
+	private int[] countTree; // Fenwick tree of order counts, 1-based
+
+	private OrderBook orderBook; // the order book whose columns hold the orders, or null
+
+	private OrderColumns columns;
+
+	private int headSlot = OrderColumns.NONE;
+
+	private int tailSlot = OrderColumns.NONE;
+
+	int tableIndex = -1; // the number of this level in the level table of its order book, for the columns
+
 	private final OrderListener internalOrderListener = new InternalOrderListener();
 
 	PriceLevel next = null;
 
 	PriceLevel prev = null;
 
+	MarketByPricePublisher marketByPrice; // notified when the size or the orders change
+
+	int marketByPriceIndex = -1; // the slot of this level in the pending changes, or -1 if unchanged
+
 	PriceLevel() {
 
 	}
 
-	void init(String security, Side side, long price) {
+	void init(String security, Side side, long price, boolean arrayBacked, boolean trackQueuePositions) {
 
 		this.security = security;
 
@@ -61,6 +126,59 @@ public class PriceLevel {
 		this.head = this.tail = null;
 
 		this.next = this.prev = null;
+
+		this.orderBook = null;
+
+		this.columns = null;
+
+		this.headSlot = this.tailSlot = OrderColumns.NONE;
+
+		this.tableIndex = -1;
+
+		this.marketByPriceIndex = -1;
+
+		this.arrayBacked = arrayBacked;
+
+		this.queueStart = this.queueEnd = 0;
+
+		if (arrayBacked && queue == null) queue = new Order[QUEUE_INITIAL_CAPACITY];
+
+		this.trackQueuePositions = trackQueuePositions;
+
+		if (trackQueuePositions) {
+
+			// Both trees are all zeros here, as every order left them when it was removed
+			int capacity = arrayBacked ? queue.length : QUEUE_INITIAL_CAPACITY;
+
+			if (sizeTree == null || (arrayBacked && sizeTree.length != capacity + 1)) {
+
+				sizeTree = new long[capacity + 1];
+
+				countTree = new int[capacity + 1];
+			}
+		}
+	}
+
+	/**
+	 * Keeps the orders of this level, just initialized, in the columns of the
+	 * given order book.
+	 *
+	 * @param orderBook  the order book
+	 * @param columns    its columns
+	 * @param tableIndex the number of this level in its level table
+	 */
+	final void useColumns(OrderBook orderBook, OrderColumns columns, int tableIndex) {
+
+		this.orderBook = orderBook;
+
+		this.columns = columns;
+
+		this.tableIndex = tableIndex;
+	}
+
+	private int slotCapacity() {
+
+		return arrayBacked ? queue.length : countTree.length - 1;
 	}
 
 	public final long getPrice() {
@@ -90,17 +208,123 @@ public class PriceLevel {
 
 	public final Order head() {
 
+		if (columns != null) return orders == 0 ? null : orderBook.order(headSlot);
+
+		if (arrayBacked) return orders == 0 ? null : queue[queueStart];
+
 		return head;
 	}
 
 	public final Order tail() {
 
+		if (columns != null) return orders == 0 ? null : orderBook.order(tailSlot);
+
+		if (arrayBacked) return orders == 0 ? null : queue[queueEnd - 1];
+
 		return tail;
 	}
 
+	final int headSlot() {
+		return headSlot;
+	}
+
+	final int tailSlot() {
+		return tailSlot;
+	}
+
+	/**
+	 * Returns the order behind the given one in time priority, or null if it is the
+	 * tail. The given order may have just been removed from this level. With
+	 * columns, the given cursor is pointed to the order behind and returned.
+	 */
+	final Order next(Order order) {
+
+		if (columns != null) return order.slot < 0 ? null : bind(order, columns.next(order.slot));
+
+		if (!arrayBacked) return order.next;
+
+		for (int i = order.queueIndex + 1; i < queueEnd; i++) {
+
+			Order o = queue[i];
+
+			if (o != null) return o;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the order ahead of the given one in time priority, or null if it is
+	 * the head. The given order may have just been removed from this level. With
+	 * columns, the given cursor is pointed to the order ahead and returned.
+	 */
+	final Order prev(Order order) {
+
+		if (columns != null) return order.slot < 0 ? null : bind(order, columns.prev(order.slot));
+
+		if (!arrayBacked) return order.prev;
+
+		for (int i = Math.min(order.queueIndex, queueEnd) - 1; i >= queueStart; i--) {
+
+			Order o = queue[i];
+
+			if (o != null) return o;
+		}
+
+		return null;
+	}
+
+	private Order bind(Order cursor, int slot) {
+
+		return slot == OrderColumns.NONE ? null : orderBook.bind(cursor, slot);
+	}
+
+	/**
+	 * Adds the internal listener of this level to a cursor pointed to one of its
+	 * orders.
+	 */
+	final void attach(Order cursor) {
+
+		cursor.addInternalListener(internalOrderListener);
+	}
+
 	void addOrder(Order order) {
 
-		if (head == null) {
+		if (arrayBacked || trackQueuePositions) {
+
+			if (queueEnd == slotCapacity()) makeRoom();
+
+			if (arrayBacked) queue[queueEnd] = order;
+
+			order.queueIndex = queueEnd++;
+
+			if (trackQueuePositions) add(countTree, order.queueIndex, 1); // its size is added when it rests
+		}
+
+		if (columns != null) {
+
+			int slot = order.slot;
+
+			columns.setPrev(slot, tailSlot);
+
+			columns.setNext(slot, OrderColumns.NONE);
+
+			if (tailSlot == OrderColumns.NONE) {
+
+				headSlot = slot;
+
+			} else {
+
+				columns.setNext(tailSlot, slot);
+			}
+
+			tailSlot = slot;
+
+		} else if (arrayBacked) {
+
+			// NOOP, the slot holds the order
+
+		} else if (head == null) {
 
 			head = tail = order;
 
@@ -122,8 +346,308 @@ public class PriceLevel {
 		order.addInternalListener(internalOrderListener);
 	}
 
+	/**
+	 * Adds an order that rests without a rest callback, counting its open size
+	 * right away.
+	 *
+	 * @param order the order, already resting
+	 */
+	final void addRestedOrder(Order order) {
+
+		addOrder(order);
+
+		size += order.getOpenSize();
+
+		if (trackQueuePositions) add(sizeTree, order.queueIndex, order.getOpenSize());
+
+		if (marketByPrice != null) marketByPrice.levelChanged(this);
+	}
+
+	/**
+	 * Removes a resting order that leaves without a cancel callback, with its open
+	 * size.
+	 *
+	 * @param order the resting order
+	 */
+	final void removeRestingOrder(Order order) {
+
+		size -= order.getOpenSize();
+
+		if (trackQueuePositions) add(sizeTree, order.queueIndex, -order.getOpenSize());
+
+		removeOrder(order);
+
+		if (marketByPrice != null) marketByPrice.levelChanged(this);
+	}
+
+	/**
+	 * Updates the size of this price level after the open size of a resting order
+	 * was changed in place without any callback, keeping its time priority.
+	 *
+	 * @param order            the resting order
+	 * @param previousOpenSize its open size before the change
+	 */
+	final void resizeRestingOrder(Order order, long previousOpenSize) {
+
+		long delta = order.getOpenSize() - previousOpenSize;
+
+		size += delta;
+
+		if (trackQueuePositions) add(sizeTree, order.queueIndex, delta);
+
+		if (marketByPrice != null) marketByPrice.levelChanged(this);
+	}
+
+	/**
+	 * Renumbers the slots of the orders from zero, doubling the number of slots if
+	 * more than half of them hold orders, and rebuilds the Fenwick trees.
+	 */
+	private void makeRoom() {
+
+		int capacity = slotCapacity();
+
+		int newCapacity = orders > capacity >> 1 ? capacity << 1 : capacity;
+
+		if (trackQueuePositions) {
+
+			if (newCapacity != capacity) {
+
+				sizeTree = new long[newCapacity + 1];
+
+				countTree = new int[newCapacity + 1];
+
+			} else {
+
+				Arrays.fill(sizeTree, 0);
+
+				Arrays.fill(countTree, 0);
+			}
+		}
+
+		int end = 0;
+
+		if (arrayBacked) {
+
+			Order[] target = newCapacity != capacity ? new Order[newCapacity] : queue;
+
+			for (int i = queueStart; i < queueEnd; i++) {
+
+				Order o = queue[i];
+
+				if (o == null) continue;
+
+				target[end] = o;
+
+				renumber(o, end++);
+			}
+
+			if (target == queue) {
+
+				for (int i = end; i < queueEnd; i++) {
+					queue[i] = null;
+				}
+
+			} else {
+
+				queue = target;
+			}
+
+		} else {
+
+			for (Order o = head; o != null; o = o.next) {
+				renumber(o, end++);
+			}
+		}
+
+		queueStart = 0;
+
+		queueEnd = end;
+
+		if (trackQueuePositions) {
+
+			buildInPlace(sizeTree);
+
+			buildInPlace(countTree);
+		}
+	}
+
+	private void renumber(Order order, int slot) {
+
+		order.queueIndex = slot;
+
+		if (trackQueuePositions) {
+
+			sizeTree[slot + 1] = order.getOpenSize();
+
+			countTree[slot + 1] = 1;
+		}
+	}
+
+	private static void buildInPlace(long[] tree) {
+
+		for (int i = 1; i < tree.length; i++) {
+
+			int parent = i + (i & -i);
+
+			if (parent < tree.length) tree[parent] += tree[i];
+		}
+	}
+
+	private static void buildInPlace(int[] tree) {
+
+		for (int i = 1; i < tree.length; i++) {
+
+			int parent = i + (i & -i);
+
+			if (parent < tree.length) tree[parent] += tree[i];
+		}
+	}
+
+	private static void add(long[] tree, int slot, long delta) {
+
+		for (int i = slot + 1; i < tree.length; i += i & -i) {
+			tree[i] += delta;
+		}
+	}
+
+	private static void add(int[] tree, int slot, int delta) {
+
+		for (int i = slot + 1; i < tree.length; i += i & -i) {
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * Returns the total open size of the orders ahead of the given resting order.
+	 */
+	final long sizeAhead(Order order) {
+
+		if (trackQueuePositions) {
+
+			long sum = 0;
+
+			for (int i = order.queueIndex; i > 0; i -= i & -i) {
+				sum += sizeTree[i];
+			}
+
+			return sum;
+		}
+
+		long sum = 0;
+
+		if (columns != null) {
+
+			for (int slot = headSlot; slot != order.slot; slot = columns.next(slot)) {
+				sum += columns.openSize(slot);
+			}
+
+			return sum;
+		}
+
+		for (Order o = head(); o != order; o = next(o)) {
+			sum += o.getOpenSize();
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Returns the number of orders ahead of the given resting order.
+	 */
+	final int ordersAhead(Order order) {
+
+		if (trackQueuePositions) {
+
+			int count = 0;
+
+			for (int i = order.queueIndex; i > 0; i -= i & -i) {
+				count += countTree[i];
+			}
+
+			return count;
+		}
+
+		int count = 0;
+
+		if (columns != null) {
+
+			for (int slot = headSlot; slot != order.slot; slot = columns.next(slot)) {
+				count++;
+			}
+
+			return count;
+		}
+
+		for (Order o = head(); o != order; o = next(o)) {
+			count++;
+		}
+
+		return count;
+	}
+
 	private void removeOrder(Order order) {
 
+		if (trackQueuePositions) {
+
+			add(countTree, order.queueIndex, -1);
+
+			if (orders == 1) queueStart = queueEnd = 0; // reuse the slots from the start
+		}
+
+		if (columns != null) {
+
+			// The slot keeps its own links, so that an iterator standing on it can move on
+			int slot = order.slot;
+
+			int prevSlot = columns.prev(slot);
+
+			int nextSlot = columns.next(slot);
+
+			if (prevSlot == OrderColumns.NONE) {
+
+				headSlot = nextSlot;
+
+			} else {
+
+				columns.setNext(prevSlot, nextSlot);
+			}
+
+			if (nextSlot == OrderColumns.NONE) {
+
+				tailSlot = prevSlot;
+
+			} else {
+
+				columns.setPrev(nextSlot, prevSlot);
+			}
+
+			orders--;
+
+			return;
+		}
+
+		if (arrayBacked) {
+
+			queue[order.queueIndex] = null;
+
+			orders--;
+
+			if (orders == 0) {
+
+				queueStart = queueEnd = 0;
+
+			} else {
+
+				while (queue[queueStart] == null)
+					queueStart++;
+
+				while (queue[queueEnd - 1] == null)
+					queueEnd--;
+			}
+
+			return;
+		}
+
 		if (order.prev != null) {
 
 			order.prev.next = order.next;
@@ -162,6 +686,10 @@ public class PriceLevel {
 				CancelReason cancelReason) {
 
 			size -= canceledSize;
+
+			if (trackQueuePositions) add(sizeTree, order.queueIndex, -canceledSize);
+
+			if (marketByPrice != null) marketByPrice.levelChanged(PriceLevel.this);
 		}
 
 		@Override
@@ -169,7 +697,11 @@ public class PriceLevel {
 
 			size -= canceledSize;
 
+			if (trackQueuePositions) add(sizeTree, order.queueIndex, -canceledSize);
+
 			removeOrder(order);
+
+			if (marketByPrice != null) marketByPrice.levelChanged(PriceLevel.this);
 		}
 
 		@Override
@@ -178,11 +710,15 @@ public class PriceLevel {
 
 			size -= sizeExecuted;
 
+			if (trackQueuePositions) add(sizeTree, order.queueIndex, -sizeExecuted);
+
 			if (order.isTerminal()) {
 
 				removeOrder(order);
 
 			}
+
+			if (marketByPrice != null) marketByPrice.levelChanged(PriceLevel.this);
 		}
 
 		@Override
@@ -201,6 +737,10 @@ public class PriceLevel {
 		public void onOrderRested(long time, Order order, long restSize, long restPrice) {
 
 			size += restSize;
+
+			if (trackQueuePositions) add(sizeTree, order.queueIndex, restSize);
+
+			if (marketByPrice != null) marketByPrice.levelChanged(PriceLevel.this);
 		}
 
 		@Override
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import com.coralblocks.coralme.Order.Side;
+
+/**
+ * Locates the {@link PriceLevel}s of an {@link OrderBook}. The order book always
+ * keeps the levels of each side in a doubly linked list ordered by price
+ * priority, so the best price, the level counts and the iterators do not depend
+ * on the index. The index only speeds up finding where a price belongs in that
+ * list.
+ *
+ * <p>
+ * An index passed to an {@link OrderBook} is a template. Each order book creates
+ * its own empty instance from it, so the same template can configure any number
+ * of order books.
+ * </p>
+ */
+public abstract class PriceLevelIndex {
+
+	PriceLevelIndex() {
+
+	}
+
+	/**
+	 * Creates an empty index with the same configuration as this one.
+	 *
+	 * @return a new index owned by a single order book
+	 */
+	abstract PriceLevelIndex newInstance();
+
+	/**
+	 * Returns the first level, in price priority, whose price is equal to or worse
+	 * than the given price, or null if every level of the side is better.
+	 *
+	 * @param head  the best level of the side, or null if the side is empty
+	 * @param side  the side of the price
+	 * @param price the price to locate
+	 * @return the level with the given price, the level a new level for the given
+	 *         price must precede, or null if it must be appended to the tail
+	 */
+	abstract PriceLevel find(PriceLevel head, Side side, long price);
+
+	/**
+	 * Called after a new level has been linked into its side.
+	 *
+	 * @param priceLevel the level that was added
+	 */
+	abstract void added(PriceLevel priceLevel);
+
+	/**
+	 * Called after a level has been unlinked from its side and before it is
+	 * returned to its pool.
+	 *
+	 * @param priceLevel the level that was removed
+	 */
+	abstract void removed(PriceLevel priceLevel);
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralpool.ArrayObjectPool;
+import com.coralblocks.coralpool.ObjectBuilder;
+import com.coralblocks.coralpool.ObjectPool;
+
+/**
+ * A {@link PriceLevelIndex} that keeps the levels of each side in a red-black
+ * tree keyed by price, so finding, adding and removing a level takes
+ * O(log levels) time regardless of how far apart the prices are. It suits wide,
+ * sparse books where a {@link PriceLadder} window would be mostly empty.
+ *
+ * <p>
+ * Tree nodes come from an object pool owned by the order book, so the tree does
+ * not produce garbage once the pool is large enough for the deepest book.
+ * </p>
+ */
+public class PriceLevelTree extends PriceLevelIndex {
+
+	/**
+	 * The default initial size of the tree node pool.
+	 */
+	public static final int DEFAULT_NODE_POOL_INITIAL_SIZE = 128;
+
+	private static final boolean RED = false;
+
+	private static final boolean BLACK = true;
+
+	private static final class Node {
+
+		long price;
+
+		PriceLevel priceLevel;
+
+		Node left, right, parent;
+
+		boolean color = BLACK;
+	}
+
+	private final int nodePoolInitialSize;
+
+	private final ObjectPool<Node> nodePool;
+
+	private final Node[] root = new Node[2];
+
+	/**
+	 * Creates a price level tree template with the default node pool size.
+	 */
+	public PriceLevelTree() {
+		this(DEFAULT_NODE_POOL_INITIAL_SIZE);
+	}
+
+	/**
+	 * Creates a price level tree template.
+	 *
+	 * @param nodePoolInitialSize the initial size of the tree node pool of each
+	 *                            order book, ideally the deepest expected number of
+	 *                            levels for both sides together
+	 * @throws IllegalArgumentException if the size is negative
+	 */
+	public PriceLevelTree(int nodePoolInitialSize) {
+
+		if (nodePoolInitialSize < 0) {
+			throw new IllegalArgumentException("nodePoolInitialSize cannot be negative: " + nodePoolInitialSize);
+		}
+
+		this.nodePoolInitialSize = nodePoolInitialSize;
+
+		this.nodePool = null; // a template does not index anything
+	}
+
+	private PriceLevelTree(PriceLevelTree template) {
+
+		this.nodePoolInitialSize = template.nodePoolInitialSize;
+
+		ObjectBuilder<Node> nodeBuilder = new ObjectBuilder<Node>() {
+			@Override
+			public Node newInstance() {
+				return new Node();
+			}
+		};
+
+		this.nodePool = new ArrayObjectPool<Node>(nodePoolInitialSize, nodeBuilder);
+	}
+
+	@Override
+	PriceLevelIndex newInstance() {
+		return new PriceLevelTree(this);
+	}
+
+	@Override
+	PriceLevel find(PriceLevel head, Side side, long price) {
+
+		Node node = root[side.index()];
+
+		Node found = null;
+
+		if (side.isBuy()) {
+
+			// the highest bid price at or below the price
+			while (node != null) {
+				if (node.price <= price) {
+					found = node;
+					node = node.right;
+				} else {
+					node = node.left;
+				}
+			}
+
+		} else {
+
+			// the lowest ask price at or above the price
+			while (node != null) {
+				if (node.price >= price) {
+					found = node;
+					node = node.left;
+				} else {
+					node = node.right;
+				}
+			}
+		}
+
+		return found == null ? null : found.priceLevel;
+	}
+
+	@Override
+	void added(PriceLevel priceLevel) {
+
+		int index = priceLevel.getSide().index();
+
+		long price = priceLevel.getPrice();
+
+		Node node = nodePool.get();
+
+		node.price = price;
+
+		node.priceLevel = priceLevel;
+
+		node.left = node.right = null;
+
+		Node t = root[index];
+
+		if (t == null) {
+
+			node.parent = null;
+
+			node.color = BLACK;
+
+			root[index] = node;
+
+			return;
+		}
+
+		Node parent;
+
+		do {
+			parent = t;
+			t = price < t.price ? t.left : t.right;
+		} while (t != null);
+
+		node.parent = parent;
+
+		if (price < parent.price) {
+			parent.left = node;
+		} else {
+			parent.right = node;
+		}
+
+		fixAfterInsertion(index, node);
+	}
+
+	@Override
+	void removed(PriceLevel priceLevel) {
+
+		int index = priceLevel.getSide().index();
+
+		long price = priceLevel.getPrice();
+
+		Node node = root[index];
+
+		while (node != null && node.price != price) {
+			node = price < node.price ? node.left : node.right;
+		}
+
+		if (node != null) delete(index, node);
+	}
+
+	/**
+	 * Checks the binary search tree and red-black invariants of one side.
+	 *
+	 * @param side the side to check
+	 * @return the number of levels in the tree
+	 * @throws IllegalStateException if an invariant is broken
+	 */
+	final int validate(Side side) {
+
+		Node r = root[side.index()];
+
+		if (r == null) return 0;
+
+		if (r.parent != null || r.color != BLACK) throw new IllegalStateException("Bad root");
+
+		int[] count = new int[1];
+
+		blackHeight(r, Long.MIN_VALUE, Long.MAX_VALUE, count);
+
+		return count[0];
+	}
+
+	private static int blackHeight(Node node, long min, long max, int[] count) {
+
+		if (node == null) return 1;
+
+		count[0]++;
+
+		if (node.price < min || node.price > max) throw new IllegalStateException("Out of order: " + node.price);
+
+		if (node.priceLevel == null || node.priceLevel.getPrice() != node.price) {
+			throw new IllegalStateException("Bad level: " + node.price);
+		}
+
+		if (node.color == RED && (colorOf(node.left) == RED || colorOf(node.right) == RED)) {
+			throw new IllegalStateException("Red node with red child: " + node.price);
+		}
+
+		if ((node.left != null && node.left.parent != node) || (node.right != null && node.right.parent != node)) {
+			throw new IllegalStateException("Bad parent link: " + node.price);
+		}
+
+		int left = blackHeight(node.left, min, node.price - 1, count);
+
+		int right = blackHeight(node.right, node.price + 1, max, count);
+
+		if (left != right) throw new IllegalStateException("Unbalanced: " + node.price);
+
+		return left + (node.color == BLACK ? 1 : 0);
+	}
+
+	private void delete(int index, Node p) {
+
+		if (p.left != null && p.right != null) {
+
+			// Move the successor's contents here and delete the successor instead
+			Node s = p.right;
+
+			while (s.left != null)
+				s = s.left;
+
+			p.price = s.price;
+
+			p.priceLevel = s.priceLevel;
+
+			p = s;
+		}
+
+		Node replacement = p.left != null ? p.left : p.right;
+
+		if (replacement != null) {
+
+			replacement.parent = p.parent;
+
+			if (p.parent == null) {
+				root[index] = replacement;
+			} else if (p == p.parent.left) {
+				p.parent.left = replacement;
+			} else {
+				p.parent.right = replacement;
+			}
+
+			p.left = p.right = p.parent = null;
+
+			if (p.color == BLACK) fixAfterDeletion(index, replacement);
+
+		} else if (p.parent == null) {
+
+			root[index] = null;
+
+		} else {
+
+			if (p.color == BLACK) fixAfterDeletion(index, p);
+
+			if (p.parent != null) {
+
+				if (p == p.parent.left) {
+					p.parent.left = null;
+				} else if (p == p.parent.right) {
+					p.parent.right = null;
+				}
+
+				p.parent = null;
+			}
+		}
+
+		p.priceLevel = null;
+
+		nodePool.release(p);
+	}
+
+	private static boolean colorOf(Node p) {
+		return p == null ? BLACK : p.color;
+	}
+
+	private static Node parentOf(Node p) {
+		return p == null ? null : p.parent;
+	}
+
+	private static void setColor(Node p, boolean c) {
+		if (p != null) p.color = c;
+	}
+
+	private static Node leftOf(Node p) {
+		return p == null ? null : p.left;
+	}
+
+	private static Node rightOf(Node p) {
+		return p == null ? null : p.right;
+	}
+
+	private void rotateLeft(int index, Node p) {
+
+		if (p == null) return;
+
+		Node r = p.right;
+
+		p.right = r.left;
+
+		if (r.left != null) r.left.parent = p;
+
+		r.parent = p.parent;
+
+		if (p.parent == null) {
+			root[index] = r;
+		} else if (p.parent.left == p) {
+			p.parent.left = r;
+		} else {
+			p.parent.right = r;
+		}
+
+		r.left = p;
+
+		p.parent = r;
+	}
+
+	private void rotateRight(int index, Node p) {
+
+		if (p == null) return;
+
+		Node l = p.left;
+
+		p.left = l.right;
+
+		if (l.right != null) l.right.parent = p;
+
+		l.parent = p.parent;
+
+		if (p.parent == null) {
+			root[index] = l;
+		} else if (p.parent.right == p) {
+			p.parent.right = l;
+		} else {
+			p.parent.left = l;
+		}
+
+		l.right = p;
+
+		p.parent = l;
+	}
+
+	private void fixAfterInsertion(int index, Node x) {
+
+		x.color = RED;
+
+		while (x != null && x != root[index] && x.parent.color == RED) {
+
+			if (parentOf(x) == leftOf(parentOf(parentOf(x)))) {
+
+				Node y = rightOf(parentOf(parentOf(x)));
+
+				if (colorOf(y) == RED) {
+					setColor(parentOf(x), BLACK);
+					setColor(y, BLACK);
+					setColor(parentOf(parentOf(x)), RED);
+					x = parentOf(parentOf(x));
+				} else {
+					if (x == rightOf(parentOf(x))) {
+						x = parentOf(x);
+						rotateLeft(index, x);
+					}
+					setColor(parentOf(x), BLACK);
+					setColor(parentOf(parentOf(x)), RED);
+					rotateRight(index, parentOf(parentOf(x)));
+				}
+
+			} else {
+
+				Node y = leftOf(parentOf(parentOf(x)));
+
+				if (colorOf(y) == RED) {
+					setColor(parentOf(x), BLACK);
+					setColor(y, BLACK);
+					setColor(parentOf(parentOf(x)), RED);
+					x = parentOf(parentOf(x));
+				} else {
+					if (x == leftOf(parentOf(x))) {
+						x = parentOf(x);
+						rotateRight(index, x);
+					}
+					setColor(parentOf(x), BLACK);
+					setColor(parentOf(parentOf(x)), RED);
+					rotateLeft(index, parentOf(parentOf(x)));
+				}
+			}
+		}
+
+		root[index].color = BLACK;
+	}
+
+	private void fixAfterDeletion(int index, Node x) {
+
+		while (x != root[index] && colorOf(x) == BLACK) {
+
+			if (x == leftOf(parentOf(x))) {
+
+				Node sib = rightOf(parentOf(x));
+
+				if (colorOf(sib) == RED) {
+					setColor(sib, BLACK);
+					setColor(parentOf(x), RED);
+					rotateLeft(index, parentOf(x));
+					sib = rightOf(parentOf(x));
+				}
+
+				if (colorOf(leftOf(sib)) == BLACK && colorOf(rightOf(sib)) == BLACK) {
+					setColor(sib, RED);
+					x = parentOf(x);
+				} else {
+					if (colorOf(rightOf(sib)) == BLACK) {
+						setColor(leftOf(sib), BLACK);
+						setColor(sib, RED);
+						rotateRight(index, sib);
+						sib = rightOf(parentOf(x));
+					}
+					setColor(sib, colorOf(parentOf(x)));
+					setColor(parentOf(x), BLACK);
+					setColor(rightOf(sib), BLACK);
+					rotateLeft(index, parentOf(x));
+					x = root[index];
+				}
+
+			} else {
+
+				Node sib = leftOf(parentOf(x));
+
+				if (colorOf(sib) == RED) {
+					setColor(sib, BLACK);
+					setColor(parentOf(x), RED);
+					rotateRight(index, parentOf(x));
+					sib = leftOf(parentOf(x));
+				}
+
+				if (colorOf(rightOf(sib)) == BLACK && colorOf(leftOf(sib)) == BLACK) {
+					setColor(sib, RED);
+					x = parentOf(x);
+				} else {
+					if (colorOf(leftOf(sib)) == BLACK) {
+						setColor(rightOf(sib), BLACK);
+						setColor(sib, RED);
+						rotateLeft(index, sib);
+						sib = leftOf(parentOf(x));
+					}
+					setColor(sib, colorOf(parentOf(x)));
+					setColor(parentOf(x), BLACK);
+					setColor(leftOf(sib), BLACK);
+					rotateRight(index, parentOf(x));
+					x = root[index];
+				}
+			}
+		}
+
+		setColor(x, BLACK);
+	}
+}
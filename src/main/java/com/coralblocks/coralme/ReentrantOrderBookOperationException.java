@@ -17,8 +17,8 @@ package com.coralblocks.coralme;
 
 /**
  * Thrown when an external {@link OrderBookListener} or {@link OrderListener}
- * tries to mutate or traverse the same {@link OrderBook} while one of its
- * callbacks is executing.
+ * tries to mutate or traverse the same {@link OrderBook}, or another order book
+ * sharing its {@link OrderBookPools}, while one of its callbacks is executing.
  */
 public final class ReentrantOrderBookOperationException extends IllegalStateException {
 
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An {@link OrderIndex} for exchange order IDs assigned in increasing order. The
+ * orders with the most recent IDs are kept in a ring array indexed by the ID
+ * itself, so looking up an order, and checking for a duplicate ID, is a single
+ * array load instead of a hash probe.
+ *
+ * <p>
+ * The ring covers a window of <code>windowSize</code> consecutive IDs. When a new
+ * ID falls past the window, the window slides forward and any order still
+ * resting in the slots it leaves behind is moved to a small hash table. The same
+ * table takes IDs that arrive below the window, so any ID scheme works, but IDs
+ * that are neither recent nor increasing pay the hash lookup.
+ * </p>
+ *
+ * <p>
+ * The window should cover the number of IDs assigned while a typical order is
+ * resting. Iterating over the index, as purging the book does, scans the used
+ * part of the ring.
+ * </p>
+ */
+public class SequentialOrderIndex extends OrderIndex {
+
+	/**
+	 * The default number of consecutive IDs kept in the ring.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 16;
+
+	private static final int STRAGGLERS_INITIAL_SIZE = 64;
+
+	private final int windowSize;
+
+	private final Order[] ring;
+
+	private final int mask;
+
+	private final HashOrderIndex stragglers;
+
+	private long base; // the lowest ID of the window, every straggler is below it
+
+	private long limit; // one past the highest ID ever put in the ring
+
+	private int ringSize;
+
+	private final ReusableIterator iterator;
+
+	/**
+	 * Creates a sequential order index template with the default window size.
+	 */
+	public SequentialOrderIndex() {
+		this(DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Creates a sequential order index template.
+	 *
+	 * @param windowSize the number of consecutive IDs kept in the ring, rounded up
+	 *                   to a power of two
+	 * @throws IllegalArgumentException if the window size is not positive or is
+	 *                                  larger than 2^30
+	 */
+	public SequentialOrderIndex(int windowSize) {
+
+		if (windowSize <= 0 || windowSize > 1 << 30) {
+			throw new IllegalArgumentException("windowSize must be between 1 and 2^30: " + windowSize);
+		}
+
+		this.windowSize = windowSize == 1 ? 1 : Integer.highestOneBit(windowSize - 1) << 1;
+
+		this.mask = this.windowSize - 1;
+
+		this.ring = null; // a template does not index anything
+
+		this.stragglers = null;
+
+		this.iterator = null;
+	}
+
+	private SequentialOrderIndex(SequentialOrderIndex template) {
+
+		this.windowSize = template.windowSize;
+
+		this.mask = template.mask;
+
+		this.ring = new Order[windowSize];
+
+		this.stragglers = new HashOrderIndex(STRAGGLERS_INITIAL_SIZE);
+
+		this.iterator = new ReusableIterator();
+	}
+
+	/**
+	 * Returns the number of consecutive IDs kept in the ring.
+	 *
+	 * @return the window size, a power of two
+	 */
+	public final int getWindowSize() {
+
+		return windowSize;
+	}
+
+	@Override
+	OrderIndex newInstance() {
+		return new SequentialOrderIndex(this);
+	}
+
+	private boolean inWindow(long id) {
+
+		return Long.compareUnsigned(id - base, windowSize) < 0;
+	}
+
+	@Override
+	final int size() {
+
+		return ringSize + stragglers.size();
+	}
+
+	@Override
+	final boolean isEmpty() {
+
+		return size() == 0;
+	}
+
+	@Override
+	final boolean containsKey(long id) {
+
+		return get(id) != null;
+	}
+
+	@Override
+	final Order get(long id) {
+
+		if (inWindow(id)) return ring[(int) id & mask];
+
+		return stragglers.isEmpty() ? null : stragglers.get(id);
+	}
+
+	@Override
+	final Order put(long id, Order order) {
+
+		if (!inWindow(id)) {
+
+			if (id - base < 0) return stragglers.put(id, order); // below the window
+
+			slideTo(id);
+		}
+
+		int slot = (int) id & mask;
+
+		Order previous = ring[slot];
+
+		ring[slot] = order;
+
+		if (previous == null) ringSize++;
+
+		if (id >= limit) limit = id + 1;
+
+		return previous;
+	}
+
+	@Override
+	final Order remove(long id) {
+
+		if (!inWindow(id)) return stragglers.isEmpty() ? null : stragglers.remove(id);
+
+		int slot = (int) id & mask;
+
+		Order removed = ring[slot];
+
+		if (removed != null) {
+
+			ring[slot] = null;
+
+			ringSize--;
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Moves the window forward so that it ends at the given ID, moving the orders
+	 * left behind to the stragglers.
+	 */
+	private void slideTo(long id) {
+
+		long newBase = id - mask;
+
+		if (ringSize == 0) {
+
+			// Nothing to move, so leave the whole window ahead of the new ID
+			base = id;
+
+			limit = id;
+
+			return;
+		}
+
+		long end = Math.min(limit, newBase); // slots at or above limit are empty
+
+		if (end - base >= windowSize) end = base + windowSize;
+
+		for (long i = base; ringSize > 0 && i < end; i++) {
+
+			int slot = (int) i & mask;
+
+			Order order = ring[slot];
+
+			if (order != null) {
+
+				ring[slot] = null;
+
+				ringSize--;
+
+				stragglers.put(i, order);
+			}
+		}
+
+		base = newBase;
+
+		if (limit < base) limit = base;
+	}
+
+	@Override
+	final Iterator<Order> iterator() {
+
+		iterator.reset();
+
+		return iterator;
+	}
+
+	private final class ReusableIterator implements Iterator<Order> {
+
+		private long next;
+
+		private long current;
+
+		private boolean ringReturned;
+
+		private Iterator<Order> stragglersIterator;
+
+		private void reset() {
+
+			next = base;
+
+			ringReturned = false;
+
+			stragglersIterator = stragglers.iterator();
+
+			skipEmpty();
+		}
+
+		private void skipEmpty() {
+
+			while (next < limit && ring[(int) next & mask] == null)
+				next++;
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			return next < limit || stragglersIterator.hasNext();
+		}
+
+		@Override
+		public Order next() {
+
+			if (next < limit) {
+
+				current = next++;
+
+				ringReturned = true;
+
+				Order order = ring[(int) current & mask];
+
+				skipEmpty();
+
+				return order;
+			}
+
+			if (!stragglersIterator.hasNext()) throw new NoSuchElementException();
+
+			ringReturned = false;
+
+			return stragglersIterator.next();
+		}
+
+		@Override
+		public void remove() {
+
+			if (ringReturned) {
+
+				ringReturned = false;
+
+				int slot = (int) current & mask;
+
+				if (ring[slot] == null) throw new IllegalStateException();
+
+				ring[slot] = null;
+
+				ringSize--;
+
+			} else {
+
+				stragglersIterator.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import com.coralblocks.coralme.Order.CancelReason;
+
+/**
+ * <p>
+ * A hierarchical timing wheel of resting GTD {@link Order}s keyed by their expire
+ * times. Time is divided into ticks of a fixed resolution. Level 0 has one slot
+ * per tick for the current block of 64 ticks, level 1 has one slot per 64 ticks
+ * for the current block of 4096 ticks, and so on for 7 levels, which covers more
+ * than a century at a millisecond resolution.
+ * </p>
+ *
+ * <p>
+ * An order goes into the lowest level whose current block contains its expire
+ * tick. When time reaches the start of a slot of a higher level, the orders of
+ * that slot are cascaded down, and when it reaches a slot of level 0 its orders
+ * are canceled. Each order is cascaded at most once per level, and a bitmap of
+ * the non-empty slots of each level lets {@link #expire(long)} jump straight to
+ * the next tick with something to do, so advancing the wheel costs the orders
+ * that expire rather than the orders that rest or the ticks that elapsed.
+ * </p>
+ *
+ * <p>
+ * The order book creates the wheel, and its 448 slots, when its first GTD order
+ * rests, so that books without GTD orders do not pay for them. The wheel starts
+ * at that time. The slots are {@link ExpiryList}s linked through the orders
+ * themselves, so adding, cascading and canceling orders allocates nothing, and
+ * canceling an order any other way removes it from its slot.
+ * </p>
+ */
+final class TimingWheel {
+
+	private static final int SLOT_BITS = 6;
+
+	private static final int SLOTS = 1 << SLOT_BITS;
+
+	private static final int SLOT_MASK = SLOTS - 1;
+
+	private static final int LEVELS = 7;
+
+	private static final int WHEEL_BITS = SLOT_BITS * LEVELS;
+
+	private static final long LAST_TICK_OF_WHEEL = (1L << WHEEL_BITS) - 1;
+
+	private final ExpiryList[][] slots = new ExpiryList[LEVELS][SLOTS];
+
+	private final long[] occupied = new long[LEVELS]; // may have bits of slots emptied by cancels
+
+	private final long resolution;
+
+	private long currentTick; // the next tick to process, including its cascades
+
+	TimingWheel(long resolution, long now) {
+
+		if (resolution <= 0) throw new IllegalArgumentException("resolution must be positive: " + resolution);
+
+		this.resolution = resolution;
+
+		this.currentTick = now / resolution;
+
+		for (int level = 0; level < LEVELS; level++) {
+			for (int slot = 0; slot < SLOTS; slot++) {
+				slots[level][slot] = new ExpiryList();
+			}
+		}
+	}
+
+	final void add(Order order) {
+
+		add(order, tick(order.getExpireTime()));
+	}
+
+	private long tick(long time) {
+
+		// Round up so that an order never expires before its expire time
+		long tick = time / resolution;
+
+		return time % resolution == 0 ? tick : tick + 1;
+	}
+
+	private void add(Order order, long tick) {
+
+		if (tick < currentTick) tick = currentTick;
+
+		if (tick >>> WHEEL_BITS != currentTick >>> WHEEL_BITS) {
+
+			// Beyond the wheel: park it in the last slot, it is placed again from there
+			tick = currentTick | LAST_TICK_OF_WHEEL;
+		}
+
+		int level = 0;
+
+		while (tick >>> (SLOT_BITS * (level + 1)) != currentTick >>> (SLOT_BITS * (level + 1)))
+			level++;
+
+		int slot = (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+
+		slots[level][slot].add(order);
+
+		occupied[level] |= 1L << slot;
+	}
+
+	private long nextTick() {
+
+		long nextTick = Long.MAX_VALUE;
+
+		for (int level = 0; level < LEVELS; level++) {
+
+			int shift = SLOT_BITS * level;
+
+			int index = (int) (currentTick >>> shift) & SLOT_MASK;
+
+			// The slot of the current tick is still due if the current tick starts it
+			boolean currentSlotDue = (currentTick & ((1L << shift) - 1)) == 0;
+
+			long candidates = occupied[level] & (currentSlotDue ? -1L << index : (-1L << index) << 1);
+
+			while (candidates != 0) {
+
+				int slot = Long.numberOfTrailingZeros(candidates);
+
+				if (!slots[level][slot].isEmpty()) {
+
+					long blockStart = currentTick >>> (shift + SLOT_BITS) << (shift + SLOT_BITS);
+
+					nextTick = Math.min(nextTick, blockStart | (long) slot << shift);
+
+					break;
+				}
+
+				occupied[level] &= ~(1L << slot);
+
+				candidates &= candidates - 1;
+			}
+		}
+
+		return nextTick;
+	}
+
+	/**
+	 * Cancels with {@link CancelReason#EXPIRED} the orders whose expire time is not
+	 * after the given time.
+	 *
+	 * @param now the current epoch time in nanoseconds
+	 * @return the number of orders canceled
+	 */
+	final int expire(long now) {
+
+		long nowTick = Math.min(now / resolution, Long.MAX_VALUE - 1); // nextTick() returns MAX_VALUE when empty
+
+		int expired = 0;
+
+		for (long tick = nextTick(); tick <= nowTick; tick = nextTick()) {
+
+			currentTick = tick;
+
+			for (int level = LEVELS - 1; level > 0; level--) {
+
+				int shift = SLOT_BITS * level;
+
+				if ((tick & ((1L << shift) - 1)) == 0) cascade(slots[level][(int) (tick >>> shift) & SLOT_MASK]);
+			}
+
+			currentTick = tick + 1;
+
+			ExpiryList slot = slots[0][(int) tick & SLOT_MASK];
+
+			while (!slot.isEmpty()) {
+
+				Order order = slot.head();
+
+				if (tick(order.getExpireTime()) > tick) {
+
+					// Parked beyond the wheel
+					slot.remove(order);
+
+					add(order);
+
+				} else {
+
+					// Canceling the order removes it from the slot
+					order.cancel(CancelReason.EXPIRED);
+
+					expired++;
+				}
+			}
+		}
+
+		if (nowTick >= currentTick) currentTick = nowTick + 1;
+
+		return expired;
+	}
+
+	private void cascade(ExpiryList slot) {
+
+		while (!slot.isEmpty()) {
+
+			Order order = slot.head();
+
+			slot.remove(order);
+
+			add(order);
+		}
+	}
+}
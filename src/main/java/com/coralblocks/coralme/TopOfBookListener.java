@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import com.coralblocks.coralme.OrderBook.State;
+
+/**
+ * Receives the top of book of an {@link OrderBook}, on the thread of the order
+ * book, at most once per order book operation and only when the best bid or
+ * ask price or size changed. A side without orders has a price and a size of
+ * zero. The order book cannot be modified from this listener.
+ */
+public interface TopOfBookListener {
+
+	/**
+	 * Called at the end of an operation that changed the top of book.
+	 *
+	 * @param orderBook the order book
+	 * @param bidPrice  the best bid price, or zero
+	 * @param bidSize   the total size of the best bid price level, or zero
+	 * @param askPrice  the best ask price, or zero
+	 * @param askSize   the total size of the best ask price level, or zero
+	 * @param state     the state of the order book
+	 */
+	public void onTopOfBook(OrderBook orderBook, long bidPrice, long bidSize, long askPrice, long askSize,
+			State state);
+
+	/**
+	 * Called once all the top of book listeners were notified, with the exception
+	 * this listener threw from {@link #onTopOfBook}. The exception does not fail
+	 * the operation, which has already completed, nor keeps the other listeners
+	 * from being notified. Does nothing by default, so that existing listeners
+	 * keep compiling.
+	 *
+	 * @param orderBook the order book
+	 * @param exception the exception thrown by this listener
+	 */
+	public default void onExceptionThrown(OrderBook orderBook, Exception exception) {
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme.util;
+
+/**
+ * <p>
+ * A timestamper that returns the time it was last set to, so that every
+ * timestamp of an operation is the time recorded for it. Replaying recorded
+ * operations into an order book with this timestamper then reproduces the same
+ * timestamps.
+ * </p>
+ */
+public class DeterministicTimestamper implements Timestamper {
+
+	private long nanoEpoch;
+
+	public DeterministicTimestamper() {
+		this(0);
+	}
+
+	public DeterministicTimestamper(long nanoEpoch) {
+		this.nanoEpoch = nanoEpoch;
+	}
+
+	/**
+	 * Sets the time returned from now on.
+	 *
+	 * @param nanoEpoch the epoch time in nanoseconds
+	 */
+	public void setNanoEpoch(long nanoEpoch) {
+		this.nanoEpoch = nanoEpoch;
+	}
+
+	@Override
+	public long nanoEpoch() {
+		return nanoEpoch;
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme.util;
+
+import java.util.Arrays;
+
+import com.coralblocks.coralpool.ObjectBuilder;
+
+/**
+ * <p>
+ * An object pool that keeps track of how many instances it has created and how
+ * many are in use, and that can limit how many idle instances it keeps.
+ * </p>
+ *
+ * <p>
+ * The idle instances are kept in a stack, and the pool creates one instance at
+ * a time, with its builder, when the stack is empty. The high-water mark and
+ * the growth event count tell how large the pool needs to be: a pool
+ * pre-warmed with {@link #prewarm(int)} to the previous peak should report no
+ * growth events, meaning no instance was created on the hot path.
+ * </p>
+ *
+ * <p>
+ * A pool without a limit keeps every instance it ever created, so after a
+ * burst of activity the idle instances stay reachable, and the garbage
+ * collector keeps marking them, for the rest of the process. With a maximum
+ * idle count, an instance released while the pool already holds that many
+ * idle instances is dropped and left to the garbage collector instead, so the
+ * pool never holds more than the instances in use plus the maximum. As long as
+ * the maximum is at least the working set, releasing and getting instances
+ * produces no garbage.
+ * </p>
+ *
+ * @param <E> the pooled type
+ */
+public class ManagedObjectPool<E> implements ObjectPoolStatistics {
+
+	private final ObjectBuilder<E> builder;
+
+	private final int maxIdle;
+
+	private E[] stack;
+
+	private int idle;
+
+	private long created;
+
+	private long dropped;
+
+	private int inUse;
+
+	private int highWaterMark;
+
+	private long growthEvents;
+
+	/**
+	 * Creates a pool that keeps every released instance.
+	 *
+	 * @param initialSize the number of instances created up front
+	 * @param builder     creates new instances
+	 */
+	public ManagedObjectPool(int initialSize, ObjectBuilder<E> builder) {
+		this(initialSize, builder, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a pool. The number of instances created up front is capped by the
+	 * maximum idle count.
+	 *
+	 * @param initialSize the number of instances created up front
+	 * @param builder     creates new instances
+	 * @param maxIdle     the maximum number of idle instances kept by the pool
+	 * @throws IllegalArgumentException if the initial size or the maximum idle
+	 *                                  count is negative
+	 */
+	@SuppressWarnings("unchecked")
+	public ManagedObjectPool(int initialSize, ObjectBuilder<E> builder, int maxIdle) {
+
+		if (initialSize < 0) throw new IllegalArgumentException("initialSize cannot be negative: " + initialSize);
+
+		if (maxIdle < 0) throw new IllegalArgumentException("maxIdle cannot be negative: " + maxIdle);
+
+		this.builder = builder;
+
+		this.maxIdle = maxIdle;
+
+		this.stack = (E[]) new Object[Math.min(initialSize, maxIdle)];
+
+		while (idle < stack.length) {
+
+			stack[idle++] = builder.newInstance();
+
+			created++;
+		}
+	}
+
+	public E get() {
+
+		E e;
+
+		if (idle == 0) {
+
+			growthEvents++;
+
+			e = builder.newInstance();
+
+			created++;
+
+		} else {
+
+			e = stack[--idle];
+
+			stack[idle] = null;
+		}
+
+		if (++inUse > highWaterMark) highWaterMark = inUse;
+
+		return e;
+	}
+
+	public void release(E e) {
+
+		inUse--;
+
+		if (idle == maxIdle) {
+
+			dropped++;
+
+			return;
+		}
+
+		if (idle == stack.length) {
+			stack = Arrays.copyOf(stack, (int) Math.min(maxIdle, Math.max(16, 2L * stack.length)));
+		}
+
+		stack[idle++] = e;
+	}
+
+	/**
+	 * Creates instances up front, if needed, so that at least the given number of
+	 * instances are idle, capped by the maximum idle count. Pre-warming is not
+	 * counted in the high-water mark or in the growth events.
+	 *
+	 * @param idle the number of idle instances to make available
+	 * @throws IllegalArgumentException if the number is negative
+	 */
+	public void prewarm(int idle) {
+
+		if (idle < 0) throw new IllegalArgumentException("idle cannot be negative: " + idle);
+
+		int target = Math.min(idle, maxIdle);
+
+		if (target <= this.idle) return;
+
+		if (target > stack.length) stack = Arrays.copyOf(stack, target);
+
+		while (this.idle < target) {
+
+			stack[this.idle++] = builder.newInstance();
+
+			created++;
+		}
+	}
+
+	/**
+	 * Resets the high-water mark to the number of instances currently in use and
+	 * the growth event count to zero, for example at the start of a trading day.
+	 */
+	public void resetStatistics() {
+
+		highWaterMark = inUse;
+
+		growthEvents = 0;
+	}
+
+	@Override
+	public final int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	@Override
+	public final long getGrowthEvents() {
+		return growthEvents;
+	}
+
+	/**
+	 * Returns the maximum number of idle instances kept by this pool.
+	 *
+	 * @return the maximum idle count
+	 */
+	@Override
+	public final int getMaxIdle() {
+		return maxIdle;
+	}
+
+	/**
+	 * Returns the number of instances that have been taken from this pool and not
+	 * released yet.
+	 *
+	 * @return the number of instances in use
+	 */
+	@Override
+	public final int getInUse() {
+		return inUse;
+	}
+
+	/**
+	 * Returns the number of instances held by this pool and ready to be reused.
+	 *
+	 * @return the number of idle instances
+	 */
+	@Override
+	public final int getIdle() {
+		return idle;
+	}
+
+	/**
+	 * Returns the number of instances this pool has created since it was
+	 * constructed, including the initial ones.
+	 *
+	 * @return the number of created instances
+	 */
+	@Override
+	public final long getCreated() {
+		return created;
+	}
+
+	/**
+	 * Returns the number of released instances this pool has dropped because it
+	 * already held the maximum number of idle instances.
+	 *
+	 * @return the number of dropped instances
+	 */
+	@Override
+	public final long getDropped() {
+		return dropped;
+	}
+}
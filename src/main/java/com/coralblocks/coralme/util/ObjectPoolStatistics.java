@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme.util;
+
+/**
+ * A read-only view of the counters of a {@link ManagedObjectPool}.
+ */
+public interface ObjectPoolStatistics {
+
+	/**
+	 * Returns the maximum number of idle instances kept by the pool.
+	 *
+	 * @return the maximum idle count
+	 */
+	public int getMaxIdle();
+
+	/**
+	 * Returns the number of instances that have been taken from the pool and not
+	 * released yet.
+	 *
+	 * @return the number of instances in use
+	 */
+	public int getInUse();
+
+	/**
+	 * Returns the number of instances held by the pool and ready to be reused.
+	 *
+	 * @return the number of idle instances
+	 */
+	public int getIdle();
+
+	/**
+	 * Returns the number of instances the pool has created, including the initial
+	 * and pre-warmed ones.
+	 *
+	 * @return the number of created instances
+	 */
+	public long getCreated();
+
+	/**
+	 * Returns the number of released instances the pool has dropped because it
+	 * already held the maximum number of idle instances.
+	 *
+	 * @return the number of dropped instances
+	 */
+	public long getDropped();
+
+	/**
+	 * Returns the largest number of instances in use at the same time since the
+	 * pool was created or its statistics were reset.
+	 *
+	 * @return the high-water mark
+	 */
+	public int getHighWaterMark();
+
+	/**
+	 * Returns how many times an instance had to be created because the pool had no
+	 * idle instance left, since the pool was created or its statistics were reset.
+	 *
+	 * @return the number of growth events
+	 */
+	public long getGrowthEvents();
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assume;
+
+/**
+ * Measures the bytes the current thread allocates while running some work. A
+ * test using it is skipped when the JVM cannot measure them.
+ */
+final class AllocationTestSupport {
+
+	private AllocationTestSupport() {
+
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread while running the given
+	 * work.
+	 *
+	 * @param work the work to measure, already warmed up
+	 * @return the allocated bytes
+	 */
+	static long allocatedBytes(Runnable work) {
+		java.lang.management.ThreadMXBean standardBean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(standardBean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) standardBean;
+		Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+
+		boolean allocationMeasurementWasEnabled = allocationBean.isThreadAllocatedMemoryEnabled();
+		if (!allocationMeasurementWasEnabled) allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+		try {
+			long threadId = Thread.currentThread().getId();
+			allocationBean.getThreadAllocatedBytes(threadId);
+			long allocatedBytesBefore = allocationBean.getThreadAllocatedBytes(threadId);
+
+			work.run();
+
+			return allocationBean.getThreadAllocatedBytes(threadId) - allocatedBytesBefore;
+		} finally {
+			if (!allocationMeasurementWasEnabled) allocationBean.setThreadAllocatedMemoryEnabled(false);
+		}
+	}
+
+	static void assertNoAllocation(Runnable work) {
+		assertEquals(0, allocatedBytes(work));
+	}
+
+	/**
+	 * Asserts that the given work allocates less than the given bytes, for work
+	 * that allocates a few bytes once, such as on the first call of a JDK method.
+	 */
+	static void assertAllocatesLessThan(long maxBytes, Runnable work) {
+		long allocatedBytes = allocatedBytes(work);
+		assertTrue("Allocated bytes: " + allocatedBytes, allocatedBytes < maxBytes);
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertNoAllocation;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.CLIENT_ORDER_IDS;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.ExecuteSide;
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+import com.coralblocks.coralme.OrderBook.TraversalOrder;
+
+public class ArrayBackedPriceLevelTest {
+
+	private static OrderBook newBook(OrderBookListener listener) {
+		return new OrderBook("AAPL", listener, new OrderBookConfig().setArrayBackedPriceLevels(true));
+	}
+
+	@Test
+	public void test_RandomOperationsMatchDefaultBook() {
+		for (long seed = 1; seed <= 5; seed++) {
+			// few prices, so levels get deep and are canceled in the middle
+			PriceLevelIndexTestSupport.assertSameBehaviorAsDefault(newBook(null), 20_000, 3, 1, seed);
+			PriceLevelIndexTestSupport.assertSameBehaviorAsDefault(newBook(null), 5_000, 50, 1, seed);
+		}
+	}
+
+	@Test
+	public void test_SweepSkipsCanceledOrdersInTimePriority() {
+		List<Long> makers = new ArrayList<Long>();
+		OrderBook book = newBook(new OrderBookAdapter() {
+			@Override
+			public void onOrderExecuted(OrderBook orderBook, long time, Order order, ExecuteSide executeSide,
+					long executeSize, long executePrice, long executeId, long executeMatchId) {
+				if (executeSide == ExecuteSide.MAKER) makers.add(order.getId());
+			}
+		});
+
+		for (long id = 1; id <= 1_000; id++) {
+			book.createLimit(1, CLIENT_ORDER_IDS[(int) id - 1], id, Side.SELL, 100, 100 * TICK, TimeInForce.GTC);
+		}
+		for (long id = 1; id <= 1_000; id++) {
+			if (id % 3 != 0) book.getOrder(id).cancel();
+		}
+
+		PriceLevel level = book.head(Side.SELL);
+		assertEquals(333, level.getOrders());
+		assertEquals(3, level.head().getId());
+		assertEquals(999, level.tail().getId());
+
+		// new orders go behind the survivors even after the slots are compacted
+		for (long id = 1_001; id <= 2_000; id++) {
+			book.createLimit(2, CLIENT_ORDER_IDS[(int) id - 1_001], id, Side.SELL, 100, 100 * TICK, TimeInForce.GTC);
+		}
+
+		book.createMarket(3, "sweep", 5_000, Side.BUY, 100 * 1_200);
+
+		assertEquals(1_200, makers.size());
+		for (int i = 0; i < 333; i++) {
+			assertEquals(3L * (i + 1), makers.get(i).longValue());
+		}
+		for (int i = 333; i < 1_200; i++) {
+			assertEquals(1_001L + i - 333, makers.get(i).longValue());
+		}
+		assertEquals(133, book.getNumberOfOrders());
+	}
+
+	@Test
+	public void test_IteratorsWalkBothDirectionsAcrossTombstones() {
+		OrderBook book = newBook(null);
+		for (long id = 1; id <= 50; id++) {
+			long price = (100 + id % 5) * TICK;
+			book.createLimit(1, CLIENT_ORDER_IDS[(int) id], id, Side.BUY, 100, price, TimeInForce.GTC);
+		}
+		for (long id = 1; id <= 50; id += 4) {
+			book.getOrder(id).cancel();
+		}
+
+		OrderBook reference = new OrderBook("AAPL");
+		for (long id = 1; id <= 50; id++) {
+			long price = (100 + id % 5) * TICK;
+			reference.createLimit(1, CLIENT_ORDER_IDS[(int) id], id, Side.BUY, 100, price, TimeInForce.GTC);
+		}
+		for (long id = 1; id <= 50; id += 4) {
+			reference.getOrder(id).cancel();
+		}
+
+		for (TraversalOrder traversalOrder : TraversalOrder.values()) {
+			Iterator<Order> expected = reference.iterator(Side.BUY, traversalOrder);
+			Iterator<Order> actual = book.iterator(Side.BUY, traversalOrder);
+			while (expected.hasNext()) {
+				assertTrue(actual.hasNext());
+				assertEquals(expected.next().getId(), actual.next().getId());
+			}
+			assertFalse(actual.hasNext());
+		}
+
+		// canceling the next order while iterating skips to the one after it
+		Iterator<Order> iter = book.iterator(Side.BUY);
+		Order first = iter.next();
+		PriceLevel level = first.getPriceLevel();
+		Order second = level.next(first);
+		Order third = level.next(second);
+		second.cancel();
+		assertSame(third, iter.next());
+	}
+
+	@Test
+	public void test_LevelsKeepTheirArraysWhenPooled() {
+		OrderBook book = newBook(null);
+		book.createLimit(1, "A", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC).cancel();
+		assertTrue(book.isEmpty());
+		Order order = book.createLimit(1, "B", 2, Side.SELL, 100, 101 * TICK, TimeInForce.GTC);
+		assertSame(order, book.getBestAskOrder());
+		assertNull(order.getPriceLevel().next(order));
+		assertNull(order.getPriceLevel().prev(order));
+	}
+
+	@Test
+	public void test_SteadyStateMidQueueCancelsAllocateNoGarbage() {
+		OrderBook book = newBook(null);
+
+		restCancelAndSweep(book, 1_000);
+
+		assertNoAllocation(() -> restCancelAndSweep(book, 10_000));
+		assertTrue(book.isEmpty());
+	}
+
+	private static void restCancelAndSweep(OrderBook book, int iterations) {
+		for (int i = 0; i < iterations; i++) {
+			for (int j = 0; j < 100; j++) {
+				book.createLimit(1, CLIENT_ORDER_IDS[j], j + 1, Side.SELL, 100, (1000 + j % 2) * TICK, TimeInForce.GTC);
+			}
+			for (int j = 0; j < 100; j += 3) {
+				book.getOrder(j + 1).cancel();
+			}
+			book.createMarket(2, CLIENT_ORDER_IDS[999], 1_000, Side.BUY, 100 * 100);
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.CancelReason;
+import com.coralblocks.coralme.Order.RejectReason;
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class BulkRollTest {
+
+	private static final class RecordingListener extends OrderBookAdapter {
+
+		private final List<String> events = new ArrayList<String>();
+
+		@Override
+		public void onOrderCanceled(OrderBook orderBook, long time, Order order, long canceledSize,
+				CancelReason cancelReason) {
+			events.add("canceled " + order.getId());
+		}
+
+		@Override
+		public void onOrderAccepted(OrderBook orderBook, long time, Order order) {
+			events.add("accepted " + order.getId());
+		}
+
+		@Override
+		public void onOrderRejected(OrderBook orderBook, long time, Order order, RejectReason rejectReason) {
+			events.add("rejected " + order.getId());
+		}
+
+		@Override
+		public void onOrderRested(OrderBook orderBook, long time, Order order, long restSize, long restPrice) {
+			events.add("rested " + order.getId());
+		}
+
+		@Override
+		public void onOrderRolled(OrderBook orderBook, long time, Order order, OrderBook newOrderBook,
+				Order rolledOrder) {
+			events.add("rolled " + order.getId() + " " + rolledOrder.getId());
+		}
+	}
+
+	private static List<String> describe(OrderBook book, Side side) {
+		List<String> result = new ArrayList<String>();
+		for (Iterator<Order> iter = book.iterator(side); iter.hasNext();) {
+			Order o = iter.next();
+			result.add(o.getClientOrderId() + "@" + o.getPrice() + "x" + o.getOpenSize() + " " + o.getTimeInForce());
+		}
+		return result;
+	}
+
+	@Test
+	public void test_RollMovesGtcAndGtdOrdersInPriceTimePriority() {
+		OrderBookConfig config = new OrderBookConfig().setTrackQueuePositions(true);
+		OrderBook book = new OrderBook("AAPL", config);
+		OrderBook next = new OrderBook("AAPL", config);
+
+		Random random = new Random(15);
+		List<String> expectedBids = new ArrayList<String>();
+		List<String> expectedAsks = new ArrayList<String>();
+		long id = 1;
+		for (int i = 0; i < 500; i++) {
+			Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+			long price = side.isBuy() ? (100 - random.nextInt(20)) * TICK : (101 + random.nextInt(20)) * TICK;
+			int r = random.nextInt(3);
+			TimeInForce tif = r == 0 ? TimeInForce.DAY : r == 1 ? TimeInForce.GTC : TimeInForce.GTD;
+			book.createLimit(1, "c" + id, id, side, 100 + i, price, tif, Long.MAX_VALUE);
+			id++;
+		}
+		// A partial fill rolls with its open size only
+		book.createLimit(2, "taker", id++, Side.SELL, 50, 80 * TICK, TimeInForce.IOC);
+
+		for (String o : describe(book, Side.BUY)) {
+			if (!o.endsWith("DAY")) expectedBids.add(o);
+		}
+		for (String o : describe(book, Side.SELL)) {
+			if (!o.endsWith("DAY")) expectedAsks.add(o);
+		}
+		int dayOrders = book.getNumberOfOrders() - expectedBids.size() - expectedAsks.size();
+
+		long nextId = book.bulkRollTo(next, 1000);
+
+		assertEquals(1000 + expectedBids.size() + expectedAsks.size(), nextId);
+		assertEquals(expectedBids, describe(next, Side.BUY));
+		assertEquals(expectedAsks, describe(next, Side.SELL));
+		assertEquals(dayOrders, book.getNumberOfOrders());
+		for (Iterator<Order> iter = book.iterator(Side.BUY); iter.hasNext();) {
+			assertTrue(iter.next().isDay());
+		}
+
+		// IDs follow price-time priority, bids first, and sizes and positions are tracked
+		long expectedId = 1000;
+		for (Side side : new Side[] { Side.BUY, Side.SELL }) {
+			for (PriceLevel pl = next.head(side); pl != null; pl = pl.next) {
+				long sizeAhead = 0;
+				long levelSize = 0;
+				for (Order o = pl.head(); o != null; o = pl.next(o)) {
+					assertEquals(expectedId++, o.getId());
+					assertTrue(o.isResting());
+					assertSame(o, next.getOrder(o.getId()));
+					assertSame(o, next.getOrder(o.getClientId(), o.getClientOrderId()));
+					assertEquals(sizeAhead, next.getSizeAhead(o));
+					sizeAhead += o.getOpenSize();
+					levelSize += o.getOpenSize();
+				}
+				assertEquals(levelSize, pl.getSize());
+			}
+		}
+	}
+
+	@Test
+	public void test_RollSendsOneNotificationPerOrderToEachListenerOnce() {
+		RecordingListener oldListener = new RecordingListener();
+		RecordingListener newListener = new RecordingListener();
+		RecordingListener bothListener = new RecordingListener();
+
+		OrderBook book = new OrderBook("AAPL", oldListener);
+		OrderBook next = new OrderBook("AAPL", newListener);
+		book.addListener(bothListener);
+		next.addListener(bothListener);
+
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "2", 2, Side.BUY, 100, 100 * TICK, TimeInForce.DAY);
+		book.createLimit(1, "3", 3, Side.SELL, 100, 102 * TICK, TimeInForce.GTC);
+		oldListener.events.clear();
+		bothListener.events.clear();
+
+		book.bulkRollTo(next, 10);
+
+		List<String> expected = new ArrayList<String>();
+		expected.add("rolled 1 10");
+		expected.add("rolled 3 11");
+		assertEquals(expected, oldListener.events);
+		assertEquals(expected, newListener.events);
+		assertEquals(expected, bothListener.events);
+	}
+
+	@Test
+	public void test_RollCancelsOrderListenersWithRolledReason() {
+		final List<String> events = new ArrayList<String>();
+		final List<ReentrantOrderBookOperationException> caught = new ArrayList<ReentrantOrderBookOperationException>();
+		OrderBook book = new OrderBook("AAPL");
+		final OrderBook next = new OrderBook("AAPL");
+
+		Order gtc = book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		gtc.addListener(new ListenerSafetyTestSupport.OrderListenerAdapter() {
+			@Override
+			public void onOrderCanceled(long time, Order order, long canceledSize, CancelReason cancelReason) {
+				events.add("canceled " + order.getId() + " " + canceledSize + " " + cancelReason);
+				try {
+					next.createLimit(1, "x", 99, Side.BUY, 100, 90 * TICK, TimeInForce.GTC);
+				} catch (ReentrantOrderBookOperationException e) {
+					caught.add(e);
+				}
+				throw new RuntimeException("listener failure");
+			}
+
+			@Override
+			public void onOrderTerminated(long time, Order order) {
+				events.add("terminated " + order.getId());
+			}
+
+			@Override
+			public void onExceptionsThrown(Order order, OrderListenerExceptions exceptions) {
+				events.add("exceptions " + order.getId() + " " + exceptions.size());
+			}
+		});
+
+		book.bulkRollTo(next, 10);
+
+		List<String> expected = new ArrayList<String>();
+		expected.add("canceled 1 100 ROLLED");
+		expected.add("terminated 1");
+		expected.add("exceptions 1 1");
+		assertEquals(expected, events);
+		assertEquals(1, caught.size());
+		assertEquals(1, next.getNumberOfOrders());
+		assertEquals(100, next.getOrder(10).getOpenSize());
+	}
+
+	@Test
+	public void test_RolledOrdersTradeAndExpireInTheNewOrderBook() {
+		OrderBook book = new OrderBook("AAPL");
+		OrderBook next = new OrderBook("AAPL");
+
+		Order gtd = book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTD, Long.MAX_VALUE);
+		book.createLimit(1, "2", 2, Side.BUY, 300, 100 * TICK, TimeInForce.GTC);
+		book.bulkRollTo(next, 1);
+
+		assertFalse(gtd.isResting());
+		assertTrue(book.isEmpty());
+		assertNull(book.head(Side.BUY));
+
+		assertEquals(Long.MAX_VALUE, next.getOrder(1).getExpireTime());
+		next.createMarket(2, "3", 3, Side.SELL, 150);
+		assertNull(next.getOrder(1));
+		assertEquals(250, next.getOrder(2).getOpenSize());
+
+		next.getOrder(2).cancel();
+		assertTrue(next.isEmpty());
+		assertNull(next.head(Side.BUY));
+	}
+
+	@Test
+	public void test_RollRequiresAnEmptyOrderBookForTheSameSecurity() {
+		OrderBook book = new OrderBook("AAPL");
+		OrderBook other = new OrderBook("MSFT");
+		OrderBook busy = new OrderBook("AAPL");
+		busy.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+
+		assertThrows(IllegalArgumentException.class, () -> book.bulkRollTo(book, 1));
+		assertThrows(IllegalArgumentException.class, () -> book.bulkRollTo(other, 1));
+		assertThrows(IllegalArgumentException.class, () -> book.bulkRollTo(busy, 2));
+		assertThrows(IllegalArgumentException.class, () -> book.bulkRollTo(new OrderBook("AAPL"), 0));
+	}
+
+	@Test
+	public void test_OrderBookOperationsFromRollNotificationAreRejected() {
+		final List<ReentrantOrderBookOperationException> caught = new ArrayList<ReentrantOrderBookOperationException>();
+		OrderBook book = new OrderBook("AAPL");
+		final OrderBook next = new OrderBook("AAPL");
+		book.addListener(new OrderBookAdapter() {
+			@Override
+			public void onOrderRolled(OrderBook orderBook, long time, Order order, OrderBook newOrderBook,
+					Order rolledOrder) {
+				try {
+					newOrderBook.createLimit(1, "x", 99, Side.BUY, 100, 90 * TICK, TimeInForce.GTC);
+				} catch (ReentrantOrderBookOperationException e) {
+					caught.add(e);
+				}
+			}
+		});
+
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		book.bulkRollTo(next, 1);
+
+		assertEquals(1, caught.size());
+		assertSame(next, caught.get(0).getOrderBook());
+		assertEquals(1, next.getNumberOfOrders());
+	}
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertNoAllocation;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.coralblocks.coralme.Order.CancelReason;
+import com.coralblocks.coralme.Order.ExecuteSide;
+import com.coralblocks.coralme.Order.RejectReason;
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+import com.coralblocks.coralme.OrderBook.TraversalOrder;
+import com.coralblocks.coralme.OrderBookConfig.OrderStorage;
+import com.coralblocks.coralme.util.DeterministicTimestamper;
+import com.coralblocks.coralme.util.Timestamper;
+
+@RunWith(Parameterized.class)
+public class ColumnarOrderStorageTest {
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> parameters() {
+		return Arrays.asList(new Object[][] { { OrderStorage.COLUMNS }, { OrderStorage.OFF_HEAP_COLUMNS } });
+	}
+
+	private final OrderStorage storage;
+
+	public ColumnarOrderStorageTest(OrderStorage storage) {
+		this.storage = storage;
+	}
+
+	private OrderBook newBook(OrderBookListener listener) {
+		return newBook(storage, listener, new DeterministicTimestamper(1_000));
+	}
+
+	private static OrderBook newBook(OrderStorage storage, OrderBookListener listener, Timestamper timestamper) {
+		return new OrderBook("AAPL", listener,
+				new OrderBookConfig().setOrderStorage(storage).setTimestamper(timestamper).setExpectedOrders(16));
+	}
+
+	@Test
+	public void test_RandomTradingMatchesObjectStorage() {
+		for (long seed = 1; seed <= 20; seed++) {
+			EventLog objectEvents = new EventLog();
+			EventLog columnEvents = new EventLog();
+			DeterministicTimestamper timestamper = new DeterministicTimestamper();
+			OrderBook objects = newBook(OrderStorage.OBJECTS, objectEvents, timestamper);
+			OrderBook columns = newBook(storage, columnEvents, timestamper);
+
+			trade(new Random(seed), timestamper, objects, columns);
+
+			assertEquals("seed=" + seed, objectEvents.toString(), columnEvents.toString());
+			assertEquals("seed=" + seed, objects.orders(), columns.orders());
+			assertEquals("seed=" + seed, objects.levels(), columns.levels());
+			assertEquals("seed=" + seed, objects.getNumberOfOrders(), columns.getNumberOfOrders());
+
+			// Purging follows the storage order, so only the purged orders are compared
+			objectEvents.clear();
+			columnEvents.clear();
+			objects.purge();
+			columns.purge();
+			assertEquals("seed=" + seed, objectEvents.sorted(), columnEvents.sorted());
+			assertTrue(columns.isEmpty());
+		}
+	}
+
+	private static void trade(Random random, DeterministicTimestamper timestamper, OrderBook objects,
+			OrderBook columns) {
+		long nextId = 1;
+
+		for (int i = 0; i < 3_000; i++) {
+			timestamper.setNanoEpoch(i + 1);
+			int action = random.nextInt(100);
+			long id = 1 + random.nextInt((int) nextId);
+
+			if (action < 50) {
+				Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+				long price = 95 + random.nextInt(11);
+				long size = 1 + random.nextInt(500);
+				long clientId = random.nextInt(3);
+				TimeInForce tif = random.nextInt(4) == 0 ? TimeInForce.DAY
+						: random.nextInt(8) == 0 ? TimeInForce.IOC : TimeInForce.GTC;
+				String clientOrderId = clientOrderId(random, nextId);
+				long orderId = nextId++;
+				assertSameOrder(objects.createLimit(clientId, clientOrderId, orderId, side, size, price, tif),
+						columns.createLimit(clientId, clientOrderId, orderId, side, size, price, tif));
+			} else if (action < 55) {
+				Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+				long size = 1 + random.nextInt(1_000);
+				long orderId = nextId++;
+				assertSameOrder(objects.createMarket(2, "M", orderId, side, size),
+						columns.createMarket(2, "M", orderId, side, size));
+			} else if (action < 70) {
+				Order o = objects.getOrder(id);
+				Order c = columns.getOrder(id);
+				assertSameOrder(o, c);
+				if (o != null) {
+					o.cancel();
+					c.cancel();
+				}
+			} else if (action < 80) {
+				Order o = objects.getOrder(id);
+				Order c = columns.getOrder(id);
+				assertSameOrder(o, c);
+				if (o != null) {
+					long newTotalSize = o.getExecutedSize() + random.nextInt((int) o.getOpenSize() + 1);
+					o.reduceTo(newTotalSize);
+					c.reduceTo(newTotalSize);
+				}
+			} else if (action < 85) {
+				Order o = objects.getOrder(id);
+				Order c = columns.getOrder(id);
+				if (o != null) {
+					assertSameOrder(objects.getOrder(o.getClientId(), o.getClientOrderId()),
+							columns.getOrder(c.getClientId(), c.getClientOrderId()));
+					assertEquals(objects.getSizeAhead(o), columns.getSizeAhead(c));
+					assertEquals(objects.getQueuePosition(o), columns.getQueuePosition(c));
+				}
+			} else if (action < 90) {
+				Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+				TraversalOrder traversal = random.nextBoolean() ? TraversalOrder.PRICE_TIME_PRIORITY
+						: TraversalOrder.REVERSE_PRICE_TIME_PRIORITY;
+				Iterator<Order> o = objects.iterator(side, traversal);
+				Iterator<Order> c = columns.iterator(side, traversal);
+				for (int n = 0; o.hasNext(); n++) {
+					assertTrue(c.hasNext());
+					Order objectOrder = o.next();
+					Order columnOrder = c.next();
+					assertSameOrder(objectOrder, columnOrder);
+					if (n % 3 == 0) {
+						objectOrder.cancel();
+						columnOrder.cancel();
+					}
+				}
+				assertFalse(c.hasNext());
+			} else if (action < 95) {
+				assertSameOrder(objects.getBestBidOrder(), columns.getBestBidOrder());
+				assertSameOrder(objects.getBestAskOrder(), columns.getBestAskOrder());
+			} else {
+				int maxOrders = random.nextInt(5);
+				assertEquals(objects.expire(maxOrders), columns.expire(maxOrders));
+			}
+		}
+	}
+
+	private static String clientOrderId(Random random, long id) {
+		switch (random.nextInt(10)) {
+			case 0:
+				return "long-client-order-id-" + id;
+			case 1:
+				return "\u20ac" + id;
+			default:
+				return "C" + id;
+		}
+	}
+
+	private static void assertSameOrder(Order expected, Order actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(describe(expected), describe(actual));
+	}
+
+	private static String describe(Order order) {
+		return order.getId() + " " + order.getClientId() + " " + order.getClientOrderId() + " " + order.getSide() + " "
+				+ order.getPrice() + " " + order.getTimeInForce() + " " + order.getOriginalSize() + " "
+				+ order.getTotalSize() + " " + order.getExecutedSize() + " " + order.isResting() + " "
+				+ order.isTerminal() + " " + order.getAcceptTime() + " " + order.getRestTime() + " "
+				+ order.getReduceTime() + " " + order.getExecuteTime() + " "
+				+ (order.getPriceLevel() == null ? 0 : order.getPriceLevel().getPrice());
+	}
+
+	private static final class EventLog extends OrderBookAdapter {
+
+		private final StringBuilder events = new StringBuilder();
+
+		private void add(String event, Order order, long size, Object detail) {
+			events.append(event).append(' ').append(describe(order)).append(' ').append(size).append(' ')
+					.append(detail).append('\n');
+		}
+
+		@Override
+		public void onOrderAccepted(OrderBook orderBook, long time, Order order) {
+			add("accepted", order, 0, null);
+		}
+
+		@Override
+		public void onOrderRejected(OrderBook orderBook, long time, Order order, RejectReason reason) {
+			add("rejected", order, 0, reason);
+		}
+
+		@Override
+		public void onOrderRested(OrderBook orderBook, long time, Order order, long restSize, long restPrice) {
+			add("rested", order, restSize, restPrice);
+		}
+
+		@Override
+		public void onOrderReduced(OrderBook orderBook, long time, Order order, long canceledSize,
+				long reduceNewTotalSize, CancelReason cancelReason) {
+			add("reduced", order, canceledSize, reduceNewTotalSize + " " + cancelReason);
+		}
+
+		@Override
+		public void onOrderCanceled(OrderBook orderBook, long time, Order order, long canceledSize,
+				CancelReason cancelReason) {
+			add("canceled", order, canceledSize, cancelReason);
+		}
+
+		@Override
+		public void onOrderExecuted(OrderBook orderBook, long time, Order order, ExecuteSide executeSide,
+				long executeSize, long executePrice, long executeId, long executeMatchId) {
+			add("executed", order, executeSize, executeSide + " " + executePrice + " " + executeMatchId);
+		}
+
+		@Override
+		public void onOrderTerminated(OrderBook orderBook, long time, Order order) {
+			add("terminated", order, 0, null);
+		}
+
+		private void clear() {
+			events.setLength(0);
+		}
+
+		private List<String> sorted() {
+			List<String> lines = new ArrayList<String>(Arrays.asList(events.toString().split("\n")));
+			Collections.sort(lines);
+			return lines;
+		}
+
+		@Override
+		public String toString() {
+			return events.toString();
+		}
+	}
+
+	@Test
+	public void test_RestingOrdersAreCursorsOverTheirSlots() {
+		OrderBook book = newBook(null);
+
+		Order first = book.createLimit(1, "A", 1, Side.BUY, 100, 100, TimeInForce.GTC);
+		assertTrue(first.isResting());
+		assertEquals(1, first.getId());
+
+		// The same cursor is pointed to the second order
+		Order second = book.createLimit(1, "B", 2, Side.BUY, 200, 99, TimeInForce.GTC);
+		assertSame(first, second);
+		assertEquals(2, first.getId());
+		assertSame(second, book.getOrder(1));
+		assertEquals("A", second.getClientOrderId().toString());
+
+		Order taker = book.createLimit(2, "C", 3, Side.SELL, 150, 99, TimeInForce.GTC);
+		assertTrue(taker.isTerminal());
+		assertEquals(150, taker.getExecutedSize());
+
+		Order remaining = book.getOrder(2);
+		assertEquals(50, remaining.getExecutedSize());
+		assertEquals(200, remaining.getTotalSize());
+		assertNull(book.getOrder(1));
+		assertEquals(1, book.getNumberOfOrders());
+
+		remaining.cancel();
+		assertTrue(remaining.isTerminal());
+		assertTrue(book.isEmpty());
+		assertEquals("-------- \n", book.orders());
+	}
+
+	@Test
+	public void test_StaleCursorsCannotChangeTheBook() {
+		OrderBook book = newBook(null);
+
+		book.createLimit(1, "A", 1, Side.BUY, 100, 100, TimeInForce.GTC);
+		Order cursor = book.getOrder(1);
+		book.createLimit(2, "B", 2, Side.SELL, 100, 100, TimeInForce.GTC);
+
+		// The order was filled by an order that did not rest, so the cursor was not moved
+		assertEquals(1, cursor.getId());
+		assertThrows(IllegalStateException.class, () -> cursor.cancel());
+		assertThrows(IllegalStateException.class, () -> cursor.reduceTo(50));
+		assertTrue(book.isEmpty());
+	}
+
+	@Test
+	public void test_CursorsReloadTheirOrderBeforeChangingIt() {
+		OrderBook book = newBook(null);
+
+		Order cursor = book.createLimit(1, "A", 1, Side.BUY, 100, 100, TimeInForce.GTC);
+		Iterator<Order> iterator = book.iterator(Side.BUY);
+		Order other = iterator.next();
+		other.reduceTo(60);
+
+		// The cursor still shows the order before the reduction, but reduces the current one
+		assertEquals(100, cursor.getTotalSize());
+		cursor.cancel(10);
+		assertEquals(50, cursor.getTotalSize());
+		assertEquals(50, book.getBestBidSize());
+	}
+
+	@Test
+	public void test_ColumnsHoldManyOrders() {
+		OrderBook book = newBook(null);
+		String wide = "\u20ac".repeat(Order.CLIENT_ORDER_ID_MAX_LENGTH);
+
+		for (int i = 1; i <= 10_000; i++) {
+			String clientOrderId = i % 7 == 0 ? wide.substring(0, i % 60) + i : "C" + i;
+			book.createLimit(i % 5, clientOrderId, i, i % 2 == 0 ? Side.BUY : Side.SELL, 100,
+					i % 2 == 0 ? 1_000 - i % 50 : 2_000 + i % 50, TimeInForce.DAY);
+		}
+
+		assertEquals(10_000, book.getNumberOfOrders());
+		for (int i = 1; i <= 10_000; i++) {
+			String clientOrderId = i % 7 == 0 ? wide.substring(0, i % 60) + i : "C" + i;
+			Order order = book.getOrder(i % 5, clientOrderId);
+			assertEquals(i, order.getId());
+			assertEquals(clientOrderId, order.getClientOrderId().toString());
+			assertEquals(i, book.getOrder(i).getId());
+		}
+
+		for (int i = 2; i <= 10_000; i += 2) {
+			book.getOrder(i).cancel();
+		}
+		assertEquals(2_000, book.expire(3_000));
+		assertEquals(0, book.expire(3_000));
+		assertTrue(book.isEmpty());
+		assertEquals(0, book.getBidLevels() + book.getAskLevels());
+	}
+
+	@Test
+	public void test_UnsupportedFeaturesAreRejected() {
+		OrderBook book = newBook(null);
+		long tomorrow = book.getTimestamper().nanoEpoch() + 86_400_000_000_000L;
+
+		Order gtd = book.createLimit(1, "A", 1, Side.BUY, 100, 100, TimeInForce.GTD, tomorrow);
+		assertTrue(gtd.isTerminal());
+		assertFalse(gtd.isAccepted());
+
+		Order resting = book.createLimit(1, "B", 2, Side.BUY, 100, 100, TimeInForce.GTC);
+		OrderListener listener = new ListenerSafetyTestSupport.OrderListenerAdapter();
+		assertThrows(UnsupportedOperationException.class, () -> resting.addListener(listener));
+		assertThrows(UnsupportedOperationException.class, () -> book.rollTo(new OrderBook("AAPL")));
+		assertThrows(UnsupportedOperationException.class, () -> new OrderBook("AAPL").bulkRollTo(book, 1));
+		assertThrows(UnsupportedOperationException.class, () -> book.checkpoint(null));
+
+		assertThrows(IllegalArgumentException.class, () -> new OrderBook("AAPL",
+				new OrderBookConfig().setOrderStorage(storage).setArrayBackedPriceLevels(true)));
+		assertThrows(IllegalArgumentException.class, () -> new OrderBook("AAPL",
+				new OrderBookConfig().setOrderStorage(storage).setTrackQueuePositions(true)));
+	}
+
+	@Test
+	public void test_SteadyStateAllocatesNothing() {
+		OrderBook book = newBook(null);
+		book.prewarm(1_000, 100);
+		String[] clientOrderIds = new String[500];
+		for (int i = 0; i < clientOrderIds.length; i++) {
+			clientOrderIds[i] = "C" + (i + 1);
+		}
+
+		Runnable session = () -> {
+			for (int i = 1; i <= 500; i++) {
+				book.createLimit(1, clientOrderIds[i - 1], i, Side.BUY, 100, 1_000 - i % 20, TimeInForce.GTC);
+				book.createLimit(2, clientOrderIds[i - 1], 1_000 + i, Side.SELL, 100, 1_100 + i % 20,
+						TimeInForce.DAY);
+			}
+			for (int i = 1; i <= 500; i += 2) {
+				book.getOrder(i).reduceTo(50);
+			}
+			book.createLimit(3, "T", 5_000, Side.SELL, 20_000, 990, TimeInForce.IOC);
+			book.expire();
+			book.purge();
+		};
+
+		session.run();
+		session.run();
+		assertTrue(book.isEmpty());
+		assertNoAllocation(session);
+	}
+}
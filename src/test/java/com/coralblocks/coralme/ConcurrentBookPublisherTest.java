@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+import com.coralblocks.coralme.OrderBook.State;
+
+public class ConcurrentBookPublisherTest {
+
+	@Test
+	public void test_PublishesTheBestLevelsAndTheLastExecution() {
+		OrderBook book = new OrderBook("AAPL");
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.DAY);
+
+		ConcurrentBookPublisher publisher = new ConcurrentBookPublisher(book, 2);
+		ConcurrentBookSnapshot snapshot = new ConcurrentBookSnapshot(2);
+		assertTrue(publisher.tryRead(snapshot));
+		assertEquals(1, snapshot.getSequence());
+		assertEquals(State.ONESIDED, snapshot.getState());
+		assertEquals(100 * TICK, snapshot.getBestBidPrice());
+		assertEquals(0, snapshot.getBestAskPrice());
+		assertEquals(Long.MAX_VALUE, snapshot.getLastExecutedPrice());
+
+		book.createLimit(1, "2", 2, Side.BUY, 200, 100 * TICK, TimeInForce.DAY);
+		book.createLimit(1, "3", 3, Side.BUY, 300, 99 * TICK, TimeInForce.DAY);
+		book.createLimit(1, "4", 4, Side.BUY, 400, 98 * TICK, TimeInForce.DAY); // beyond the depth
+		book.createLimit(2, "5", 5, Side.SELL, 500, 102 * TICK, TimeInForce.DAY);
+		book.createLimit(2, "6", 6, Side.SELL, 150, 100 * TICK, TimeInForce.DAY);
+
+		publisher.read(snapshot);
+		assertEquals(5, snapshot.getSequence());
+		assertEquals(State.NORMAL, snapshot.getState());
+		assertEquals(2, snapshot.getLevels(Side.BUY));
+		assertEquals(150, snapshot.getBestBidSize());
+		assertEquals(1, snapshot.getOrders(Side.BUY, 0));
+		assertEquals(99 * TICK, snapshot.getPrice(Side.BUY, 1));
+		assertEquals(300, snapshot.getSize(Side.BUY, 1));
+		assertEquals(1, snapshot.getLevels(Side.SELL));
+		assertEquals(500, snapshot.getBestAskSize());
+		assertEquals(100 * TICK, snapshot.getLastExecutedPrice());
+		assertEquals(50, snapshot.getLastExecutedSize());
+		assertEquals(book.getMatchId(), snapshot.getMatchId());
+		assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getPrice(Side.SELL, 1));
+
+		// Changes beyond the depth and rejected orders do not publish
+		book.getOrder(4).reduceTo(300);
+		book.createLimit(1, "7", 7, Side.BUY, -1, 98 * TICK, TimeInForce.DAY);
+		publisher.read(snapshot);
+		assertEquals(5, snapshot.getSequence());
+
+		publisher.detach();
+		book.getOrder(3).cancel();
+		publisher.read(snapshot);
+		assertEquals(2, snapshot.getLevels(Side.BUY));
+		assertEquals(null, book.getConcurrentBookPublisher());
+	}
+
+	@Test
+	public void test_InvalidArguments() {
+		OrderBook book = new OrderBook("AAPL");
+		assertThrows(IllegalArgumentException.class, () -> new ConcurrentBookPublisher(book, 0));
+		ConcurrentBookPublisher publisher = new ConcurrentBookPublisher(book);
+		assertThrows(IllegalStateException.class, () -> new ConcurrentBookPublisher(book));
+		assertThrows(IllegalArgumentException.class, () -> publisher.tryRead(new ConcurrentBookSnapshot(1)));
+		ConcurrentBookSnapshot snapshot = new ConcurrentBookSnapshot();
+		assertTrue(publisher.tryRead(snapshot));
+		assertEquals(State.EMPTY, snapshot.getState());
+		assertFalse(snapshot.hasBids());
+	}
+
+	private static long tradeSize(long matchId) {
+		return 1 + matchId * 7 % 100;
+	}
+
+	@Test
+	public void test_ConcurrentReadersNeverSeeAPartialWrite() throws Exception {
+		int trades = 200_000;
+		long restingSize = 1_000_000_000L;
+
+		// The size left after each match, to check the fields of a read against each other
+		long[] left = new long[trades + 1];
+		left[0] = restingSize;
+		for (int i = 1; i <= trades; i++) {
+			left[i] = left[i - 1] - tradeSize(i);
+		}
+
+		OrderBook book = new OrderBook("AAPL");
+		book.createLimit(1, "ask", 1, Side.SELL, restingSize, 100 * TICK, TimeInForce.GTC);
+		ConcurrentBookPublisher publisher = new ConcurrentBookPublisher(book, 1);
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicReference<String> failure = new AtomicReference<String>();
+		Thread[] readers = new Thread[2];
+		long[] reads = new long[readers.length];
+
+		for (int r = 0; r < readers.length; r++) {
+			int reader = r;
+			readers[r] = new Thread(() -> {
+				ConcurrentBookSnapshot snapshot = new ConcurrentBookSnapshot(1);
+				long lastSequence = 0;
+				while (running.get() && failure.get() == null) {
+					publisher.read(snapshot);
+					int matchId = (int) snapshot.getMatchId();
+					if (snapshot.getSequence() < lastSequence || snapshot.getBestAskSize() != left[matchId]
+							|| matchId > 0 && snapshot.getLastExecutedSize() != tradeSize(matchId)) {
+						failure.set(snapshot.toString());
+					}
+					lastSequence = snapshot.getSequence();
+					reads[reader]++;
+				}
+			});
+			readers[r].start();
+		}
+
+		for (int i = 1; i <= trades; i++) {
+			book.createMarket(2, "m", i + 1, Side.BUY, tradeSize(i));
+		}
+
+		running.set(false);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+
+		assertEquals(null, failure.get());
+		assertEquals(left[trades], book.getBestAskSize());
+		assertTrue(reads[0] > 0 && reads[1] > 0);
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.CancelReason;
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class DayOrderExpiryTest {
+
+	private static final class ExpiredOrders extends OrderBookAdapter {
+
+		private final List<Long> ids = new ArrayList<Long>();
+
+		@Override
+		public void onOrderCanceled(OrderBook orderBook, long time, Order order, long canceledSize,
+				CancelReason cancelReason) {
+			if (cancelReason == CancelReason.EXPIRED) ids.add(order.getId());
+		}
+	}
+
+	@Test
+	public void test_ExpireCancelsOnlyDayOrdersInTheOrderTheyRested() {
+		ExpiredOrders expired = new ExpiredOrders();
+		OrderBook book = new OrderBook("AAPL", expired);
+		for (long id = 1; id <= 30; id++) {
+			TimeInForce tif = id % 3 == 0 ? TimeInForce.DAY : TimeInForce.GTC;
+			Side side = id % 2 == 0 ? Side.BUY : Side.SELL;
+			long price = side.isBuy() ? (100 - id) * TICK : (200 + id) * TICK;
+			book.createLimit(1, String.valueOf(id), id, side, 100, price, tif);
+		}
+
+		book.expire();
+
+		assertEquals(10, expired.ids.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(3L * (i + 1), expired.ids.get(i).longValue());
+		}
+		assertEquals(20, book.getNumberOfOrders());
+		assertEquals(0, book.expire(10));
+	}
+
+	@Test
+	public void test_ExpireCanBeSpreadOverSeveralCalls() {
+		ExpiredOrders expired = new ExpiredOrders();
+		OrderBook book = new OrderBook("AAPL", expired);
+		for (long id = 1; id <= 100; id++) {
+			book.createLimit(1, String.valueOf(id), id, Side.BUY, 100, (100 + id % 7) * TICK, TimeInForce.DAY);
+		}
+		book.createLimit(1, "gtc", 101, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+
+		assertEquals(100, book.expire(0));
+		assertEquals(60, book.expire(40));
+		assertEquals(40, expired.ids.size());
+		assertEquals(1, expired.ids.get(0).longValue());
+		assertEquals(40, expired.ids.get(39).longValue());
+
+		// a DAY order resting between two calls is expired after the older ones
+		book.createLimit(1, "late", 102, Side.BUY, 100, 100 * TICK, TimeInForce.DAY);
+		assertEquals(31, book.expire(30));
+		assertEquals(0, book.expire(100));
+		assertEquals(101, expired.ids.size());
+		assertEquals(102, expired.ids.get(100).longValue());
+		assertEquals(1, book.getNumberOfOrders());
+		assertEquals(101, book.getOrder(101).getId());
+	}
+
+	@Test
+	public void test_DayOrdersLeavingTheBookLeaveTheExpiryList() {
+		ExpiredOrders expired = new ExpiredOrders();
+		OrderBook book = new OrderBook("AAPL", expired);
+		Random random = new Random(5);
+		List<Long> resting = new ArrayList<Long>();
+
+		for (long id = 1; id <= 5_000; id++) {
+			int op = random.nextInt(10);
+			if (op < 6) {
+				TimeInForce tif = random.nextBoolean() ? TimeInForce.DAY : TimeInForce.GTC;
+				Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+				long price = (side.isBuy() ? 99 - random.nextInt(5) : 101 + random.nextInt(5)) * TICK;
+				book.createLimit(1, String.valueOf(id), id, side, 100 * (1 + random.nextInt(3)), price, tif);
+			} else if (op < 9) {
+				Order order = book.getOrder(1 + random.nextInt((int) id));
+				if (order != null) order.cancel();
+			} else {
+				book.createMarket(2, String.valueOf(id), id, random.nextBoolean() ? Side.BUY : Side.SELL, 300);
+			}
+		}
+
+		for (long id = 1; id <= 5_000; id++) {
+			Order order = book.getOrder(id);
+			if (order != null && order.getTimeInForce() == TimeInForce.DAY) resting.add(id);
+		}
+
+		assertEquals(resting.size(), book.expire(0));
+		book.expire();
+		assertEquals(resting, expired.ids);
+		for (long id : resting) {
+			assertNull(book.getOrder(id));
+		}
+
+		book.createLimit(1, "A", 1, Side.BUY, 100, 100 * TICK, TimeInForce.DAY);
+		book.purge();
+		assertTrue(book.isEmpty());
+		assertEquals(0, book.expire(10));
+	}
+
+	@Test
+	public void test_ExpireIsAnOperationOfItsOwn() {
+		Exception[] failure = new Exception[1];
+		OrderBook book = new OrderBook("AAPL", new OrderBookAdapter() {
+			@Override
+			public void onOrderCanceled(OrderBook orderBook, long time, Order order, long canceledSize,
+					CancelReason cancelReason) {
+				try {
+					orderBook.expire(1);
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		});
+		book.createLimit(1, "A", 1, Side.BUY, 100, 100 * TICK, TimeInForce.DAY);
+		book.createLimit(1, "B", 2, Side.BUY, 100, 100 * TICK, TimeInForce.DAY);
+
+		assertEquals(1, book.expire(1));
+		assertTrue(failure[0] instanceof ReentrantOrderBookOperationException);
+		assertSame(book, ((ReentrantOrderBookOperationException) failure[0]).getOrderBook());
+		assertThrows(IllegalArgumentException.class, () -> book.expire(-1));
+	}
+}
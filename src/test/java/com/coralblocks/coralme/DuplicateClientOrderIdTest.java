@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertNoAllocation;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.ExecuteSide;
+import com.coralblocks.coralme.Order.RejectReason;
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class DuplicateClientOrderIdTest {
+
+	@Test
+	public void test_DuplicateOfRestingOrderIsRejectedBeforeMatching() {
+		List<RejectReason> rejections = new ArrayList<RejectReason>();
+		int[] executions = new int[1];
+		OrderBook book = new OrderBook("AAPL", new OrderBookAdapter() {
+			@Override
+			public void onOrderRejected(OrderBook orderBook, long time, Order order, RejectReason rejectReason) {
+				rejections.add(rejectReason);
+			}
+
+			@Override
+			public void onOrderExecuted(OrderBook orderBook, long time, Order order, ExecuteSide executeSide,
+					long executeSize, long executePrice, long executeId, long executeMatchId) {
+				executions[0]++;
+			}
+		});
+		Order original = book.createLimit(1, "A1", 1, Side.BUY, 100, 100, TimeInForce.GTC);
+		book.createLimit(2, "B1", 2, Side.SELL, 100, 101, TimeInForce.GTC);
+
+		Order duplicate = book.createLimit(1, new StringBuilder("A1"), 3, Side.BUY, 100, 101, TimeInForce.GTC);
+
+		assertTrue(duplicate.isTerminal());
+		assertFalse(duplicate.isAccepted());
+		assertEquals(1, rejections.size());
+		assertSame(RejectReason.DUPLICATE_CLIENT_ORDER_ID, rejections.get(0));
+		assertEquals(0, executions[0]);
+		assertEquals(2, book.getNumberOfOrders());
+		assertSame(original, book.getOrder(1, "A1"));
+		assertSame(original, book.getOrder(1));
+	}
+
+	@Test
+	public void test_LookupIsScopedToTheClientAndFollowsTheOrderLifecycle() {
+		OrderBook book = new OrderBook("AAPL");
+
+		Order first = book.createLimit(1, "X", 1, Side.BUY, 300, 100, TimeInForce.GTC);
+		Order second = book.createLimit(2, "X", 2, Side.BUY, 100, 99, TimeInForce.GTC);
+
+		assertSame(first, book.getOrder(1, "X"));
+		assertSame(second, book.getOrder(2, new StringBuilder("X")));
+		assertNull(book.getOrder(3, "X"));
+		assertNull(book.getOrder(1, "XX"));
+		assertNull(book.getOrder(1, ""));
+
+		// partial fill keeps it, full fill removes it
+		book.createMarket(3, "M1", 3, Side.SELL, 100);
+		assertSame(first, book.getOrder(1, "X"));
+		book.createMarket(3, "M2", 4, Side.SELL, 200);
+		assertNull(book.getOrder(1, "X"));
+
+		// the client order ID can be reused once the order is terminal
+		Order reused = book.createLimit(1, "X", 5, Side.BUY, 100, 98, TimeInForce.GTC);
+		assertTrue(reused.isAccepted());
+		assertSame(reused, book.getOrder(1, "X"));
+
+		book.getOrder(2, "X").cancel();
+		assertNull(book.getOrder(2, "X"));
+
+		book.purge();
+		assertNull(book.getOrder(1, "X"));
+	}
+
+	@Test
+	public void test_DuplicatesCanBeAllowed() {
+		OrderBook book = new OrderBook("AAPL");
+		assertTrue(book.isRejectDuplicateClientOrderIds());
+		book.setRejectDuplicateClientOrderIds(false);
+
+		Order first = book.createLimit(1, "X", 1, Side.BUY, 100, 100, TimeInForce.GTC);
+		Order second = book.createLimit(1, "X", 2, Side.BUY, 100, 100, TimeInForce.GTC);
+
+		assertTrue(second.isAccepted());
+		assertEquals(2, book.getNumberOfOrders());
+
+		first.cancel();
+		assertSame(second, book.getOrder(1, "X"));
+		second.cancel();
+		assertNull(book.getOrder(1, "X"));
+	}
+
+	@Test
+	public void test_RandomLifecycleKeepsTheIndexConsistent() {
+		OrderBook book = new OrderBook("AAPL");
+		Random random = new Random(17);
+		StringBuilder clientOrderId = new StringBuilder();
+
+		for (long id = 1; id <= 20_000; id++) {
+			long clientId = random.nextInt(4);
+			clientOrderId.setLength(0);
+			clientOrderId.append(random.nextInt(500));
+			Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+			long price = side.isBuy() ? 100 - random.nextInt(5) : 99 + random.nextInt(5);
+			Order resting = book.getOrder(clientId, clientOrderId);
+
+			Order order = book.createLimit(clientId, clientOrderId, id, side, 100, price, TimeInForce.GTC);
+
+			if (resting != null) {
+				assertFalse(order.isAccepted());
+				assertSame(resting, book.getOrder(clientId, clientOrderId));
+			} else if (!order.isTerminal()) {
+				assertSame(order, book.getOrder(clientId, clientOrderId));
+			} else {
+				assertNull(book.getOrder(clientId, clientOrderId));
+			}
+		}
+
+		int found = 0;
+		for (long clientId = 0; clientId < 4; clientId++) {
+			for (int i = 0; i < 500; i++) {
+				Order order = book.getOrder(clientId, String.valueOf(i));
+				if (order == null) continue;
+				found++;
+				assertSame(order, book.getOrder(order.getId()));
+			}
+		}
+		assertEquals(book.getNumberOfOrders(), found);
+	}
+
+	@Test
+	public void test_LookupAllocatesNoGarbage() {
+		OrderBook book = new OrderBook("AAPL");
+		StringBuilder clientOrderId = new StringBuilder(16);
+
+		cancelByClientOrderId(book, clientOrderId, 1_000);
+
+		assertNoAllocation(() -> cancelByClientOrderId(book, clientOrderId, 10_000));
+		assertTrue(book.isEmpty());
+	}
+
+	private static void cancelByClientOrderId(OrderBook book, StringBuilder clientOrderId, int iterations) {
+		for (int i = 0; i < iterations; i++) {
+			for (int j = 0; j < 100; j++) {
+				clientOrderId.setLength(0);
+				clientOrderId.append("ID").append(j);
+				book.createLimit(7, clientOrderId, j + 1, Side.SELL, 100, 1000 + j, TimeInForce.GTC);
+			}
+			for (int j = 0; j < 100; j++) {
+				clientOrderId.setLength(0);
+				clientOrderId.append("ID").append(j);
+				book.getOrder(7, clientOrderId).cancel();
+			}
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.CancelReason;
+import com.coralblocks.coralme.Order.RejectReason;
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+import com.coralblocks.coralme.util.Timestamper;
+
+public class GoodTillDateTest {
+
+	private static final class Clock implements Timestamper {
+
+		long now;
+
+		Clock(long now) {
+			this.now = now;
+		}
+
+		@Override
+		public long nanoEpoch() {
+			return now;
+		}
+	}
+
+	private static final class ExpiredOrders extends OrderBookAdapter {
+
+		private final List<Long> ids = new ArrayList<Long>();
+
+		private final List<RejectReason> rejectReasons = new ArrayList<RejectReason>();
+
+		@Override
+		public void onOrderRejected(OrderBook orderBook, long time, Order order, RejectReason rejectReason) {
+			rejectReasons.add(rejectReason);
+		}
+
+		@Override
+		public void onOrderCanceled(OrderBook orderBook, long time, Order order, long canceledSize,
+				CancelReason cancelReason) {
+			if (cancelReason == CancelReason.EXPIRED) ids.add(order.getId());
+		}
+	}
+
+	private static OrderBook newOrderBook(Clock clock, long resolution, OrderBookListener listener) {
+		OrderBookConfig config = new OrderBookConfig().setTimestamper(clock).setExpireTimeResolution(resolution);
+		return new OrderBook("AAPL", listener, config);
+	}
+
+	@Test
+	public void test_GtdOrderExpiresOnceItsExpireTimeIsReached() {
+		Clock clock = new Clock(1_000_000_000L);
+		ExpiredOrders expired = new ExpiredOrders();
+		OrderBook book = newOrderBook(clock, 1_000_000, expired);
+
+		Order gtd = book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTD, 1_005_500_000L);
+		book.createLimit(1, "2", 2, Side.BUY, 100, 99 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "3", 3, Side.SELL, 100, 101 * TICK, TimeInForce.DAY);
+
+		assertTrue(gtd.isResting());
+		assertTrue(gtd.isGTD());
+		assertEquals(1_005_500_000L, gtd.getExpireTime());
+		assertEquals(-1, book.getOrder(2).getExpireTime());
+
+		clock.now = 1_005_499_999L;
+		assertEquals(0, book.expireGoodTillDate());
+		assertTrue(gtd.isResting());
+
+		clock.now = 1_005_500_000L;
+		assertEquals(0, book.expireGoodTillDate()); // rounded up to the next millisecond
+
+		clock.now = 1_006_000_000L;
+		assertEquals(1, book.expireGoodTillDate());
+		assertEquals(1, expired.ids.size());
+		assertEquals(1L, expired.ids.get(0).longValue());
+		assertNull(book.getOrder(1));
+		assertEquals(2, book.getNumberOfOrders());
+
+		assertEquals(0, book.expireGoodTillDate());
+	}
+
+	@Test
+	public void test_GtdOrderWithExpireTimeNotInTheFutureIsRejected() {
+		Clock clock = new Clock(5_000_000L);
+		ExpiredOrders listener = new ExpiredOrders();
+		OrderBook book = newOrderBook(clock, 1_000_000, listener);
+
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTD, 5_000_000L);
+		book.createLimit(1, "2", 2, Side.BUY, 100, 100 * TICK, TimeInForce.GTD);
+
+		assertEquals(2, listener.rejectReasons.size());
+		assertEquals(RejectReason.BAD_EXPIRE_TIME, listener.rejectReasons.get(0));
+		assertEquals(RejectReason.BAD_EXPIRE_TIME, listener.rejectReasons.get(1));
+		assertTrue(book.isEmpty());
+
+		Order order = book.createLimit(1, "3", 3, Side.BUY, 100, 100 * TICK, TimeInForce.GTC, 1);
+		assertTrue(order.isResting());
+		assertEquals(-1, order.getExpireTime());
+	}
+
+	@Test
+	public void test_ExecutedAndCanceledGtdOrdersLeaveTheWheel() {
+		Clock clock = new Clock(0);
+		ExpiredOrders expired = new ExpiredOrders();
+		OrderBook book = newOrderBook(clock, 1, expired);
+
+		Order canceled = book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTD, 10);
+		Order executed = book.createLimit(1, "2", 2, Side.BUY, 100, 99 * TICK, TimeInForce.GTD, 10);
+		Order partial = book.createLimit(1, "3", 3, Side.BUY, 100, 98 * TICK, TimeInForce.GTD, 10);
+
+		canceled.cancel();
+		book.createMarket(2, "4", 4, Side.SELL, 150);
+		assertTrue(executed.isTerminal());
+		assertEquals(50, partial.getOpenSize());
+
+		clock.now = 10;
+		assertEquals(1, book.expireGoodTillDate());
+		assertEquals(1, expired.ids.size());
+		assertEquals(3L, expired.ids.get(0).longValue());
+		assertTrue(book.isEmpty());
+	}
+
+	@Test
+	public void test_ExpiryMatchesBruteForceAcrossAllLevels() {
+		Random random = new Random(14);
+		Clock clock = new Clock(1L << 40);
+		ExpiredOrders expired = new ExpiredOrders();
+		// One nanosecond ticks so the wheel spans about 73 minutes and far orders are parked
+		OrderBook book = newOrderBook(clock, 1, expired);
+		Map<Long, Long> expireTimes = new HashMap<Long, Long>();
+		long nextId = 1;
+
+		for (int round = 0; round < 400; round++) {
+
+			int toAdd = random.nextInt(20);
+			for (int i = 0; i < toAdd; i++) {
+				long id = nextId++;
+				int bits = 1 + random.nextInt(46);
+				long expireTime = clock.now + 1 + (random.nextLong() & ((1L << bits) - 1));
+				long price = (1 + random.nextInt(50)) * TICK;
+				Order order = book.createLimit(1, String.valueOf(id), id, Side.BUY, 100, price, TimeInForce.GTD,
+						expireTime);
+				assertTrue(order.isResting());
+				expireTimes.put(id, expireTime);
+			}
+
+			if (!expireTimes.isEmpty() && random.nextInt(4) == 0) {
+				long id = expireTimes.keySet().iterator().next();
+				book.getOrder(id).cancel();
+				expireTimes.remove(id);
+			}
+
+			clock.now += random.nextLong() & ((1L << (1 + random.nextInt(44))) - 1);
+			expired.ids.clear();
+
+			int count = book.expireGoodTillDate();
+
+			assertEquals(expired.ids.size(), count);
+			for (long id : expired.ids) {
+				long expireTime = expireTimes.remove(id);
+				assertTrue(expireTime <= clock.now);
+			}
+			for (long expireTime : expireTimes.values()) {
+				assertTrue(expireTime > clock.now);
+			}
+			assertEquals(expireTimes.size(), book.getNumberOfOrders());
+		}
+
+		clock.now = Long.MAX_VALUE;
+		book.expireGoodTillDate();
+		assertTrue(book.isEmpty());
+	}
+
+	@Test
+	public void test_RollKeepsTheExpireTime() {
+		Clock clock = new Clock(0);
+		OrderBook book = newOrderBook(clock, 1_000, null);
+		OrderBook next = newOrderBook(clock, 1_000, null);
+
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTD, 1_000_000);
+		book.createLimit(1, "2", 2, Side.BUY, 100, 99 * TICK, TimeInForce.DAY);
+
+		book.rollTo(next, 10);
+
+		Order rolled = next.getOrder(10);
+		assertTrue(rolled.isGTD());
+		assertEquals(1_000_000, rolled.getExpireTime());
+		assertNull(book.getOrder(1));
+		assertEquals(1, next.getNumberOfOrders());
+
+		clock.now = 1_000_000;
+		assertEquals(1, next.expireGoodTillDate());
+		assertTrue(next.isEmpty());
+	}
+
+	@Test
+	public void test_ExpireGoodTillDateFromListenerIsRejected() {
+		Clock clock = new Clock(0);
+		final List<ReentrantOrderBookOperationException> caught = new ArrayList<ReentrantOrderBookOperationException>();
+		final OrderBook[] book = new OrderBook[1];
+		book[0] = newOrderBook(clock, 1, new OrderBookAdapter() {
+			@Override
+			public void onOrderRested(OrderBook orderBook, long time, Order order, long restSize, long restPrice) {
+				try {
+					orderBook.expireGoodTillDate();
+				} catch (ReentrantOrderBookOperationException e) {
+					caught.add(e);
+				}
+			}
+		});
+
+		book[0].createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTD, 5);
+
+		assertEquals(1, caught.size());
+		assertSame(book[0], caught.get(0).getOrderBook());
+		assertEquals("expireGoodTillDate", caught.get(0).getOperation());
+	}
+
+	@Test
+	public void test_ExpireTimeResolutionMustBePositive() {
+		assertThrows(IllegalArgumentException.class, () -> new OrderBookConfig().setExpireTimeResolution(0));
+	}
+}
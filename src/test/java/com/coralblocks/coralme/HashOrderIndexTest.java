@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertNoAllocation;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HashOrderIndexTest {
+
+	@Test
+	public void test_RandomOperationsMatchHashMap() {
+		Random random = new Random(42);
+		HashOrderIndex index = new HashOrderIndex(4);
+		Map<Long, Order> expected = new HashMap<Long, Order>();
+
+		for (int i = 0; i < 200_000; i++) {
+			// sequential ids with a few negative and far away ones mixed in
+			long key = random.nextInt(10) == 0 ? random.nextLong() % 1_000 : random.nextInt(5_000);
+			int op = random.nextInt(3);
+			if (op == 0) {
+				Order order = new Order();
+				assertSame(expected.put(key, order), index.put(key, order));
+			} else if (op == 1) {
+				assertSame(expected.remove(key), index.remove(key));
+			} else {
+				assertSame(expected.get(key), index.get(key));
+				assertEquals(expected.containsKey(key), index.containsKey(key));
+			}
+			assertEquals(expected.size(), index.size());
+			assertEquals(expected.isEmpty(), index.isEmpty());
+		}
+
+		assertSameEntries(expected, index);
+	}
+
+	@Test
+	public void test_GrowsByDoublingWhenHalfFull() {
+		HashOrderIndex index = new HashOrderIndex(8);
+		assertEquals(16, index.capacity());
+
+		Map<Long, Order> expected = new HashMap<Long, Order>();
+		for (long key = 1; key <= 8; key++) {
+			expected.put(key, new Order());
+			index.put(key, expected.get(key));
+		}
+		assertEquals(16, index.capacity());
+
+		expected.put(9L, new Order());
+		index.put(9L, expected.get(9L));
+		assertEquals(32, index.capacity());
+
+		for (long key = 10; key <= 1_000; key++) {
+			expected.put(key, new Order());
+			index.put(key, expected.get(key));
+		}
+		assertEquals(2048, index.capacity());
+		assertSameEntries(expected, index);
+	}
+
+	@Test
+	public void test_RemovingWhileIteratingVisitsEveryOrderOnce() {
+		Random random = new Random(7);
+
+		for (int round = 0; round < 200; round++) {
+			HashOrderIndex index = new HashOrderIndex(64);
+			Map<Long, Order> expected = new HashMap<Long, Order>();
+
+			// Keys that hash to the last slots make probe runs wrap around the table
+			long key = 0;
+			while (expected.size() < 20) {
+				key++;
+				if (home(key, index.capacity()) >= index.capacity() - 4 || random.nextInt(8) == 0) {
+					expected.put(key, new Order());
+					index.put(key, expected.get(key));
+				}
+			}
+
+			Map<Order, Boolean> visited = new IdentityHashMap<Order, Boolean>();
+			Iterator<Order> iter = index.iterator();
+			while (iter.hasNext()) {
+				Order order = iter.next();
+				assertNull("visited twice", visited.put(order, Boolean.TRUE));
+				if (random.nextBoolean()) {
+					iter.remove();
+					expected.values().remove(order);
+				}
+			}
+
+			assertEquals(20, visited.size());
+			assertSameEntries(expected, index);
+		}
+	}
+
+	@Test
+	public void test_IteratorRejectsMisuse() {
+		HashOrderIndex index = new HashOrderIndex(0);
+		Iterator<Order> iter = index.iterator();
+		assertFalse(iter.hasNext());
+		assertThrows(IllegalStateException.class, () -> iter.remove());
+		assertThrows(java.util.NoSuchElementException.class, () -> iter.next());
+
+		index.put(1, new Order());
+		Iterator<Order> iter2 = index.iterator();
+		iter2.next();
+		iter2.remove();
+		assertThrows(IllegalStateException.class, () -> iter2.remove());
+		assertTrue(index.isEmpty());
+
+		assertThrows(IllegalArgumentException.class, () -> new HashOrderIndex(-1));
+	}
+
+	@Test
+	public void test_SteadyStateAllocatesNoGarbage() {
+		HashOrderIndex index = new HashOrderIndex(1_000);
+		Order[] orders = new Order[1_000];
+		for (int i = 0; i < orders.length; i++) orders[i] = new Order();
+
+		churn(index, orders, 0, 1_000);
+
+		assertNoAllocation(() -> churn(index, orders, 1_000, 10_000));
+		assertTrue(index.isEmpty());
+	}
+
+	private static void churn(HashOrderIndex index, Order[] orders, int from, int to) {
+		for (int i = from; i < to; i++) {
+			long base = (long) i * orders.length;
+			for (int j = 0; j < orders.length; j++) index.put(base + j, orders[j]);
+			for (int j = 0; j < orders.length; j += 2) index.remove(base + j);
+			Iterator<Order> iter = index.iterator();
+			while (iter.hasNext()) {
+				iter.next();
+				iter.remove();
+			}
+		}
+	}
+
+	private static int home(long key, int capacity) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(capacity)));
+	}
+
+	private static void assertSameEntries(Map<Long, Order> expected, HashOrderIndex index) {
+		assertEquals(expected.size(), index.size());
+		for (Map.Entry<Long, Order> entry : expected.entrySet()) {
+			assertSame(entry.getValue(), index.get(entry.getKey()));
+		}
+		Map<Order, Boolean> iterated = new IdentityHashMap<Order, Boolean>();
+		Iterator<Order> iter = index.iterator();
+		while (iter.hasNext()) {
+			assertNull(iterated.put(iter.next(), Boolean.TRUE));
+		}
+		assertEquals(expected.size(), iterated.size());
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertAllocatesLessThan;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class MarketByOrderEncoderTest {
+
+	/**
+	 * Rebuilds the order book from the messages, as a receiver of the feed would.
+	 */
+	private static final class Receiver implements MarketByOrderListener {
+
+		private final MarketByOrderMessage message = new MarketByOrderMessage();
+
+		private final OrderBookMirror mirror = new OrderBookMirror(new OrderBook("AAPL"));
+
+		private final List<String> messages = new ArrayList<String>();
+
+		private long sequence;
+
+		@Override
+		public void onMarketByOrder(OrderBook orderBook, ByteBuffer buffer) {
+
+			assertEquals(MarketByOrderEncoder.MESSAGE_SIZE, buffer.remaining());
+
+			message.wrap(buffer);
+
+			assertEquals(++sequence, message.getSequence());
+			assertEquals(7, message.getStreamId());
+
+			messages.add((char) message.getType() + " " + message.getOrderId() + " " + message.getSide() + " "
+					+ message.getSize() + "@" + message.getPrice() + " " + message.getOpenSize());
+
+			long id = message.getOrderId();
+
+			switch (message.getType()) {
+			case MarketByOrderEncoder.ADD:
+				mirror.add(message.getTime(), id, 0, String.valueOf(id), message.getSide(), message.getPrice(),
+						message.getSize(), TimeInForce.GTC);
+				break;
+			case MarketByOrderEncoder.MODIFY:
+				assertTrue(mirror.reduce(message.getTime(), id, message.getSize()));
+				break;
+			case MarketByOrderEncoder.DELETE:
+				assertTrue(mirror.cancel(message.getTime(), id));
+				break;
+			case MarketByOrderEncoder.TRADE:
+				assertTrue(mirror.execute(message.getTime(), id, message.getSize(), message.getPrice()));
+				break;
+			default:
+				throw new AssertionError("Bad message type: " + message.getType());
+			}
+
+			Order order = mirror.getOrderBook().getOrder(id);
+			assertEquals(message.getOpenSize(), order == null ? 0 : order.getOpenSize());
+		}
+	}
+
+	private static List<String> describe(OrderBook book) {
+		List<String> result = new ArrayList<String>();
+		for (Side side : new Side[] { Side.BUY, Side.SELL }) {
+			for (Iterator<Order> iter = book.iterator(side); iter.hasNext();) {
+				Order o = iter.next();
+				result.add(o.getId() + " " + o.getPrice() + " " + o.getOpenSize() + " " + o.getRestTime());
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void test_FeedRebuildsTheOrderBook() {
+		Receiver receiver = new Receiver();
+		OrderBook book = new OrderBook("AAPL");
+		MarketByOrderEncoder encoder = new MarketByOrderEncoder(book, 7, receiver);
+		assertEquals(book, encoder.getOrderBook());
+		Random random = new Random(23);
+
+		long id = 1;
+		for (int i = 0; i < 20_000; i++) {
+			Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+			int r = random.nextInt(10);
+			if (r < 6) {
+				long price = side.isBuy() ? (100 - random.nextInt(20)) * TICK : (96 + random.nextInt(20)) * TICK;
+				TimeInForce tif = random.nextInt(4) == 0 ? TimeInForce.IOC : TimeInForce.GTC;
+				book.createLimit(1, "c" + id, id, side, 100 + random.nextInt(500), price, tif);
+				id++;
+			} else if (r < 7) {
+				book.createMarket(2, "m" + id, id, side, 50 + random.nextInt(1000));
+				id++;
+			} else {
+				Order order = book.getOrder(1 + random.nextInt((int) id));
+				if (order == null) continue;
+				if (r < 8) {
+					order.reduceTo(order.getExecutedSize() + 1 + random.nextInt(200));
+				} else if (r < 9) {
+					order.cancel(1 + random.nextInt(50));
+				} else {
+					order.cancel();
+				}
+			}
+		}
+
+		OrderBook rebuilt = receiver.mirror.getOrderBook();
+		assertTrue(book.getNumberOfOrders() > 10);
+		assertEquals(encoder.getSequence(), receiver.sequence);
+		assertEquals(book.orders(), rebuilt.orders());
+		assertEquals(book.levels(), rebuilt.levels());
+		assertEquals(describe(book), describe(rebuilt));
+		assertEquals(book.getLastExecutedPrice(), rebuilt.getLastExecutedPrice());
+
+		book.purge();
+		assertTrue(rebuilt.isEmpty());
+	}
+
+	@Test
+	public void test_TakerThatPartiallyFillsThenRests() {
+		Receiver receiver = new Receiver();
+		OrderBook book = new OrderBook("AAPL");
+		new MarketByOrderEncoder(book, 7, receiver);
+
+		book.createLimit(1, "a", 1, Side.SELL, 100, 100 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "b", 2, Side.SELL, 300, 101 * TICK, TimeInForce.GTC);
+		book.createLimit(2, "c", 3, Side.BUY, 500, 101 * TICK, TimeInForce.GTC);
+		book.createLimit(2, "d", 4, Side.BUY, 500, 99 * TICK, TimeInForce.IOC);
+		book.createMarket(2, "e", 5, Side.SELL, 20);
+		book.getOrder(3).reduceTo(450);
+
+		assertEquals(List.of("A 1 SELL 100@" + 100 * TICK + " 100", "A 2 SELL 300@" + 101 * TICK + " 300",
+				"T 1 SELL 100@" + 100 * TICK + " 0", "T 2 SELL 300@" + 101 * TICK + " 0",
+				"A 3 BUY 100@" + 101 * TICK + " 100", "T 3 BUY 20@" + 101 * TICK + " 80",
+				"M 3 BUY 50@" + 101 * TICK + " 30"), receiver.messages);
+	}
+
+	@Test
+	public void test_RollsAndOrdersRestedWithoutCallbacks() {
+		Receiver receiver = new Receiver();
+		OrderBook book = new OrderBook("AAPL");
+		new MarketByOrderEncoder(book, 7, receiver);
+		book.createLimit(1, "a", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "b", 2, Side.BUY, 200, 100 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "c", 3, Side.SELL, 300, 101 * TICK, TimeInForce.GTC);
+
+		// A bulk roll is a delete in one feed and an add in the other
+		Receiver newReceiver = new Receiver();
+		OrderBook newBook = new OrderBook("AAPL");
+		MarketByOrderEncoder newEncoder = new MarketByOrderEncoder(newBook, 7, newReceiver);
+		book.bulkRollTo(newBook, 10);
+
+		assertTrue(receiver.mirror.getOrderBook().isEmpty());
+		assertEquals(3, newEncoder.getSequence());
+		assertEquals(newBook.orders(), newReceiver.mirror.getOrderBook().orders());
+		assertEquals(describe(newBook), describe(newReceiver.mirror.getOrderBook()));
+
+		// Loaded orders are published on request
+		Receiver loadedReceiver = new Receiver();
+		OrderBook loadedBook = new OrderBook("AAPL");
+		MarketByOrderEncoder loadedEncoder = new MarketByOrderEncoder(loadedBook, 7, loadedReceiver);
+		OrderBookLoader loader = new OrderBookLoader(loadedBook);
+		loader.load(1, "a", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		loader.load(1, "b", 2, Side.BUY, 200, 99 * TICK, TimeInForce.GTC);
+		loader.load(1, "c", 3, Side.BUY, 300, 99 * TICK, TimeInForce.GTC);
+		assertEquals(0, loadedEncoder.getSequence());
+		loadedEncoder.publishOrders();
+		assertEquals(loadedBook.orders(), loadedReceiver.mirror.getOrderBook().orders());
+	}
+
+	@Test
+	public void test_MessageBounds() {
+		MarketByOrderMessage message = new MarketByOrderMessage();
+		ByteBuffer buffer = ByteBuffer.allocate(MarketByOrderEncoder.MESSAGE_SIZE * 2);
+		assertEquals(message, message.wrap(buffer, MarketByOrderEncoder.MESSAGE_SIZE));
+		assertThrows(IllegalArgumentException.class, () -> message.wrap(buffer, MarketByOrderEncoder.MESSAGE_SIZE + 1));
+	}
+
+	@Test
+	public void test_EncodingDoesNotAllocate() {
+		MarketByOrderMessage message = new MarketByOrderMessage();
+		long[] sizes = new long[1];
+		OrderBook book = new OrderBook("AAPL");
+		MarketByOrderEncoder encoder = new MarketByOrderEncoder(book, 7,
+				(orderBook, buffer) -> sizes[0] += message.wrap(buffer).getSize());
+		StringBuilder clientOrderId = new StringBuilder("c");
+
+		for (int i = 0; i < 200_000; i++) {
+			cycle(book, clientOrderId, i);
+		}
+
+		assertAllocatesLessThan(1024, () -> {
+			for (int i = 0; i < 100_000; i++) {
+				cycle(book, clientOrderId, i);
+			}
+		});
+		assertEquals(300_000 * 6L, encoder.getSequence());
+	}
+
+	private static void cycle(OrderBook book, StringBuilder clientOrderId, int i) {
+		book.createLimit(1, clientOrderId, 1, Side.BUY, 100, (100 - i % 8) * TICK, TimeInForce.GTC);
+		book.createLimit(2, clientOrderId, 2, Side.SELL, 100, (101 + i % 8) * TICK, TimeInForce.GTC);
+		book.createMarket(3, clientOrderId, 3, Side.SELL, 50);
+		book.getOrder(2).reduceTo(10);
+		book.getOrder(1).cancel();
+		book.getOrder(2).cancel();
+	}
+}
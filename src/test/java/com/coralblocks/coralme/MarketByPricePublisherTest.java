@@ -0,0 +1,276 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertAllocatesLessThan;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class MarketByPricePublisherTest {
+
+	/**
+	 * Keeps the depth built from the updates, as a receiver of the feed would.
+	 */
+	private static final class Receiver implements MarketByPriceListener {
+
+		private final TreeMap<Long, String> bids = new TreeMap<Long, String>();
+
+		private final TreeMap<Long, String> asks = new TreeMap<Long, String>();
+
+		private long sequence;
+
+		private int updates;
+
+		private int snapshots;
+
+		private boolean joined = true;
+
+		private boolean fail;
+
+		private final List<String> exceptions = new ArrayList<String>();
+
+		@Override
+		public void onMarketByPrice(OrderBook orderBook, MarketByPriceUpdate update) {
+
+			if (fail) {
+				fail = false;
+				throw new RuntimeException("Failing on purpose");
+			}
+
+			if (!joined) {
+				if (!update.isSnapshot()) return;
+				joined = true;
+				sequence = update.getSequence() - 1;
+			}
+
+			assertEquals(sequence + 1, update.getSequence());
+			sequence = update.getSequence();
+
+			if (update.isSnapshot()) {
+				bids.clear();
+				asks.clear();
+				snapshots++;
+			} else {
+				updates++;
+			}
+
+			Set<String> seen = new HashSet<String>();
+
+			for (int i = 0; i < update.getEntries(); i++) {
+				Side side = update.getSide(i);
+				assertTrue("Not conflated: " + update, seen.add(side + " " + update.getPrice(i)));
+				TreeMap<Long, String> levels = side == Side.BUY ? bids : asks;
+				if (update.getSize(i) == 0) {
+					assertTrue(update.toString(), update.isSnapshot() || levels.remove(update.getPrice(i)) != null);
+				} else {
+					levels.put(update.getPrice(i), update.getSize(i) + "/" + update.getOrders(i));
+				}
+			}
+		}
+
+		@Override
+		public void onExceptionThrown(OrderBook orderBook, Exception exception) {
+			exceptions.add(exception.getMessage());
+		}
+
+		String depth() {
+			return bids.descendingMap() + " " + asks;
+		}
+	}
+
+	private static String depth(OrderBook book, int depth) {
+		TreeMap<Long, String> bids = new TreeMap<Long, String>();
+		TreeMap<Long, String> asks = new TreeMap<Long, String>();
+		for (Side side : new Side[] { Side.BUY, Side.SELL }) {
+			int levels = 0;
+			for (PriceLevel pl = book.head(side); pl != null && levels < depth; pl = pl.next, levels++) {
+				(side == Side.BUY ? bids : asks).put(pl.getPrice(), pl.getSize() + "/" + pl.getOrders());
+			}
+		}
+		return bids.descendingMap() + " " + asks;
+	}
+
+	private static long trade(OrderBook book, Random random, long id) {
+		Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+		int r = random.nextInt(10);
+		if (r < 6) {
+			long price = side.isBuy() ? (100 - random.nextInt(20)) * TICK : (96 + random.nextInt(20)) * TICK;
+			book.createLimit(1, "c" + id, id, side, 100 + random.nextInt(500), price, TimeInForce.GTC);
+			id++;
+		} else if (r < 7) {
+			book.createMarket(2, "m" + id, id, side, 50 + random.nextInt(1000));
+			id++;
+		} else {
+			Order order = book.getOrder(1 + random.nextInt((int) id));
+			if (order != null) {
+				if (r < 9) {
+					order.reduceTo(order.getExecutedSize() + 1 + random.nextInt(200));
+				} else {
+					order.cancel();
+				}
+			}
+		}
+		return id;
+	}
+
+	@Test
+	public void test_UpdatesRebuildTheFullDepth() {
+		OrderBook book = new OrderBook("AAPL");
+		Receiver receiver = new Receiver();
+		MarketByPricePublisher publisher = new MarketByPricePublisher(book, receiver);
+		Random random = new Random(22);
+
+		long id = 1;
+		for (int i = 0; i < 20_000; i++) {
+			long sequence = publisher.getSequence();
+			id = trade(book, random, id);
+			assertTrue(publisher.getSequence() - sequence <= 1); // one update per operation at most
+			assertEquals(depth(book, Integer.MAX_VALUE), receiver.depth());
+		}
+
+		assertEquals(1, receiver.snapshots);
+		assertTrue(receiver.updates > 10_000);
+
+		// A market order that sweeps several levels is a single update
+		book.createLimit(1, "x1", id++, Side.SELL, 100, 200 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "x2", id++, Side.SELL, 100, 201 * TICK, TimeInForce.GTC);
+		long sequence = publisher.getSequence();
+		book.createMarket(2, "x3", id++, Side.BUY, 1_000_000);
+		assertEquals(sequence + 1, publisher.getSequence());
+		assertEquals(depth(book, Integer.MAX_VALUE), receiver.depth());
+
+		// Purge, expire and rolls are published too
+		book.createLimit(1, "x4", id++, Side.BUY, 100, 90 * TICK, TimeInForce.DAY);
+		book.expire();
+		assertEquals(depth(book, Integer.MAX_VALUE), receiver.depth());
+		book.rollTo(new OrderBook("AAPL"), id);
+		assertEquals(depth(book, Integer.MAX_VALUE), receiver.depth());
+		assertTrue(book.isEmpty());
+		assertEquals("{} {}", receiver.depth());
+
+		assertThrows(IllegalStateException.class, () -> new MarketByPricePublisher(book, receiver));
+		publisher.detach();
+		book.createLimit(1, "x5", id++, Side.BUY, 100, 90 * TICK, TimeInForce.GTC);
+		assertEquals("{} {}", receiver.depth());
+	}
+
+	@Test
+	public void test_LimitedDepthAndSnapshotsForLateJoiners() {
+		OrderBook book = new OrderBook("AAPL");
+		Receiver receiver = new Receiver();
+		Receiver late = new Receiver();
+		late.joined = false;
+		List<Receiver> receivers = new ArrayList<Receiver>();
+		receivers.add(receiver);
+		MarketByPricePublisher publisher = new MarketByPricePublisher(book, (orderBook, update) -> {
+			for (Receiver r : receivers) {
+				r.onMarketByPrice(orderBook, update);
+			}
+		}, 3, 50);
+		assertEquals(3, publisher.getDepth());
+		Random random = new Random(23);
+
+		long id = 1;
+		for (int i = 0; i < 20_000; i++) {
+			id = trade(book, random, id);
+			assertEquals(depth(book, 3), receiver.depth());
+		}
+
+		assertTrue(receiver.snapshots > 10);
+		assertTrue(book.getBidLevels() > 3);
+
+		// A receiver that joins late starts from the next snapshot
+		receivers.add(late);
+		for (int i = 0; i < 1_000; i++) {
+			id = trade(book, random, id);
+			if (late.joined) assertEquals(depth(book, 3), late.depth());
+		}
+		assertTrue(late.joined);
+		assertEquals(receiver.depth(), late.depth());
+	}
+
+	@Test
+	public void test_SnapshotAfterAListenerException() {
+		OrderBook book = new OrderBook("AAPL");
+		Receiver receiver = new Receiver();
+		MarketByPricePublisher publisher = new MarketByPricePublisher(book, receiver, 5, 0);
+
+		book.createLimit(1, "a", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		receiver.fail = true;
+		book.createLimit(1, "b", 2, Side.BUY, 100, 99 * TICK, TimeInForce.GTC);
+		receiver.sequence++; // the update it failed on
+		assertEquals(2, book.getNumberOfOrders());
+		assertEquals("[Failing on purpose]", receiver.exceptions.toString());
+
+		book.getOrder(1).reduceTo(50);
+		assertEquals(2, receiver.snapshots);
+		assertEquals(depth(book, 5), receiver.depth());
+		assertEquals(1, receiver.exceptions.size());
+
+		publisher.publishSnapshot();
+		assertEquals(3, receiver.snapshots);
+
+		// The listener cannot modify the order book
+		MarketByPricePublisher other = new MarketByPricePublisher(new OrderBook("AAPL"),
+				(orderBook, update) -> orderBook.createLimit(1, "c", 3, Side.BUY, 100, 99 * TICK, TimeInForce.GTC));
+		other.getOrderBook().createLimit(1, "a", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		assertEquals(1, other.getOrderBook().getNumberOfOrders());
+		assertFalse(other.getSequence() == 0);
+	}
+
+	@Test
+	public void test_PublishingDoesNotAllocate() {
+		OrderBook book = new OrderBook("AAPL");
+		long[] published = new long[1];
+		new MarketByPricePublisher(book, (orderBook, update) -> published[0] += update.getEntries(), 5, 100);
+		StringBuilder clientOrderId = new StringBuilder("c");
+
+		for (int i = 0; i < 200_000; i++) {
+			cycle(book, clientOrderId, i);
+		}
+
+		assertAllocatesLessThan(1024, () -> {
+			for (int i = 0; i < 100_000; i++) {
+				cycle(book, clientOrderId, i);
+			}
+		});
+		assertTrue(published[0] > 100_000);
+	}
+
+	private static void cycle(OrderBook book, StringBuilder clientOrderId, int i) {
+		book.createLimit(1, clientOrderId, 1, Side.BUY, 100, (100 - i % 8) * TICK, TimeInForce.GTC);
+		book.createLimit(2, clientOrderId, 2, Side.SELL, 100, (101 + i % 8) * TICK, TimeInForce.GTC);
+		book.createMarket(3, clientOrderId, 3, Side.SELL, 50);
+		book.getOrder(1).cancel();
+		book.getOrder(2).reduceTo(10);
+		book.getOrder(2).cancel();
+	}
+}
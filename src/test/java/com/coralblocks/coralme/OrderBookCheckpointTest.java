@@ -0,0 +1,244 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.FileTestSupport.deleteRecursively;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class OrderBookCheckpointTest {
+
+	private static final class RecordingWriter implements OrderBookCheckpointWriter {
+
+		private final List<String> records = new ArrayList<String>();
+
+		private boolean fail;
+
+		@Override
+		public void beginCheckpoint(OrderBook orderBook, boolean full, long execId, long matchId,
+				long lastExecutedPrice) {
+			records.clear();
+			records.add(full ? "full" : "delta");
+		}
+
+		@Override
+		public void writeOrder(Order order) {
+			if (fail) throw new IllegalStateException("disk full");
+			records.add(order.getId() + "x" + order.getOpenSize());
+		}
+
+		@Override
+		public void writeRemovedOrder(long exchangeOrderId) {
+			records.add("-" + exchangeOrderId);
+		}
+
+		@Override
+		public void endCheckpoint(OrderBook orderBook) {
+		}
+	}
+
+	private static List<String> describe(OrderBook book) {
+		List<String> result = new ArrayList<String>();
+		for (Side side : new Side[] { Side.BUY, Side.SELL }) {
+			for (PriceLevel pl = book.head(side); pl != null; pl = pl.next) {
+				result.add(side + " " + pl.getPrice() + " " + pl.getSize() + "/" + pl.getOrders());
+			}
+			for (Iterator<Order> iter = book.iterator(side); iter.hasNext();) {
+				Order o = iter.next();
+				result.add(o.getId() + " " + o.getClientOrderId() + " " + o.getPrice() + " " + o.getOriginalSize() + "/"
+						+ o.getTotalSize() + "/" + o.getExecutedSize() + " " + o.getTimeInForce() + " "
+						+ o.getReduceTime() + " " + o.getExecuteTime());
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void test_CheckpointsWriteOnlyTheChangedOrders() {
+		OrderBook book = new OrderBook("AAPL");
+		RecordingWriter writer = new RecordingWriter();
+
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "2", 2, Side.BUY, 200, 99 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "3", 3, Side.SELL, 300, 101 * TICK, TimeInForce.DAY);
+		book.createLimit(1, "4", 4, Side.SELL, 400, 102 * TICK, TimeInForce.GTC);
+
+		book.checkpoint(writer);
+		assertEquals("[full, 1x100, 2x200, 3x300, 4x400]", writer.records.toString());
+
+		book.checkpoint(writer);
+		assertEquals("[delta]", writer.records.toString());
+
+		book.createLimit(2, "5", 5, Side.BUY, 50, 98 * TICK, TimeInForce.GTC);
+		book.getOrder(2).reduceTo(150);
+		book.createMarket(2, "6", 6, Side.BUY, 350); // fills 3 and part of 4
+		book.getOrder(1).cancel();
+		book.getOrder(5).reduceTo(40);
+
+		book.checkpoint(writer);
+		assertEquals("[delta, 5x40, 2x150, -3, 4x350, -1]", writer.records.toString());
+
+		book.checkpoint(writer);
+		assertEquals("[delta]", writer.records.toString());
+	}
+
+	@Test
+	public void test_OrdersThatComeAndGoBetweenCheckpointsAreNotWritten() {
+		OrderBook book = new OrderBook("AAPL");
+		RecordingWriter writer = new RecordingWriter();
+
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		book.checkpoint(writer);
+
+		for (int round = 0; round < 3; round++) {
+			for (long id = 10; id < 5_010; id++) {
+				Order order = book.createLimit(1, "c" + id, id + round * 10_000, Side.BUY, 100, 99 * TICK,
+						TimeInForce.GTC);
+				if (id % 2 == 0) order.reduceTo(50);
+				order.cancel();
+			}
+		}
+
+		book.createLimit(1, "2", 2, Side.BUY, 200, 99 * TICK, TimeInForce.GTC);
+		book.getOrder(1).cancel();
+
+		book.checkpoint(writer);
+		assertEquals("[delta, 2x200, -1]", writer.records.toString());
+	}
+
+	@Test
+	public void test_FailedCheckpointIsWrittenAgain() {
+		OrderBook book = new OrderBook("AAPL");
+		RecordingWriter writer = new RecordingWriter();
+		book.checkpoint(writer);
+
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		writer.fail = true;
+		assertThrows(IllegalStateException.class, () -> book.checkpoint(writer));
+
+		writer.fail = false;
+		book.createLimit(1, "2", 2, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		book.checkpoint(writer);
+		assertEquals("[delta, 1x100, 2x100]", writer.records.toString());
+	}
+
+	@Test
+	public void test_RestoreIsTheLatestImagePlusTheDeltas() throws Exception {
+		Path directory = Files.createTempDirectory("coralme");
+		try {
+			OrderBook book = new OrderBook("AAPL");
+			OrderBookCheckpointer checkpointer = new OrderBookCheckpointer("AAPL", directory, 3);
+			Random random = new Random(18);
+			long id = 1;
+
+			for (int round = 0; round < 20; round++) {
+				for (int i = 0; i < 200; i++) {
+					Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+					int r = random.nextInt(10);
+					if (r < 6) {
+						long price = side.isBuy() ? (100 - random.nextInt(20)) * TICK
+								: (96 + random.nextInt(20)) * TICK;
+						TimeInForce tif = random.nextBoolean() ? TimeInForce.GTC : TimeInForce.DAY;
+						book.createLimit(1, "c" + id, id, side, 100 + random.nextInt(500), price, tif);
+						id++;
+					} else if (r < 8 && !book.isEmpty()) {
+						Order o = book.getOrder(1 + random.nextInt((int) id - 1));
+						if (o != null) o.reduceTo(Math.max(1, o.getOpenSize() / 2) + o.getExecutedSize());
+					} else if (r < 9) {
+						Order o = book.getOrder(1 + random.nextInt((int) id - 1));
+						if (o != null) o.cancel();
+					} else {
+						book.createMarket(2, "m" + id, id++, side, 50 + random.nextInt(300));
+					}
+				}
+				book.checkpoint(checkpointer);
+
+				if (round == 9) {
+					checkpointer.flush();
+					OrderBook restored = new OrderBook("AAPL");
+					OrderBookCheckpointer.restore(directory, restored);
+					assertEquals(describe(book), describe(restored));
+				}
+			}
+
+			checkpointer.flush();
+			assertTrue(Files.size(directory.resolve(OrderBookCheckpointer.DELTAS_FILE)) > 0);
+
+			OrderBook restored = new OrderBook("AAPL");
+			OrderBookCheckpointer.restore(directory, restored);
+			assertEquals(describe(book), describe(restored));
+			assertEquals(book.getLastExecutedPrice(), restored.getLastExecutedPrice());
+
+			// A delta cut short by a crash is ignored
+			Files.write(directory.resolve(OrderBookCheckpointer.DELTAS_FILE), new byte[] { 100, 0, 0, 0, 1, 2 },
+					StandardOpenOption.APPEND);
+			OrderBook recovered = new OrderBook("AAPL");
+			OrderBookCheckpointer.restore(directory, recovered);
+			assertEquals(describe(book), describe(recovered));
+
+			checkpointer.close();
+			assertThrows(IllegalStateException.class, () -> book.checkpoint(checkpointer));
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void test_RestoredOrderBookKeepsTradingLikeTheOriginal() throws Exception {
+		Path directory = Files.createTempDirectory("coralme");
+		try (OrderBookCheckpointer checkpointer = new OrderBookCheckpointer("AAPL", directory)) {
+			OrderBook book = new OrderBook("AAPL");
+			book.createLimit(1, "1", 1, Side.SELL, 100, 101 * TICK, TimeInForce.GTC);
+			book.checkpoint(checkpointer);
+
+			book.createLimit(1, "2", 2, Side.SELL, 100, 101 * TICK, TimeInForce.GTC);
+			book.createLimit(1, "3", 3, Side.SELL, 100, 100 * TICK, TimeInForce.GTC);
+			book.getOrder(1).reduceTo(50);
+			book.checkpoint(checkpointer);
+			checkpointer.flush();
+
+			OrderBook restored = new OrderBook("AAPL");
+			OrderBookCheckpointer.restore(directory, restored);
+
+			restored.createMarket(2, "m", 9, Side.BUY, 160);
+			assertNull(restored.getOrder(3));
+			assertNull(restored.getOrder(1));
+			assertEquals(90, restored.getOrder(2).getOpenSize());
+
+			OrderBook other = new OrderBook("MSFT");
+			assertThrows(IllegalArgumentException.class, () -> OrderBookCheckpointer.restore(directory, other));
+			assertTrue(other.isEmpty());
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.FileTestSupport.deleteRecursively;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+import com.coralblocks.coralme.util.DeterministicTimestamper;
+import com.coralblocks.coralme.util.SystemTimestamper;
+import com.coralblocks.coralme.util.Timestamper;
+
+public class OrderBookCommandJournalTest {
+
+	private static final class Clock implements Timestamper {
+
+		private long time = 1_000_000_000L;
+
+		@Override
+		public long nanoEpoch() {
+			return time += 1_000;
+		}
+	}
+
+	private static List<String> describe(OrderBook book) {
+		List<String> result = new ArrayList<String>();
+		for (Side side : new Side[] { Side.BUY, Side.SELL }) {
+			for (Iterator<Order> iter = book.iterator(side); iter.hasNext();) {
+				Order o = iter.next();
+				result.add(o.getId() + " " + o.getClientOrderId() + " " + o.getPrice() + " " + o.getOriginalSize() + "/"
+						+ o.getTotalSize() + "/" + o.getExecutedSize() + " " + o.getTimeInForce() + " "
+						+ o.getExpireTime() + " " + o.getAcceptTime() + " " + o.getRestTime() + " "
+						+ o.getReduceTime() + " " + o.getExecuteTime());
+			}
+		}
+		return result;
+	}
+
+	private static void trade(OrderBookCommandJournal journal, Random random, long firstId, int commands,
+			Clock clock) {
+		long id = firstId;
+		for (int i = 0; i < commands; i++) {
+			Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+			int r = random.nextInt(20);
+			if (r < 10) {
+				long price = side.isBuy() ? (100 - random.nextInt(20)) * TICK : (96 + random.nextInt(20)) * TICK;
+				int t = random.nextInt(4);
+				TimeInForce tif = t == 0 ? TimeInForce.DAY : t == 1 ? TimeInForce.GTC : t == 2 ? TimeInForce.GTD
+						: TimeInForce.IOC;
+				String clientOrderId = i % 11 == 0 ? "\u4e2d" + id : "c" + id;
+				journal.createLimit(random.nextInt(3), clientOrderId, id, side, 100 + random.nextInt(500), price, tif,
+						tif == TimeInForce.GTD ? clock.time + random.nextInt(200_000) : -1);
+				id++;
+			} else if (r < 12) {
+				journal.createMarket(random.nextInt(3), "m" + id, id, side, 50 + random.nextInt(300));
+				id++;
+			} else if (r < 14) {
+				journal.reduceTo(firstId + random.nextInt((int) (id - firstId + 1)), 50 + random.nextInt(100));
+			} else if (r < 16) {
+				journal.cancel(firstId + random.nextInt((int) (id - firstId + 1)), 1 + random.nextInt(50));
+			} else if (r < 17) {
+				journal.cancel(firstId + random.nextInt((int) (id - firstId + 1)));
+			} else if (r < 18) {
+				journal.expireGoodTillDate();
+			} else if (r < 19) {
+				journal.expire(random.nextInt(3));
+			} else {
+				// Invalid commands are journaled and fail again on replay
+				journal.createLimit(1, "bad" + id, id++, side, -5, 100 * TICK, TimeInForce.GTC);
+				assertThrows(IllegalArgumentException.class, () -> journal.expire(-1));
+			}
+		}
+	}
+
+	@Test
+	public void test_ReplayReproducesTheOrderBookAndItsEvents() throws Exception {
+		Path directory = Files.createTempDirectory("coralme");
+		try {
+			Clock clock = new Clock();
+			OrderBook book = new OrderBook("AAPL", new DeterministicTimestamper());
+			OrderBookJournal events = new OrderBookJournal(directory, "events");
+			book.addListener(events);
+			OrderBookCommandJournal journal = new OrderBookCommandJournal(book, clock, directory, "commands", 4096,
+					16);
+
+			trade(journal, new Random(20), 1, 3000, clock);
+
+			// A restarted journal continues the numbering in a new segment
+			long commands = journal.getCommands();
+			journal.close();
+			journal = new OrderBookCommandJournal(book, clock, directory, "commands", 64 * 1024, 16);
+			assertEquals(commands, journal.getCommands());
+			trade(journal, new Random(21), 100_000, 3000, clock);
+			journal.close();
+			events.close();
+
+			OrderBookCommandReplayer replayer = new OrderBookCommandReplayer(directory, "commands");
+			OrderBook replayed = new OrderBook("AAPL", new DeterministicTimestamper());
+			assertEquals(journal.getCommands(), replayer.replay(replayed));
+
+			assertTrue(book.getNumberOfOrders() > 10);
+			assertEquals(describe(book), describe(replayed));
+			assertEquals(book.getExecId(), replayed.getExecId());
+			assertEquals(book.getMatchId(), replayed.getMatchId());
+			assertEquals(book.getLastExecutedPrice(), replayed.getLastExecutedPrice());
+
+			assertEquals(-1, replayer.verify(new OrderBook("AAPL", new DeterministicTimestamper()), directory,
+					"events"));
+
+			// Without trade to self the replayed events differ
+			assertTrue(replayer.verify(new OrderBook("AAPL", new DeterministicTimestamper(), false), directory,
+					"events") != -1);
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void test_ReplayOfPurgeAndRoll() throws Exception {
+		Path directory = Files.createTempDirectory("coralme");
+		try {
+			Clock clock = new Clock();
+			OrderBook book = new OrderBook("AAPL", new DeterministicTimestamper());
+			OrderBook next = new OrderBook("AAPL", new DeterministicTimestamper());
+			try (OrderBookCommandJournal journal = new OrderBookCommandJournal(book, clock, directory, "commands",
+					64 * 1024, 1)) {
+				journal.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+				journal.createLimit(1, "2", 2, Side.BUY, 100, 99 * TICK, TimeInForce.DAY);
+				journal.createLimit(1, "3", 3, Side.SELL, 100, 101 * TICK, TimeInForce.GTD, Long.MAX_VALUE);
+				journal.rollTo(next, 10);
+				journal.createLimit(1, "4", 4, Side.SELL, 100, 102 * TICK, TimeInForce.GTC);
+				journal.purge();
+				journal.createLimit(1, "5", 5, Side.SELL, 100, 103 * TICK, TimeInForce.GTC);
+			}
+
+			OrderBookCommandReplayer replayer = new OrderBookCommandReplayer(directory, "commands");
+			OrderBook replayed = new OrderBook("AAPL", new DeterministicTimestamper());
+			OrderBook replayedNext = new OrderBook("AAPL", new DeterministicTimestamper());
+
+			assertThrows(IllegalStateException.class, () -> replayer.replay(replayed));
+
+			OrderBook again = new OrderBook("AAPL", new DeterministicTimestamper());
+			replayer.setRollToOrderBook(replayedNext);
+			assertEquals(7, replayer.replay(again));
+			assertEquals(describe(book), describe(again));
+			assertEquals(describe(next), describe(replayedNext));
+			assertEquals(1, again.getNumberOfOrders());
+			assertEquals(2, replayedNext.getNumberOfOrders());
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void test_ReplaysSegmentsOfManyOperations() throws Exception {
+		Path directory = Files.createTempDirectory("coralme");
+		try {
+			int commands = 500_000;
+			OrderBook book = new OrderBook("AAPL", new DeterministicTimestamper());
+			try (OrderBookCommandJournal journal = new OrderBookCommandJournal(book, new SystemTimestamper(),
+					directory, "commands", 64 * 1024 * 1024, 100_000)) {
+				for (int i = 0; i < commands / 2; i++) {
+					journal.createLimit(1, "c", i + 1, Side.BUY, 100, (100 + i % 10) * TICK, TimeInForce.GTC);
+					journal.cancel(i + 1);
+				}
+			}
+
+			OrderBookCommandReplayer replayer = new OrderBookCommandReplayer(directory, "commands");
+			OrderBook replayed = new OrderBook("AAPL", new DeterministicTimestamper());
+
+			assertEquals(commands, replayer.replay(replayed));
+			assertEquals(0, replayed.getNumberOfOrders());
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void test_JournalRequiresADeterministicTimestamper() throws Exception {
+		Path directory = Files.createTempDirectory("coralme");
+		try {
+			assertThrows(IllegalArgumentException.class,
+					() -> new OrderBookCommandJournal(new OrderBook("AAPL"), directory, "commands"));
+			assertThrows(IllegalArgumentException.class,
+					() -> new OrderBookCommandReplayer(directory, "commands").replay(new OrderBook("AAPL")));
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+import com.coralblocks.coralme.util.ObjectPoolStatistics;
+
+public class OrderBookConfigTest {
+
+	private final int orderPoolInitialSize = OrderBook.ORDER_POOL_INITIAL_SIZE;
+	private final int priceLevelPoolInitialSize = OrderBook.PRICE_LEVEL_POOL_INITIAL_SIZE;
+
+	@After
+	public void restoreDefaults() {
+		OrderBook.ORDER_POOL_INITIAL_SIZE = orderPoolInitialSize;
+		OrderBook.PRICE_LEVEL_POOL_INITIAL_SIZE = priceLevelPoolInitialSize;
+	}
+
+	@Test
+	public void test_BooksCanBeSizedIndividually() {
+		OrderBook small = new OrderBook("AAPL", new OrderBookConfig().setOrderPoolInitialSize(8)
+				.setPriceLevelPoolInitialSize(2));
+		OrderBook large = new OrderBook("MSFT", new OrderBookConfig().setOrderPoolInitialSize(10_000)
+				.setPriceLevelPoolInitialSize(500));
+		OrderBook standard = new OrderBook("IBM");
+
+		assertEquals(8, small.getOrderPoolStatistics().getCreated());
+		assertEquals(2, small.getPriceLevelPoolStatistics().getCreated());
+		assertEquals(10_000, large.getOrderPoolStatistics().getIdle());
+		assertEquals(500, large.getPriceLevelPoolStatistics().getIdle());
+		assertEquals(OrderBook.ORDER_POOL_INITIAL_SIZE, standard.getOrderPoolStatistics().getCreated());
+	}
+
+	@Test
+	public void test_ConfigurationIsCopiedWhenTheBookIsConstructed() {
+		OrderBookConfig config = new OrderBookConfig().setOrderPoolInitialSize(16).setAllowTradeToSelf(false)
+				.setRejectDuplicateClientOrderIds(false).setOrderIndex(new SequentialOrderIndex(64));
+		OrderBook book = new OrderBook("AAPL", config);
+
+		config.setOrderPoolInitialSize(1_000).setAllowTradeToSelf(true);
+		OrderBook copy = new OrderBook(book);
+
+		assertFalse(book.isAllowTradeToSelf());
+		assertFalse(book.isRejectDuplicateClientOrderIds());
+		assertEquals(16, book.getOrderPoolStatistics().getCreated());
+		assertFalse(copy.isAllowTradeToSelf());
+		assertFalse(copy.isRejectDuplicateClientOrderIds());
+		assertEquals(16, copy.getOrderPoolStatistics().getCreated());
+	}
+
+	@Test
+	public void test_StaticsAreTheDefaultsWhenTheConfigIsCreated() {
+		OrderBook.ORDER_POOL_INITIAL_SIZE = 32;
+		OrderBook.PRICE_LEVEL_POOL_INITIAL_SIZE = 4;
+		OrderBookConfig config = new OrderBookConfig();
+		OrderBook.ORDER_POOL_INITIAL_SIZE = 64;
+
+		assertEquals(32, config.getOrderPoolInitialSize());
+		assertEquals(4, config.getPriceLevelPoolInitialSize());
+		assertSame(OrderBook.TIMESTAMPER, config.getTimestamper());
+		assertTrue(config.isAllowTradeToSelf());
+		assertTrue(config.isRejectDuplicateClientOrderIds());
+		assertEquals(64, new OrderBook("AAPL").getOrderPoolStatistics().getCreated());
+	}
+
+	@Test
+	public void test_PrewarmedBookDoesNotGrowDuringTheSession() {
+		OrderBook book = new OrderBook("AAPL", new OrderBookConfig().setOrderPoolInitialSize(1)
+				.setPriceLevelPoolInitialSize(1));
+
+		// yesterday
+		runSession(book, 1);
+		ObjectPoolStatistics orderStats = book.getOrderPoolStatistics();
+		ObjectPoolStatistics priceLevelStats = book.getPriceLevelPoolStatistics();
+		int peakOrders = orderStats.getHighWaterMark();
+		int peakPriceLevels = priceLevelStats.getHighWaterMark();
+		assertEquals(2_000, peakOrders);
+		assertEquals(100, peakPriceLevels);
+		assertTrue(orderStats.getGrowthEvents() > 0);
+
+		// today, in a new book sized from yesterday's peak
+		OrderBook today = new OrderBook("AAPL", new OrderBookConfig().setOrderPoolInitialSize(1)
+				.setPriceLevelPoolInitialSize(1));
+		today.prewarm(peakOrders, peakPriceLevels);
+		assertEquals(0, today.getOrderPoolStatistics().getHighWaterMark());
+		assertEquals(peakOrders, today.getOrderPoolStatistics().getIdle());
+
+		runSession(today, 1);
+		assertEquals(0, today.getOrderPoolStatistics().getGrowthEvents());
+		assertEquals(0, today.getPriceLevelPoolStatistics().getGrowthEvents());
+		assertEquals(peakOrders, today.getOrderPoolStatistics().getCreated());
+
+		today.resetPoolStatistics();
+		assertEquals(0, today.getOrderPoolStatistics().getHighWaterMark());
+		runSession(today, 10_000);
+		assertEquals(0, today.getOrderPoolStatistics().getGrowthEvents());
+	}
+
+	@Test
+	public void test_PrewarmIsNotAllowedFromACallback() {
+		Exception[] failure = new Exception[1];
+		OrderBook book = new OrderBook("AAPL", new OrderBookAdapter() {
+			@Override
+			public void onOrderAccepted(OrderBook orderBook, long time, Order order) {
+				try {
+					orderBook.prewarm(10, 10);
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		});
+		book.createLimit(1, "A", 1, Side.BUY, 100, 100, TimeInForce.GTC);
+		assertTrue(failure[0] instanceof ReentrantOrderBookOperationException);
+		assertEquals("prewarm", ((ReentrantOrderBookOperationException) failure[0]).getOperation());
+	}
+
+	@Test
+	public void test_InvalidConfigurationIsRejected() {
+		OrderBookConfig config = new OrderBookConfig();
+		assertThrows(IllegalArgumentException.class, () -> config.setOrderPoolInitialSize(0));
+		assertThrows(IllegalArgumentException.class, () -> config.setPriceLevelPoolInitialSize(0));
+		assertThrows(IllegalArgumentException.class, () -> config.setOrderPoolMaxIdle(-1));
+		assertThrows(IllegalArgumentException.class, () -> config.setPriceLevelPoolMaxIdle(-1));
+		assertThrows(NullPointerException.class, () -> config.setTimestamper(null));
+		assertThrows(NullPointerException.class, () -> config.setPriceLevelIndex(null));
+		assertThrows(NullPointerException.class, () -> config.setOrderIndex(null));
+		assertThrows(NullPointerException.class, () -> config.setOrderStorage(null));
+		assertThrows(IllegalArgumentException.class, () -> new OrderBook("AAPL").prewarm(-1, 0));
+	}
+
+	private static void runSession(OrderBook book, long firstId) {
+		for (int i = 0; i < 2_000; i++) {
+			long id = firstId + i;
+			Side side = i % 2 == 0 ? Side.BUY : Side.SELL;
+			long price = side.isBuy() ? 1_000 - i % 100 : 2_000 + i % 100;
+			book.createLimit(1, String.valueOf(id), id, side, 100, price, TimeInForce.GTC);
+		}
+		book.purge();
+	}
+}
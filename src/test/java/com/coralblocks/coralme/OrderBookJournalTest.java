@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertAllocatesLessThan;
+import static com.coralblocks.coralme.FileTestSupport.deleteRecursively;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.CancelReason;
+import com.coralblocks.coralme.Order.ExecuteSide;
+import com.coralblocks.coralme.Order.RejectReason;
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class OrderBookJournalTest {
+
+	private static final class RecordingListener extends OrderBookAdapter {
+
+		private final List<String> events = new ArrayList<String>();
+
+		@Override
+		public void onOrderAccepted(OrderBook orderBook, long time, Order order) {
+			events.add("A " + order.getId() + " " + order.getSide() + " " + order.getOriginalSize());
+		}
+
+		@Override
+		public void onOrderRejected(OrderBook orderBook, long time, Order order, RejectReason rejectReason) {
+			events.add("J " + order.getId() + " " + rejectReason.getChar());
+		}
+
+		@Override
+		public void onOrderRested(OrderBook orderBook, long time, Order order, long restSize, long restPrice) {
+			events.add("R " + order.getId() + " " + restSize + "@" + restPrice);
+		}
+
+		@Override
+		public void onOrderExecuted(OrderBook orderBook, long time, Order order, ExecuteSide executeSide,
+				long executeSize, long executePrice, long executeId, long executeMatchId) {
+			events.add("E " + order.getId() + " " + executeSide.getChar() + " " + executeSize + "@" + executePrice
+					+ " " + executeId + "/" + executeMatchId);
+		}
+
+		@Override
+		public void onOrderReduced(OrderBook orderBook, long time, Order order, long canceledSize,
+				long reduceNewTotalSize, CancelReason cancelReason) {
+			events.add("D " + order.getId() + " " + canceledSize + " " + reduceNewTotalSize);
+		}
+
+		@Override
+		public void onOrderCanceled(OrderBook orderBook, long time, Order order, long canceledSize,
+				CancelReason cancelReason) {
+			events.add("C " + order.getId() + " " + canceledSize + " " + cancelReason.getChar());
+		}
+
+		@Override
+		public void onOrderTerminated(OrderBook orderBook, long time, Order order) {
+			events.add("T " + order.getId());
+		}
+	}
+
+	private static List<String> read(OrderBookJournalReader reader, long firstSequence) throws Exception {
+		List<String> events = new ArrayList<String>();
+		long sequence = firstSequence;
+		while (reader.next()) {
+			assertEquals(sequence++, reader.getSequence());
+			switch ((char) reader.getType()) {
+			case 'A':
+				events.add("A " + reader.getOrderId() + " " + reader.getSide() + " " + reader.getSize());
+				break;
+			case 'J':
+				events.add("J " + reader.getOrderId() + " " + reader.getReason());
+				break;
+			case 'R':
+				events.add("R " + reader.getOrderId() + " " + reader.getSize() + "@" + reader.getPrice());
+				break;
+			case 'E':
+				events.add("E " + reader.getOrderId() + " " + reader.getReason() + " " + reader.getSize() + "@"
+						+ reader.getPrice() + " " + reader.getExecuteId() + "/" + reader.getMatchId());
+				break;
+			case 'D':
+				events.add("D " + reader.getOrderId() + " " + reader.getSize() + " " + reader.getReduceNewTotalSize());
+				break;
+			case 'C':
+				events.add("C " + reader.getOrderId() + " " + reader.getSize() + " " + reader.getReason());
+				break;
+			case 'T':
+				events.add("T " + reader.getOrderId());
+				break;
+			default:
+				events.add("? " + reader.getType());
+			}
+		}
+		return events;
+	}
+
+	private static void trade(OrderBook book, long firstId) {
+		book.createLimit(1, "a", firstId, Side.BUY, 100, 100 * TICK, TimeInForce.DAY);
+		book.createLimit(1, "b", firstId + 1, Side.BUY, 300, 99 * TICK, TimeInForce.GTC);
+		book.getOrder(firstId + 1).reduceTo(200);
+		book.createLimit(2, "c", firstId + 2, Side.SELL, 150, 99 * TICK, TimeInForce.IOC);
+		book.createLimit(2, "d", firstId + 3, Side.SELL, -1, 99 * TICK, TimeInForce.GTC);
+		book.getOrder(firstId + 1).cancel();
+	}
+
+	@Test
+	public void test_JournalRecordsEveryCallbackAcrossRollingSegments() throws Exception {
+		Path directory = Files.createTempDirectory("coralme");
+		try {
+			RecordingListener listener = new RecordingListener();
+			OrderBookJournal journal = new OrderBookJournal(directory, "AAPL",
+					OrderBookJournal.HEADER_SIZE + 5 * OrderBookJournal.RECORD_SIZE);
+			OrderBook book = new OrderBook("AAPL", listener);
+			book.addListener(journal);
+
+			OrderBookJournalReader reader = new OrderBookJournalReader(directory, "AAPL");
+			assertFalse(reader.next());
+
+			trade(book, 1);
+			assertEquals(listener.events.size(), journal.getSequence());
+			assertTrue(directory.toFile().listFiles().length > 1);
+			assertEquals(listener.events, read(reader, 1));
+
+			// The reader picks up from where it stopped
+			listener.events.clear();
+			trade(book, 10);
+			assertEquals(listener.events, read(reader, journal.getSequence() - listener.events.size() + 1));
+
+			// A restarted journal continues the sequence in a new segment
+			long sequence = journal.getSequence();
+			journal.close();
+			book.removeListener(journal);
+			journal = new OrderBookJournal(directory, "AAPL", 64 * 1024);
+			book.addListener(journal);
+			assertEquals(sequence, journal.getSequence());
+
+			listener.events.clear();
+			trade(book, 20);
+			assertEquals(listener.events, read(reader, sequence + 1));
+
+			journal.close();
+			reader.close();
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void test_ReaderWaitsForTheHeaderOfTheNextSegment() throws Exception {
+		Path directory = Files.createTempDirectory("coralme");
+		try (OrderBookJournal journal = new OrderBookJournal(directory, "AAPL",
+				OrderBookJournal.HEADER_SIZE + 5 * OrderBookJournal.RECORD_SIZE);
+				OrderBookJournalReader reader = new OrderBookJournalReader(directory, "AAPL")) {
+			OrderBook book = new OrderBook("AAPL");
+			Order order = book.createLimit(1, "a", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+
+			for (int i = 1; i <= 5; i++) {
+				journal.onOrderExecuted(book, i, order, ExecuteSide.MAKER, 1, 100 * TICK, i, i);
+			}
+
+			for (int i = 1; i <= 5; i++) {
+				assertTrue(reader.next());
+				assertEquals(i, reader.getSequence());
+			}
+
+			// The journal is about to roll: the next segment is created but not mapped yet
+			Path next = directory.resolve(OrderBookJournal.segmentFileName("AAPL", 6));
+			Files.createFile(next);
+			assertFalse(reader.next());
+
+			// Mapped, but its header is not written yet
+			Files.write(next, new byte[OrderBookJournal.HEADER_SIZE]);
+			assertFalse(reader.next());
+
+			journal.onOrderExecuted(book, 6, order, ExecuteSide.MAKER, 1, 100 * TICK, 6, 6);
+			assertTrue(reader.next());
+			assertEquals(6, reader.getSequence());
+			assertFalse(reader.next());
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void test_JournalingDoesNotAllocate() throws Exception {
+		Path directory = Files.createTempDirectory("coralme");
+		try (OrderBookJournal journal = new OrderBookJournal(directory, "AAPL", 64 * 1024 * 1024)) {
+			OrderBook book = new OrderBook("AAPL");
+			Order order = book.createLimit(1, "a", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+
+			for (int i = 0; i < 20_000; i++) {
+				journal.onOrderExecuted(book, i, order, ExecuteSide.MAKER, 1, 100 * TICK, i, i);
+				journal.onOrderReduced(book, i, order, 1, 99, CancelReason.USER);
+			}
+
+			assertAllocatesLessThan(1024, () -> {
+				for (int i = 0; i < 100_000; i++) {
+					journal.onOrderExecuted(book, i, order, ExecuteSide.MAKER, 1, 100 * TICK, i, i);
+					journal.onOrderReduced(book, i, order, 1, 99, CancelReason.USER);
+				}
+			});
+			assertEquals(240_000, journal.getSequence());
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.ExecuteSide;
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class OrderBookLoaderTest {
+
+	private static final class CountingListener extends OrderBookAdapter {
+
+		private int accepted;
+
+		private int rested;
+
+		private final List<String> executions = new ArrayList<String>();
+
+		@Override
+		public void onOrderAccepted(OrderBook orderBook, long time, Order order) {
+			accepted++;
+		}
+
+		@Override
+		public void onOrderRested(OrderBook orderBook, long time, Order order, long restSize, long restPrice) {
+			rested++;
+		}
+
+		@Override
+		public void onOrderExecuted(OrderBook orderBook, long time, Order order, ExecuteSide executeSide,
+				long executeSize, long executePrice, long executeId, long executeMatchId) {
+			executions.add(order.getId() + " " + executeSide + " " + executeSize + "@" + executePrice);
+		}
+	}
+
+	private static List<String> describe(OrderBook book, Side side) {
+		List<String> result = new ArrayList<String>();
+		for (Iterator<Order> iter = book.iterator(side); iter.hasNext();) {
+			Order o = iter.next();
+			result.add(o.getId() + " " + o.getClientOrderId() + "@" + o.getPrice() + "x" + o.getOpenSize());
+		}
+		return result;
+	}
+
+	@Test
+	public void test_LoadedOrderBookMatchesTheOrderBookItWasSavedFrom() {
+		CountingListener createdListener = new CountingListener();
+		CountingListener loadedListener = new CountingListener();
+		OrderBook created = new OrderBook("AAPL", createdListener);
+		OrderBook loaded = new OrderBook("AAPL", loadedListener);
+
+		Random random = new Random(16);
+		for (long id = 1; id <= 1000; id++) {
+			Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+			long price = side.isBuy() ? (100 - random.nextInt(50)) * TICK : (101 + random.nextInt(50)) * TICK;
+			created.createLimit(1, "c" + id, id, side, 100 + random.nextInt(100), price, TimeInForce.GTC);
+		}
+
+		OrderBookLoader loader = new OrderBookLoader(loaded);
+		for (Side side : new Side[] { Side.SELL, Side.BUY }) {
+			for (Iterator<Order> iter = created.iterator(side); iter.hasNext();) {
+				Order o = iter.next();
+				Order order = loader.load(o.getClientId(), o.getClientOrderId(), o.getId(), side, o.getOpenSize(),
+						o.getPrice(), o.getTimeInForce());
+				assertTrue(order.isResting());
+				assertSame(order, loaded.getOrder(o.getId()));
+			}
+		}
+
+		assertEquals(1000, loader.getLoaded());
+		assertEquals(0, loadedListener.accepted);
+		assertEquals(0, loadedListener.rested);
+		assertEquals(describe(created, Side.BUY), describe(loaded, Side.BUY));
+		assertEquals(describe(created, Side.SELL), describe(loaded, Side.SELL));
+		assertEquals(created.getLevels(Side.BUY), loaded.getLevels(Side.BUY));
+		for (PriceLevel a = created.head(Side.SELL), b = loaded.head(Side.SELL); a != null; a = a.next, b = b.next) {
+			assertEquals(a.getPrice(), b.getPrice());
+			assertEquals(a.getSize(), b.getSize());
+		}
+
+		createdListener.executions.clear();
+		created.createMarket(2, "m", 2000, Side.BUY, 20_000);
+		loaded.createMarket(2, "m", 2000, Side.BUY, 20_000);
+		assertEquals(createdListener.executions, loadedListener.executions);
+		assertEquals(describe(created, Side.SELL), describe(loaded, Side.SELL));
+	}
+
+	@Test
+	public void test_OrderOutOfPriceTimePriorityAbortsTheLoad() {
+		OrderBook book = new OrderBook("AAPL");
+		OrderBookLoader loader = new OrderBookLoader(book);
+
+		loader.load(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		loader.load(1, "2", 2, Side.BUY, 100, 100 * TICK, TimeInForce.DAY);
+		loader.load(1, "3", 3, Side.BUY, 100, 99 * TICK, TimeInForce.GTD, Long.MAX_VALUE);
+		loader.load(1, "4", 4, Side.SELL, 100, 101 * TICK, TimeInForce.GTC);
+
+		assertThrows(IllegalArgumentException.class,
+				() -> loader.load(1, "5", 5, Side.BUY, 100, 100 * TICK, TimeInForce.GTC));
+
+		assertTrue(book.isEmpty());
+		assertNull(book.head(Side.BUY));
+		assertNull(book.head(Side.SELL));
+		assertEquals(0, loader.getLoaded());
+		assertEquals(0, book.getOrderPoolStatistics().getInUse());
+		assertEquals(0, book.getPriceLevelPoolStatistics().getInUse());
+		assertEquals(0, book.expire(Integer.MAX_VALUE));
+
+		// The aborted load can start over
+		loader.load(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		assertEquals(1, book.getNumberOfOrders());
+	}
+
+	@Test
+	public void test_CrossedOrInvalidOrdersAbortTheLoad() {
+		OrderBook book = new OrderBook("AAPL");
+		OrderBookLoader loader = new OrderBookLoader(book);
+
+		loader.load(1, "1", 1, Side.SELL, 100, 101 * TICK, TimeInForce.GTC);
+		assertThrows(IllegalArgumentException.class,
+				() -> loader.load(1, "2", 2, Side.BUY, 100, 101 * TICK, TimeInForce.GTC));
+		assertTrue(book.isEmpty());
+
+		loader.load(1, "1", 1, Side.SELL, 100, 101 * TICK, TimeInForce.GTC);
+		assertThrows(IllegalArgumentException.class,
+				() -> loader.load(1, "2", 1, Side.SELL, 100, 102 * TICK, TimeInForce.GTC));
+		assertTrue(book.isEmpty());
+
+		assertThrows(IllegalArgumentException.class,
+				() -> loader.load(1, "1", 1, Side.SELL, 100, 101 * TICK, TimeInForce.IOC));
+		assertThrows(IllegalArgumentException.class,
+				() -> loader.load(1, "1", 1, Side.SELL, 0, 101 * TICK, TimeInForce.GTC));
+		assertThrows(IllegalArgumentException.class,
+				() -> loader.load(1, "1", 0, Side.SELL, 100, 101 * TICK, TimeInForce.GTC));
+	}
+
+	@Test
+	public void test_LoaderRequiresAnEmptyOrderBook() {
+		OrderBook book = new OrderBook("AAPL");
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+
+		assertThrows(IllegalArgumentException.class, () -> new OrderBookLoader(book));
+	}
+}
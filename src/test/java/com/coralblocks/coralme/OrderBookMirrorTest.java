@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertAllocatesLessThan;
+import static com.coralblocks.coralme.FileTestSupport.deleteRecursively;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class OrderBookMirrorTest {
+
+	private static List<String> describe(OrderBook book) {
+		List<String> result = new ArrayList<String>();
+		for (Side side : new Side[] { Side.BUY, Side.SELL }) {
+			for (Iterator<Order> iter = book.iterator(side); iter.hasNext();) {
+				Order o = iter.next();
+				result.add(o.getId() + " " + o.getClientId() + " " + o.getClientOrderId() + " " + o.getSide() + " "
+						+ o.getPrice() + " " + o.getOpenSize() + " " + o.getTimeInForce() + " " + o.getExpireTime()
+						+ " " + o.getRestTime());
+			}
+		}
+		return result;
+	}
+
+	private static long trade(OrderBook book, Random random, long firstId, int operations) {
+		long id = firstId;
+		for (int i = 0; i < operations; i++) {
+			Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+			int r = random.nextInt(10);
+			if (r < 6) {
+				long price = side.isBuy() ? (100 - random.nextInt(20)) * TICK : (96 + random.nextInt(20)) * TICK;
+				TimeInForce tif = random.nextInt(5) == 0 ? TimeInForce.DAY : TimeInForce.GTC;
+				book.createLimit(random.nextInt(3), "c" + id, id++, side, 100 + random.nextInt(500), price, tif);
+			} else if (r < 7) {
+				book.createMarket(random.nextInt(3), "m" + id, id++, side, 50 + random.nextInt(300));
+			} else {
+				Order order = book.getOrder(firstId + random.nextInt((int) (id - firstId + 1)));
+				if (order == null) continue;
+				if (r < 8) {
+					order.reduceTo(order.getExecutedSize() + 1 + random.nextInt(100));
+				} else if (r < 9) {
+					order.cancel(1 + random.nextInt(50));
+				} else {
+					order.cancel();
+				}
+			}
+		}
+		return id;
+	}
+
+	@Test
+	public void test_MirrorRebuildsTheOrderBookFromItsJournal() throws Exception {
+		Path directory = Files.createTempDirectory("coralme");
+		try (OrderBookJournal journal = new OrderBookJournal(directory, "AAPL", 1024 * 1024);
+				OrderBookJournalReader reader = new OrderBookJournalReader(directory, "AAPL")) {
+			OrderBook book = new OrderBook("AAPL");
+			book.addListener(journal);
+			OrderBookMirror mirror = new OrderBookMirror(new OrderBook("AAPL"));
+			Random random = new Random(21);
+
+			long id = 1;
+			for (int round = 0; round < 5; round++) {
+				id = trade(book, random, id, 5000);
+
+				assertEquals(journal.getSequence() - mirror.getEvents(), mirror.applyAll(reader));
+
+				OrderBook replica = mirror.getOrderBook();
+				assertTrue(book.getNumberOfOrders() > 10);
+				assertEquals(book.getNumberOfOrders(), replica.getNumberOfOrders());
+				assertEquals(book.orders(), replica.orders());
+				assertEquals(book.levels(), replica.levels());
+				assertEquals(describe(book), describe(replica));
+				assertEquals(book.getBestBidSize(), replica.getBestBidSize());
+				assertEquals(book.getExecId(), replica.getExecId());
+				assertEquals(book.getMatchId(), replica.getMatchId());
+				assertEquals(book.getLastExecutedPrice(), replica.getLastExecutedPrice());
+			}
+
+			// The replica can take over as an order book
+			OrderBook replica = mirror.getOrderBook();
+			Order best = replica.getBestAskOrder();
+			long bestSize = best.getOpenSize();
+			Order order = replica.createLimit(9, "x", id, Side.BUY, bestSize, best.getPrice(), TimeInForce.IOC);
+			assertTrue(order.isTerminal());
+			assertEquals(bestSize, order.getExecutedSize());
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void test_MirroredGoodTillDateOrdersKeepTheirExpireTime() throws Exception {
+		Path directory = Files.createTempDirectory("coralme");
+		try (OrderBookJournal journal = new OrderBookJournal(directory, "AAPL", 1024 * 1024);
+				OrderBookJournalReader reader = new OrderBookJournalReader(directory, "AAPL")) {
+			OrderBook book = new OrderBook("AAPL");
+			book.addListener(journal);
+			OrderBookMirror mirror = new OrderBookMirror(new OrderBook("AAPL"));
+			long expireTime = System.currentTimeMillis() * 1_000_000L + 3_600_000_000_000L;
+
+			book.createLimit(1, "gtd-1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTD, expireTime);
+			book.createLimit(1, "caf\u00e9-\u20ac", 2, Side.BUY, 200, 99 * TICK, TimeInForce.GTD, expireTime + 1);
+			book.createLimit(2, "x".repeat(Order.CLIENT_ORDER_ID_MAX_LENGTH), 3, Side.SELL, 300, 101 * TICK,
+					TimeInForce.GTC);
+			mirror.applyAll(reader);
+
+			OrderBook replica = mirror.getOrderBook();
+			assertEquals(describe(book), describe(replica));
+			assertEquals(expireTime, replica.getOrder(1, "gtd-1").getExpireTime());
+			assertEquals(2, replica.getOrder(1, "caf\u00e9-\u20ac").getId());
+
+			// Not expired before its expire time
+			assertEquals(0, replica.expireGoodTillDate());
+			assertEquals(3, replica.getNumberOfOrders());
+
+			// A GTD order added without its expire time waits for its cancel event
+			mirror.add(10, 4, 1, "gtd-4", Side.BUY, 98 * TICK, 100, TimeInForce.GTD);
+			assertEquals(0, replica.expireGoodTillDate());
+			assertEquals(4, replica.getNumberOfOrders());
+			assertTrue(mirror.cancel(11, 4));
+
+			book.getOrder(1).cancel();
+			mirror.applyAll(reader);
+			assertEquals(describe(book), describe(replica));
+		} finally {
+			deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	public void test_MirrorOperations() {
+		OrderBookMirror mirror = new OrderBookMirror(new OrderBook("AAPL"));
+		OrderBook book = mirror.getOrderBook();
+
+		mirror.add(10, 1, 1, "a", Side.BUY, 100 * TICK, 100, TimeInForce.GTC);
+		mirror.add(11, 2, 1, "b", Side.BUY, 100 * TICK, 200, TimeInForce.DAY);
+		mirror.add(12, 3, 2, "c", Side.BUY, 101 * TICK, 300, TimeInForce.GTC);
+		mirror.add(13, 4, 2, "d", Side.SELL, 103 * TICK, 400, TimeInForce.GTC);
+		mirror.add(14, 5, 2, "e", Side.BUY, 99 * TICK, 500, TimeInForce.GTC);
+
+		assertEquals(4, book.getBidLevels() + book.getAskLevels());
+		assertEquals(300, book.getBestBidSize());
+		assertEquals(300, book.head(Side.BUY).next.getSize());
+
+		// Reducing keeps the time priority
+		assertTrue(mirror.reduce(20, 1, 40));
+		assertEquals(60, book.getOrder(1).getOpenSize());
+		assertEquals(20, book.getOrder(1).getReduceTime());
+		assertEquals(260, book.head(Side.BUY).next.getSize());
+		assertEquals(1, book.head(Side.BUY).next.head().getId());
+
+		assertTrue(mirror.execute(21, 3, 100, 101 * TICK));
+		assertEquals(200, book.getBestBidSize());
+		assertEquals(100, book.getOrder(3).getExecutedSize());
+		assertEquals(101 * TICK, book.getLastExecutedPrice());
+
+		assertTrue(mirror.execute(22, 3, 200, 101 * TICK));
+		assertEquals(null, book.getOrder(3));
+		assertEquals(100 * TICK, book.getBestBidPrice());
+
+		assertTrue(mirror.reduce(23, 1, 60));
+		assertEquals(null, book.getOrder(1));
+		assertEquals(200, book.getBestBidSize());
+
+		assertTrue(mirror.cancel(24, 4));
+		assertFalse(book.hasAsks());
+		assertFalse(mirror.cancel(25, 4));
+		assertFalse(mirror.reduce(25, 4, 1));
+		assertFalse(mirror.execute(25, 4, 1, 103 * TICK));
+
+		assertEquals(2, book.getNumberOfOrders());
+		assertEquals("2 5", book.getOrder(2).getId() + " " + book.getOrder(5).getId());
+	}
+
+	@Test
+	public void test_MirrorRejectsDuplicateIdsAndEmptyOrders() {
+		OrderBookMirror mirror = new OrderBookMirror(new OrderBook("AAPL"));
+		OrderBook book = mirror.getOrderBook();
+
+		Order order = mirror.add(10, 1, 1, "a", Side.BUY, 100 * TICK, 100, TimeInForce.GTC);
+
+		assertEquals(null, mirror.add(11, 1, 2, "b", Side.SELL, 103 * TICK, 200, TimeInForce.GTC));
+		assertEquals(null, mirror.add(12, 2, 1, "c", Side.BUY, 100 * TICK, 0, TimeInForce.GTC));
+		assertEquals(null, mirror.add(13, 3, 1, "d", Side.BUY, 100 * TICK, -5, TimeInForce.GTC));
+		assertEquals(null, mirror.add(14, 0, 1, "e", Side.BUY, 100 * TICK, 100, TimeInForce.GTC));
+
+		assertEquals(1, book.getNumberOfOrders());
+		assertEquals(order, book.getOrder(1));
+		assertEquals(100, book.getBestBidSize());
+		assertFalse(book.hasAsks());
+	}
+
+	@Test
+	public void test_MirrorDoesNotAllocate() {
+		OrderBookMirror mirror = new OrderBookMirror(new OrderBook("AAPL"));
+		mirror.getOrderBook().prewarm(2048, 256);
+
+		for (int i = 0; i < 10_000; i++) {
+			cycle(mirror, i);
+		}
+
+		assertAllocatesLessThan(1024, () -> {
+			for (int i = 0; i < 100_000; i++) {
+				cycle(mirror, i);
+			}
+		});
+		assertTrue(mirror.getOrderBook().isEmpty());
+	}
+
+	private static void cycle(OrderBookMirror mirror, int i) {
+		for (int j = 0; j < 10; j++) {
+			mirror.add(i, j + 1, 1, "c", Side.BUY, (100 - j % 4) * TICK, 100, TimeInForce.GTC);
+		}
+		for (int j = 0; j < 10; j++) {
+			mirror.reduce(i, j + 1, 10);
+			mirror.execute(i, j + 1, 40, (100 - j % 4) * TICK);
+			mirror.cancel(i, j + 1);
+		}
+	}
+}
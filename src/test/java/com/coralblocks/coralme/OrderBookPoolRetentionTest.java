@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+import com.coralblocks.coralme.util.ManagedObjectPool;
+
+public class OrderBookPoolRetentionTest {
+
+	private final int orderPoolMaxIdle = OrderBook.ORDER_POOL_MAX_IDLE;
+	private final int priceLevelPoolMaxIdle = OrderBook.PRICE_LEVEL_POOL_MAX_IDLE;
+
+	@After
+	public void restoreDefaults() {
+		OrderBook.ORDER_POOL_MAX_IDLE = orderPoolMaxIdle;
+		OrderBook.PRICE_LEVEL_POOL_MAX_IDLE = priceLevelPoolMaxIdle;
+	}
+
+	@Test
+	public void test_PoolsKeepEverythingByDefault() {
+		OrderBook book = new OrderBook("AAPL");
+
+		restBurst(book, 5_000, 0);
+		book.purge();
+
+		ManagedObjectPool<Order> orderPool = book.orderPool();
+		assertEquals(0, orderPool.getInUse());
+		assertEquals(5_000, orderPool.getIdle());
+		assertEquals(0, orderPool.getDropped());
+		assertEquals(1_000, book.priceLevelPool().getIdle());
+	}
+
+	@Test
+	public void test_BurstObjectsAreNotRetainedBeyondMaxIdle() {
+		OrderBook.ORDER_POOL_MAX_IDLE = 600;
+		OrderBook.PRICE_LEVEL_POOL_MAX_IDLE = 150;
+		OrderBook book = new OrderBook("AAPL");
+
+		restBurst(book, 5_000, 0);
+		assertEquals(5_000, book.orderPool().getInUse());
+		assertEquals(1_000, book.priceLevelPool().getInUse());
+
+		book.purge();
+		assertTrue(book.isEmpty());
+
+		assertEquals(600, book.orderPool().getIdle());
+		assertEquals(4_400, book.orderPool().getDropped());
+		assertEquals(150, book.priceLevelPool().getIdle());
+
+		// a smaller working set keeps being recycled without creating objects
+		long created = book.orderPool().getCreated();
+		for (int i = 0; i < 100; i++) {
+			restBurst(book, 500, i * 500);
+			book.purge();
+		}
+		assertEquals(created, book.orderPool().getCreated());
+		assertEquals(600, book.orderPool().getIdle());
+	}
+
+	private static void restBurst(OrderBook book, int orders, long firstId) {
+		for (int i = 0; i < orders; i++) {
+			long id = firstId + i + 1;
+			book.createLimit(1, String.valueOf(id), id, Side.BUY, 100, 1_000 - i % 1_000, TimeInForce.GTC);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class OrderBookPoolsTest {
+
+	@Test
+	public void test_BooksReuseEachOthersOrders() {
+		OrderBookPools pools = new OrderBookPools(4, 2);
+		List<OrderBook> accepted = new ArrayList<OrderBook>();
+		OrderBookAdapter listener = new OrderBookAdapter() {
+			@Override
+			public void onOrderAccepted(OrderBook orderBook, long time, Order order) {
+				accepted.add(orderBook);
+			}
+		};
+		OrderBook aapl = new OrderBook("AAPL", listener, new OrderBookConfig().setPools(pools));
+		OrderBook msft = new OrderBook("MSFT", listener, new OrderBookConfig().setPools(pools));
+
+		Order first = aapl.createLimit(1, "A", 1, Side.BUY, 100, 100, TimeInForce.GTC);
+		first.cancel();
+		Order second = msft.createLimit(1, "A", 1, Side.SELL, 200, 300, TimeInForce.GTC);
+
+		assertSame(first, second);
+		assertEquals("MSFT", second.getSecurity());
+		assertSame(second, msft.getOrder(1));
+		assertNull(aapl.getOrder(1));
+		assertTrue(aapl.isEmpty());
+		assertEquals(300, msft.getBestAskPrice());
+		assertEquals(2, accepted.size());
+		assertSame(aapl, accepted.get(0));
+		assertSame(msft, accepted.get(1));
+
+		second.cancel();
+		assertSame(aapl.getOrderPoolStatistics(), msft.getOrderPoolStatistics());
+		assertSame(pools.getOrderPoolStatistics(), aapl.getOrderPoolStatistics());
+		assertEquals(4, pools.getOrderPoolStatistics().getCreated());
+		assertEquals(2, pools.getPriceLevelPoolStatistics().getCreated());
+	}
+
+	@Test
+	public void test_MemoryFollowsLiveOrdersNotBooks() {
+		OrderBookPools pools = new OrderBookPools(64, 16);
+		OrderBookConfig config = new OrderBookConfig().setPools(pools).setExpectedOrders(4);
+		OrderBook[] books = new OrderBook[5_000];
+		for (int i = 0; i < books.length; i++) {
+			books[i] = new OrderBook("S" + i, config);
+		}
+
+		long id = 1;
+		for (int round = 0; round < 10; round++) {
+			for (OrderBook book : books) {
+				book.createLimit(1, "A", id, Side.BUY, 100, 100, TimeInForce.GTC);
+				book.createLimit(2, "B", id + 1, Side.SELL, 100, 101, TimeInForce.GTC);
+				book.getOrder(id).cancel();
+				book.getOrder(id + 1).cancel();
+				id += 2;
+			}
+		}
+
+		assertEquals(64, pools.getOrderPoolStatistics().getCreated());
+		assertEquals(16, pools.getPriceLevelPoolStatistics().getCreated());
+		assertEquals(2, pools.getOrderPoolStatistics().getHighWaterMark());
+		assertEquals(0, pools.getOrderPoolStatistics().getGrowthEvents());
+	}
+
+	@Test
+	public void test_RandomOperationsMatchDefaultBook() {
+		OrderBookPools pools = new OrderBookPools(8, 4);
+		OrderBook other = new OrderBook("MSFT", new OrderBookConfig().setPools(pools));
+		for (long seed = 1; seed <= 5; seed++) {
+			PriceLevelIndexTestSupport.assertSameBehaviorAsDefault(
+					new OrderBook("AAPL", new OrderBookConfig().setPools(pools)), 5_000, 50, 1, seed);
+			other.createLimit(1, "X" + seed, seed, Side.BUY, 100, 100, TimeInForce.GTC);
+		}
+		assertEquals(5, other.getNumberOfOrders());
+		for (long seed = 1; seed <= 5; seed++) {
+			assertEquals("MSFT", other.getOrder(seed).getSecurity());
+		}
+	}
+
+	@Test
+	public void test_ListenerCannotOperateOnAnotherBookSharingThePools() {
+		OrderBookPools pools = new OrderBookPools();
+		OrderBook sharing = new OrderBook("MSFT", new OrderBookConfig().setPools(pools));
+		OrderBook separate = new OrderBook("IBM");
+		Exception[] failure = new Exception[1];
+
+		OrderBook book = new OrderBook("AAPL", new OrderBookAdapter() {
+			@Override
+			public void onOrderCanceled(OrderBook orderBook, long time, Order order, long canceledSize,
+					Order.CancelReason cancelReason) {
+				separate.createLimit(1, "S", 1, Side.BUY, 100, 100, TimeInForce.GTC);
+				try {
+					sharing.createLimit(1, "M", 1, Side.BUY, 100, 100, TimeInForce.GTC);
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		}, new OrderBookConfig().setPools(pools));
+
+		book.createLimit(1, "A", 1, Side.BUY, 100, 100, TimeInForce.GTC).cancel();
+
+		assertTrue(failure[0] instanceof ReentrantOrderBookOperationException);
+		ReentrantOrderBookOperationException reentrantException = (ReentrantOrderBookOperationException) failure[0];
+		assertSame(sharing, reentrantException.getOrderBook());
+		assertEquals("createLimit", reentrantException.getOperation());
+		assertTrue(sharing.isEmpty());
+		assertFalse(separate.isEmpty());
+
+		// once the callback is over the sharing book works again
+		sharing.createLimit(1, "M", 1, Side.BUY, 100, 100, TimeInForce.GTC);
+		assertEquals(1, sharing.getNumberOfOrders());
+	}
+
+	@Test
+	public void test_InvalidConfigurationIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new OrderBookPools(0, 1));
+		assertThrows(IllegalArgumentException.class, () -> new OrderBookPools(1, 0));
+		assertThrows(IllegalArgumentException.class, () -> new OrderBookPools(1, 1, -1, 1));
+		assertThrows(IllegalArgumentException.class, () -> new OrderBookConfig().setExpectedOrders(-1));
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.ExecuteSide;
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class OrderBookSnapshotTest {
+
+	private static final class ExecutionListener extends OrderBookAdapter {
+
+		private final List<String> executions = new ArrayList<String>();
+
+		private int callbacks;
+
+		@Override
+		public void onOrderRested(OrderBook orderBook, long time, Order order, long restSize, long restPrice) {
+			callbacks++;
+		}
+
+		@Override
+		public void onOrderExecuted(OrderBook orderBook, long time, Order order, ExecuteSide executeSide,
+				long executeSize, long executePrice, long executeId, long executeMatchId) {
+			executions.add(order.getId() + " " + executeSide + " " + executeSize + "@" + executePrice + " "
+					+ executeId + "/" + executeMatchId);
+		}
+	}
+
+	private static List<String> describe(OrderBook book) {
+		List<String> result = new ArrayList<String>();
+		for (Side side : new Side[] { Side.BUY, Side.SELL }) {
+			for (Iterator<Order> iter = book.iterator(side); iter.hasNext();) {
+				Order o = iter.next();
+				result.add(o.getId() + " " + o.getClientId() + " " + o.getClientOrderId() + " " + o.getSide() + " "
+						+ o.getPrice() + " " + o.getOriginalSize() + "/" + o.getTotalSize() + "/"
+						+ o.getExecutedSize() + "/" + o.getOpenSize() + " " + o.getTimeInForce() + " "
+						+ o.getExpireTime() + " " + o.getAcceptTime() + " " + o.getRestTime() + " "
+						+ o.getReduceTime() + " " + o.getExecuteTime());
+			}
+		}
+		return result;
+	}
+
+	private static OrderBook newRandomOrderBook(ExecutionListener listener) {
+		OrderBook book = new OrderBook("AAPL", listener);
+		Random random = new Random(17);
+		for (long id = 1; id <= 2000; id++) {
+			Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+			long price = side.isBuy() ? (100 - random.nextInt(40)) * TICK : (95 + random.nextInt(40)) * TICK;
+			int r = random.nextInt(3);
+			TimeInForce tif = r == 0 ? TimeInForce.DAY : r == 1 ? TimeInForce.GTC : TimeInForce.GTD;
+			String clientOrderId = id % 7 == 0 ? "\u4e2d" + id : "c" + id;
+			Order order = book.createLimit(id % 5, clientOrderId, id, side, 100 + random.nextInt(500), price, tif,
+					Long.MAX_VALUE - id);
+			if (order.isResting() && random.nextInt(10) == 0) order.reduceTo(order.getTotalSize() - 10);
+		}
+		return book;
+	}
+
+	@Test
+	public void test_RestoredOrderBookIsIdenticalAndContinuesTheIds() {
+		ExecutionListener savedListener = new ExecutionListener();
+		OrderBook saved = newRandomOrderBook(savedListener);
+		assertTrue(saved.getNumberOfOrders() > 100);
+
+		OrderBookSnapshot snapshot = new OrderBookSnapshot(16);
+		ByteBuffer buffer = snapshot.write(saved);
+
+		ExecutionListener restoredListener = new ExecutionListener();
+		OrderBook restored = new OrderBook("AAPL", restoredListener);
+		snapshot.restore(buffer, restored);
+
+		assertEquals(0, restoredListener.callbacks);
+		assertEquals(describe(saved), describe(restored));
+		assertEquals(saved.getLastExecutedPrice(), restored.getLastExecutedPrice());
+		for (Side side : new Side[] { Side.BUY, Side.SELL }) {
+			assertEquals(saved.getLevels(side), restored.getLevels(side));
+			for (PriceLevel a = saved.head(side), b = restored.head(side); a != null; a = a.next, b = b.next) {
+				assertEquals(a.getSize(), b.getSize());
+				assertEquals(a.getOrders(), b.getOrders());
+			}
+		}
+		Order any = saved.getBestBidOrder();
+		assertSame(restored.getOrder(any.getId()), restored.getOrder(any.getClientId(), any.getClientOrderId()));
+
+		savedListener.executions.clear();
+		saved.createMarket(9, "m", 10_000, Side.BUY, 30_000);
+		restored.createMarket(9, "m", 10_000, Side.BUY, 30_000);
+		assertEquals(savedListener.executions, restoredListener.executions);
+		assertEquals(describe(saved).size(), describe(restored).size());
+	}
+
+	@Test
+	public void test_RestoreFromMemoryMappedFile() throws Exception {
+		OrderBook saved = newRandomOrderBook(null);
+		OrderBookSnapshot snapshot = new OrderBookSnapshot();
+		Path file = Files.createTempFile("coralme", ".snapshot");
+		try {
+			snapshot.write(saved, file);
+
+			OrderBook restored = new OrderBook("AAPL");
+			snapshot.restore(file, restored);
+
+			assertEquals(describe(saved), describe(restored));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void test_WriteReusesItsBuffer() {
+		OrderBook saved = newRandomOrderBook(null);
+		OrderBookSnapshot snapshot = new OrderBookSnapshot(16);
+
+		ByteBuffer first = snapshot.write(saved);
+		int length = first.remaining();
+		ByteBuffer second = snapshot.write(saved);
+
+		assertSame(first, second);
+		assertEquals(length, second.remaining());
+	}
+
+	@Test
+	public void test_InvalidSnapshotsAreRejectedAndLeaveTheOrderBookEmpty() {
+		OrderBook saved = newRandomOrderBook(null);
+		OrderBookSnapshot snapshot = new OrderBookSnapshot();
+		ByteBuffer buffer = snapshot.write(saved);
+
+		OrderBook other = new OrderBook("MSFT");
+		assertThrows(IllegalArgumentException.class, () -> snapshot.restore(buffer.duplicate(), other));
+		assertTrue(other.isEmpty());
+
+		ByteBuffer truncated = buffer.duplicate();
+		truncated.limit(truncated.limit() / 2);
+		OrderBook restored = new OrderBook("AAPL");
+		assertThrows(IllegalArgumentException.class, () -> snapshot.restore(truncated, restored));
+		assertTrue(restored.isEmpty());
+		assertEquals(0, restored.getOrderPoolStatistics().getInUse());
+		assertEquals(0, restored.getPriceLevelPoolStatistics().getInUse());
+
+		restored.createLimit(1, "1", 1, Side.BUY, 100, 50 * TICK, TimeInForce.GTC);
+		assertThrows(IllegalArgumentException.class, () -> snapshot.restore(buffer.duplicate(), restored));
+	}
+
+	@Test
+	public void test_CorruptCountsAreRejectedBeforePrewarming() {
+		OrderBookSnapshot snapshot = new OrderBookSnapshot();
+		ByteBuffer buffer = snapshot.write(newRandomOrderBook(null));
+		int counts = buffer.position() + 4 + 4 + 2 + "AAPL".length() + 8 + 8 + 8; // orders, bid and ask levels
+
+		int[][] corruptions = { { 0, -1 }, { 4, -1 }, { 8, -1 }, { 0, Integer.MAX_VALUE }, { 4, Integer.MAX_VALUE },
+				{ 8, 1 << 20 }, { 0, 0 } };
+
+		for (int[] corruption : corruptions) {
+			ByteBuffer corrupt = buffer.duplicate().order(buffer.order());
+			corrupt.putInt(counts + corruption[0], corruption[1]);
+			OrderBook restored = new OrderBook("AAPL");
+			int idle = restored.getOrderPoolStatistics().getIdle();
+			assertThrows(IllegalArgumentException.class, () -> snapshot.restore(corrupt, restored));
+			assertTrue(restored.isEmpty());
+			assertEquals(idle, restored.getOrderPoolStatistics().getIdle());
+		}
+	}
+}
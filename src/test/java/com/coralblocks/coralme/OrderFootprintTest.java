@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.allocatedBytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+/**
+ * Measures the heap footprint of a pooled {@link Order}, both freshly created
+ * and after it has rested in a book, using per-thread allocated bytes.
+ */
+public class OrderFootprintTest {
+
+	private static final int ORDERS = 10_000;
+
+	/*
+	 * A pooled order used to take about 600 bytes: the order itself plus an
+	 * ArrayList with a 64-slot array for external listeners and a 64-char
+	 * StringBuilder for the client order ID, which took about 400 of them. It now
+	 * takes about 280, including the links that keep it in its expiry list.
+	 */
+	private static final long MAX_BYTES_PER_ORDER = 288;
+
+	/**
+	 * Returns the bytes per order that an order used to allocate up front and no
+	 * longer does: the external listener list and the client order ID builder.
+	 */
+	private static long removedBytesPerOrder() {
+		Object[] removed = new Object[2 * ORDERS];
+
+		return allocatedBytes(() -> {
+			for (int i = 0; i < ORDERS; i++) {
+				removed[2 * i] = new ArrayList<OrderListener>(64);
+				removed[2 * i + 1] = new StringBuilder(64);
+			}
+		}) / ORDERS;
+	}
+
+	@Test
+	public void test_PooledOrderFootprint() {
+		Order[] orders = new Order[ORDERS];
+
+		long bytesPerOrder = allocatedBytes(() -> {
+			for (int i = 0; i < ORDERS; i++) {
+				orders[i] = new Order();
+			}
+		}) / ORDERS;
+
+		long removedBytesPerOrder = removedBytesPerOrder();
+		String figures = "Bytes per pooled order: " + bytesPerOrder + ", before: "
+				+ (bytesPerOrder + removedBytesPerOrder);
+
+		assertTrue(figures, bytesPerOrder <= MAX_BYTES_PER_ORDER);
+
+		// What is left of an order is smaller than what it no longer allocates
+		assertTrue(figures, bytesPerOrder < removedBytesPerOrder);
+	}
+
+	@Test
+	public void test_RestingOrdersDoNotGrowTheirFootprint() {
+		OrderBook book = new OrderBook("AAPL");
+		StringBuilder clientOrderId = new StringBuilder(Order.CLIENT_ORDER_ID_MAX_LENGTH);
+
+		// Short client order IDs with no external listeners, the common case
+		long bytesPerOrder = allocatedBytes(() -> {
+			for (int i = 0; i < ORDERS; i++) {
+				clientOrderId.setLength(0);
+				clientOrderId.append("CL-").append(i);
+				book.createLimit(1, clientOrderId, i + 1, Side.BUY, 100, 1_000 + i % 100, TimeInForce.GTC);
+			}
+		}) / ORDERS;
+
+		assertEquals(ORDERS, book.getNumberOfOrders());
+		assertEquals(ORDERS - 1 + "", book.getOrder(ORDERS).getClientOrderId().toString().substring(3));
+		long removedBytesPerOrder = removedBytesPerOrder();
+		String figures = "Bytes per resting order: " + bytesPerOrder + ", before: "
+				+ (bytesPerOrder + removedBytesPerOrder);
+
+		assertTrue(figures, bytesPerOrder <= 2 * MAX_BYTES_PER_ORDER);
+
+		// At least 40% less than before, pool growth and indexes included
+		assertTrue(figures, 10 * bytesPerOrder <= 6 * (bytesPerOrder + removedBytesPerOrder));
+	}
+
+	private static long bytesPerPrewarmedRestingOrder(OrderBookConfig config, int orders) {
+		OrderBook book = new OrderBook("AAPL", config);
+		StringBuilder clientOrderId = new StringBuilder(Order.CLIENT_ORDER_ID_MAX_LENGTH);
+
+		long bytesPerOrder = allocatedBytes(() -> {
+			book.prewarm(orders, 100);
+			for (int i = 0; i < orders; i++) {
+				clientOrderId.setLength(0);
+				clientOrderId.append("CL-").append(i);
+				book.createLimit(1, clientOrderId, i + 1, Side.BUY, 100, 1_000 + i % 100, TimeInForce.GTC);
+			}
+		}) / orders;
+
+		assertEquals(orders, book.getNumberOfOrders());
+
+		return bytesPerOrder;
+	}
+
+	@Test
+	public void test_ColumnarOrdersTakeLessThanHalfTheHeap() {
+		// A power of two, so that the columns are full
+		int orders = 16_384;
+
+		long objects = bytesPerPrewarmedRestingOrder(new OrderBookConfig(), orders);
+		long columns = bytesPerPrewarmedRestingOrder(
+				new OrderBookConfig().setOrderStorage(OrderBookConfig.OrderStorage.COLUMNS), orders);
+		String figures = "Bytes per resting order: " + columns + ", with objects: " + objects;
+
+		assertTrue(figures, 2 * columns < objects);
+	}
+
+	@Test
+	public void test_OffHeapOrdersTakeNoHeap() {
+		int orders = 16_384;
+
+		long bytesPerOrder = bytesPerPrewarmedRestingOrder(
+				new OrderBookConfig().setOrderStorage(OrderBookConfig.OrderStorage.OFF_HEAP_COLUMNS), orders);
+
+		// Only the price levels, the cursors and the buffer objects are on the heap
+		assertTrue("Bytes per resting order: " + bytesPerOrder, bytesPerOrder <= 4);
+	}
+
+	@Test
+	public void test_ClientOrderIdsRoundTripInEveryEncoding() {
+		OrderBook book = new OrderBook("AAPL");
+		String[] clientOrderIds = { "", "A", "12345678", "1234567890123456", "12345678901234567", "caf\u00e9-\u00ff",
+				"\u20ac100", "x".repeat(Order.CLIENT_ORDER_ID_MAX_LENGTH) };
+
+		long id = 1;
+		for (int round = 0; round < 3; round++) {
+			for (String clientOrderId : clientOrderIds) {
+				Order order = book.createLimit(1, clientOrderId, id++, Side.BUY, 100, 100, TimeInForce.GTC);
+				CharSequence actual = order.getClientOrderId();
+				assertEquals(clientOrderId, actual.toString());
+				assertEquals(clientOrderId.length(), actual.length());
+				for (int i = 0; i < clientOrderId.length(); i++) {
+					assertEquals(clientOrderId.charAt(i), actual.charAt(i));
+				}
+				assertSame(order, book.getOrder(1, clientOrderId));
+				order.cancel(); // the next order reuses the same instance
+			}
+		}
+	}
+}
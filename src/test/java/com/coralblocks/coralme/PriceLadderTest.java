@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertNoAllocation;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.CLIENT_ORDER_IDS;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class PriceLadderTest {
+
+	@Test
+	public void test_RandomOperationsMatchDefaultBookInsideWindow() {
+		for (long seed = 1; seed <= 5; seed++) {
+			PriceLevelIndexTestSupport.assertSameBehaviorAsDefault(new OrderBook("AAPL", new PriceLadder(TICK, 1024)),
+					5_000, 200, 1, seed);
+		}
+	}
+
+	@Test
+	public void test_RandomOperationsMatchDefaultBookWithSmallSlidingWindow() {
+		for (long seed = 1; seed <= 5; seed++) {
+			PriceLevelIndexTestSupport.assertSameBehaviorAsDefault(new OrderBook("AAPL", new PriceLadder(TICK, 16)),
+					5_000, 60, 3, seed);
+		}
+	}
+
+	@Test
+	public void test_RandomOperationsMatchDefaultBookWithCoarseTicks() {
+		for (long seed = 1; seed <= 5; seed++) {
+			PriceLevelIndexTestSupport.assertSameBehaviorAsDefault(
+					new OrderBook("AAPL", new PriceLadder(5 * TICK, 100)), 5_000, 100, 2, seed);
+		}
+	}
+
+	@Test
+	public void test_DeepOrdersOutsideTheWindowAreLinkedInPriceOrder() {
+		OrderBook book = new OrderBook("AAPL", new PriceLadder(TICK, 8));
+
+		book.createLimit(1, "a", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "b", 2, Side.BUY, 100, 50 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "c", 3, Side.BUY, 100, 70 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "d", 4, Side.BUY, 100, 99 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "e", 5, Side.BUY, 100, 60 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "f", 6, Side.BUY, 100, 70 * TICK, TimeInForce.GTC);
+
+		assertEquals(5, book.getBidLevels());
+		assertPrices(book, Side.BUY, 100, 99, 70, 60, 50);
+		assertEquals(200, book.getOrder(6).getPriceLevel().getSize());
+		assertSame(book.getOrder(3).getPriceLevel(), book.getOrder(6).getPriceLevel());
+	}
+
+	@Test
+	public void test_WindowFollowsTheMarket() {
+		OrderBook book = new OrderBook("AAPL", new PriceLadder(TICK, 8));
+
+		book.createLimit(1, "a", 1, Side.SELL, 100, 10 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "b", 2, Side.SELL, 100, 11 * TICK, TimeInForce.GTC);
+
+		// Take the whole side and rest far away from the original window
+		book.createMarket(2, "c", 3, Side.BUY, 200);
+		assertTrue(book.isEmpty());
+
+		for (int i = 0; i < 10; i++) {
+			book.createLimit(1, "d" + i, 10 + i, Side.SELL, 100, (1000 + 2 * i) * TICK, TimeInForce.GTC);
+		}
+		book.createLimit(1, "e", 30, Side.SELL, 100, 1001 * TICK, TimeInForce.GTC);
+		book.createLimit(1, "f", 31, Side.SELL, 100, 999 * TICK, TimeInForce.GTC);
+
+		assertPrices(book, Side.SELL, 999, 1000, 1001, 1002, 1004, 1006, 1008, 1010, 1012, 1014, 1016, 1018);
+	}
+
+	@Test
+	public void test_TemplateCanConfigureManyBooks() {
+		PriceLadder template = new PriceLadder(TICK, 64);
+		OrderBook book1 = new OrderBook("AAPL", template);
+		OrderBook book2 = new OrderBook("AAPL", template);
+		OrderBook copy = new OrderBook(book1);
+
+		for (OrderBook book : new OrderBook[] { book1, book2, copy }) {
+			book.createLimit(1, "a", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+			book.createLimit(1, "b", 2, Side.BUY, 100, 98 * TICK, TimeInForce.GTC);
+			book.createLimit(1, "c", 3, Side.BUY, 100, 99 * TICK, TimeInForce.GTC);
+			assertPrices(book, Side.BUY, 100, 99, 98);
+		}
+
+		book1.getOrder(3).cancel();
+		assertPrices(book1, Side.BUY, 100, 98);
+		assertPrices(book2, Side.BUY, 100, 99, 98);
+	}
+
+	@Test
+	public void test_InvalidConfigurationIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new PriceLadder(0, 10));
+		assertThrows(IllegalArgumentException.class, () -> new PriceLadder(TICK, 0));
+		assertThrows(IllegalArgumentException.class, () -> new PriceLadder(Long.MAX_VALUE / 2, 3));
+		assertThrows(NullPointerException.class, () -> new OrderBook("AAPL", (PriceLevelIndex) null));
+	}
+
+	@Test
+	public void test_SteadyStateDeepRestingAllocatesNoGarbage() {
+		OrderBook book = new OrderBook("AAPL", new PriceLadder(TICK, 1024));
+
+		restAndCancel(book, 1_000);
+
+		assertNoAllocation(() -> restAndCancel(book, 10_000));
+		assertTrue(book.isEmpty());
+	}
+
+	private static void restAndCancel(OrderBook book, int iterations) {
+		for (int i = 0; i < iterations; i++) {
+			for (int level = 0; level < 100; level++) {
+				long id = level + 1;
+				book.createLimit(1, CLIENT_ORDER_IDS[level], id, Side.BUY, 100, (1000 - 3 * level) * TICK,
+						TimeInForce.GTC);
+			}
+			for (int level = 0; level < 100; level++) {
+				book.getOrder(level + 1).cancel();
+			}
+		}
+	}
+
+	private static void assertPrices(OrderBook book, Side side, long... ticks) {
+		PriceLevel pl = book.head(side);
+		for (long tick : ticks) {
+			assertEquals(tick * TICK, pl.getPrice());
+			pl = pl.next;
+		}
+		assertNull(pl);
+		assertEquals(ticks.length, book.getLevels(side));
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+import com.coralblocks.coralme.OrderBook.TraversalOrder;
+
+/**
+ * Drives an order book configured with a {@link PriceLevelIndex} and a default
+ * order book through the same random operations and checks that both always
+ * expose the same levels, orders and traversal order.
+ */
+final class PriceLevelIndexTestSupport {
+
+	static final long TICK = 1_000_000L; // 0.01
+
+	static final String[] CLIENT_ORDER_IDS = new String[1_000];
+
+	static {
+		for (int i = 0; i < CLIENT_ORDER_IDS.length; i++) {
+			CLIENT_ORDER_IDS[i] = "C" + i;
+		}
+	}
+
+	private PriceLevelIndexTestSupport() {
+
+	}
+
+	/**
+	 * Runs random operations around a mid price that drifts by up to
+	 * <code>drift</code> ticks per operation.
+	 *
+	 * @param indexed    the order book using the index under test
+	 * @param operations the number of operations to run
+	 * @param maxDepth   the maximum distance, in ticks, from the mid price
+	 * @param drift      the maximum mid price move, in ticks, per operation
+	 * @param seed       the random seed
+	 */
+	static void assertSameBehaviorAsDefault(OrderBook indexed, int operations, int maxDepth, int drift, long seed) {
+
+		OrderBook reference = new OrderBook(indexed.getSecurity());
+		Random random = new Random(seed);
+		long mid = 100_00L * TICK;
+		long nextId = 1;
+
+		for (int i = 0; i < operations; i++) {
+
+			mid += (random.nextInt(2 * drift + 1) - drift) * TICK;
+			if (mid < maxDepth * TICK * 2) mid = maxDepth * TICK * 2;
+
+			int op = random.nextInt(100);
+
+			if (op < 60) {
+				Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+				long distance = random.nextInt(maxDepth + 1) * TICK;
+				long price = side.isBuy() ? mid - distance : mid + distance;
+				if (random.nextInt(20) == 0) price += TICK / 2; // off the tick grid
+				long size = 100 * (1 + random.nextInt(5));
+				TimeInForce tif = random.nextInt(10) == 0 ? TimeInForce.IOC : TimeInForce.GTC;
+				long id = nextId++;
+				String clientOrderId = String.valueOf(id);
+				indexed.createLimit(1, clientOrderId, id, side, size, price, tif);
+				reference.createLimit(1, clientOrderId, id, side, size, price, tif);
+			} else if (op < 85) {
+				long id = 1 + (long) random.nextInt((int) nextId);
+				Order order = indexed.getOrder(id);
+				Order referenceOrder = reference.getOrder(id);
+				if (order == null) {
+					assertNull(referenceOrder);
+				} else if (random.nextBoolean()) {
+					order.cancel();
+					referenceOrder.cancel();
+				} else {
+					long newTotalSize = order.getExecutedSize() + order.getOpenSize() / 2;
+					order.reduceTo(newTotalSize);
+					referenceOrder.reduceTo(newTotalSize);
+				}
+			} else if (op < 95) {
+				Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+				long size = 100 * (1 + random.nextInt(20));
+				long id = nextId++;
+				String clientOrderId = String.valueOf(id);
+				indexed.createMarket(1, clientOrderId, id, side, size);
+				reference.createMarket(1, clientOrderId, id, side, size);
+			} else {
+				Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+				if (reference.hasTop(side)) {
+					long price = reference.getBestPrice(side);
+					long id = nextId++;
+					String clientOrderId = String.valueOf(id);
+					indexed.createLimit(2, clientOrderId, id, side, 100, price, TimeInForce.GTC);
+					reference.createLimit(2, clientOrderId, id, side, 100, price, TimeInForce.GTC);
+				}
+			}
+
+			if (i % 16 == 0 || i == operations - 1) assertSameState(reference, indexed);
+		}
+	}
+
+	static void assertSameState(OrderBook expected, OrderBook actual) {
+		assertEquals(expected.levels(), actual.levels());
+		assertEquals(expected.orders(), actual.orders());
+		assertEquals(expected.getNumberOfOrders(), actual.getNumberOfOrders());
+		assertSame(expected.getState(), actual.getState());
+
+		for (Side side : Side.values()) {
+			assertEquals(expected.getLevels(side), actual.getLevels(side));
+			assertEquals(expected.hasTop(side), actual.hasTop(side));
+			if (expected.hasTop(side)) {
+				assertEquals(expected.getBestPrice(side), actual.getBestPrice(side));
+				assertEquals(expected.getBestSize(side), actual.getBestSize(side));
+			}
+			assertLinkedLevels(actual, side);
+			for (TraversalOrder traversalOrder : TraversalOrder.values()) {
+				assertSameTraversal(expected.iterator(side, traversalOrder), actual.iterator(side, traversalOrder));
+			}
+		}
+	}
+
+	private static void assertLinkedLevels(OrderBook book, Side side) {
+		int levels = 0;
+		PriceLevel previous = null;
+		for (PriceLevel pl = book.head(side); pl != null; pl = pl.next) {
+			assertSame(previous, pl.prev);
+			if (previous != null) assertFalse(side.isInside(pl.getPrice(), previous.getPrice()));
+			previous = pl;
+			levels++;
+		}
+		assertSame(previous, book.tail(side));
+		assertEquals(book.getLevels(side), levels);
+	}
+
+	private static void assertSameTraversal(Iterator<Order> expected, Iterator<Order> actual) {
+		while (expected.hasNext()) {
+			assertEquals(expected.next().getId(), actual.next().getId());
+		}
+		assertFalse(actual.hasNext());
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertNoAllocation;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.CLIENT_ORDER_IDS;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class PriceLevelTreeTest {
+
+	@Test
+	public void test_RandomOperationsMatchDefaultBookOnWideSparseBook() {
+		for (long seed = 1; seed <= 5; seed++) {
+			OrderBook book = new OrderBook("BTC-USD", new PriceLevelTree());
+			PriceLevelIndexTestSupport.assertSameBehaviorAsDefault(book, 5_000, 50_000, 20, seed);
+			assertTreeMatchesLevels(book);
+		}
+	}
+
+	@Test
+	public void test_RandomOperationsMatchDefaultBookOnDenseBook() {
+		for (long seed = 1; seed <= 5; seed++) {
+			OrderBook book = new OrderBook("AAPL", new PriceLevelTree(4));
+			PriceLevelIndexTestSupport.assertSameBehaviorAsDefault(book, 5_000, 30, 1, seed);
+			assertTreeMatchesLevels(book);
+		}
+	}
+
+	@Test
+	public void test_TreeStaysBalancedUnderRandomInsertsAndRemoves() {
+		OrderBook book = new OrderBook("BTC-USD", new PriceLevelTree());
+		Random random = new Random(42);
+		long nextId = 1;
+
+		for (int i = 0; i < 20_000; i++) {
+			if (random.nextInt(3) > 0 || book.isEmpty()) {
+				Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+				long price = side.isBuy() ? 1 + random.nextInt(1_000_000) : 2_000_000 + random.nextInt(1_000_000);
+				long id = nextId++;
+				book.createLimit(1, String.valueOf(id), id, side, 100, price * TICK, TimeInForce.GTC);
+			} else {
+				Order order = book.getOrder(1 + random.nextInt((int) nextId));
+				if (order != null) order.cancel();
+			}
+			if (i % 500 == 0) assertTreeMatchesLevels(book);
+		}
+
+		assertTreeMatchesLevels(book);
+		assertTrue(book.getBidLevels() > 1_000);
+		assertTrue(book.getAskLevels() > 1_000);
+	}
+
+	@Test
+	public void test_LevelsAreFoundAcrossAHugePriceRange() {
+		OrderBook book = new OrderBook("BTC-USD", new PriceLevelTree());
+
+		book.createLimit(1, "a", 1, Side.SELL, 100, Long.MAX_VALUE, TimeInForce.GTC);
+		book.createLimit(1, "b", 2, Side.SELL, 100, 1, TimeInForce.GTC);
+		book.createLimit(1, "c", 3, Side.SELL, 100, Long.MAX_VALUE / 2, TimeInForce.GTC);
+		book.createLimit(1, "d", 4, Side.SELL, 100, Long.MAX_VALUE, TimeInForce.GTC);
+		book.createLimit(1, "e", 5, Side.BUY, 100, Long.MIN_VALUE, TimeInForce.GTC);
+		book.createLimit(1, "f", 6, Side.BUY, 100, 0, TimeInForce.GTC);
+
+		assertEquals(3, book.getAskLevels());
+		assertEquals(1, book.getBestAskPrice());
+		assertEquals(Long.MAX_VALUE, book.tail(Side.SELL).getPrice());
+		assertEquals(2, book.tail(Side.SELL).getOrders());
+		assertEquals(2, book.getBidLevels());
+		assertEquals(Long.MIN_VALUE, book.tail(Side.BUY).getPrice());
+		assertTreeMatchesLevels(book);
+	}
+
+	@Test
+	public void test_InvalidConfigurationIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new PriceLevelTree(-1));
+	}
+
+	@Test
+	public void test_SteadyStateSparseRestingAllocatesNoGarbage() {
+		OrderBook book = new OrderBook("BTC-USD", new PriceLevelTree());
+
+		restAndCancel(book, 1_000);
+
+		assertNoAllocation(() -> restAndCancel(book, 10_000));
+		assertTrue(book.isEmpty());
+	}
+
+	private static void restAndCancel(OrderBook book, int iterations) {
+		for (int i = 0; i < iterations; i++) {
+			for (int level = 0; level < 100; level++) {
+				long price = (1_000_000 - 7_919L * ((level * 37) % 100)) * TICK;
+				book.createLimit(1, CLIENT_ORDER_IDS[level], level + 1, Side.BUY, 100, price, TimeInForce.GTC);
+			}
+			for (int level = 0; level < 100; level++) {
+				book.getOrder(level + 1).cancel();
+			}
+		}
+	}
+
+	private static void assertTreeMatchesLevels(OrderBook book) {
+		PriceLevelTree tree = (PriceLevelTree) book.priceLevelIndex();
+		for (Side side : Side.values()) {
+			assertEquals(book.getLevels(side), tree.validate(side));
+			for (PriceLevel pl = book.head(side); pl != null; pl = pl.next) {
+				assertSame(pl, tree.find(book.head(side), side, pl.getPrice()));
+			}
+			if (book.hasTop(side)) {
+				long beyondTail = side.isBuy() ? book.tail(side).getPrice() - 1 : book.tail(side).getPrice() + 1;
+				if (side.isInside(book.tail(side).getPrice(), beyondTail)) {
+					assertNull(tree.find(book.head(side), side, beyondTail));
+				}
+			}
+		}
+	}
+}
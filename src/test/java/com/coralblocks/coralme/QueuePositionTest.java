@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertNoAllocation;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.CLIENT_ORDER_IDS;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class QueuePositionTest {
+
+	private static OrderBookConfig tracking(boolean arrayBacked) {
+		return new OrderBookConfig().setTrackQueuePositions(true).setArrayBackedPriceLevels(arrayBacked);
+	}
+
+	@Test
+	public void test_SizeAndOrdersAheadFollowTheQueue() {
+		OrderBook book = new OrderBook("AAPL", tracking(false));
+		Order a = book.createLimit(1, "A", 1, Side.SELL, 100, 100 * TICK, TimeInForce.GTC);
+		Order b = book.createLimit(1, "B", 2, Side.SELL, 200, 100 * TICK, TimeInForce.GTC);
+		Order c = book.createLimit(1, "C", 3, Side.SELL, 300, 100 * TICK, TimeInForce.GTC);
+		Order other = book.createLimit(1, "D", 4, Side.SELL, 400, 101 * TICK, TimeInForce.GTC);
+
+		assertEquals(0, book.getSizeAhead(a));
+		assertEquals(0, book.getQueuePosition(a));
+		assertEquals(300, book.getSizeAhead(c));
+		assertEquals(2, book.getQueuePosition(c));
+		assertEquals(0, book.getQueuePosition(other));
+
+		book.createMarket(2, "M", 5, Side.BUY, 50); // partial fill of the head
+		assertEquals(250, book.getSizeAhead(c));
+
+		b.reduceTo(120);
+		assertEquals(170, book.getSizeAhead(c));
+		assertEquals(2, book.getQueuePosition(c));
+
+		a.cancel();
+		assertEquals(120, book.getSizeAhead(c));
+		assertEquals(1, book.getQueuePosition(c));
+		assertEquals(-1, book.getSizeAhead(a));
+		assertEquals(-1, book.getQueuePosition(a));
+
+		Order late = book.createLimit(1, "E", 6, Side.SELL, 100, 100 * TICK, TimeInForce.GTC);
+		assertEquals(420, book.getSizeAhead(late));
+		assertEquals(2, book.getQueuePosition(late));
+		assertEquals(-1, new OrderBook("AAPL").getQueuePosition(late));
+	}
+
+	@Test
+	public void test_RandomOperationsMatchAWalkOfEachLevel() {
+		for (boolean arrayBacked : new boolean[] { false, true }) {
+			for (long seed = 1; seed <= 3; seed++) {
+				assertPositionsUnderRandomOperations(new OrderBook("AAPL", tracking(arrayBacked)), seed);
+				// the walk fallback when positions are not tracked
+				assertPositionsUnderRandomOperations(
+						new OrderBook("AAPL", new OrderBookConfig().setArrayBackedPriceLevels(arrayBacked)), seed);
+			}
+		}
+	}
+
+	@Test
+	public void test_RandomOperationsMatchDefaultBook() {
+		for (long seed = 1; seed <= 3; seed++) {
+			PriceLevelIndexTestSupport.assertSameBehaviorAsDefault(new OrderBook("AAPL", tracking(false)), 10_000, 3,
+					1, seed);
+			PriceLevelIndexTestSupport.assertSameBehaviorAsDefault(new OrderBook("AAPL", tracking(true)), 10_000, 3,
+					1, seed);
+		}
+	}
+
+	@Test
+	public void test_SteadyStateTrackingAllocatesNoGarbage() {
+		OrderBook book = new OrderBook("AAPL", tracking(false));
+
+		restQueryAndSweep(book, 1_000);
+
+		assertNoAllocation(() -> restQueryAndSweep(book, 10_000));
+		assertTrue(book.isEmpty());
+	}
+
+	private static void restQueryAndSweep(OrderBook book, int iterations) {
+		for (int i = 0; i < iterations; i++) {
+			for (int j = 0; j < 100; j++) {
+				book.createLimit(1, CLIENT_ORDER_IDS[j], j + 1, Side.SELL, 100, (1000 + j % 2) * TICK, TimeInForce.GTC);
+			}
+			for (int j = 0; j < 100; j += 3) {
+				book.getOrder(j + 1).cancel();
+			}
+			if (book.getQueuePosition(book.getOrder(98)) != 32) throw new AssertionError();
+			book.createMarket(2, CLIENT_ORDER_IDS[999], 1_000, Side.BUY, 100 * 100);
+		}
+	}
+
+	private static void assertPositionsUnderRandomOperations(OrderBook book, long seed) {
+		Random random = new Random(seed);
+		long nextId = 1;
+		for (int i = 0; i < 5_000; i++) {
+			int op = random.nextInt(10);
+			if (op < 6) {
+				Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+				long price = (side.isBuy() ? 99 - random.nextInt(3) : 101 + random.nextInt(3)) * TICK;
+				long id = nextId++;
+				book.createLimit(1, String.valueOf(id), id, side, 100 * (1 + random.nextInt(5)), price,
+						TimeInForce.GTC);
+			} else if (op < 9) {
+				Order order = book.getOrder(1 + random.nextInt((int) nextId));
+				if (order == null) continue;
+				if (random.nextBoolean()) {
+					order.cancel();
+				} else {
+					order.reduceTo(order.getExecutedSize() + order.getOpenSize() / 2);
+				}
+			} else {
+				long id = nextId++;
+				book.createMarket(2, String.valueOf(id), id, random.nextBoolean() ? Side.BUY : Side.SELL,
+						100 * (1 + random.nextInt(10)));
+			}
+			if (i % 8 == 0) assertPositions(book);
+		}
+		assertPositions(book);
+	}
+
+	private static void assertPositions(OrderBook book) {
+		for (Side side : Side.values()) {
+			PriceLevel level = null;
+			long sizeAhead = 0;
+			int ordersAhead = 0;
+			Iterator<Order> iter = book.iterator(side);
+			while (iter.hasNext()) {
+				Order order = iter.next();
+				if (order.getPriceLevel() != level) {
+					level = order.getPriceLevel();
+					sizeAhead = 0;
+					ordersAhead = 0;
+				}
+				assertEquals(sizeAhead, book.getSizeAhead(order));
+				assertEquals(ordersAhead, book.getQueuePosition(order));
+				sizeAhead += order.getOpenSize();
+				ordersAhead++;
+			}
+		}
+	}
+}
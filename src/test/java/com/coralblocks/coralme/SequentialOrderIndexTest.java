@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.AllocationTestSupport.assertNoAllocation;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.CLIENT_ORDER_IDS;
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.CancelReason;
+import com.coralblocks.coralme.Order.RejectReason;
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+
+public class SequentialOrderIndexTest {
+
+	@Test
+	public void test_RandomOperationsMatchHashMap() {
+		Random random = new Random(11);
+		OrderIndex index = new SequentialOrderIndex(16).newInstance();
+		Map<Long, Order> expected = new HashMap<Long, Order>();
+		long nextId = 1_000;
+
+		for (int i = 0; i < 200_000; i++) {
+			long id;
+			int kind = random.nextInt(20);
+			if (kind < 14) {
+				id = nextId++; // the usual case
+			} else if (kind < 18) {
+				id = nextId - 1 - random.nextInt(64); // recent or a straggler
+			} else if (kind < 19) {
+				id = random.nextInt(2_000) - 500; // far below the window
+			} else {
+				nextId += random.nextInt(100); // a gap
+				id = nextId;
+			}
+			if (random.nextInt(3) == 0) {
+				assertSame(expected.remove(id), index.remove(id));
+			} else {
+				Order order = new Order();
+				assertSame(expected.put(id, order), index.put(id, order));
+			}
+			long probe = nextId - random.nextInt(100);
+			assertSame(expected.get(probe), index.get(probe));
+			assertEquals(expected.containsKey(probe), index.containsKey(probe));
+			assertEquals(expected.size(), index.size());
+			assertEquals(expected.isEmpty(), index.isEmpty());
+		}
+
+		assertSameEntries(expected, index);
+	}
+
+	@Test
+	public void test_RemovingWhileIteratingVisitsEveryOrderOnce() {
+		Random random = new Random(3);
+		OrderIndex index = new SequentialOrderIndex(8).newInstance();
+		Map<Long, Order> expected = new HashMap<Long, Order>();
+
+		for (int round = 0; round < 100; round++) {
+			for (int i = 0; i < 20; i++) {
+				long id = round * 10 + random.nextInt(30);
+				Order order = new Order();
+				expected.put(id, order);
+				index.put(id, order);
+			}
+
+			Map<Order, Boolean> visited = new IdentityHashMap<Order, Boolean>();
+			Iterator<Order> iter = index.iterator();
+			while (iter.hasNext()) {
+				Order order = iter.next();
+				assertNull("visited twice", visited.put(order, Boolean.TRUE));
+				if (random.nextInt(3) == 0) {
+					iter.remove();
+					expected.values().remove(order);
+				}
+			}
+			assertSameEntries(expected, index);
+		}
+	}
+
+	@Test
+	public void test_RandomOperationsMatchDefaultBook() {
+		for (long seed = 1; seed <= 5; seed++) {
+			PriceLevelIndexTestSupport.assertSameBehaviorAsDefault(
+					new OrderBook("AAPL", new SequentialOrderIndex(32)), 5_000, 50, 1, seed);
+		}
+	}
+
+	@Test
+	public void test_OldRestingOrdersAreStillFoundAndExpired() {
+		Map<Long, CancelReason> canceled = new HashMap<Long, CancelReason>();
+		List<RejectReason> rejected = new ArrayList<RejectReason>();
+		OrderBook book = new OrderBook("AAPL", new SequentialOrderIndex(4));
+		book.addListener(new OrderBookAdapter() {
+			@Override
+			public void onOrderCanceled(OrderBook orderBook, long time, Order order, long canceledSize,
+					CancelReason cancelReason) {
+				canceled.put(order.getId(), cancelReason);
+			}
+
+			@Override
+			public void onOrderRejected(OrderBook orderBook, long time, Order order, RejectReason rejectReason) {
+				rejected.add(rejectReason);
+			}
+		});
+
+		Order old = book.createLimit(1, "old", 1, Side.BUY, 100, 90 * TICK, TimeInForce.DAY);
+		for (long id = 2; id <= 100; id++) {
+			TimeInForce tif = id % 2 == 0 ? TimeInForce.DAY : TimeInForce.GTC;
+			book.createLimit(1, "x" + id, id, Side.SELL, 100, (100 + id) * TICK, tif);
+		}
+
+		assertSame(old, book.getOrder(1));
+		book.createLimit(2, "dup", 1, Side.BUY, 100, 80 * TICK, TimeInForce.DAY);
+		book.createLimit(2, "dup", 99, Side.BUY, 100, 80 * TICK, TimeInForce.DAY);
+		assertEquals(Arrays.asList(RejectReason.DUPLICATE_EXCHANGE_ORDER_ID, RejectReason.DUPLICATE_EXCHANGE_ORDER_ID),
+				rejected);
+
+		book.expire();
+
+		assertSame(CancelReason.EXPIRED, canceled.get(1L));
+		assertEquals(51, canceled.size());
+		assertNull(book.getOrder(1));
+		assertEquals(49, book.getNumberOfOrders());
+		for (long id = 3; id <= 99; id += 2) {
+			assertEquals(id, book.getOrder(id).getId());
+		}
+
+		book.purge();
+		assertTrue(book.isEmpty());
+	}
+
+	@Test
+	public void test_TemplateCanConfigureManyBooks() {
+		SequentialOrderIndex template = new SequentialOrderIndex(100);
+		assertEquals(128, template.getWindowSize());
+
+		OrderBook book1 = new OrderBook("AAPL", template);
+		OrderBook book2 = new OrderBook(book1);
+		book1.createLimit(1, "a", 1, Side.BUY, 100, 100 * TICK, TimeInForce.GTC);
+		book2.createLimit(1, "b", 1, Side.BUY, 100, 99 * TICK, TimeInForce.GTC);
+
+		assertEquals(100 * TICK, book1.getOrder(1).getPrice());
+		assertEquals(99 * TICK, book2.getOrder(1).getPrice());
+	}
+
+	@Test
+	public void test_InvalidConfigurationIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new SequentialOrderIndex(0));
+		assertThrows(IllegalArgumentException.class, () -> new SequentialOrderIndex((1 << 30) + 1));
+		assertThrows(NullPointerException.class, () -> new OrderBook("AAPL", (OrderIndex) null));
+		assertEquals(1, new SequentialOrderIndex(1).getWindowSize());
+	}
+
+	@Test
+	public void test_SteadyStateSequentialIdsAllocateNoGarbage() {
+		OrderBook book = new OrderBook("AAPL", new SequentialOrderIndex(1024));
+		long[] nextId = { 1 };
+
+		restAndCancel(book, nextId, 1_000);
+
+		assertNoAllocation(() -> restAndCancel(book, nextId, 10_000));
+		assertTrue(book.isEmpty());
+	}
+
+	private static void restAndCancel(OrderBook book, long[] nextId, int iterations) {
+		for (int i = 0; i < iterations; i++) {
+			long first = nextId[0];
+			for (int j = 0; j < 100; j++) {
+				book.createLimit(1, CLIENT_ORDER_IDS[j], nextId[0]++, Side.BUY, 100, (1000 - j) * TICK,
+						TimeInForce.GTC);
+			}
+			for (long id = first; id < nextId[0]; id++) {
+				book.getOrder(id).cancel();
+			}
+		}
+	}
+
+	private static void assertSameEntries(Map<Long, Order> expected, OrderIndex index) {
+		assertEquals(expected.size(), index.size());
+		for (Map.Entry<Long, Order> entry : expected.entrySet()) {
+			assertSame(entry.getValue(), index.get(entry.getKey()));
+		}
+		Map<Order, Boolean> iterated = new IdentityHashMap<Order, Boolean>();
+		Iterator<Order> iter = index.iterator();
+		while (iter.hasNext()) {
+			assertNull(iterated.put(iter.next(), Boolean.TRUE));
+		}
+		assertEquals(expected.size(), iterated.size());
+	}
+}
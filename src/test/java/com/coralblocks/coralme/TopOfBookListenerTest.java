@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.coralblocks.coralme;
+
+import static com.coralblocks.coralme.PriceLevelIndexTestSupport.TICK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.coralblocks.coralme.Order.Side;
+import com.coralblocks.coralme.Order.TimeInForce;
+import com.coralblocks.coralme.OrderBook.State;
+
+public class TopOfBookListenerTest {
+
+	private static final class Recorder implements TopOfBookListener {
+
+		final List<String> updates = new ArrayList<String>();
+
+		@Override
+		public void onTopOfBook(OrderBook orderBook, long bidPrice, long bidSize, long askPrice, long askSize,
+				State state) {
+			updates.add(bidSize + "@" + bidPrice / TICK + " " + askSize + "@" + askPrice / TICK + " " + state);
+		}
+
+		@Override
+		public void onExceptionThrown(OrderBook orderBook, Exception exception) {
+			updates.add("exception " + exception.getMessage());
+		}
+	}
+
+	@Test
+	public void test_NotifiedOncePerOperationOnlyWhenTheTopOfBookChanges() {
+		OrderBook book = new OrderBook("AAPL");
+		Recorder recorder = new Recorder();
+		book.addTopOfBookListener(recorder);
+		book.addTopOfBookListener(recorder);
+
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.DAY);
+		book.createLimit(1, "2", 2, Side.BUY, 200, 99 * TICK, TimeInForce.DAY); // not the best bid
+		book.createLimit(1, "3", 3, Side.SELL, 300, 102 * TICK, TimeInForce.DAY);
+		book.createLimit(1, "4", 4, Side.SELL, 300, 101 * TICK, TimeInForce.DAY);
+		book.getOrder(3).reduceTo(250); // not the best ask
+		book.getOrder(1).reduceTo(50);
+
+		// Sweeps the best ask and takes part of the next price level in one operation
+		book.createLimit(2, "5", 5, Side.BUY, 400, 102 * TICK, TimeInForce.DAY);
+
+		book.createLimit(2, "6", 6, Side.SELL, 100, 102 * TICK, TimeInForce.IOC); // canceled, nothing changes
+		book.createLimit(2, "7", 7, Side.SELL, 100, 100 * TICK, TimeInForce.IOC);
+
+		assertEquals(Arrays.asList("100@100 0@0 ONESIDED", "100@100 300@102 NORMAL", "100@100 300@101 NORMAL",
+				"50@100 300@101 NORMAL", "50@100 150@102 NORMAL", "200@99 150@102 NORMAL"), recorder.updates);
+
+		book.removeTopOfBookListener(recorder);
+		book.getOrder(2).cancel();
+		assertEquals(6, recorder.updates.size());
+	}
+
+	@Test
+	public void test_StartsFromTheCurrentTopOfBook() {
+		OrderBook book = new OrderBook("AAPL");
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.DAY);
+		book.createLimit(1, "2", 2, Side.SELL, 100, 100 * TICK, TimeInForce.DAY); // trades, book is empty again
+		book.createLimit(1, "3", 3, Side.SELL, 100, 101 * TICK, TimeInForce.DAY);
+
+		Recorder recorder = new Recorder();
+		book.addTopOfBookListener(recorder);
+		book.createLimit(1, "4", 4, Side.SELL, 100, 103 * TICK, TimeInForce.DAY);
+		assertEquals(0, recorder.updates.size());
+
+		book.getOrder(3).cancel();
+		book.purge();
+		assertEquals(Arrays.asList("0@0 100@103 ONESIDED", "0@0 0@0 EMPTY"), recorder.updates);
+	}
+
+	@Test
+	public void test_ListenerCannotModifyTheOrderBook() {
+		OrderBook book = new OrderBook("AAPL");
+		Recorder recorder = new Recorder();
+		List<Exception> thrown = new ArrayList<Exception>();
+		List<Exception> reported = new ArrayList<Exception>();
+		book.addTopOfBookListener(new TopOfBookListener() {
+			@Override
+			public void onTopOfBook(OrderBook orderBook, long bidPrice, long bidSize, long askPrice, long askSize,
+					State state) {
+				try {
+					orderBook.createLimit(9, "x", 99, Side.SELL, 100, 200 * TICK, TimeInForce.DAY);
+				} catch (IllegalStateException e) {
+					thrown.add(e);
+				}
+				throw new RuntimeException("listener failure");
+			}
+
+			@Override
+			public void onExceptionThrown(OrderBook orderBook, Exception exception) {
+				// Reported after the other listeners are notified
+				assertEquals(reported.size() + 1, recorder.updates.size());
+				reported.add(exception);
+			}
+		});
+		book.addTopOfBookListener(recorder);
+
+		book.createLimit(1, "1", 1, Side.BUY, 100, 100 * TICK, TimeInForce.DAY);
+
+		// A failing listener neither fails the operation nor skips the next listener, and gets its exception back
+		assertEquals(1, book.getNumberOfOrders());
+		assertEquals(1, thrown.size());
+		assertEquals(Arrays.asList("100@100 0@0 ONESIDED"), recorder.updates);
+		assertEquals(1, reported.size());
+		assertEquals("listener failure", reported.get(0).getMessage());
+
+		book.getOrder(1).reduceTo(50);
+		assertEquals(2, reported.size());
+		assertEquals(2, recorder.updates.size());
+		assertThrows(NullPointerException.class, () -> book.addTopOfBookListener(null));
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeterministicTimestamperTest {
+
+	@Test
+	public void test1() {
+
+		DeterministicTimestamper t = new DeterministicTimestamper(42);
+
+		Assert.assertEquals(42, t.nanoEpoch());
+		Assert.assertEquals(42, t.nanoEpoch());
+
+		t.setNanoEpoch(1000);
+
+		Assert.assertEquals(1000, t.nanoEpoch());
+	}
+}
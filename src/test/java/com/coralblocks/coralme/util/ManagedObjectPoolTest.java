@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015-2024 (c) CoralBlocks LLC - http://www.coralblocks.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.coralblocks.coralme.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.coralblocks.coralpool.ObjectBuilder;
+
+public class ManagedObjectPoolTest {
+
+	private static final ObjectBuilder<StringBuilder> BUILDER = new ObjectBuilder<StringBuilder>() {
+		@Override
+		public StringBuilder newInstance() {
+			return new StringBuilder();
+		}
+	};
+
+	@Test
+	public void test_CountsInstancesInUseAndIdle() {
+
+		ManagedObjectPool<StringBuilder> pool = new ManagedObjectPool<StringBuilder>(4, BUILDER);
+
+		Assert.assertEquals(Integer.MAX_VALUE, pool.getMaxIdle());
+
+		List<StringBuilder> taken = new ArrayList<StringBuilder>();
+		for (int i = 0; i < 10; i++) taken.add(pool.get());
+
+		Assert.assertEquals(10, pool.getInUse());
+		Assert.assertEquals(0, pool.getIdle());
+		Assert.assertEquals(10, pool.getCreated());
+
+		for (StringBuilder sb : taken) pool.release(sb);
+
+		Assert.assertEquals(0, pool.getInUse());
+		Assert.assertEquals(10, pool.getIdle());
+		Assert.assertEquals(0, pool.getDropped());
+
+		// reuse without creating anything new
+		for (int i = 0; i < 10; i++) Assert.assertTrue(taken.contains(pool.get()));
+		Assert.assertEquals(10, pool.getCreated());
+	}
+
+	@Test
+	public void test_DropsInstancesReleasedBeyondMaxIdle() {
+
+		ManagedObjectPool<StringBuilder> pool = new ManagedObjectPool<StringBuilder>(2, BUILDER, 3);
+
+		List<StringBuilder> taken = new ArrayList<StringBuilder>();
+		for (int i = 0; i < 8; i++) taken.add(pool.get());
+
+		for (StringBuilder sb : taken) pool.release(sb);
+
+		Assert.assertEquals(3, pool.getIdle());
+		Assert.assertEquals(5, pool.getDropped());
+		Assert.assertEquals(0, pool.getInUse());
+
+		// the working set below the maximum is recycled
+		for (int i = 0; i < 100; i++) {
+			StringBuilder a = pool.get();
+			StringBuilder b = pool.get();
+			pool.release(a);
+			pool.release(b);
+		}
+
+		Assert.assertEquals(8, pool.getCreated());
+		Assert.assertEquals(5, pool.getDropped());
+		Assert.assertEquals(3, pool.getIdle());
+	}
+
+	@Test
+	public void test_CreatesOneInstanceAtATimeAfterDropping() {
+
+		ManagedObjectPool<StringBuilder> pool = new ManagedObjectPool<StringBuilder>(0, BUILDER, 2);
+
+		for (int round = 0; round < 100; round++) {
+
+			List<StringBuilder> taken = new ArrayList<StringBuilder>();
+			for (int i = 0; i < 10; i++) taken.add(pool.get());
+
+			for (StringBuilder sb : taken) pool.release(sb);
+
+			// only the instances missing for the burst are created, and the excess is dropped
+			Assert.assertEquals(2 + 8L * (round + 1), pool.getCreated());
+			Assert.assertEquals(8L * (round + 1), pool.getDropped());
+			Assert.assertEquals(2, pool.getIdle());
+		}
+	}
+
+	@Test
+	public void test_TracksHighWaterMarkAndGrowthEvents() {
+
+		ManagedObjectPool<StringBuilder> pool = new ManagedObjectPool<StringBuilder>(2, BUILDER);
+
+		List<StringBuilder> taken = new ArrayList<StringBuilder>();
+		for (int i = 0; i < 5; i++) taken.add(pool.get());
+
+		Assert.assertEquals(5, pool.getHighWaterMark());
+		Assert.assertEquals(3, pool.getGrowthEvents());
+
+		for (StringBuilder sb : taken) pool.release(sb);
+		taken.clear();
+		for (int i = 0; i < 4; i++) taken.add(pool.get());
+
+		Assert.assertEquals(5, pool.getHighWaterMark());
+		Assert.assertEquals(3, pool.getGrowthEvents());
+
+		pool.resetStatistics();
+
+		Assert.assertEquals(4, pool.getHighWaterMark());
+		Assert.assertEquals(0, pool.getGrowthEvents());
+	}
+
+	@Test
+	public void test_PrewarmPreventsGrowth() {
+
+		ManagedObjectPool<StringBuilder> pool = new ManagedObjectPool<StringBuilder>(2, BUILDER);
+
+		StringBuilder inUse = pool.get();
+		pool.prewarm(100);
+
+		Assert.assertEquals(100, pool.getIdle());
+		Assert.assertEquals(101, pool.getCreated());
+		Assert.assertEquals(1, pool.getHighWaterMark());
+		Assert.assertEquals(0, pool.getGrowthEvents());
+
+		pool.prewarm(50); // already warm
+		Assert.assertEquals(101, pool.getCreated());
+
+		List<StringBuilder> taken = new ArrayList<StringBuilder>();
+		for (int i = 0; i < 100; i++) taken.add(pool.get());
+
+		Assert.assertEquals(0, pool.getGrowthEvents());
+		Assert.assertEquals(101, pool.getHighWaterMark());
+		Assert.assertFalse(taken.contains(inUse));
+
+		pool.get();
+		Assert.assertEquals(1, pool.getGrowthEvents());
+	}
+
+	@Test
+	public void test_PrewarmIsCappedByMaxIdle() {
+
+		ManagedObjectPool<StringBuilder> pool = new ManagedObjectPool<StringBuilder>(1, BUILDER, 10);
+
+		pool.prewarm(100);
+
+		Assert.assertEquals(10, pool.getIdle());
+		Assert.assertEquals(10, pool.getCreated());
+		Assert.assertEquals(0, pool.getDropped());
+	}
+
+	@Test
+	public void test_InvalidConfigurationIsRejected() {
+
+		Assert.assertThrows(IllegalArgumentException.class, () -> new ManagedObjectPool<StringBuilder>(-1, BUILDER));
+		Assert.assertThrows(IllegalArgumentException.class,
+				() -> new ManagedObjectPool<StringBuilder>(1, BUILDER, -1));
+		Assert.assertThrows(IllegalArgumentException.class,
+				() -> new ManagedObjectPool<StringBuilder>(1, BUILDER).prewarm(-1));
+	}
+}